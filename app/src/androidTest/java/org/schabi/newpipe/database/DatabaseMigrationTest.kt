@@ -2,8 +2,10 @@ package org.schabi.newpipe.database
 
 import android.content.ContentValues
 import android.database.sqlite.SQLiteDatabase
+import androidx.core.content.contentValuesOf
 import androidx.room.Room
 import androidx.room.testing.MigrationTestHelper
+import androidx.sqlite.db.SupportSQLiteDatabase
 import androidx.sqlite.db.framework.FrameworkSQLiteOpenHelperFactory
 import androidx.test.core.app.ApplicationProvider
 import androidx.test.ext.junit.runners.AndroidJUnit4
@@ -84,6 +86,11 @@ class DatabaseMigrationTest {
             true, Migrations.MIGRATION_4_5
         )
 
+        testHelper.runMigrationsAndValidate(
+            AppDatabase.DATABASE_NAME, Migrations.DB_VER_6,
+            true, Migrations.MIGRATION_5_6
+        )
+
         val migratedDatabaseV3 = getMigratedDatabase()
         val listFromDB = migratedDatabaseV3.streamDAO().all.blockingFirst()
 
@@ -118,6 +125,86 @@ class DatabaseMigrationTest {
         assertNull(secondStreamFromMigratedDatabase.isUploadDateApproximation)
     }
 
+    @Test
+    fun migrateDatabaseFrom5to6FillsTheFeedView() {
+        val databaseInV5 = testHelper.createDatabase(AppDatabase.DATABASE_NAME, Migrations.DB_VER_5)
+
+        databaseInV5.run {
+            insert("subscriptions", "uid" to 1, "service_id" to 0, "notification_mode" to 0)
+            insert("subscriptions", "uid" to 2, "service_id" to 0, "notification_mode" to 0)
+
+            insertStream(1, StreamType.VIDEO_STREAM, "Uploader A", 3000L)
+            insertStream(2, StreamType.VIDEO_STREAM, "Uploader A", 2000L)
+            insertStream(3, StreamType.LIVE_STREAM, "Uploader B", null)
+
+            insert("feed", "stream_id" to 1, "subscription_id" to 1)
+            insert("feed", "stream_id" to 2, "subscription_id" to 1)
+            insert("feed", "stream_id" to 3, "subscription_id" to 2)
+
+            // only the second subscription is in the group
+            insert("feed_group", "uid" to 1, "name" to "Group", "icon_id" to 0, "sort_order" to 0)
+            insert("feed_group_subscription_join", "group_id" to 1, "subscription_id" to 2)
+
+            // the first stream was played until the end, the second one was only started
+            insert("stream_history", "stream_id" to 1, "access_date" to 1, "repeat_count" to 1)
+            insert("stream_history", "stream_id" to 2, "access_date" to 1, "repeat_count" to 1)
+            insert("stream_state", "stream_id" to 1, "progress_time" to DEFAULT_DURATION * 1000)
+            insert("stream_state", "stream_id" to 2, "progress_time" to 10_000)
+            close()
+        }
+
+        val databaseInV6 = testHelper.runMigrationsAndValidate(
+            AppDatabase.DATABASE_NAME, Migrations.DB_VER_6,
+            true, Migrations.MIGRATION_5_6
+        )
+
+        val rows = databaseInV6.query(
+            "SELECT group_id, subscription_id, stream_id, sort_key, uploader, is_played " +
+                "FROM feed_view ORDER BY group_id, subscription_id, stream_id"
+        ).use { cursor ->
+            generateSequence { if (cursor.moveToNext()) cursor else null }
+                .map {
+                    listOf(
+                        it.getLong(0), it.getLong(1), it.getLong(2),
+                        if (it.isNull(3)) null else it.getLong(3),
+                        it.getString(4), it.getInt(5) != 0
+                    )
+                }
+                .toList()
+        }
+
+        assertEquals(
+            listOf(
+                // all the subscriptions
+                listOf(-1L, 1L, 1L, -3000L, "Uploader A", true),
+                listOf(-1L, 1L, 2L, -2000L, "Uploader A", false),
+                listOf(-1L, 2L, 3L, null, "Uploader B", false),
+                // the group
+                listOf(1L, 2L, 3L, null, "Uploader B", false)
+            ),
+            rows
+        )
+    }
+
+    private fun SupportSQLiteDatabase.insert(table: String, vararg values: Pair<String, Any?>) {
+        insert(table, SQLiteDatabase.CONFLICT_FAIL, contentValuesOf(*values))
+    }
+
+    private fun SupportSQLiteDatabase.insertStream(
+        uid: Long,
+        type: StreamType,
+        uploader: String,
+        uploadDate: Long?
+    ) {
+        insert(
+            "streams",
+            "uid" to uid, "service_id" to DEFAULT_SERVICE_ID, "url" to "$DEFAULT_URL&uid=$uid",
+            "title" to DEFAULT_TITLE, "stream_type" to type.name,
+            "duration" to if (type == StreamType.LIVE_STREAM) 0L else DEFAULT_DURATION,
+            "uploader" to uploader, "upload_date" to uploadDate
+        )
+    }
+
     private fun getMigratedDatabase(): AppDatabase {
         val database: AppDatabase = Room.databaseBuilder(
             ApplicationProvider.getApplicationContext(),
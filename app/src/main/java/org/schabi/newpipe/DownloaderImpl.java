@@ -11,6 +11,7 @@ import org.schabi.newpipe.extractor.downloader.Downloader;
 import org.schabi.newpipe.extractor.downloader.Request;
 import org.schabi.newpipe.extractor.downloader.Response;
 import org.schabi.newpipe.extractor.exceptions.ReCaptchaException;
+import org.schabi.newpipe.util.ConditionalRequest;
 import org.schabi.newpipe.util.InfoCache;
 
 import java.io.IOException;
@@ -19,6 +20,7 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.Callable;
 import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
@@ -38,6 +40,8 @@ public final class DownloaderImpl extends Downloader {
     private static DownloaderImpl instance;
     private final Map<String, String> mCookies;
     private final OkHttpClient client;
+    private final ThreadLocal<ConditionalRequest> conditionalRequests = new ThreadLocal<>();
+    private final ThreadLocal<Integer> lastErrorResponseCodes = new ThreadLocal<>();
 
     private DownloaderImpl(final OkHttpClient.Builder builder) {
         this.client = builder
@@ -123,6 +127,43 @@ public final class DownloaderImpl extends Downloader {
         }
     }
 
+    /**
+     * Runs an extraction on the calling thread, sending the validators of the given request along
+     * with its GET requests. The validators are then updated with the headers of the response.
+     * This is meant for extractions made of a single GET request, like the RSS feeds.
+     *
+     * @param request    the validators of the page the extraction downloads
+     * @param extraction the extraction
+     * @param <T>        the type of the result of the extraction
+     * @return the result of the extraction
+     * @throws ConditionalRequest.NotModifiedException if the page did not change since the
+     *                                                 validators were received
+     * @throws Exception                               if the extraction fails
+     */
+    public <T> T executeConditionally(@NonNull final ConditionalRequest request,
+                                      @NonNull final Callable<T> extraction) throws Exception {
+        conditionalRequests.set(request);
+        try {
+            return extraction.call();
+        } finally {
+            conditionalRequests.remove();
+        }
+    }
+
+    /**
+     * Returns and forgets the code of the last error response, i.e. 4xx or 5xx, received on the
+     * calling thread. Extractions download their pages on the thread they are run on, so this
+     * tells whether a failed extraction was refused by the server, since the extractor usually
+     * does not keep the response code in the exceptions it throws.
+     *
+     * @return the code of the last error response, or -1 if there was none since the last call
+     */
+    public int takeLastErrorResponseCode() {
+        final Integer code = lastErrorResponseCodes.get();
+        lastErrorResponseCodes.remove();
+        return code != null ? code : -1;
+    }
+
     @Override
     public Response execute(@NonNull final Request request)
             throws IOException, ReCaptchaException {
@@ -160,14 +201,40 @@ public final class DownloaderImpl extends Downloader {
 
         }
 
+        final ConditionalRequest conditionalRequest = "GET".equals(httpMethod)
+                ? conditionalRequests.get() : null;
+        if (conditionalRequest != null) {
+            if (conditionalRequest.getEtag() != null) {
+                requestBuilder.header("If-None-Match", conditionalRequest.getEtag());
+            }
+            if (conditionalRequest.getLastModified() != null) {
+                requestBuilder.header("If-Modified-Since", conditionalRequest.getLastModified());
+            }
+        }
+
         final okhttp3.Response response = client.newCall(requestBuilder.build()).execute();
 
+        if (response.code() >= 400) {
+            lastErrorResponseCodes.set(response.code());
+        }
+
         if (response.code() == 429) {
             response.close();
 
             throw new ReCaptchaException("reCaptcha Challenge requested", url);
         }
 
+        if (conditionalRequest != null) {
+            if (response.code() == 304) {
+                response.close();
+
+                throw new ConditionalRequest.NotModifiedException(url);
+            } else if (response.isSuccessful()) {
+                conditionalRequest.update(response.header("ETag"),
+                        response.header("Last-Modified"));
+            }
+        }
+
         final ResponseBody body = response.body();
         String responseBodyToReturn = null;
 
@@ -23,6 +23,7 @@ public final class Migrations {
     public static final int DB_VER_3 = 3;
     public static final int DB_VER_4 = 4;
     public static final int DB_VER_5 = 5;
+    public static final int DB_VER_6 = 6;
 
     private static final String TAG = Migrations.class.getName();
     public static final boolean DEBUG = MainActivity.DEBUG;
@@ -188,6 +189,53 @@ public final class Migrations {
         }
     };
 
+    public static final Migration MIGRATION_5_6 = new Migration(DB_VER_5, DB_VER_6) {
+        @Override
+        public void migrate(@NonNull final SupportSQLiteDatabase database) {
+            database.execSQL("CREATE TABLE IF NOT EXISTS `feed_fingerprint` "
+                    + "(`subscription_id` INTEGER NOT NULL, `etag` TEXT, `last_modified` TEXT, "
+                    + "`items_hash` INTEGER, PRIMARY KEY(`subscription_id`), "
+                    + "FOREIGN KEY(`subscription_id`) REFERENCES `subscriptions`(`uid`) "
+                    + "ON UPDATE CASCADE ON DELETE CASCADE DEFERRABLE INITIALLY DEFERRED)");
+            database.execSQL("ALTER TABLE `feed_last_updated` ADD COLUMN `next_check` INTEGER");
+
+            database.execSQL("CREATE TABLE IF NOT EXISTS `feed_view` "
+                    + "(`group_id` INTEGER NOT NULL, `subscription_id` INTEGER NOT NULL, "
+                    + "`stream_id` INTEGER NOT NULL, `sort_key` INTEGER, "
+                    + "`uploader` TEXT NOT NULL, `is_played` INTEGER NOT NULL, "
+                    + "PRIMARY KEY(`group_id`, `subscription_id`, `stream_id`), "
+                    + "FOREIGN KEY(`stream_id`, `subscription_id`) "
+                    + "REFERENCES `feed`(`stream_id`, `subscription_id`) "
+                    + "ON UPDATE CASCADE ON DELETE CASCADE DEFERRABLE INITIALLY DEFERRED)");
+            database.execSQL("CREATE INDEX IF NOT EXISTS "
+                    + "`index_feed_view_group_id_sort_key_uploader_is_played_stream_id` "
+                    + "ON `feed_view` (`group_id`, `sort_key`, `uploader`, `is_played`, "
+                    + "`stream_id`)");
+            database.execSQL("CREATE INDEX IF NOT EXISTS "
+                    + "`index_feed_view_stream_id_subscription_id` "
+                    + "ON `feed_view` (`stream_id`, `subscription_id`)");
+
+            // Fill it with the current feed, for all subscriptions (group -1) and for each group
+            final String columns = "f.subscription_id, f.stream_id, -s.upload_date, s.uploader, "
+                    + "(EXISTS (SELECT 1 FROM stream_history sh WHERE sh.stream_id = s.uid) "
+                    + "AND sst.stream_id IS NOT NULL "
+                    + "AND sst.progress_time >= s.duration * 1000 - 60000 "
+                    + "AND sst.progress_time >= s.duration * 1000 * 3 / 4 "
+                    + "AND s.stream_type NOT IN ('LIVE_STREAM', 'AUDIO_LIVE_STREAM')) "
+                    + "FROM feed f ";
+            final String joins = "INNER JOIN streams s ON s.uid = f.stream_id "
+                    + "LEFT JOIN stream_state sst ON sst.stream_id = f.stream_id";
+            database.execSQL("INSERT INTO feed_view "
+                    + "(group_id, subscription_id, stream_id, sort_key, uploader, is_played) "
+                    + "SELECT -1, " + columns + joins);
+            database.execSQL("INSERT INTO feed_view "
+                    + "(group_id, subscription_id, stream_id, sort_key, uploader, is_played) "
+                    + "SELECT fgs.group_id, " + columns
+                    + "INNER JOIN feed_group_subscription_join fgs "
+                    + "ON fgs.subscription_id = f.subscription_id " + joins);
+        }
+    };
+
     private Migrations() {
     }
 }
@@ -9,8 +9,10 @@ import androidx.room.Update
 import io.reactivex.rxjava3.core.Flowable
 import io.reactivex.rxjava3.core.Maybe
 import org.schabi.newpipe.database.feed.model.FeedEntity
+import org.schabi.newpipe.database.feed.model.FeedFingerprintEntity
 import org.schabi.newpipe.database.feed.model.FeedGroupEntity
 import org.schabi.newpipe.database.feed.model.FeedLastUpdatedEntity
+import org.schabi.newpipe.database.feed.model.FeedViewEntity
 import org.schabi.newpipe.database.stream.StreamWithState
 import org.schabi.newpipe.database.stream.model.StreamStateEntity
 import org.schabi.newpipe.database.subscription.NotificationMode
@@ -29,50 +31,35 @@ abstract class FeedDAO {
      *                         feed streams (see `@see` items); if true no filter is applied
      * @param uploadDateBefore get only streams uploaded before this date (useful to filter out
      *                         future streams); use null to not filter by upload date
-     * @return the feed streams filtered according to the conditions provided in the parameters
+     * @return the feed streams filtered according to the conditions provided in the parameters,
+     * read in the order of the index of [FeedViewEntity]
+     * @see FeedGroupEntity.GROUP_ALL_ID
      * @see StreamStateEntity.isFinished()
      * @see StreamStateEntity.PLAYBACK_FINISHED_END_MILLISECONDS
      */
     @Query(
         """
         SELECT s.*, sst.progress_time
-        FROM streams s
+        FROM feed_view fv
+
+        INNER JOIN streams s
+        ON s.uid = fv.stream_id
 
         LEFT JOIN stream_state sst
-        ON s.uid = sst.stream_id
-        
-        LEFT JOIN stream_history sh
-        ON s.uid = sh.stream_id
-        
-        INNER JOIN feed f
-        ON s.uid = f.stream_id
+        ON sst.stream_id = fv.stream_id
 
-        LEFT JOIN feed_group_subscription_join fgs
-        ON (
-            :groupId <> ${FeedGroupEntity.GROUP_ALL_ID}
-            AND fgs.subscription_id = f.subscription_id
-        )
-        
-        WHERE (
-            :groupId = ${FeedGroupEntity.GROUP_ALL_ID}
-            OR fgs.group_id = :groupId
-        )
+        WHERE fv.group_id = :groupId
         AND (
             :includePlayed
-            OR sh.stream_id IS NULL
-            OR sst.stream_id IS NULL
-            OR sst.progress_time < s.duration * 1000 - ${StreamStateEntity.PLAYBACK_FINISHED_END_MILLISECONDS}
-            OR sst.progress_time < s.duration * 1000 * 3 / 4
-            OR s.stream_type = 'LIVE_STREAM'
-            OR s.stream_type = 'AUDIO_LIVE_STREAM'
+            OR fv.is_played = 0
         )
         AND (
             :uploadDateBefore IS NULL
-            OR s.upload_date IS NULL
-            OR s.upload_date < :uploadDateBefore
+            OR fv.sort_key IS NULL
+            OR fv.sort_key > -:uploadDateBefore
         )
 
-        ORDER BY s.upload_date IS NULL DESC, s.upload_date DESC, s.uploader ASC
+        ORDER BY fv.sort_key ASC, fv.uploader ASC
         LIMIT 500
         """
     )
@@ -122,6 +109,48 @@ abstract class FeedDAO {
     @Insert(onConflict = OnConflictStrategy.IGNORE)
     abstract fun insertAll(entities: List<FeedEntity>): List<Long>
 
+    /**
+     * Add the streams of the feed of a subscription to [FeedViewEntity], or update them, also in
+     * the feeds of the other subscriptions they are in.
+     */
+    @Query(
+        """
+        ${FeedViewEntity.INSERT_ROWS}
+        ${FeedViewEntity.SELECT_GROUP_ALL_ROWS}
+        WHERE f.stream_id IN (SELECT stream_id FROM feed WHERE subscription_id = :subscriptionId)
+
+        UNION ALL
+
+        ${FeedViewEntity.SELECT_GROUP_ROWS}
+        WHERE f.stream_id IN (SELECT stream_id FROM feed WHERE subscription_id = :subscriptionId)
+        """
+    )
+    abstract fun updateViewOfSubscription(subscriptionId: Long)
+
+    /**
+     * Update a stream in [FeedViewEntity], after it or its state changed.
+     */
+    @Query(
+        """
+        ${FeedViewEntity.INSERT_ROWS}
+        ${FeedViewEntity.SELECT_GROUP_ALL_ROWS}
+        WHERE f.stream_id = :streamId
+
+        UNION ALL
+
+        ${FeedViewEntity.SELECT_GROUP_ROWS}
+        WHERE f.stream_id = :streamId
+        """
+    )
+    abstract fun updateViewOfStream(streamId: Long)
+
+    /**
+     * Mark all the streams of [FeedViewEntity] as not played, after all the stream history or
+     * states were deleted.
+     */
+    @Query("UPDATE feed_view SET is_played = 0")
+    abstract fun unmarkViewAsPlayed()
+
     @Insert(onConflict = OnConflictStrategy.IGNORE)
     internal abstract fun insertLastUpdated(lastUpdatedEntity: FeedLastUpdatedEntity): Long
 
@@ -137,6 +166,38 @@ abstract class FeedDAO {
         }
     }
 
+    /**
+     * @return the upload dates of the latest streams of a subscription in the feed, newest first;
+     * live streams are not included as they have no upload date
+     */
+    @Query(
+        """
+        SELECT s.upload_date FROM streams s
+
+        INNER JOIN feed f
+        ON s.uid = f.stream_id
+
+        WHERE f.subscription_id = :subscriptionId
+        AND s.upload_date IS NOT NULL
+
+        ORDER BY s.upload_date DESC
+        LIMIT :limit
+        """
+    )
+    abstract fun getLatestUploadDates(subscriptionId: Long, limit: Int): List<OffsetDateTime>
+
+    @Query("SELECT * FROM feed_fingerprint WHERE subscription_id = :subscriptionId")
+    abstract fun getFingerprint(subscriptionId: Long): FeedFingerprintEntity?
+
+    @Insert(onConflict = OnConflictStrategy.REPLACE)
+    abstract fun setFingerprint(fingerprintEntity: FeedFingerprintEntity)
+
+    @Query("DELETE FROM feed_fingerprint WHERE subscription_id = :subscriptionId")
+    abstract fun deleteFingerprint(subscriptionId: Long)
+
+    @Query("DELETE FROM feed_fingerprint")
+    abstract fun deleteAllFingerprints()
+
     @Query(
         """
         SELECT MIN(lu.last_updated) FROM feed_last_updated lu
@@ -175,10 +236,17 @@ abstract class FeedDAO {
         LEFT JOIN feed_last_updated lu
         ON s.uid = lu.subscription_id 
 
-        WHERE lu.last_updated IS NULL OR lu.last_updated < :outdatedThreshold
+        WHERE lu.last_updated IS NULL
+        OR (
+            lu.last_updated < :outdatedThreshold
+            AND (lu.next_check IS NULL OR lu.next_check <= :now)
+        )
         """
     )
-    abstract fun getAllOutdated(outdatedThreshold: OffsetDateTime): Flowable<List<SubscriptionEntity>>
+    abstract fun getAllOutdated(
+        outdatedThreshold: OffsetDateTime,
+        now: OffsetDateTime
+    ): Flowable<List<SubscriptionEntity>>
 
     @Query(
         """
@@ -190,10 +258,18 @@ abstract class FeedDAO {
         LEFT JOIN feed_last_updated lu
         ON s.uid = lu.subscription_id
 
-        WHERE lu.last_updated IS NULL OR lu.last_updated < :outdatedThreshold
+        WHERE lu.last_updated IS NULL
+        OR (
+            lu.last_updated < :outdatedThreshold
+            AND (lu.next_check IS NULL OR lu.next_check <= :now)
+        )
         """
     )
-    abstract fun getAllOutdatedForGroup(groupId: Long, outdatedThreshold: OffsetDateTime): Flowable<List<SubscriptionEntity>>
+    abstract fun getAllOutdatedForGroup(
+        groupId: Long,
+        outdatedThreshold: OffsetDateTime,
+        now: OffsetDateTime
+    ): Flowable<List<SubscriptionEntity>>
 
     @Query(
         """
@@ -203,12 +279,19 @@ abstract class FeedDAO {
         ON s.uid = lu.subscription_id
 
         WHERE 
-            (lu.last_updated IS NULL OR lu.last_updated < :outdatedThreshold)
+            (
+                lu.last_updated IS NULL
+                OR (
+                    lu.last_updated < :outdatedThreshold
+                    AND (lu.next_check IS NULL OR lu.next_check <= :now)
+                )
+            )
             AND s.notification_mode = :notificationMode
         """
     )
     abstract fun getOutdatedWithNotificationMode(
         outdatedThreshold: OffsetDateTime,
+        now: OffsetDateTime,
         @NotificationMode notificationMode: Int
     ): Flowable<List<SubscriptionEntity>>
 }
@@ -10,6 +10,7 @@ import io.reactivex.rxjava3.core.Flowable
 import io.reactivex.rxjava3.core.Maybe
 import org.schabi.newpipe.database.feed.model.FeedGroupEntity
 import org.schabi.newpipe.database.feed.model.FeedGroupSubscriptionEntity
+import org.schabi.newpipe.database.feed.model.FeedViewEntity
 
 @Dao
 abstract class FeedGroupDAO {
@@ -33,8 +34,11 @@ abstract class FeedGroupDAO {
     @Query("DELETE FROM feed_group")
     abstract fun deleteAll(): Int
 
-    @Query("DELETE FROM feed_group WHERE uid = :groupId")
-    abstract fun delete(groupId: Long): Int
+    @Transaction
+    open fun delete(groupId: Long): Int {
+        deleteViewOfGroup(groupId)
+        return deleteInternal(groupId)
+    }
 
     @Query("SELECT subscription_id FROM feed_group_subscription_join WHERE group_id = :groupId")
     abstract fun getSubscriptionIdsFor(groupId: Long): Flowable<List<Long>>
@@ -49,6 +53,9 @@ abstract class FeedGroupDAO {
     open fun updateSubscriptionsForGroup(groupId: Long, subscriptionIds: List<Long>) {
         deleteSubscriptionsFromGroup(groupId)
         insertSubscriptionsToGroup(subscriptionIds.map { FeedGroupSubscriptionEntity(groupId, it) })
+
+        deleteViewOfGroup(groupId)
+        insertViewOfGroup(groupId)
     }
 
     @Transaction
@@ -62,6 +69,21 @@ abstract class FeedGroupDAO {
     @Query("SELECT IFNULL(MAX(sort_order) + 1, 0) FROM feed_group")
     protected abstract fun nextSortOrder(): Long
 
+    @Query("DELETE FROM feed_group WHERE uid = :groupId")
+    protected abstract fun deleteInternal(groupId: Long): Int
+
+    @Query("DELETE FROM feed_view WHERE group_id = :groupId")
+    protected abstract fun deleteViewOfGroup(groupId: Long)
+
+    @Query(
+        """
+        ${FeedViewEntity.INSERT_ROWS}
+        ${FeedViewEntity.SELECT_GROUP_ROWS}
+        WHERE fgs.group_id = :groupId
+        """
+    )
+    protected abstract fun insertViewOfGroup(groupId: Long)
+
     @Insert(onConflict = OnConflictStrategy.ABORT)
     protected abstract fun insertInternal(feedGroupEntity: FeedGroupEntity): Long
 }
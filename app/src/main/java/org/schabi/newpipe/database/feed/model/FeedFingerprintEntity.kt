@@ -0,0 +1,57 @@
+package org.schabi.newpipe.database.feed.model
+
+import androidx.room.ColumnInfo
+import androidx.room.Entity
+import androidx.room.ForeignKey
+import androidx.room.PrimaryKey
+import org.schabi.newpipe.database.feed.model.FeedFingerprintEntity.Companion.FEED_FINGERPRINT_TABLE
+import org.schabi.newpipe.database.feed.model.FeedFingerprintEntity.Companion.SUBSCRIPTION_ID
+import org.schabi.newpipe.database.subscription.SubscriptionEntity
+
+/**
+ * What was received the last time the feed of a subscription was loaded, used to know if it
+ * changed since then.
+ */
+@Entity(
+    tableName = FEED_FINGERPRINT_TABLE,
+    foreignKeys = [
+        ForeignKey(
+            entity = SubscriptionEntity::class,
+            parentColumns = [SubscriptionEntity.SUBSCRIPTION_UID],
+            childColumns = [SUBSCRIPTION_ID],
+            onDelete = ForeignKey.CASCADE, onUpdate = ForeignKey.CASCADE, deferred = true
+        )
+    ]
+)
+data class FeedFingerprintEntity(
+    @PrimaryKey
+    @ColumnInfo(name = SUBSCRIPTION_ID)
+    var subscriptionId: Long,
+
+    /**
+     * The `ETag` header of the last response, sent back in `If-None-Match`.
+     */
+    @ColumnInfo(name = ETAG)
+    var etag: String? = null,
+
+    /**
+     * The `Last-Modified` header of the last response, sent back in `If-Modified-Since`.
+     */
+    @ColumnInfo(name = LAST_MODIFIED)
+    var lastModified: String? = null,
+
+    /**
+     * The hash of the items received, see [org.schabi.newpipe.local.feed.FeedDatabaseManager.hashItems].
+     */
+    @ColumnInfo(name = ITEMS_HASH)
+    var itemsHash: Long? = null
+) {
+    companion object {
+        const val FEED_FINGERPRINT_TABLE = "feed_fingerprint"
+
+        const val SUBSCRIPTION_ID = "subscription_id"
+        const val ETAG = "etag"
+        const val LAST_MODIFIED = "last_modified"
+        const val ITEMS_HASH = "items_hash"
+    }
+}
@@ -26,12 +26,20 @@ data class FeedLastUpdatedEntity(
     var subscriptionId: Long,
 
     @ColumnInfo(name = LAST_UPDATED)
-    var lastUpdated: OffsetDateTime? = null
+    var lastUpdated: OffsetDateTime? = null,
+
+    /**
+     * When the subscription is expected to have uploaded something new, based on how often it
+     * uploaded before. `null` if unknown.
+     */
+    @ColumnInfo(name = NEXT_CHECK)
+    var nextCheck: OffsetDateTime? = null
 ) {
     companion object {
         const val FEED_LAST_UPDATED_TABLE = "feed_last_updated"
 
         const val SUBSCRIPTION_ID = "subscription_id"
         const val LAST_UPDATED = "last_updated"
+        const val NEXT_CHECK = "next_check"
     }
 }
@@ -0,0 +1,137 @@
+package org.schabi.newpipe.database.feed.model
+
+import androidx.room.ColumnInfo
+import androidx.room.Entity
+import androidx.room.ForeignKey
+import androidx.room.Index
+import org.schabi.newpipe.database.feed.model.FeedViewEntity.Companion.FEED_VIEW_TABLE
+import org.schabi.newpipe.database.feed.model.FeedViewEntity.Companion.GROUP_ID
+import org.schabi.newpipe.database.feed.model.FeedViewEntity.Companion.IS_PLAYED
+import org.schabi.newpipe.database.feed.model.FeedViewEntity.Companion.SORT_KEY
+import org.schabi.newpipe.database.feed.model.FeedViewEntity.Companion.STREAM_ID
+import org.schabi.newpipe.database.feed.model.FeedViewEntity.Companion.SUBSCRIPTION_ID
+import org.schabi.newpipe.database.feed.model.FeedViewEntity.Companion.UPLOADER
+import org.schabi.newpipe.database.stream.model.StreamStateEntity
+
+/**
+ * The streams of the feed of every group, with what the feed is sorted and filtered by, so that
+ * the feed of a group is read with a range scan of an index instead of joining and sorting all
+ * of its streams. The rows of [FeedGroupEntity.GROUP_ALL_ID] hold the feed of all subscriptions.
+ *
+ * The rows are deleted along with their [FeedEntity]; they are added and updated by
+ * [org.schabi.newpipe.database.feed.dao.FeedDAO],
+ * [org.schabi.newpipe.database.feed.dao.FeedGroupDAO] and
+ * [org.schabi.newpipe.database.stream.dao.StreamDAO] when the feed, the groups, the streams or
+ * their state change.
+ */
+@Entity(
+    tableName = FEED_VIEW_TABLE,
+    primaryKeys = [GROUP_ID, SUBSCRIPTION_ID, STREAM_ID],
+    indices = [
+        Index(GROUP_ID, SORT_KEY, UPLOADER, IS_PLAYED, STREAM_ID),
+        Index(STREAM_ID, SUBSCRIPTION_ID)
+    ],
+    foreignKeys = [
+        ForeignKey(
+            entity = FeedEntity::class,
+            parentColumns = [FeedEntity.STREAM_ID, FeedEntity.SUBSCRIPTION_ID],
+            childColumns = [STREAM_ID, SUBSCRIPTION_ID],
+            onDelete = ForeignKey.CASCADE, onUpdate = ForeignKey.CASCADE, deferred = true
+        )
+    ]
+)
+data class FeedViewEntity(
+    @ColumnInfo(name = GROUP_ID)
+    var groupId: Long,
+
+    @ColumnInfo(name = SUBSCRIPTION_ID)
+    var subscriptionId: Long,
+
+    @ColumnInfo(name = STREAM_ID)
+    var streamId: Long,
+
+    /**
+     * The upload date of the stream in milliseconds, negated so that the newest streams come
+     * first in the index, after the ones without an upload date (e.g. live streams).
+     */
+    @ColumnInfo(name = SORT_KEY)
+    var sortKey: Long?,
+
+    @ColumnInfo(name = UPLOADER)
+    var uploader: String,
+
+    /**
+     * Whether the stream is hidden from the feed when the played streams are, see
+     * [StreamStateEntity.isFinished].
+     */
+    @ColumnInfo(name = IS_PLAYED)
+    var isPlayed: Boolean
+) {
+    companion object {
+        const val FEED_VIEW_TABLE = "feed_view"
+
+        const val GROUP_ID = "group_id"
+        const val SUBSCRIPTION_ID = "subscription_id"
+        const val STREAM_ID = "stream_id"
+        const val SORT_KEY = "sort_key"
+        const val UPLOADER = "uploader"
+        const val IS_PLAYED = "is_played"
+
+        /**
+         * Computes [IS_PLAYED] for the stream `s` and its state `sst`: the stream was watched,
+         * it is not live and it was played until the end.
+         */
+        private const val IS_PLAYED_EXPRESSION = """
+            (
+                EXISTS (SELECT 1 FROM stream_history sh WHERE sh.stream_id = s.uid)
+                AND sst.stream_id IS NOT NULL
+                AND sst.progress_time >= s.duration * 1000 - ${StreamStateEntity.PLAYBACK_FINISHED_END_MILLISECONDS}
+                AND sst.progress_time >= s.duration * 1000 * 3 / 4
+                AND s.stream_type NOT IN ('LIVE_STREAM', 'AUDIO_LIVE_STREAM')
+            )
+        """
+
+        /**
+         * Followed by one of the `SELECT`s below, adds their rows or replaces the existing ones.
+         */
+        const val INSERT_ROWS = """
+            INSERT OR REPLACE INTO feed_view
+            (group_id, subscription_id, stream_id, sort_key, uploader, is_played)
+        """
+
+        /**
+         * Selects the rows of [FeedGroupEntity.GROUP_ALL_ID] for the feed entries `f`, to be
+         * followed by a `WHERE` clause choosing them.
+         */
+        const val SELECT_GROUP_ALL_ROWS = """
+            SELECT ${FeedGroupEntity.GROUP_ALL_ID}, f.subscription_id, f.stream_id,
+                -s.upload_date, s.uploader, $IS_PLAYED_EXPRESSION
+            FROM feed f
+
+            INNER JOIN streams s
+            ON s.uid = f.stream_id
+
+            LEFT JOIN stream_state sst
+            ON sst.stream_id = f.stream_id
+        """
+
+        /**
+         * Selects the rows of the groups `fgs` for the feed entries `f`, to be followed by a
+         * `WHERE` clause choosing them.
+         */
+        const val SELECT_GROUP_ROWS = """
+            SELECT fgs.group_id, f.subscription_id, f.stream_id,
+                -s.upload_date, s.uploader, $IS_PLAYED_EXPRESSION
+            FROM feed f
+
+            INNER JOIN feed_group_subscription_join fgs
+            ON fgs.subscription_id = f.subscription_id
+
+            INNER JOIN streams s
+            ON s.uid = f.stream_id
+
+            LEFT JOIN stream_state sst
+            ON sst.stream_id = f.stream_id
+        """
+    }
+}
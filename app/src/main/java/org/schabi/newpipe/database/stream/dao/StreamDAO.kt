@@ -2,6 +2,7 @@ package org.schabi.newpipe.database.stream.dao
 
 import androidx.room.ColumnInfo
 import androidx.room.Dao
+import androidx.room.Ignore
 import androidx.room.Insert
 import androidx.room.OnConflictStrategy
 import androidx.room.Query
@@ -9,6 +10,7 @@ import androidx.room.Transaction
 import io.reactivex.rxjava3.core.Completable
 import io.reactivex.rxjava3.core.Flowable
 import org.schabi.newpipe.database.BasicDAO
+import org.schabi.newpipe.database.feed.model.FeedViewEntity
 import org.schabi.newpipe.database.stream.model.StreamEntity
 import org.schabi.newpipe.database.stream.model.StreamEntity.Companion.STREAM_ID
 import org.schabi.newpipe.extractor.stream.StreamType
@@ -41,6 +43,23 @@ abstract class StreamDAO : BasicDAO<StreamEntity> {
     @Query("SELECT COUNT(*) != 0 FROM streams WHERE url = :url AND service_id = :serviceId")
     internal abstract fun exists(serviceId: Int, url: String): Boolean
 
+    @Query("SELECT * FROM streams WHERE service_id = :serviceId AND url IN (:urls)")
+    internal abstract fun getStreamsInternal(serviceId: Int, urls: List<String>): List<StreamEntity>
+
+    @Query("SELECT url FROM streams WHERE service_id = :serviceId AND url IN (:urls)")
+    internal abstract fun getExistingUrlsInternal(serviceId: Int, urls: List<String>): List<String>
+
+    /**
+     * @return the URLs of the given ones which belong to a stream of the service in the database
+     */
+    open fun getExistingUrls(serviceId: Int, urls: Collection<String>): Set<String> {
+        val existingUrls = HashSet<String>()
+        for (chunk in urls.distinct().chunked(MAX_URLS_PER_QUERY)) {
+            existingUrls += getExistingUrlsInternal(serviceId, chunk)
+        }
+        return existingUrls
+    }
+
     @Query(
         """
         SELECT uid, stream_type, textual_upload_date, upload_date, is_upload_date_approximation, duration 
@@ -61,33 +80,85 @@ abstract class StreamDAO : BasicDAO<StreamEntity> {
         compareAndUpdateStream(newerStream)
 
         update(newerStream)
+        updateFeedViewInternal(listOf(newerStream.uid))
         return newerStream.uid
     }
 
+    /**
+     * Insert the streams which are not in the database yet and update the others like [upsert]
+     * does. The existing streams are looked up with one query per service, then the new ones are
+     * inserted in a single batch and the ones which changed are updated in another.
+     *
+     * @return the ids of the streams, in the same order
+     */
     @Transaction
     open fun upsertAll(streams: List<StreamEntity>): List<Long> {
-        val insertUidList = silentInsertAllInternal(streams)
-
-        val streamIds = ArrayList<Long>(streams.size)
-        for ((index, uid) in insertUidList.withIndex()) {
-            val newerStream = streams[index]
-            if (uid != -1L) {
-                streamIds.add(uid)
-                newerStream.uid = uid
+        val existingStreams = HashMap<Pair<Int, String>, StreamEntity>()
+        for ((serviceId, serviceStreams) in streams.groupBy { it.serviceId }) {
+            for (urls in serviceStreams.map { it.url }.distinct().chunked(MAX_URLS_PER_QUERY)) {
+                getStreamsInternal(serviceId, urls).associateByTo(existingStreams) {
+                    it.serviceId to it.url
+                }
+            }
+        }
+
+        // the same stream can be more than once in the list, it is only inserted once
+        val newStreams = LinkedHashMap<Pair<Int, String>, StreamEntity>()
+        val changedStreams = ArrayList<StreamEntity>()
+        for (newerStream in streams) {
+            val key = newerStream.serviceId to newerStream.url
+            val existingStream = existingStreams[key]
+            if (existingStream == null) {
+                newStreams.putIfAbsent(key, newerStream)
                 continue
             }
 
-            compareAndUpdateStream(newerStream)
-            streamIds.add(newerStream.uid)
+            compareAndUpdateStream(newerStream, StreamCompareFeed(existingStream))
+            if (newerStream != existingStream) {
+                changedStreams.add(newerStream)
+            }
         }
 
-        update(streams)
-        return streamIds
+        val streamsToInsert = newStreams.values.toList()
+        for ((index, uid) in silentInsertAllInternal(streamsToInsert).withIndex()) {
+            streamsToInsert[index].uid = uid
+        }
+        update(changedStreams)
+        for (uids in changedStreams.map { it.uid }.chunked(MAX_UIDS_PER_FEED_VIEW_UPDATE)) {
+            updateFeedViewInternal(uids)
+        }
+
+        return streams.map { stream ->
+            val key = stream.serviceId to stream.url
+            stream.uid = existingStreams[key]?.uid ?: newStreams.getValue(key).uid
+            stream.uid
+        }
     }
 
-    private fun compareAndUpdateStream(newerStream: StreamEntity) {
-        val existentMinimalStream = getMinimalStreamForCompare(newerStream.serviceId, newerStream.url)
-            ?: throw IllegalStateException("Stream cannot be null just after insertion.")
+    /**
+     * Update the rows of the streams in [FeedViewEntity], after the streams changed. The streams
+     * which are not in any feed have no rows.
+     */
+    @Query(
+        """
+        ${FeedViewEntity.INSERT_ROWS}
+        ${FeedViewEntity.SELECT_GROUP_ALL_ROWS}
+        WHERE f.stream_id IN (:streamIds)
+
+        UNION ALL
+
+        ${FeedViewEntity.SELECT_GROUP_ROWS}
+        WHERE f.stream_id IN (:streamIds)
+        """
+    )
+    internal abstract fun updateFeedViewInternal(streamIds: List<Long>)
+
+    private fun compareAndUpdateStream(
+        newerStream: StreamEntity,
+        existentMinimalStream: StreamCompareFeed =
+            getMinimalStreamForCompare(newerStream.serviceId, newerStream.url)
+                ?: throw IllegalStateException("Stream cannot be null just after insertion.")
+    ) {
         newerStream.uid = existentMinimalStream.uid
 
         if (!StreamTypeUtil.isLiveStream(newerStream.streamType)) {
@@ -145,5 +216,22 @@ abstract class StreamDAO : BasicDAO<StreamEntity> {
 
         @ColumnInfo(name = StreamEntity.STREAM_DURATION)
         var duration: Long
-    )
+    ) {
+        @Ignore
+        constructor(stream: StreamEntity) : this(
+            stream.uid, stream.streamType, stream.textualUploadDate, stream.uploadDate,
+            stream.isUploadDateApproximation, stream.duration
+        )
+    }
 }
+
+/**
+ * How many URLs are bound in a single `IN` query, below the limit of 999 variables per statement
+ * of the SQLite versions older than 3.32.
+ */
+private const val MAX_URLS_PER_QUERY = 900
+
+/**
+ * How many stream ids are bound in a single update of the feed view, they are bound twice.
+ */
+private const val MAX_UIDS_PER_FEED_VIEW_UPDATE = MAX_URLS_PER_QUERY / 2
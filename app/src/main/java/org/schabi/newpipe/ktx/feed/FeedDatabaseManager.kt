@@ -52,12 +52,15 @@ class FeedDatabaseManager(context: Context) {
         )
     }
 
-    fun outdatedSubscriptions(outdatedThreshold: OffsetDateTime) = feedTable.getAllOutdated(outdatedThreshold)
+    fun outdatedSubscriptions(outdatedThreshold: OffsetDateTime) =
+        feedTable.getAllOutdated(outdatedThreshold, OffsetDateTime.now(ZoneOffset.UTC))
 
     fun outdatedSubscriptionsWithNotificationMode(
         outdatedThreshold: OffsetDateTime,
         @NotificationMode notificationMode: Int
-    ) = feedTable.getOutdatedWithNotificationMode(outdatedThreshold, notificationMode)
+    ) = feedTable.getOutdatedWithNotificationMode(
+        outdatedThreshold, OffsetDateTime.now(ZoneOffset.UTC), notificationMode
+    )
 
     fun notLoadedCount(groupId: Long = FeedGroupEntity.GROUP_ALL_ID): Flowable<Long> {
         return when (groupId) {
@@ -69,7 +72,9 @@ class FeedDatabaseManager(context: Context) {
     fun outdatedSubscriptionsForGroup(
         groupId: Long = FeedGroupEntity.GROUP_ALL_ID,
         outdatedThreshold: OffsetDateTime
-    ) = feedTable.getAllOutdatedForGroup(groupId, outdatedThreshold)
+    ) = feedTable.getAllOutdatedForGroup(
+        groupId, outdatedThreshold, OffsetDateTime.now(ZoneOffset.UTC)
+    )
 
     fun markAsOutdated(subscriptionId: Long) = feedTable
         .setLastUpdatedForSubscription(FeedLastUpdatedEntity(subscriptionId, null))
@@ -10,6 +10,7 @@ import io.reactivex.rxjava3.schedulers.Schedulers
 import org.schabi.newpipe.MainActivity.DEBUG
 import org.schabi.newpipe.NewPipeDatabase
 import org.schabi.newpipe.database.feed.model.FeedEntity
+import org.schabi.newpipe.database.feed.model.FeedFingerprintEntity
 import org.schabi.newpipe.database.feed.model.FeedGroupEntity
 import org.schabi.newpipe.database.feed.model.FeedLastUpdatedEntity
 import org.schabi.newpipe.database.stream.StreamWithState
@@ -18,9 +19,14 @@ import org.schabi.newpipe.database.subscription.NotificationMode
 import org.schabi.newpipe.extractor.stream.StreamInfoItem
 import org.schabi.newpipe.extractor.stream.StreamType
 import org.schabi.newpipe.local.subscription.FeedGroupIcon
+import org.schabi.newpipe.util.ConditionalRequest
+import java.nio.ByteBuffer
+import java.security.MessageDigest
+import java.time.Duration
 import java.time.LocalDate
 import java.time.OffsetDateTime
 import java.time.ZoneOffset
+import kotlin.math.ln
 
 class FeedDatabaseManager(context: Context) {
     private val database = NewPipeDatabase.getInstance(context)
@@ -34,6 +40,72 @@ class FeedDatabaseManager(context: Context) {
          */
         val FEED_OLDEST_ALLOWED_DATE: OffsetDateTime = LocalDate.now().minusWeeks(13)
             .atStartOfDay().atOffset(ZoneOffset.UTC)
+
+        /**
+         * How many of the latest uploads of a subscription are used to guess how often it uploads.
+         */
+        private const val UPLOAD_HISTORY_SIZE = 10
+
+        /**
+         * A subscription is checked again once the probability of it having uploaded something
+         * since the last check reaches this value.
+         */
+        private const val DUE_PROBABILITY = 0.25
+
+        private val MIN_CHECK_INTERVAL: Duration = Duration.ofMinutes(15)
+        private val MAX_CHECK_INTERVAL: Duration = Duration.ofDays(2)
+
+        /**
+         * Guess when a subscription should be checked again for new streams. The uploads are seen
+         * as a Poisson process, whose rate is estimated from the latest upload dates; the time
+         * passed since the newest upload counts too, so that subscriptions which stopped uploading
+         * get checked less often.
+         *
+         * @param uploadDates the latest upload dates of the subscription, newest first
+         * @param lastChecked when the subscription was checked
+         * @return when the subscription should be checked again
+         */
+        fun nextCheck(uploadDates: List<OffsetDateTime>, lastChecked: OffsetDateTime): OffsetDateTime {
+            val (upcoming, past) = uploadDates.partition { it.isAfter(lastChecked) }
+
+            val interval = if (past.size < 2) {
+                MAX_CHECK_INTERVAL
+            } else {
+                val meanInterval = Duration.between(past.last(), lastChecked)
+                    .dividedBy(past.size - 1L)
+                Duration.ofMillis((meanInterval.toMillis() * -ln(1 - DUE_PROBABILITY)).toLong())
+                    .coerceIn(MIN_CHECK_INTERVAL, MAX_CHECK_INTERVAL)
+            }
+
+            val nextCheck = lastChecked.plus(interval)
+            // streams scheduled for the future (e.g. premieres) are checked once they are out
+            val nextUpload = upcoming.lastOrNull()
+            return if (nextUpload != null && nextUpload.isBefore(nextCheck)) {
+                maxOf(nextUpload, lastChecked.plus(MIN_CHECK_INTERVAL))
+            } else {
+                nextCheck
+            }
+        }
+
+        /**
+         * Hash the fields of the items which are saved in the feed, to know if a feed changed
+         * since it was saved. The view count and the approximated upload dates (e.g. "3 days
+         * ago") are left out, because they change on almost every load even if nothing was
+         * uploaded.
+         */
+        fun hashItems(items: List<StreamInfoItem>): Long {
+            val digest = MessageDigest.getInstance("SHA-1")
+            for (item in items) {
+                val uploadDate = item.uploadDate?.takeUnless { it.isApproximation }
+                val fields = listOf(
+                    item.serviceId, item.url, item.name, item.streamType, item.duration,
+                    item.uploaderName, item.uploaderUrl, item.thumbnailUrl,
+                    uploadDate?.offsetDateTime()
+                )
+                digest.update(fields.joinToString("\u0000", postfix = "\u0001").toByteArray())
+            }
+            return ByteBuffer.wrap(digest.digest()).long
+        }
     }
 
     fun groups() = feedGroupTable.getAll()
@@ -52,12 +124,15 @@ class FeedDatabaseManager(context: Context) {
         )
     }
 
-    fun outdatedSubscriptions(outdatedThreshold: OffsetDateTime) = feedTable.getAllOutdated(outdatedThreshold)
+    fun outdatedSubscriptions(outdatedThreshold: OffsetDateTime) =
+        feedTable.getAllOutdated(outdatedThreshold, OffsetDateTime.now(ZoneOffset.UTC))
 
     fun outdatedSubscriptionsWithNotificationMode(
         outdatedThreshold: OffsetDateTime,
         @NotificationMode notificationMode: Int
-    ) = feedTable.getOutdatedWithNotificationMode(outdatedThreshold, notificationMode)
+    ) = feedTable.getOutdatedWithNotificationMode(
+        outdatedThreshold, OffsetDateTime.now(ZoneOffset.UTC), notificationMode
+    )
 
     fun notLoadedCount(groupId: Long = FeedGroupEntity.GROUP_ALL_ID): Flowable<Long> {
         return when (groupId) {
@@ -69,20 +144,85 @@ class FeedDatabaseManager(context: Context) {
     fun outdatedSubscriptionsForGroup(
         groupId: Long = FeedGroupEntity.GROUP_ALL_ID,
         outdatedThreshold: OffsetDateTime
-    ) = feedTable.getAllOutdatedForGroup(groupId, outdatedThreshold)
+    ) = feedTable.getAllOutdatedForGroup(
+        groupId, outdatedThreshold, OffsetDateTime.now(ZoneOffset.UTC)
+    )
 
-    fun markAsOutdated(subscriptionId: Long) = feedTable
-        .setLastUpdatedForSubscription(FeedLastUpdatedEntity(subscriptionId, null))
+    fun markAsOutdated(subscriptionId: Long) {
+        // the items of a failed load are incomplete, save them all the next time
+        feedTable.deleteFingerprint(subscriptionId)
+        feedTable.setLastUpdatedForSubscription(FeedLastUpdatedEntity(subscriptionId, null))
+    }
+
+    /**
+     * Mark the feed of a subscription as up to date without changing its items, used when
+     * the feed did not change since the last time it was loaded.
+     */
+    fun markAsUpdated(subscriptionId: Long, conditionalRequest: ConditionalRequest? = null) {
+        if (conditionalRequest != null) {
+            val fingerprint = feedTable.getFingerprint(subscriptionId)
+            val updated = fingerprint?.copy(
+                etag = conditionalRequest.etag, lastModified = conditionalRequest.lastModified
+            )
+            if (updated != null && updated != fingerprint) {
+                feedTable.setFingerprint(updated)
+            }
+        }
 
-    fun doesStreamExist(stream: StreamInfoItem): Boolean {
-        return streamTable.exists(stream.serviceId, stream.url)
+        setLastUpdated(subscriptionId)
+    }
+
+    /**
+     * Set the subscription as updated now, and when to check it again according to the upload
+     * dates of its streams, see [nextCheck].
+     */
+    private fun setLastUpdated(subscriptionId: Long) {
+        val now = OffsetDateTime.now(ZoneOffset.UTC)
+        val uploadDates = feedTable.getLatestUploadDates(subscriptionId, UPLOAD_HISTORY_SIZE)
+
+        feedTable.setLastUpdatedForSubscription(
+            FeedLastUpdatedEntity(subscriptionId, now, nextCheck(uploadDates, now))
+        )
     }
 
+    /**
+     * @return the validators received the last time the feed of the subscription was loaded
+     */
+    fun conditionalRequest(subscriptionId: Long): ConditionalRequest {
+        val fingerprint = feedTable.getFingerprint(subscriptionId)
+        return ConditionalRequest(fingerprint?.etag, fingerprint?.lastModified)
+    }
+
+    /**
+     * @return the given streams which are not in the database yet, looked up with one query per
+     * service
+     */
+    fun filterNonExistentStreams(streams: List<StreamInfoItem>): List<StreamInfoItem> {
+        val existingUrls = streams.groupBy { it.serviceId }.mapValues { (serviceId, items) ->
+            streamTable.getExistingUrls(serviceId, items.map { it.url })
+        }
+        return streams.filter { it.url !in existingUrls.getValue(it.serviceId) }
+    }
+
+    /**
+     * Save the items of the feed of a subscription. Nothing but the update time is written if
+     * the items are the same as the last time, see [hashItems].
+     *
+     * @param conditionalRequest the validators received along with the items, if any
+     * @return `false` if the items did not change, `true` if they were saved
+     */
     fun upsertAll(
         subscriptionId: Long,
         items: List<StreamInfoItem>,
-        oldestAllowedDate: OffsetDateTime = FEED_OLDEST_ALLOWED_DATE
-    ) {
+        oldestAllowedDate: OffsetDateTime = FEED_OLDEST_ALLOWED_DATE,
+        conditionalRequest: ConditionalRequest? = null
+    ): Boolean {
+        val itemsHash = hashItems(items)
+        if (feedTable.getFingerprint(subscriptionId)?.itemsHash == itemsHash) {
+            markAsUpdated(subscriptionId, conditionalRequest)
+            return false
+        }
+
         val itemsToInsert = ArrayList<StreamInfoItem>()
         loop@ for (streamItem in items) {
             val uploadDate = streamItem.uploadDate
@@ -102,11 +242,17 @@ class FeedDatabaseManager(context: Context) {
             val feedEntities = streamIds.map { FeedEntity(it, subscriptionId) }
 
             feedTable.insertAll(feedEntities)
+            feedTable.updateViewOfSubscription(subscriptionId)
         }
 
-        feedTable.setLastUpdatedForSubscription(
-            FeedLastUpdatedEntity(subscriptionId, OffsetDateTime.now(ZoneOffset.UTC))
+        feedTable.setFingerprint(
+            FeedFingerprintEntity(
+                subscriptionId, conditionalRequest?.etag, conditionalRequest?.lastModified,
+                itemsHash
+            )
         )
+        setLastUpdated(subscriptionId)
+        return true
     }
 
     fun removeOrphansOrOlderStreams(oldestAllowedDate: OffsetDateTime = FEED_OLDEST_ALLOWED_DATE) {
@@ -116,6 +262,7 @@ class FeedDatabaseManager(context: Context) {
 
     fun clear() {
         feedTable.deleteAll()
+        feedTable.deleteAllFingerprints()
         val deletedOrphans = streamTable.deleteOrphans()
         if (DEBUG) {
             Log.d(
@@ -38,6 +38,8 @@ class NotificationHelper(val context: Context) {
      * Opening the notification will open the corresponding channel page.
      */
     fun displayNewStreamsNotification(data: FeedUpdateInfo) {
+        // there are no new streams in a feed which did not change
+        val listInfo = data.listInfo ?: return
         val newStreams: List<StreamInfoItem> = data.newStreams
         val summary = context.resources.getQuantityString(
             R.plurals.new_streams, newStreams.size, newStreams.size
@@ -48,7 +50,7 @@ class NotificationHelper(val context: Context) {
         )
             .setContentTitle(Localization.concatenateStrings(data.name, summary))
             .setContentText(
-                data.listInfo.relatedItems.joinToString(
+                listInfo.relatedItems.joinToString(
                     context.getString(R.string.enumeration_comma)
                 ) { x -> x.name }
             )
@@ -74,7 +76,7 @@ class NotificationHelper(val context: Context) {
                 context,
                 data.pseudoId,
                 NavigationHelper
-                    .getChannelIntent(context, data.listInfo.serviceId, data.listInfo.url)
+                    .getChannelIntent(context, listInfo.serviceId, listInfo.url)
                     .setFlags(Intent.FLAG_ACTIVITY_NEW_TASK),
                 if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M)
                     PendingIntent.FLAG_IMMUTABLE
@@ -0,0 +1,58 @@
+package org.schabi.newpipe.local.feed.service
+
+import java.util.concurrent.TimeUnit
+
+/**
+ * Tunes how many items are written to the database in a single transaction, so that writing them
+ * takes about [targetNanos]. Bigger transactions save the cost of committing, but block the other
+ * queries, like the ones of the feed being shown, for longer.
+ *
+ * The time taken to write an item is averaged over the batches written (an exponential moving
+ * average), so that a single slow batch does not shrink the next ones too much.
+ */
+class BatchSizeTuner(
+    initialSize: Int = 20,
+    private val minSize: Int = 5,
+    private val maxSize: Int = 200,
+    private val targetNanos: Long = TimeUnit.MILLISECONDS.toNanos(100)
+) {
+    /**
+     * How many items to write in the next transaction.
+     */
+    var size = initialSize
+        private set
+
+    private var nanosPerItem = -1.0
+
+    /**
+     * Update [size] with how long writing a batch took.
+     *
+     * @param itemCount how many items were written
+     * @param elapsedNanos how long writing them took
+     */
+    fun onBatchWritten(itemCount: Int, elapsedNanos: Long) {
+        if (itemCount <= 0) {
+            return
+        }
+
+        val latestNanosPerItem = elapsedNanos.toDouble() / itemCount
+        nanosPerItem = if (nanosPerItem < 0) {
+            latestNanosPerItem
+        } else {
+            SMOOTHING * latestNanosPerItem + (1 - SMOOTHING) * nanosPerItem
+        }
+
+        size = if (nanosPerItem <= 0) {
+            maxSize
+        } else {
+            (targetNanos / nanosPerItem).toInt().coerceIn(minSize, maxSize)
+        }
+    }
+
+    companion object {
+        /**
+         * The weight of the latest batch in the average time per item.
+         */
+        private const val SMOOTHING = 0.3
+    }
+}
@@ -5,6 +5,7 @@ import androidx.preference.PreferenceManager
 import io.reactivex.rxjava3.android.schedulers.AndroidSchedulers
 import io.reactivex.rxjava3.core.Completable
 import io.reactivex.rxjava3.core.Flowable
+import io.reactivex.rxjava3.core.Maybe
 import io.reactivex.rxjava3.core.Notification
 import io.reactivex.rxjava3.core.Single
 import io.reactivex.rxjava3.functions.Consumer
@@ -13,11 +14,13 @@ import io.reactivex.rxjava3.schedulers.Schedulers
 import org.schabi.newpipe.R
 import org.schabi.newpipe.database.feed.model.FeedGroupEntity
 import org.schabi.newpipe.database.subscription.NotificationMode
-import org.schabi.newpipe.extractor.ListInfo
+import org.schabi.newpipe.database.subscription.SubscriptionEntity
 import org.schabi.newpipe.extractor.stream.StreamInfoItem
 import org.schabi.newpipe.local.feed.FeedDatabaseManager
 import org.schabi.newpipe.local.subscription.SubscriptionManager
+import org.schabi.newpipe.util.ConditionalRequest
 import org.schabi.newpipe.util.ExtractorHelper
+import org.schabi.newpipe.util.FetchEngine
 import java.time.OffsetDateTime
 import java.time.ZoneOffset
 import java.util.concurrent.atomic.AtomicBoolean
@@ -48,6 +51,8 @@ class FeedLoadManager(private val context: Context) {
      * @param ignoreOutdatedThreshold When `false`, only subscriptions which have not been updated
      * within the `feed_update_threshold` are checked for updates. This threshold can be set by
      * the user in the app settings. When `true`, all subscriptions are checked for new streams.
+     * In both cases, a subscription is only checked once it is due according to how often it
+     * uploads, see [FeedDatabaseManager.nextCheck].
      */
     fun startLoading(
         groupId: Long = FeedGroupEntity.GROUP_ALL_ID,
@@ -71,6 +76,8 @@ class FeedLoadManager(private val context: Context) {
             OffsetDateTime.now(ZoneOffset.UTC).minusSeconds(thresholdOutdatedSeconds.toLong())
         }
 
+        val databaseConsumer = DatabaseConsumer()
+
         /**
          * subscriptions which have not been updated within the feed updated threshold
          */
@@ -97,66 +104,66 @@ class FeedLoadManager(private val context: Context) {
             .observeOn(Schedulers.io())
             .flatMap { Flowable.fromIterable(it) }
             .takeWhile { !cancelSignal.get() }
-            .parallel(PARALLEL_EXTRACTIONS, PARALLEL_EXTRACTIONS * 2)
-            .runOn(Schedulers.io(), PARALLEL_EXTRACTIONS * 2)
-            .filter { !cancelSignal.get() }
-            .map { subscriptionEntity ->
-                var error: Throwable? = null
-                try {
-                    // check for and load new streams
-                    // either by using the dedicated feed method or by getting the channel info
-                    val listInfo = if (useFeedExtractor) {
-                        ExtractorHelper
-                            .getFeedInfoFallbackToChannelInfo(
-                                subscriptionEntity.serviceId,
-                                subscriptionEntity.url
-                            )
-                            .onErrorReturn {
-                                error = it // store error, otherwise wrapped into RuntimeException
-                                throw it
+            .flatMapMaybe { subscriptionEntity ->
+                FetchEngine.getInstance()
+                    .fetch(
+                        subscriptionEntity.serviceId,
+                        subscriptionEntity.url,
+                        Maybe.defer {
+                            // the subscriptions still waiting for their turn are skipped
+                            if (cancelSignal.get()) {
+                                Maybe.empty()
+                            } else {
+                                loadFeed(subscriptionEntity, useFeedExtractor).toMaybe()
                             }
-                            .blockingGet()
-                    } else {
-                        ExtractorHelper
-                            .getChannelInfo(
-                                subscriptionEntity.serviceId,
-                                subscriptionEntity.url,
-                                true
-                            )
-                            .onErrorReturn {
-                                error = it // store error, otherwise wrapped into RuntimeException
-                                throw it
-                            }
-                            .blockingGet()
-                    } as ListInfo<StreamInfoItem>
-
-                    return@map Notification.createOnNext(
-                        FeedUpdateInfo(
-                            subscriptionEntity,
-                            listInfo
-                        )
+                        }
                     )
-                } catch (e: Throwable) {
-                    if (error == null) {
-                        // do this to prevent blockingGet() from wrapping into RuntimeException
-                        error = e
+                    .map { Notification.createOnNext(it) }
+                    .onErrorReturn { error ->
+                        if (error is ConditionalRequest.NotModifiedException) {
+                            Notification.createOnNext(FeedUpdateInfo(subscriptionEntity, null))
+                        } else {
+                            val request = "${subscriptionEntity.serviceId}:${subscriptionEntity.url}"
+                            val wrapper = FeedLoadService.RequestException(
+                                subscriptionEntity.uid, request, error
+                            )
+                            Notification.createOnError(wrapper)
+                        }
                     }
-
-                    val request = "${subscriptionEntity.serviceId}:${subscriptionEntity.url}"
-                    val wrapper =
-                        FeedLoadService.RequestException(subscriptionEntity.uid, request, error!!)
-                    return@map Notification.createOnError<FeedUpdateInfo>(wrapper)
-                }
             }
-            .sequential()
             .observeOn(AndroidSchedulers.mainThread())
             .doOnNext(NotificationConsumer())
             .observeOn(Schedulers.io())
-            .buffer(BUFFER_COUNT_BEFORE_INSERT)
-            .doOnNext(DatabaseConsumer())
+            .doOnNext(databaseConsumer)
+            .doOnComplete { databaseConsumer.flush() }
             .subscribeOn(Schedulers.io())
             .toList()
-            .flatMap { x -> postProcessFeed().toSingleDefault(x.flatten()) }
+            .flatMap { x -> postProcessFeed().toSingleDefault(x) }
+    }
+
+    /**
+     * Check for and load the new streams of a subscription, either by using the dedicated feed
+     * method or by getting the channel info. The feeds are single pages which can be requested
+     * conditionally, i.e. only downloaded if they changed since the last time.
+     */
+    private fun loadFeed(
+        subscriptionEntity: SubscriptionEntity,
+        useFeedExtractor: Boolean
+    ): Single<FeedUpdateInfo> {
+        if (useFeedExtractor) {
+            val conditionalRequest = feedDatabaseManager.conditionalRequest(subscriptionEntity.uid)
+            return ExtractorHelper
+                .getFeedInfoFallbackToChannelInfo(
+                    subscriptionEntity.serviceId,
+                    subscriptionEntity.url,
+                    conditionalRequest
+                )
+                .map { FeedUpdateInfo(subscriptionEntity, it, conditionalRequest) }
+        }
+
+        return ExtractorHelper
+            .getChannelInfo(subscriptionEntity.serviceId, subscriptionEntity.url, true)
+            .map { FeedUpdateInfo(subscriptionEntity, it) }
     }
 
     fun cancel() {
@@ -196,21 +203,49 @@ class FeedLoadManager(private val context: Context) {
         }
     }
 
-    private inner class DatabaseConsumer : Consumer<List<Notification<FeedUpdateInfo>>> {
+    /**
+     * Writes the results to the database in batches, each in a single transaction. The size of the
+     * batches is tuned with [BatchSizeTuner] to keep the transactions short.
+     */
+    private inner class DatabaseConsumer : Consumer<Notification<FeedUpdateInfo>> {
+        private val batch = ArrayList<Notification<FeedUpdateInfo>>()
+        private val batchSize = BatchSizeTuner()
+
+        override fun accept(notification: Notification<FeedUpdateInfo>) {
+            batch.add(notification)
+            if (batch.size >= batchSize.size) {
+                flush()
+            }
+        }
+
+        /**
+         * Write the results not written yet.
+         */
+        fun flush() {
+            if (batch.isEmpty()) {
+                return
+            }
 
-        override fun accept(list: List<Notification<FeedUpdateInfo>>) {
+            val start = System.nanoTime()
             feedDatabaseManager.database().runInTransaction {
-                for (notification in list) {
+                for (notification in batch) {
                     when {
+                        notification.isOnNext && notification.value!!.listInfo == null -> {
+                            // the feed did not change since the last time it was loaded
+                            notification.value!!.newStreams = emptyList()
+                            feedDatabaseManager.markAsUpdated(notification.value!!.uid)
+                        }
                         notification.isOnNext -> {
                             val subscriptionId = notification.value!!.uid
-                            val info = notification.value!!.listInfo
+                            val info = notification.value!!.listInfo!!
 
-                            notification.value!!.newStreams = filterNewStreams(
-                                notification.value!!.listInfo.relatedItems
-                            )
+                            notification.value!!.newStreams = filterNewStreams(info.relatedItems)
 
-                            feedDatabaseManager.upsertAll(subscriptionId, info.relatedItems)
+                            feedDatabaseManager.upsertAll(
+                                subscriptionId,
+                                info.relatedItems,
+                                conditionalRequest = notification.value!!.conditionalRequest
+                            )
                             subscriptionManager.updateFromInfo(subscriptionId, info)
 
                             if (info.errors.isNotEmpty()) {
@@ -234,19 +269,22 @@ class FeedLoadManager(private val context: Context) {
                     }
                 }
             }
+            batchSize.onBatchWritten(batch.size, System.nanoTime() - start)
+            batch.clear()
         }
 
         private fun filterNewStreams(list: List<StreamInfoItem>): List<StreamInfoItem> {
-            return list.filter {
-                !feedDatabaseManager.doesStreamExist(it) &&
+            return feedDatabaseManager.filterNonExistentStreams(
+                list.filter {
                     it.uploadDate != null &&
-                    // Streams older than this date are automatically removed from the feed.
-                    // Therefore, streams which are not in the database,
-                    // but older than this date, are considered old.
-                    it.uploadDate!!.offsetDateTime().isAfter(
-                        FeedDatabaseManager.FEED_OLDEST_ALLOWED_DATE
-                    )
-            }
+                        // Streams older than this date are automatically removed from the feed.
+                        // Therefore, streams which are not in the database,
+                        // but older than this date, are considered old.
+                        it.uploadDate!!.offsetDateTime().isAfter(
+                            FeedDatabaseManager.FEED_OLDEST_ALLOWED_DATE
+                        )
+                }
+            )
         }
     }
 
@@ -256,15 +294,5 @@ class FeedLoadManager(private val context: Context) {
          * Constant used to check for updates of subscriptions with [NotificationMode.ENABLED].
          */
         const val GROUP_NOTIFICATION_ENABLED = -2L
-
-        /**
-         * How many extractions will be running in parallel.
-         */
-        private const val PARALLEL_EXTRACTIONS = 6
-
-        /**
-         * Number of items to buffer to mass-insert in the database.
-         */
-        private const val BUFFER_COUNT_BEFORE_INSERT = 20
     }
 }
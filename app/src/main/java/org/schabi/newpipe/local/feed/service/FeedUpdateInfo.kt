@@ -4,6 +4,7 @@ import org.schabi.newpipe.database.subscription.NotificationMode
 import org.schabi.newpipe.database.subscription.SubscriptionEntity
 import org.schabi.newpipe.extractor.ListInfo
 import org.schabi.newpipe.extractor.stream.StreamInfoItem
+import org.schabi.newpipe.util.ConditionalRequest
 
 data class FeedUpdateInfo(
     val uid: Long,
@@ -11,24 +12,33 @@ data class FeedUpdateInfo(
     val notificationMode: Int,
     val name: String,
     val avatarUrl: String,
-    val listInfo: ListInfo<StreamInfoItem>,
+    /**
+     * The loaded feed, or `null` if it did not change since the last time it was loaded.
+     */
+    val listInfo: ListInfo<StreamInfoItem>?,
+    /**
+     * The validators received along with the feed, if it was requested conditionally.
+     */
+    val conditionalRequest: ConditionalRequest? = null,
 ) {
     constructor(
         subscription: SubscriptionEntity,
-        listInfo: ListInfo<StreamInfoItem>,
+        listInfo: ListInfo<StreamInfoItem>?,
+        conditionalRequest: ConditionalRequest? = null,
     ) : this(
         uid = subscription.uid,
         notificationMode = subscription.notificationMode,
         name = subscription.name,
         avatarUrl = subscription.avatarUrl,
         listInfo = listInfo,
+        conditionalRequest = conditionalRequest,
     )
 
     /**
      * Integer id, can be used as notification id, etc.
      */
     val pseudoId: Int
-        get() = listInfo.url.hashCode()
+        get() = listInfo?.url.hashCode()
 
     lateinit var newStreams: List<StreamInfoItem>
 }
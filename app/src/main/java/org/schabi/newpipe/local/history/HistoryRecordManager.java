@@ -28,6 +28,7 @@ import org.schabi.newpipe.NewPipeDatabase;
 import org.schabi.newpipe.R;
 import org.schabi.newpipe.database.AppDatabase;
 import org.schabi.newpipe.database.LocalItem;
+import org.schabi.newpipe.database.feed.dao.FeedDAO;
 import org.schabi.newpipe.database.history.dao.SearchHistoryDAO;
 import org.schabi.newpipe.database.history.dao.StreamHistoryDAO;
 import org.schabi.newpipe.database.history.model.SearchHistoryEntry;
@@ -64,6 +65,7 @@ public class HistoryRecordManager {
     private final StreamHistoryDAO streamHistoryTable;
     private final SearchHistoryDAO searchHistoryTable;
     private final StreamStateDAO streamStateTable;
+    private final FeedDAO feedTable;
     private final SharedPreferences sharedPreferences;
     private final String searchHistoryKey;
     private final String streamHistoryKey;
@@ -74,6 +76,7 @@ public class HistoryRecordManager {
         streamHistoryTable = database.streamHistoryDAO();
         searchHistoryTable = database.searchHistoryDAO();
         streamStateTable = database.streamStateDAO();
+        feedTable = database.feedDAO();
         sharedPreferences = PreferenceManager.getDefaultSharedPreferences(context);
         searchHistoryKey = context.getString(R.string.enable_search_history_key);
         streamHistoryKey = context.getString(R.string.enable_watch_history_key);
@@ -125,12 +128,18 @@ public class HistoryRecordManager {
 
             // Add a history entry
             final StreamHistoryEntity latestEntry = streamHistoryTable.getLatestEntry(streamId);
+            final long historyId;
             if (latestEntry == null) {
                 // never actually viewed: add history entry but with 0 views
-                return streamHistoryTable.insert(new StreamHistoryEntity(streamId, currentTime, 0));
+                historyId = streamHistoryTable.insert(
+                        new StreamHistoryEntity(streamId, currentTime, 0));
             } else {
-                return 0L;
+                historyId = 0L;
             }
+
+            // Hide the stream from the feed
+            feedTable.updateViewOfStream(streamId);
+            return historyId;
         })).subscribeOn(Schedulers.io());
     }
 
@@ -144,33 +153,45 @@ public class HistoryRecordManager {
             final long streamId = streamTable.upsert(new StreamEntity(info));
             final StreamHistoryEntity latestEntry = streamHistoryTable.getLatestEntry(streamId);
 
+            final long historyId;
             if (latestEntry != null) {
                 streamHistoryTable.delete(latestEntry);
                 latestEntry.setAccessDate(currentTime);
                 latestEntry.setRepeatCount(latestEntry.getRepeatCount() + 1);
-                return streamHistoryTable.insert(latestEntry);
+                historyId = streamHistoryTable.insert(latestEntry);
             } else {
                 // just viewed for the first time: set 1 view
-                return streamHistoryTable.insert(new StreamHistoryEntity(streamId, currentTime, 1));
+                historyId = streamHistoryTable.insert(
+                        new StreamHistoryEntity(streamId, currentTime, 1));
             }
+
+            feedTable.updateViewOfStream(streamId);
+            return historyId;
         })).subscribeOn(Schedulers.io());
     }
 
     public Completable deleteStreamHistoryAndState(final long streamId) {
-        return Completable.fromAction(() -> {
+        return Completable.fromAction(() -> database.runInTransaction(() -> {
             streamStateTable.deleteState(streamId);
             streamHistoryTable.deleteStreamHistory(streamId);
-        }).subscribeOn(Schedulers.io());
+            feedTable.updateViewOfStream(streamId);
+        })).subscribeOn(Schedulers.io());
     }
 
     public Single<Integer> deleteWholeStreamHistory() {
-        return Single.fromCallable(streamHistoryTable::deleteAll)
-                .subscribeOn(Schedulers.io());
+        return Single.fromCallable(() -> database.runInTransaction(() -> {
+            final int deleted = streamHistoryTable.deleteAll();
+            feedTable.unmarkViewAsPlayed();
+            return deleted;
+        })).subscribeOn(Schedulers.io());
     }
 
     public Single<Integer> deleteCompleteStreamStateHistory() {
-        return Single.fromCallable(streamStateTable::deleteAll)
-                .subscribeOn(Schedulers.io());
+        return Single.fromCallable(() -> database.runInTransaction(() -> {
+            final int deleted = streamStateTable.deleteAll();
+            feedTable.unmarkViewAsPlayed();
+            return deleted;
+        })).subscribeOn(Schedulers.io());
     }
 
     public Flowable<List<StreamHistoryEntry>> getStreamHistorySortedById() {
@@ -259,6 +280,7 @@ public class HistoryRecordManager {
             final StreamStateEntity state = new StreamStateEntity(streamId, progressMillis);
             if (state.isValid(info.getDuration())) {
                 streamStateTable.upsert(state);
+                feedTable.updateViewOfStream(streamId);
             }
         })).subscribeOn(Schedulers.io());
     }
@@ -44,6 +44,7 @@ import org.schabi.newpipe.streams.io.SharpInputStream;
 import org.schabi.newpipe.streams.io.StoredFileHelper;
 import org.schabi.newpipe.util.Constants;
 import org.schabi.newpipe.util.ExtractorHelper;
+import org.schabi.newpipe.util.FetchEngine;
 
 import java.io.IOException;
 import java.io.InputStream;
@@ -72,11 +73,6 @@ public class SubscriptionsImportService extends BaseImportExportService {
     public static final String IMPORT_COMPLETE_ACTION = App.PACKAGE_NAME + ".local.subscription"
             + ".services.SubscriptionsImportService.IMPORT_COMPLETE";
 
-    /**
-     * How many extractions running in parallel.
-     */
-    public static final int PARALLEL_EXTRACTIONS = 8;
-
     /**
      * Number of items to buffer to mass-insert in the subscriptions table,
      * this leads to a better performance as we can then use db transactions.
@@ -197,19 +193,12 @@ public class SubscriptionsImportService extends BaseImportExportService {
                 eventListener.onSizeReceived(subscriptionItems.size()))
                 .flatMap(Flowable::fromIterable)
 
-                .parallel(PARALLEL_EXTRACTIONS)
-                .runOn(Schedulers.io())
-                .map((Function<SubscriptionItem, Notification<ChannelInfo>>) subscriptionItem -> {
-                    try {
-                        return Notification.createOnNext(ExtractorHelper
-                                .getChannelInfo(subscriptionItem.getServiceId(),
-                                        subscriptionItem.getUrl(), true)
-                                .blockingGet());
-                    } catch (final Throwable e) {
-                        return Notification.createOnError(e);
-                    }
-                })
-                .sequential()
+                .flatMapSingle(subscriptionItem -> FetchEngine.getInstance()
+                        .fetch(subscriptionItem.getServiceId(), subscriptionItem.getUrl(),
+                                ExtractorHelper.getChannelInfo(subscriptionItem.getServiceId(),
+                                        subscriptionItem.getUrl(), true))
+                        .map(Notification::createOnNext)
+                        .onErrorReturn(Notification::createOnError))
 
                 .observeOn(Schedulers.io())
                 .doOnNext(getNotificationsConsumer())
@@ -5,6 +5,7 @@ import org.schabi.newpipe.streams.io.SharpStream;
 import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
 
 /**
  * @author kapodamy
@@ -24,10 +25,34 @@ public class DataReader {
     private int viewSize;
 
     public DataReader(final SharpStream stream) {
+        this(stream, BUFFER_SIZE);
+    }
+
+    DataReader(final SharpStream stream, final int bufferSize) {
         this.stream = stream;
+        this.readBuffer = new byte[bufferSize];
         this.readOffset = this.readBuffer.length;
     }
 
+    /**
+     * Creates a reader for the given stream, which must be at its start. If the stream is backed
+     * by a file that can be mapped into memory a {@link MappedDataReader} is returned, otherwise
+     * a buffered reader.
+     *
+     * @param stream the stream to read
+     * @return the reader
+     */
+    public static DataReader open(final SharpStream stream) {
+        ByteBuffer map = null;
+        try {
+            map = stream.map(0, stream.length());
+        } catch (final IOException | UnsupportedOperationException e) {
+            // not backed by a file, or can not be mapped
+        }
+
+        return map == null ? new DataReader(stream) : new MappedDataReader(stream, map);
+    }
+
     public long position() {
         return position;
     }
@@ -132,6 +157,40 @@ public class DataReader {
         return total;
     }
 
+    /**
+     * Moves bytes from this reader to the given stream. The bytes already buffered are written
+     * first, the rest is moved with {@link SharpStream#transferTo(SharpStream, long)}, which does
+     * not copy the data into the java heap if both streams are backed by a file.
+     *
+     * @param target the stream where the bytes are written
+     * @param count  the amount of bytes to move
+     * @return the amount of bytes moved
+     * @throws IOException if an I/O error occurs
+     */
+    public long transferTo(final SharpStream target, final long count) throws IOException {
+        if (readCount < 0) {
+            return 0;
+        }
+
+        final int buffered = (int) Math.min(readCount, count);
+        if (buffered > 0) {
+            target.write(readBuffer, readOffset, buffered);
+            readOffset += buffered;
+            readCount -= buffered;
+        }
+        if (readCount == 0) {
+            readOffset = readBuffer.length; // refill on the next read
+        }
+
+        long total = buffered;
+        if (total < count) {
+            total += stream.transferTo(target, count - total);
+        }
+
+        position += total;
+        return total;
+    }
+
     public boolean available() {
         return readCount > 0 || stream.available() > 0;
     }
@@ -229,9 +288,10 @@ public class DataReader {
     }
 
     private final short[] primitive = new short[LONG_SIZE];
+    private final byte[] primitiveBuffer = new byte[LONG_SIZE];
 
     private void primitiveRead(final int amount) throws IOException {
-        final byte[] buffer = new byte[amount];
+        final byte[] buffer = primitiveBuffer;
         final int read = read(buffer, 0, amount);
 
         if (read != amount) {
@@ -245,7 +305,7 @@ public class DataReader {
         }
     }
 
-    private final byte[] readBuffer = new byte[BUFFER_SIZE];
+    private final byte[] readBuffer;
     private int readOffset;
     private int readCount;
 
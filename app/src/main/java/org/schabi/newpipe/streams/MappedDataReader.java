@@ -0,0 +1,145 @@
+package org.schabi.newpipe.streams;
+
+import org.schabi.newpipe.streams.io.SharpStream;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+
+/**
+ * {@link DataReader} over a file mapped into memory. Primitives are read straight from the
+ * mapping and skipping is just moving the position, nothing is copied into a java buffer. The
+ * sample data is moved with {@link SharpStream#transferTo(SharpStream, long)} or read from the
+ * mapping by the views.
+ * <p>
+ * The stream is not read, but its position follows (with some delay) the position of this reader
+ * because {@link us.shandian.giga.io.CircularFileWriter} uses it to know which part of the file
+ * can be overwritten. The delayed position is always behind, so is safe.
+ */
+public class MappedDataReader extends DataReader {
+    // how often the position of the stream is updated
+    private static final int SYNC_INTERVAL = 128 * 1024; // 128 KiB
+
+    private final SharpStream stream;
+    private final ByteBuffer map;
+    private long synced = 0;
+
+    MappedDataReader(final SharpStream stream, final ByteBuffer map) {
+        super(stream, 0);
+        this.stream = stream;
+        this.map = map;
+    }
+
+    @Override
+    public long position() {
+        return map.position();
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (!map.hasRemaining()) {
+            return -1;
+        }
+
+        final int value = map.get() & 0xFF;
+        moved();
+        return value;
+    }
+
+    @Override
+    public long skipBytes(final long byteAmount) throws IOException {
+        final int amount = (int) Math.min(byteAmount, map.remaining());
+        map.position(map.position() + amount);
+        moved();
+        return amount;
+    }
+
+    @Override
+    public int readInt() throws IOException {
+        try {
+            final int value = map.getInt();
+            moved();
+            return value;
+        } catch (final BufferUnderflowException e) {
+            throw truncated(INTEGER_SIZE);
+        }
+    }
+
+    @Override
+    public short readShort() throws IOException {
+        try {
+            final short value = map.getShort();
+            moved();
+            return value;
+        } catch (final BufferUnderflowException e) {
+            throw truncated(SHORT_SIZE);
+        }
+    }
+
+    @Override
+    public long readLong() throws IOException {
+        try {
+            final long value = map.getLong();
+            moved();
+            return value;
+        } catch (final BufferUnderflowException e) {
+            throw truncated(LONG_SIZE);
+        }
+    }
+
+    @Override
+    public int read(final byte[] buffer, final int off, final int c) throws IOException {
+        if (!map.hasRemaining()) {
+            return -1;
+        }
+
+        final int count = Math.min(c, map.remaining());
+        map.get(buffer, off, count);
+        moved();
+        return count;
+    }
+
+    @Override
+    public long transferTo(final SharpStream target, final long count) throws IOException {
+        // the stream must be exactly here, the data is moved from it
+        sync();
+
+        final long transferred = stream.transferTo(target, Math.min(count, map.remaining()));
+        map.position(map.position() + (int) transferred);
+        synced = map.position();
+
+        return transferred;
+    }
+
+    @Override
+    public boolean available() {
+        return map.hasRemaining();
+    }
+
+    @Override
+    public void rewind() throws IOException {
+        stream.rewind();
+        map.rewind();
+        synced = 0;
+    }
+
+    private void moved() throws IOException {
+        // a stream at the start means "nothing read", update it as soon as possible
+        if (map.position() - synced >= SYNC_INTERVAL || synced == 0 || !map.hasRemaining()) {
+            sync();
+        }
+    }
+
+    private void sync() throws IOException {
+        final long amount = map.position() - synced;
+        if (amount > 0) {
+            synced += stream.skip(amount);
+        }
+    }
+
+    private EOFException truncated(final int amount) {
+        return new EOFException("Truncated stream, missing "
+                + (amount - map.remaining()) + " bytes");
+    }
+}
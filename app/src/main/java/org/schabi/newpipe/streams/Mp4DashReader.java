@@ -56,6 +56,7 @@ public class Mp4DashReader {
 
     private Box box;
     private Moof moof;
+    private byte[] trunEntries = new byte[0];
 
     private boolean chunkZero = false;
 
@@ -67,7 +68,7 @@ public class Mp4DashReader {
     }
 
     public Mp4DashReader(final SharpStream source) {
-        this.stream = new DataReader(source);
+        this.stream = DataReader.open(source);
     }
 
     public void parse() throws IOException, NoSuchElementException {
@@ -142,7 +143,7 @@ public class Mp4DashReader {
         backupBox = box;
     }
 
-    Mp4Track selectTrack(final int index) {
+    public Mp4Track selectTrack(final int index) {
         selectedTrack = index;
         return tracks[index];
     }
@@ -242,6 +243,7 @@ public class Mp4DashReader {
                     moof = null;
 
                     stream.skipBytes(chunk.moof.traf.trun.dataOffset);
+                    chunk.offset = stream.position();
                     return chunk;
                 default:
             }
@@ -250,6 +252,27 @@ public class Mp4DashReader {
         return null;
     }
 
+    /**
+     * Moves sample data of the selected track, the data is not copied into the java heap if both
+     * streams are backed by a file. The source is only read forward, the offset must not be
+     * before the data moved previously.
+     *
+     * @param offset position of the data in the source, see {@link Mp4DashChunk#offset}
+     * @param size   amount of bytes to move
+     * @param target the stream where the data is written
+     * @throws IOException if an I/O error occurs
+     */
+    void transferSamples(final long offset, final long size, final SharpStream target)
+            throws IOException {
+        final long skip = offset - stream.position();
+        if (skip < 0) {
+            throw new IOException("the sample data at " + offset + " was already read");
+        }
+        if (stream.skipBytes(skip) != skip || stream.transferTo(target, size) != size) {
+            throw new EOFException("EOF reached while reading a sample");
+        }
+    }
+
     public static boolean hasFlag(final int flags, final int mask) {
         return (flags & mask) == mask;
     }
@@ -445,7 +468,12 @@ public class Mp4DashReader {
         if (hasFlag(obj.bFlags, 0x0800)) {
             obj.entriesRowSize += 4;
         }
-        obj.bEntries = new byte[obj.entriesRowSize * obj.entryCount];
+        // the entries buffer is shared by all fragments, a chunk is valid until the next is read
+        final int entriesSize = obj.entriesRowSize * obj.entryCount;
+        if (trunEntries.length < entriesSize) {
+            trunEntries = new byte[entriesSize];
+        }
+        obj.bEntries = trunEntries;
 
         if (hasFlag(obj.bFlags, 0x0001)) {
             obj.dataOffset = stream.readInt();
@@ -454,10 +482,11 @@ public class Mp4DashReader {
             obj.bFirstSampleFlags = stream.readInt();
         }
 
-        stream.read(obj.bEntries);
+        stream.read(obj.bEntries, 0, entriesSize);
 
+        final TrunEntry entry = new TrunEntry();
         for (int i = 0; i < obj.entryCount; i++) {
-            final TrunEntry entry = obj.getEntry(i);
+            obj.readEntry(i, entry);
             if (hasFlag(obj.bFlags, 0x0100)) {
                 obj.chunkDuration += entry.sampleDuration;
             }
@@ -792,30 +821,62 @@ public class Mp4DashReader {
         int entriesRowSize;
 
         public TrunEntry getEntry(final int i) {
-            final ByteBuffer buffer = ByteBuffer.wrap(bEntries, i * entriesRowSize, entriesRowSize);
             final TrunEntry entry = new TrunEntry();
+            readEntry(i, entry);
+            return entry;
+        }
+
+        public TrunEntry getAbsoluteEntry(final int i, final Tfhd header) {
+            final TrunEntry entry = new TrunEntry();
+            readAbsoluteEntry(i, header, entry);
+            return entry;
+        }
+
+        /**
+         * Same as {@link #getEntry(int)} but the values are stored in the given entry, so
+         * nothing is allocated while iterating the samples.
+         *
+         * @param i     the index of the entry
+         * @param entry where the values of the entry are stored
+         */
+        void readEntry(final int i, final TrunEntry entry) {
+            int offset = i * entriesRowSize;
+
+            entry.sampleDuration = 0;
+            entry.sampleSize = 0;
+            entry.sampleFlags = 0;
+            entry.sampleCompositionTimeOffset = 0;
 
             if (hasFlag(bFlags, 0x0100)) {
-                entry.sampleDuration = buffer.getInt();
+                entry.sampleDuration = entryInt(offset);
+                offset += 4;
             }
             if (hasFlag(bFlags, 0x0200)) {
-                entry.sampleSize = buffer.getInt();
+                entry.sampleSize = entryInt(offset);
+                offset += 4;
             }
             if (hasFlag(bFlags, 0x0400)) {
-                entry.sampleFlags = buffer.getInt();
+                entry.sampleFlags = entryInt(offset);
+                offset += 4;
             }
             if (hasFlag(bFlags, 0x0800)) {
-                entry.sampleCompositionTimeOffset = buffer.getInt();
+                entry.sampleCompositionTimeOffset = entryInt(offset);
             }
 
             entry.hasCompositionTimeOffset = hasFlag(bFlags, 0x0800);
             entry.isKeyframe = !hasFlag(entry.sampleFlags, 0x10000);
-
-            return entry;
         }
 
-        public TrunEntry getAbsoluteEntry(final int i, final Tfhd header) {
-            final TrunEntry entry = getEntry(i);
+        /**
+         * Same as {@link #getAbsoluteEntry(int, Tfhd)} but the values are stored in the given
+         * entry.
+         *
+         * @param i      the index of the entry
+         * @param header the header of the track fragment
+         * @param entry  where the values of the entry are stored
+         */
+        void readAbsoluteEntry(final int i, final Tfhd header, final TrunEntry entry) {
+            readEntry(i, entry);
 
             if (!hasFlag(bFlags, 0x0100) && hasFlag(header.bFlags, 0x20)) {
                 entry.sampleFlags = header.defaultSampleFlags;
@@ -832,8 +893,11 @@ public class Mp4DashReader {
             if (i == 0 && hasFlag(bFlags, 0x0004)) {
                 entry.sampleFlags = bFirstSampleFlags;
             }
+        }
 
-            return entry;
+        private int entryInt(final int offset) {
+            return (bEntries[offset] & 0xFF) << 24 | (bEntries[offset + 1] & 0xFF) << 16
+                    | (bEntries[offset + 2] & 0xFF) << 8 | (bEntries[offset + 3] & 0xFF);
         }
     }
 
@@ -907,13 +971,24 @@ public class Mp4DashReader {
     public static class Mp4DashChunk {
         public InputStream data;
         public Moof moof;
+        /**
+         * Position of the sample data in the source.
+         */
+        public long offset;
         private int i = 0;
+        private final TrunEntry info = new TrunEntry();
 
+        /**
+         * Reads the info of the next sample, the returned entry is reused by the next call.
+         *
+         * @return the sample info, or {@code null} if there are no more samples in the chunk
+         */
         public TrunEntry getNextSampleInfo() {
             if (i >= moof.traf.trun.entryCount) {
                 return null;
             }
-            return moof.traf.trun.getAbsoluteEntry(i++, moof.traf.tfhd);
+            moof.traf.trun.readAbsoluteEntry(i++, moof.traf.tfhd, info);
+            return info;
         }
 
         public Mp4DashSample getNextSample() throws IOException {
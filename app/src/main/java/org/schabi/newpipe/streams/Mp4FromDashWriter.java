@@ -2,16 +2,17 @@ package org.schabi.newpipe.streams;
 
 import org.schabi.newpipe.streams.Mp4DashReader.Hdlr;
 import org.schabi.newpipe.streams.Mp4DashReader.Mdia;
-import org.schabi.newpipe.streams.Mp4DashReader.Mp4DashChunk;
-import org.schabi.newpipe.streams.Mp4DashReader.Mp4DashSample;
 import org.schabi.newpipe.streams.Mp4DashReader.Mp4Track;
 import org.schabi.newpipe.streams.Mp4DashReader.TrackKind;
-import org.schabi.newpipe.streams.Mp4DashReader.TrunEntry;
 import org.schabi.newpipe.streams.io.SharpStream;
 
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
 
 /**
  * @author kapodamy
@@ -26,15 +27,28 @@ public class Mp4FromDashWriter {
     private static final long THRESHOLD_FOR_CO64 = 0xFFFEFFFFL;
     // 2.2 MiB enough for: 1080p 60fps 00h35m00s
     private static final int THRESHOLD_MOOV_LENGTH = (256 * 1024) + (2048 * 1024);
+    private static final int ENTRIES_BUFFER_SIZE = 64 * 1024; // 64 KiB
+
+    private static final int[] COMPATIBLE_BRANDS = {
+            0x6D703431, // mp41
+            0x69736F6D, // isom
+            0x69736F32 // iso2
+    };
 
     private final long time;
 
     private ByteBuffer auxBuffer;
     private SharpStream outStream;
+    private final ByteBuffer entries = ByteBuffer.allocate(ENTRIES_BUFFER_SIZE);
 
     private long lastWriteOffset = -1;
     private long writeOffset;
 
+    private boolean parallelIndexing = false;
+    private int[] fragment;
+    private int[] fragmentEnd;
+    private long[] fragmentOffset;
+
     private boolean moovSimulation = true;
 
     private boolean done = false;
@@ -44,12 +58,9 @@ public class Mp4FromDashWriter {
     private SharpStream[] sourceTracks;
 
     private Mp4DashReader[] readers;
-    private Mp4DashChunk[] readersChunks;
 
     private int overrideMainBrand = 0x00;
 
-    private final ArrayList<Integer> compatibleBrands = new ArrayList<>(5);
-
     public Mp4FromDashWriter(final SharpStream... sources) throws IOException {
         for (final SharpStream src : sources) {
             if (!src.canRewind() && !src.canRead()) {
@@ -59,12 +70,7 @@ public class Mp4FromDashWriter {
 
         sourceTracks = sources;
         readers = new Mp4DashReader[sourceTracks.length];
-        readersChunks = new Mp4DashChunk[readers.length];
         time = (System.currentTimeMillis() / 1000L) + EPOCH_OFFSET;
-
-        compatibleBrands.add(0x6D703431); // mp41
-        compatibleBrands.add(0x69736F6D); // isom
-        compatibleBrands.add(0x69736F32); // iso2
     }
 
     public Mp4Track[] getTracksFromSource(final int sourceIndex) throws IllegalStateException {
@@ -112,6 +118,16 @@ public class Mp4FromDashWriter {
         }
     }
 
+    /**
+     * Index every track on its own thread, useful on multi-core devices if there are many
+     * samples to index (long videos).
+     *
+     * @param enabled {@code true} to index the tracks in parallel
+     */
+    public void setParallelIndexing(final boolean enabled) {
+        parallelIndexing = enabled;
+    }
+
     public void setMainBrand(final int brand) {
         overrideMainBrand = brand;
     }
@@ -136,7 +152,6 @@ public class Mp4FromDashWriter {
         sourceTracks = null;
 
         readers = null;
-        readersChunks = null;
 
         auxBuffer = null;
         outStream = null;
@@ -156,6 +171,8 @@ public class Mp4FromDashWriter {
         //          not allowed for very short tracks (less than 0.5 seconds)
         //
         outStream = output;
+        final Mp4SampleTable[] samples = indexTracks();
+
         long read = 8; // mdat box header size
         long totalSampleSize = 0;
         final int[] sampleExtra = new int[readers.length];
@@ -163,6 +180,8 @@ public class Mp4FromDashWriter {
         final int[] defaultSampleDuration = new int[readers.length];
         final int[] sampleCount = new int[readers.length];
 
+        final long[][] chunkOffsets = new long[readers.length][];
+
         final TablesInfo[] tablesInfo = new TablesInfo[tracks.length];
         for (int i = 0; i < tablesInfo.length; i++) {
             tablesInfo[i] = new TablesInfo();
@@ -178,64 +197,30 @@ public class Mp4FromDashWriter {
 
 
         for (int i = 0; i < readers.length; i++) {
-            int samplesSize = 0;
-            int sampleSizeChanges = 0;
-            int compositionOffsetLast = -1;
-
-            Mp4DashChunk chunk;
-            while ((chunk = readers[i].getNextChunk(true)) != null) {
-
-                if (defaultMediaTime[i] < 1 && chunk.moof.traf.tfhd.defaultSampleDuration > 0) {
-                    defaultMediaTime[i] = chunk.moof.traf.tfhd.defaultSampleDuration;
-                }
-
-                read += chunk.moof.traf.trun.chunkSize;
-                sampleExtra[i] += chunk.moof.traf.trun.chunkDuration; // calculate track duration
+            final Mp4SampleTable table = samples[i];
 
-                TrunEntry info;
-                while ((info = chunk.getNextSampleInfo()) != null) {
-                    if (info.isKeyframe) {
-                        tablesInfo[i].stss++;
-                    }
-
-                    if (info.sampleDuration > defaultSampleDuration[i]) {
-                        defaultSampleDuration[i] = info.sampleDuration;
-                    }
-
-                    tablesInfo[i].stsz++;
-                    if (samplesSize != info.sampleSize) {
-                        samplesSize = info.sampleSize;
-                        sampleSizeChanges++;
-                    }
-
-                    if (info.hasCompositionTimeOffset) {
-                        if (info.sampleCompositionTimeOffset != compositionOffsetLast) {
-                            tablesInfo[i].ctts++;
-                            compositionOffsetLast = info.sampleCompositionTimeOffset;
-                        }
-                    }
+            read += table.dataSize;
+            totalSampleSize += table.sampleDataSize;
+            sampleExtra[i] = (int) table.duration; // track duration
+            defaultMediaTime[i] = table.defaultMediaTime;
+            defaultSampleDuration[i] = table.defaultSampleDuration;
 
-                    totalSampleSize += info.sampleSize;
-                }
-            }
-
-            if (defaultMediaTime[i] < 1) {
-                defaultMediaTime[i] = defaultSampleDuration[i];
-            }
-
-            readers[i].rewind();
+            tablesInfo[i].stsz = table.sampleCount;
+            tablesInfo[i].stss = table.keyframeCount;
+            tablesInfo[i].ctts = table.compositionOffsetChanges;
 
             if (singleSampleBuffer > 0) {
                 initChunkTables(tablesInfo[i], singleSampleBuffer, singleSampleBuffer);
             } else {
                 initChunkTables(tablesInfo[i], SAMPLES_PER_CHUNK_INIT, SAMPLES_PER_CHUNK);
             }
+            chunkOffsets[i] = new long[tablesInfo[i].stco];
 
             sampleCount[i] = tablesInfo[i].stsz;
 
-            if (sampleSizeChanges == 1) {
+            if (table.sizeChanges == 1) {
                 tablesInfo[i].stsz = 0;
-                tablesInfo[i].stszDefault = samplesSize;
+                tablesInfo[i].stszDefault = table.lastSize;
             } else {
                 tablesInfo[i].stszDefault = 0;
             }
@@ -285,16 +270,11 @@ public class Mp4FromDashWriter {
         makeMoov(defaultMediaTime, tablesInfo, is64);
 
         // write tables: stts stsc sbgp
-        // reset for ctts table: sampleCount sampleExtra
         for (int i = 0; i < readers.length; i++) {
             writeEntryArray(tablesInfo[i].stts, 2, sampleCount[i], defaultSampleDuration[i]);
             writeEntryArray(tablesInfo[i].stsc, tablesInfo[i].stscBEntries.length,
                     tablesInfo[i].stscBEntries);
             tablesInfo[i].stscBEntries = null;
-            if (tablesInfo[i].ctts > 0) {
-                sampleCount[i] = 1; // the index is not base zero
-                sampleExtra[i] = -1;
-            }
             if (tablesInfo[i].sbgp > 0) {
                 writeEntryArray(tablesInfo[i].sbgp, 1, sampleCount[i]);
             }
@@ -307,94 +287,44 @@ public class Mp4FromDashWriter {
         outWrite(makeMdat(totalSampleSize, is64));
 
         final int[] sampleIndex = new int[readers.length];
-        final int[] sizes =
-                new int[singleSampleBuffer > 0 ? singleSampleBuffer : SAMPLES_PER_CHUNK];
-        final int[] sync = new int[singleSampleBuffer > 0 ? singleSampleBuffer : SAMPLES_PER_CHUNK];
+        final int[] chunkCount = new int[readers.length];
+        fragment = new int[readers.length];
+        fragmentEnd = new int[readers.length];
+        fragmentOffset = new long[readers.length];
+        Arrays.fill(fragment, -1);
 
         int written = readers.length;
         while (written > 0) {
             written = 0;
 
             for (int i = 0; i < readers.length; i++) {
-                if (sampleIndex[i] < 0) {
-                    continue; // track is done
-                }
-
-                final long chunkOffset = writeOffset;
-                int syncCount = 0;
+                final int first = sampleIndex[i];
                 final int limit;
                 if (singleSampleBuffer > 0) {
                     limit = singleSampleBuffer;
                 } else {
-                    limit = sampleIndex[i] == 0 ? SAMPLES_PER_CHUNK_INIT : SAMPLES_PER_CHUNK;
+                    limit = first == 0 ? SAMPLES_PER_CHUNK_INIT : SAMPLES_PER_CHUNK;
                 }
 
-                int j = 0;
-                for (; j < limit; j++) {
-                    final Mp4DashSample sample = getNextSample(i);
-
-                    if (sample == null) {
-                        if (tablesInfo[i].ctts > 0 && sampleExtra[i] >= 0) {
-                            writeEntryArray(tablesInfo[i].ctts, 1, sampleCount[i],
-                                    sampleExtra[i]); // flush last entries
-                            outRestore();
-                        }
-                        sampleIndex[i] = -1;
-                        break;
-                    }
-
-                    sampleIndex[i]++;
-
-                    if (tablesInfo[i].ctts > 0) {
-                        if (sample.info.sampleCompositionTimeOffset == sampleExtra[i]) {
-                            sampleCount[i]++;
-                        } else {
-                            if (sampleExtra[i] >= 0) {
-                                tablesInfo[i].ctts = writeEntryArray(tablesInfo[i].ctts, 2,
-                                        sampleCount[i], sampleExtra[i]);
-                                outRestore();
-                            }
-                            sampleCount[i] = 1;
-                            sampleExtra[i] = sample.info.sampleCompositionTimeOffset;
-                        }
-                    }
-
-                    if (tablesInfo[i].stss > 0 && sample.info.isKeyframe) {
-                        sync[syncCount++] = sampleIndex[i];
-                    }
-
-                    if (tablesInfo[i].stsz > 0) {
-                        sizes[j] = sample.data.length;
-                    }
-
-                    outWrite(sample.data, sample.data.length);
+                final int count = Math.min(limit, samples[i].sampleCount - first);
+                if (count < 1) {
+                    continue; // track is done
                 }
 
-                if (j > 0) {
-                    written++;
-
-                    if (tablesInfo[i].stsz > 0) {
-                        tablesInfo[i].stsz = writeEntryArray(tablesInfo[i].stsz, j, sizes);
-                    }
-
-                    if (syncCount > 0) {
-                        tablesInfo[i].stss = writeEntryArray(tablesInfo[i].stss, syncCount, sync);
-                    }
-
-                    if (tablesInfo[i].stco > 0) {
-                        if (is64) {
-                            tablesInfo[i].stco = writeEntry64(tablesInfo[i].stco, chunkOffset);
-                        } else {
-                            tablesInfo[i].stco = writeEntryArray(tablesInfo[i].stco, 1,
-                                    (int) chunkOffset);
-                        }
-                    }
-
-                    outRestore();
-                }
+                chunkOffsets[i][chunkCount[i]++] = writeOffset;
+                writeSamples(i, samples[i], first, count);
+                sampleIndex[i] += count;
+                written++;
             }
         }
 
+        // the sample data is written, now the tables can be filled in a single pass
+        outBackup();
+        for (int i = 0; i < readers.length; i++) {
+            writeSampleTables(tablesInfo[i], samples[i], chunkOffsets[i], chunkCount[i], is64);
+        }
+        outRestore();
+
         if (auxBuffer != null) {
             // dump moov
             outSeek(ftypSize);
@@ -403,49 +333,203 @@ public class Mp4FromDashWriter {
         }
     }
 
-    private Mp4DashSample getNextSample(final int track) throws IOException {
-        if (readersChunks[track] == null) {
-            readersChunks[track] = readers[track].getNextChunk(false);
-            if (readersChunks[track] == null) {
-                return null; // EOF reached
+    /**
+     * Indexes the samples of every track. If enabled, every track is indexed on its own thread,
+     * see {@link #setParallelIndexing(boolean)}.
+     *
+     * @return the sample table of every track
+     * @throws IOException if a track can not be read
+     */
+    private Mp4SampleTable[] indexTracks() throws IOException {
+        final Mp4SampleTable[] samples = new Mp4SampleTable[readers.length];
+
+        if (!parallelIndexing || readers.length < 2) {
+            for (int i = 0; i < readers.length; i++) {
+                samples[i] = Mp4SampleTable.index(readers[i]);
             }
+            return samples;
         }
 
-        final Mp4DashSample sample = readersChunks[track].getNextSample();
-        if (sample == null) {
-            readersChunks[track] = null;
-            return getNextSample(track);
-        } else {
-            return sample;
+        final ArrayList<FutureTask<Mp4SampleTable>> tasks = new ArrayList<>(readers.length - 1);
+        for (int i = 1; i < readers.length; i++) {
+            final Mp4DashReader reader = readers[i];
+            final FutureTask<Mp4SampleTable> task =
+                    new FutureTask<>(() -> Mp4SampleTable.index(reader));
+            tasks.add(task);
+            new Thread(task, "Mp4SampleTable-" + i).start();
+        }
+
+        IOException error = null;
+        try {
+            // the first track is indexed on this thread
+            samples[0] = Mp4SampleTable.index(readers[0]);
+        } catch (final IOException e) {
+            error = e;
+        }
+
+        for (int i = 0; i < tasks.size(); i++) {
+            try {
+                samples[i + 1] = tasks.get(i).get();
+            } catch (final InterruptedException e) {
+                tasks.get(i).cancel(true);
+                Thread.currentThread().interrupt(); // do not wait the other tracks
+                error = new InterruptedIOException("interrupted while indexing the tracks");
+            } catch (final ExecutionException e) {
+                if (error == null) {
+                    error = e.getCause() instanceof IOException
+                            ? (IOException) e.getCause() : new IOException(e.getCause());
+                }
+            }
+        }
+
+        if (error != null) {
+            throw error;
         }
+
+        return samples;
     }
 
+    /**
+     * Writes the data of consecutive samples of a track, the data of consecutive samples of the
+     * same fragment is moved in a single transfer.
+     *
+     * @param track the index of the track
+     * @param table the sample table of the track
+     * @param first the first sample to write
+     * @param count how many samples to write
+     * @throws IOException if the samples can not be read or written
+     */
+    private void writeSamples(final int track, final Mp4SampleTable table, final int first,
+                              final int count) throws IOException {
+        final int end = first + count;
+        int sample = first;
+
+        while (sample < end) {
+            while (sample == fragmentEnd[track]) {
+                fragment[track]++;
+                fragmentOffset[track] = table.fragmentOffsets[fragment[track]];
+                fragmentEnd[track] += table.fragmentSamples[fragment[track]];
+            }
 
-    private int writeEntry64(final int offset, final long value) throws IOException {
-        outBackup();
+            final int last = Math.min(end, fragmentEnd[track]);
+            long size = 0;
+            for (; sample < last; sample++) {
+                size += table.sizes[sample];
+            }
 
-        auxSeek(offset);
-        auxWrite(ByteBuffer.allocate(8).putLong(value).array());
+            readers[track].transferSamples(fragmentOffset[track], size, outStream);
+            fragmentOffset[track] += size;
+            writeOffset += size;
+        }
+    }
+
+    /**
+     * Writes the stsz, stss, ctts and stco (or co64) tables of a track, the values are taken
+     * from the sample table and the offsets of the chunks written.
+     *
+     * @param tables       where the tables of the track are in the output
+     * @param table        the sample table of the track
+     * @param chunkOffsets the offset of every chunk written
+     * @param chunkCount   how many chunks were written
+     * @param is64         whether the chunk offsets are written in a co64 table
+     * @throws IOException if the tables can not be written
+     */
+    private void writeSampleTables(final TablesInfo tables, final Mp4SampleTable table,
+                                   final long[] chunkOffsets, final int chunkCount,
+                                   final boolean is64) throws IOException {
+        if (tables.stszDefault == 0) {
+            entriesStart(tables.stsz);
+            for (int i = 0; i < table.sampleCount; i++) {
+                entryPut(table.sizes[i]);
+            }
+        }
+
+        if (tables.stss > 0) {
+            entriesStart(tables.stss);
+            for (int i = 0; i < table.sampleCount; i++) {
+                if (table.isKeyframe(i)) {
+                    entryPut(i + 1); // the index is not base zero
+                }
+            }
+        }
+
+        if (tables.ctts > 0) {
+            entriesStart(tables.ctts);
+            int count = 0;
+            int offset = -1;
+            for (int i = 0; i < table.sampleCount; i++) {
+                final int compositionOffset = table.compositionOffset(i);
+                if (compositionOffset == offset) {
+                    count++;
+                } else {
+                    if (count > 0) {
+                        entryPut(count);
+                        entryPut(offset);
+                    }
+                    count = 1;
+                    offset = compositionOffset;
+                }
+            }
+            entryPut(count);
+            entryPut(offset);
+        }
+
+        entriesStart(tables.stco);
+        for (int i = 0; i < chunkCount; i++) {
+            if (is64) {
+                entryPut64(chunkOffsets[i]);
+            } else {
+                entryPut((int) chunkOffsets[i]);
+            }
+        }
 
-        return offset + 8;
+        entriesFlush();
     }
 
     private int writeEntryArray(final int offset, final int count, final int... values)
             throws IOException {
         outBackup();
 
-        auxSeek(offset);
+        entriesStart(offset);
+        for (int i = 0; i < count; i++) {
+            entryPut(values[i]);
+        }
+        entriesFlush();
 
-        final int size = count * 4;
-        final ByteBuffer buffer = ByteBuffer.allocate(size);
+        return offset + (count * 4);
+    }
 
-        for (int i = 0; i < count; i++) {
-            buffer.putInt(values[i]);
+    /**
+     * Writes the pending table entries and moves to the given offset, the entries are
+     * written in blocks with a reusable buffer.
+     *
+     * @param offset the offset of the first entry to write
+     * @throws IOException if the pending entries can not be written
+     */
+    private void entriesStart(final int offset) throws IOException {
+        entriesFlush();
+        auxSeek(offset);
+    }
+
+    private void entryPut(final int value) throws IOException {
+        if (entries.remaining() < 4) {
+            entriesFlush();
         }
+        entries.putInt(value);
+    }
 
-        auxWrite(buffer.array());
+    private void entryPut64(final long value) throws IOException {
+        if (entries.remaining() < 8) {
+            entriesFlush();
+        }
+        entries.putLong(value);
+    }
 
-        return offset + size;
+    private void entriesFlush() throws IOException {
+        if (entries.position() > 0) {
+            auxWrite(entries.array(), entries.position());
+            entries.clear();
+        }
     }
 
     private void outBackup() {
@@ -581,12 +665,16 @@ public class Mp4FromDashWriter {
     }
 
     private void auxWrite(final byte[] buffer) throws IOException {
+        auxWrite(buffer, buffer.length);
+    }
+
+    private void auxWrite(final byte[] buffer, final int count) throws IOException {
         if (moovSimulation) {
-            writeOffset += buffer.length;
+            writeOffset += count;
         } else if (auxBuffer == null) {
-            outWrite(buffer, buffer.length);
+            outWrite(buffer, count);
         } else {
-            auxBuffer.put(buffer);
+            auxBuffer.put(buffer, 0, count);
         }
     }
 
@@ -615,7 +703,7 @@ public class Mp4FromDashWriter {
     }
 
     private int makeFtyp() throws IOException {
-        int size = 16 + (compatibleBrands.size() * 4);
+        int size = 16 + (COMPATIBLE_BRANDS.length * 4);
         if (overrideMainBrand != 0) {
             size += 4;
         }
@@ -633,7 +721,7 @@ public class Mp4FromDashWriter {
             buffer.putInt(0x6D703432); // "mp42" compatible brand
         }
 
-        for (final Integer brand : compatibleBrands) {
+        for (final int brand : COMPATIBLE_BRANDS) {
             buffer.putInt(brand); // compatible brand
         }
 
@@ -0,0 +1,145 @@
+package org.schabi.newpipe.streams;
+
+import org.schabi.newpipe.streams.Mp4DashReader.Mp4DashChunk;
+import org.schabi.newpipe.streams.Mp4DashReader.TrunEntry;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Index of the samples of a fragmented (DASH) track, built by reading only the {@code moof}
+ * boxes. Every table is a primitive array indexed by the sample number, the sample data is
+ * located with the fragment tables (the samples of a fragment are contiguous in the source).
+ */
+final class Mp4SampleTable {
+    private static final int INITIAL_SAMPLES = 4096;
+    private static final int INITIAL_FRAGMENTS = 256;
+
+    int sampleCount = 0;
+    int[] sizes = new int[INITIAL_SAMPLES];
+    /**
+     * Composition time offset of every sample, {@code null} if the track does not have them.
+     */
+    int[] compositionOffsets = null;
+    private long[] keyframes = new long[INITIAL_SAMPLES / Long.SIZE];
+
+    int fragmentCount = 0;
+    /**
+     * Position in the source of the data of every fragment.
+     */
+    long[] fragmentOffsets = new long[INITIAL_FRAGMENTS];
+    /**
+     * Amount of samples of every fragment.
+     */
+    int[] fragmentSamples = new int[INITIAL_FRAGMENTS];
+
+    long dataSize = 0;
+    long sampleDataSize = 0;
+    long duration = 0;
+    int defaultMediaTime = 0;
+    int defaultSampleDuration = 0;
+
+    int keyframeCount = 0;
+    int sizeChanges = 0;
+    int lastSize = 0;
+    int compositionOffsetChanges = 0;
+
+    private Mp4SampleTable() {
+    }
+
+    /**
+     * Reads all fragments of the selected track, the reader is rewound at the end.
+     *
+     * @param reader reader with a selected track
+     * @return the index of the track
+     * @throws IOException if an I/O error occurs
+     */
+    static Mp4SampleTable index(final Mp4DashReader reader) throws IOException {
+        final Mp4SampleTable table = new Mp4SampleTable();
+        int compositionOffsetLast = -1;
+
+        Mp4DashChunk chunk;
+        while ((chunk = reader.getNextChunk(true)) != null) {
+            if (table.defaultMediaTime < 1 && chunk.moof.traf.tfhd.defaultSampleDuration > 0) {
+                table.defaultMediaTime = chunk.moof.traf.tfhd.defaultSampleDuration;
+            }
+
+            table.addFragment(chunk.offset, chunk.moof.traf.trun.entryCount);
+            table.dataSize += chunk.moof.traf.trun.chunkSize;
+            table.duration += chunk.moof.traf.trun.chunkDuration;
+
+            TrunEntry info;
+            while ((info = chunk.getNextSampleInfo()) != null) {
+                final int sample = table.addSample(info.sampleSize, info.isKeyframe);
+
+                if (info.sampleDuration > table.defaultSampleDuration) {
+                    table.defaultSampleDuration = info.sampleDuration;
+                }
+
+                if (info.hasCompositionTimeOffset) {
+                    if (table.compositionOffsets == null) {
+                        table.compositionOffsets = new int[table.sizes.length];
+                    }
+                    table.compositionOffsets[sample] = info.sampleCompositionTimeOffset;
+
+                    if (info.sampleCompositionTimeOffset != compositionOffsetLast) {
+                        table.compositionOffsetChanges++;
+                        compositionOffsetLast = info.sampleCompositionTimeOffset;
+                    }
+                }
+            }
+        }
+
+        if (table.defaultMediaTime < 1) {
+            table.defaultMediaTime = table.defaultSampleDuration;
+        }
+
+        reader.rewind();
+        return table;
+    }
+
+    boolean isKeyframe(final int sample) {
+        return (keyframes[sample / Long.SIZE] & (1L << sample)) != 0;
+    }
+
+    int compositionOffset(final int sample) {
+        return compositionOffsets == null ? 0 : compositionOffsets[sample];
+    }
+
+    private void addFragment(final long offset, final int samples) {
+        if (fragmentCount == fragmentOffsets.length) {
+            fragmentOffsets = Arrays.copyOf(fragmentOffsets, fragmentCount * 2);
+            fragmentSamples = Arrays.copyOf(fragmentSamples, fragmentCount * 2);
+        }
+
+        fragmentOffsets[fragmentCount] = offset;
+        fragmentSamples[fragmentCount] = samples;
+        fragmentCount++;
+    }
+
+    private int addSample(final int size, final boolean keyframe) {
+        if (sampleCount == sizes.length) {
+            final int capacity = sampleCount * 2;
+            sizes = Arrays.copyOf(sizes, capacity);
+            keyframes = Arrays.copyOf(keyframes, capacity / Long.SIZE);
+            if (compositionOffsets != null) {
+                compositionOffsets = Arrays.copyOf(compositionOffsets, capacity);
+            }
+        }
+
+        final int sample = sampleCount++;
+        sizes[sample] = size;
+        sampleDataSize += size;
+
+        if (size != lastSize) {
+            lastSize = size;
+            sizeChanges++;
+        }
+        if (keyframe) {
+            keyframes[sample / Long.SIZE] |= 1L << sample;
+            keyframeCount++;
+        }
+
+        return sample;
+    }
+}
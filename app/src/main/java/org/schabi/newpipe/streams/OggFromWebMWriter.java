@@ -27,6 +27,13 @@ public class OggFromWebMWriter implements Closeable {
     private static final byte HEADER_SIZE = 27;
 
     private static final int TIME_SCALE_NS = 1000000000;
+    private static final int OUTPUT_BUFFER_SIZE = 256 * 1024; // 256 KiB
+
+    /**
+     * CRC32 lookup tables for the slice-by-8 algorithm, the table {@code n} is located at
+     * {@code n * 256}.
+     */
+    private static final int[] CRC32_TABLE = makeCrc32Table();
 
     private boolean done = false;
     private boolean parsed = false;
@@ -51,7 +58,16 @@ public class OggFromWebMWriter implements Closeable {
     private final byte[] segmentTable = new byte[255];
     private long segmentTableNextTimestamp = TIME_SCALE_NS;
 
-    private final int[] crc32Table = new int[256];
+    private float resolution;
+    private boolean pageBatching = false;
+    private boolean headersWritten = false;
+    private boolean segmentEnded = false;
+
+    // pages are written in batches
+    private final ByteBuffer outputBuffer = ByteBuffer.allocate(OUTPUT_BUFFER_SIZE);
+    private final ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE + 255)
+            .order(ByteOrder.LITTLE_ENDIAN);
+    private final ByteBuffer page = ByteBuffer.allocate(64 * 1024);
 
     public OggFromWebMWriter(@NonNull final SharpStream source, @NonNull final SharpStream target) {
         if (!source.canRead() || !source.canRewind()) {
@@ -65,8 +81,6 @@ public class OggFromWebMWriter implements Closeable {
         this.output = target;
 
         this.streamId = (int) System.currentTimeMillis();
-
-        populateCrc32Table();
     }
 
     public boolean isDone() {
@@ -128,6 +142,17 @@ public class OggFromWebMWriter implements Closeable {
         }
     }
 
+    /**
+     * Fill every page up to its maximum size (255 packets or near 64 KiB) instead of creating a
+     * new page every second. Reduces the overhead of the pages and the amount of writes, but
+     * the seeking is less precise.
+     *
+     * @param enabled {@code true} to create pages as large as possible
+     */
+    public void setPageBatching(final boolean enabled) {
+        pageBatching = enabled;
+    }
+
     @Override
     public void close() throws IOException {
         done = true;
@@ -145,52 +170,31 @@ public class OggFromWebMWriter implements Closeable {
     }
 
     public void build() throws IOException {
-        final float resolution;
-        SimpleBlock bloq;
-        final ByteBuffer header = ByteBuffer.allocate(27 + (255 * 255));
-        final ByteBuffer page = ByteBuffer.allocate(64 * 1024);
-
-        header.order(ByteOrder.LITTLE_ENDIAN);
-
-        /* step 1: get the amount of frames per seconds */
-        switch (webmTrack.kind) {
-            case Audio:
-                resolution = getSampleFrequencyFromTrack(webmTrack.bMetadata);
-                if (resolution == 0f) {
-                    throw new RuntimeException("cannot get the audio sample rate");
-                }
-                break;
-            case Video:
-                // WARNING: untested
-                if (webmTrack.defaultDuration == 0) {
-                    throw new RuntimeException("missing default frame time");
-                }
-                resolution = 1000f / ((float) webmTrack.defaultDuration
-                        / webmSegment.info.timecodeScale);
-                break;
-            default:
-                throw new RuntimeException("not implemented");
+        boolean hasMore = true;
+        while (hasMore) {
+            hasMore = buildNextSegment();
         }
+    }
 
-        /* step 2: create packet with code init data */
-        if (webmTrack.codecPrivate != null) {
-            addPacketSegment(webmTrack.codecPrivate.length);
-            makePacketheader(0x00, header, webmTrack.codecPrivate);
-            write(header);
-            output.write(webmTrack.codecPrivate);
+    /**
+     * Converts the blocks of the current WebM segment and writes the pages done. Useful to
+     * convert the segments as they are read, the last page of the segment can be completed in
+     * the next call (the pages do not follow the segments).
+     *
+     * @return {@code true} if there are more segments to convert
+     * @throws IOException if an I/O error occurs
+     */
+    public boolean buildNextSegment() throws IOException {
+        if (!headersWritten) {
+            writeHeaders();
+            headersWritten = true;
         }
 
-        /* step 3: create packet with metadata */
-        final byte[] buffer = makeMetadata();
-        if (buffer != null) {
-            addPacketSegment(buffer.length);
-            makePacketheader(0x00, header, buffer);
-            write(header);
-            output.write(buffer);
-        }
+        SimpleBlock bloq;
+        segmentEnded = false;
 
         /* step 4: calculate amount of packets */
-        while (webmSegment != null) {
+        while (webmSegment != null && !segmentEnded) {
             bloq = getNextBlock();
 
             if (bloq != null && addPacketSegment(bloq)) {
@@ -224,7 +228,7 @@ public class OggFromWebMWriter implements Closeable {
 
             // create header and calculate page checksum
             int checksum = makePacketheader((long) elapsedNs, header, null);
-            checksum = calcCrc32(checksum, page.array(), page.position());
+            checksum = calcCrc32(checksum, page.array(), 0, page.position());
 
             header.putInt(HEADER_CHECKSUM_OFFSET, checksum);
 
@@ -234,6 +238,48 @@ public class OggFromWebMWriter implements Closeable {
 
             webmBlock = bloq;
         }
+
+        flush();
+        return webmSegment != null;
+    }
+
+    private void writeHeaders() throws IOException {
+        /* step 1: get the amount of frames per seconds */
+        switch (webmTrack.kind) {
+            case Audio:
+                resolution = getSampleFrequencyFromTrack(webmTrack.bMetadata);
+                if (resolution == 0f) {
+                    throw new RuntimeException("cannot get the audio sample rate");
+                }
+                break;
+            case Video:
+                // WARNING: untested
+                if (webmTrack.defaultDuration == 0) {
+                    throw new RuntimeException("missing default frame time");
+                }
+                resolution = 1000f / ((float) webmTrack.defaultDuration
+                        / webmSegment.info.timecodeScale);
+                break;
+            default:
+                throw new RuntimeException("not implemented");
+        }
+
+        /* step 2: create packet with code init data */
+        if (webmTrack.codecPrivate != null) {
+            addPacketSegment(webmTrack.codecPrivate.length);
+            makePacketheader(0x00, header, webmTrack.codecPrivate);
+            write(header);
+            write(webmTrack.codecPrivate, webmTrack.codecPrivate.length);
+        }
+
+        /* step 3: create packet with metadata */
+        final byte[] buffer = makeMetadata();
+        if (buffer != null) {
+            addPacketSegment(buffer.length);
+            makePacketheader(0x00, header, buffer);
+            write(header);
+            write(buffer, buffer.length);
+        }
     }
 
     private int makePacketheader(final long granPos, @NonNull final ByteBuffer buffer,
@@ -258,10 +304,10 @@ public class OggFromWebMWriter implements Closeable {
 
         clearSegmentTable(); // clear segment table for next header
 
-        int checksumCrc32 = calcCrc32(0x00, buffer.array(), length);
+        int checksumCrc32 = calcCrc32(0x00, buffer.array(), 0, length);
 
         if (immediatePage != null) {
-            checksumCrc32 = calcCrc32(checksumCrc32, immediatePage, immediatePage.length);
+            checksumCrc32 = calcCrc32(checksumCrc32, immediatePage, 0, immediatePage.length);
             buffer.putInt(HEADER_CHECKSUM_OFFSET, checksumCrc32);
             segmentTableNextTimestamp -= TIME_SCALE_NS;
         }
@@ -291,10 +337,30 @@ public class OggFromWebMWriter implements Closeable {
     }
 
     private void write(final ByteBuffer buffer) throws IOException {
-        output.write(buffer.array(), 0, buffer.position());
+        write(buffer.array(), buffer.position());
         buffer.position(0);
     }
 
+    private void write(final byte[] buffer, final int length) throws IOException {
+        if (length > outputBuffer.remaining()) {
+            flush();
+        }
+
+        if (length > outputBuffer.capacity()) {
+            output.write(buffer, 0, length);
+        } else {
+            outputBuffer.put(buffer, 0, length);
+        }
+    }
+
+    private void flush() throws IOException {
+        if (outputBuffer.position() > 0) {
+            outputBuffer.flip();
+            output.write(outputBuffer);
+            outputBuffer.clear();
+        }
+    }
+
     @Nullable
     private SimpleBlock getNextBlock() throws IOException {
         SimpleBlock res;
@@ -316,6 +382,7 @@ public class OggFromWebMWriter implements Closeable {
             webmCluster = webmSegment.getNextCluster();
             if (webmCluster == null) {
                 webmSegment = null;
+                segmentEnded = true;
                 return getNextBlock();
             }
         }
@@ -355,7 +422,7 @@ public class OggFromWebMWriter implements Closeable {
     private boolean addPacketSegment(final SimpleBlock block) {
         final long timestamp = block.absoluteTimeCodeNs + webmTrack.codecDelay;
 
-        if (timestamp >= segmentTableNextTimestamp) {
+        if (!pageBatching && timestamp >= segmentTableNextTimestamp) {
             return false;
         }
 
@@ -392,7 +459,9 @@ public class OggFromWebMWriter implements Closeable {
         return true;
     }
 
-    private void populateCrc32Table() {
+    private static int[] makeCrc32Table() {
+        final int[] table = new int[8 * 256];
+
         for (int i = 0; i < 0x100; i++) {
             int crc = i << 24;
             for (int j = 0; j < 8; j++) {
@@ -400,15 +469,51 @@ public class OggFromWebMWriter implements Closeable {
                 crc <<= 1;
                 crc ^= (int) (0x100000000L - b) & 0x04c11db7;
             }
-            crc32Table[i] = crc;
+            table[i] = crc;
         }
+
+        // the table "n" is the CRC of a byte followed by "n" zeros
+        for (int i = 256; i < table.length; i++) {
+            final int previous = table[i - 256];
+            table[i] = (previous << 8) ^ table[previous >>> 24];
+        }
+
+        return table;
     }
 
-    private int calcCrc32(final int initialCrc, final byte[] buffer, final int size) {
+    /**
+     * Calculates the Ogg CRC32 (no reflection, no final xor), eight bytes at once.
+     *
+     * @param initialCrc the CRC of the preceding data, or 0
+     * @param buffer     the data
+     * @param offset     the offset of the data in the buffer
+     * @param size       the amount of bytes of data
+     * @return the CRC of the preceding data followed by the given data
+     */
+    static int calcCrc32(final int initialCrc, final byte[] buffer, final int offset,
+                         final int size) {
+        final int[] t = CRC32_TABLE;
         int crc = initialCrc;
-        for (int i = 0; i < size; i++) {
+        int i = offset;
+        final int end = offset + size;
+
+        for (; i <= end - 8; i += 8) {
+            crc ^= (buffer[i] & 0xff) << 24 | (buffer[i + 1] & 0xff) << 16
+                    | (buffer[i + 2] & 0xff) << 8 | (buffer[i + 3] & 0xff);
+
+            crc = t[(7 * 256) + (crc >>> 24)]
+                    ^ t[(6 * 256) + ((crc >>> 16) & 0xff)]
+                    ^ t[(5 * 256) + ((crc >>> 8) & 0xff)]
+                    ^ t[(4 * 256) + (crc & 0xff)]
+                    ^ t[(3 * 256) + (buffer[i + 4] & 0xff)]
+                    ^ t[(2 * 256) + (buffer[i + 5] & 0xff)]
+                    ^ t[256 + (buffer[i + 6] & 0xff)]
+                    ^ t[buffer[i + 7] & 0xff];
+        }
+
+        for (; i < end; i++) {
             final int reg = (crc >>> 24) & 0xff;
-            crc = (crc << 8) ^ crc32Table[reg ^ (buffer[i] & 0xff)];
+            crc = (crc << 8) ^ t[reg ^ (buffer[i] & 0xff)];
         }
 
         return crc;
@@ -1,60 +1,108 @@
 package org.schabi.newpipe.streams;
 
-import org.jsoup.Jsoup;
-import org.jsoup.nodes.Document;
-import org.jsoup.nodes.Element;
-import org.jsoup.nodes.Node;
-import org.jsoup.nodes.TextNode;
-import org.jsoup.parser.Parser;
-import org.jsoup.select.Elements;
+import org.schabi.newpipe.streams.io.SharpInputStream;
+import org.schabi.newpipe.streams.io.SharpOutputStream;
 import org.schabi.newpipe.streams.io.SharpStream;
+import org.xmlpull.v1.XmlPullParser;
+import org.xmlpull.v1.XmlPullParserException;
+import org.xmlpull.v1.XmlPullParserFactory;
 
-import java.io.ByteArrayInputStream;
+import java.io.BufferedWriter;
 import java.io.IOException;
-import java.nio.charset.Charset;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 
 /**
+ * Converts TTML subtitles into SRT while the TTML is read, every {@code body > div > p} element
+ * is written as soon as it ends. Only the text of the current frame is kept in memory, no matter
+ * how long the subtitle is.
+ *
  * @author kapodamy
  */
 public class SrtFromTtmlWriter {
     private static final String NEW_LINE = "\r\n";
+    private static final String FEATURE_RELAXED =
+            "http://xmlpull.org/v1/doc/features.html#relaxed";
 
-    private final SharpStream out;
+    private final Writer out;
     private final boolean ignoreEmptyFrames;
-    private final Charset charset = StandardCharsets.UTF_8;
+
+    private final StringBuilder text = new StringBuilder(128);
+    private final int[] textLength = new int[2];
+    // names of the open elements, by depth
+    private final ArrayList<String> path = new ArrayList<>();
 
     private int frameIndex = 0;
 
-    public SrtFromTtmlWriter(final SharpStream out, final boolean ignoreEmptyFrames) {
-        this.out = out;
+    public SrtFromTtmlWriter(final SharpStream out, final boolean ignoreEmptyFrames)
+            throws IOException {
+        this.out = new BufferedWriter(
+                new OutputStreamWriter(new SharpOutputStream(out), StandardCharsets.UTF_8));
         this.ignoreEmptyFrames = ignoreEmptyFrames;
     }
 
-    private static String getTimestamp(final Element frame, final String attr) {
-        return frame
-                .attr(attr)
-                .replace('.', ','); // SRT subtitles uses comma as decimal separator
+    /**
+     * Converts several subtitles (for example, the caption tracks of one video) one after the
+     * other, all of them share the same parser.
+     *
+     * @param ttml              the subtitles to convert
+     * @param srt               where each subtitle is written, in the same order
+     * @param ignoreEmptyFrames skip the frames without text
+     * @throws IOException            if an I/O error occurs
+     * @throws XmlPullParserException if a subtitle is not valid XML
+     */
+    public static void buildAll(final SharpStream[] ttml, final SharpStream[] srt,
+                                final boolean ignoreEmptyFrames)
+            throws IOException, XmlPullParserException {
+        if (ttml.length != srt.length) {
+            throw new IllegalArgumentException("every subtitle needs an output");
+        }
+
+        final XmlPullParser parser = newParser();
+        for (int i = 0; i < ttml.length; i++) {
+            new SrtFromTtmlWriter(srt[i], ignoreEmptyFrames).build(ttml[i], parser);
+        }
     }
 
-    private void writeFrame(final String begin, final String end, final StringBuilder text)
-            throws IOException {
-        writeString(String.valueOf(frameIndex++));
-        writeString(NEW_LINE);
-        writeString(begin);
-        writeString(" --> ");
-        writeString(end);
-        writeString(NEW_LINE);
-        writeString(text.toString());
-        writeString(NEW_LINE);
-        writeString(NEW_LINE);
+    private static XmlPullParser newParser() throws XmlPullParserException {
+        final XmlPullParser parser = XmlPullParserFactory.newInstance().newPullParser();
+        try {
+            // tolerate unknown entities and unclosed tags, like jsoup does
+            parser.setFeature(FEATURE_RELAXED, true);
+        } catch (final XmlPullParserException e) {
+            // not supported by this parser, the subtitle must be valid XML
+        }
+        return parser;
     }
 
-    private void writeString(final String text) throws IOException {
-        out.write(text.getBytes(charset));
+    private static String getTimestamp(final XmlPullParser frame, final String attr) {
+        final String value = frame.getAttributeValue(null, attr);
+        if (value == null) {
+            return "";
+        }
+        return value.replace('.', ','); // SRT subtitles uses comma as decimal separator
     }
 
-    public void build(final SharpStream ttml) throws IOException {
+    private void writeFrame(final String begin, final String end) throws IOException {
+        out.write(String.valueOf(frameIndex++));
+        out.write(NEW_LINE);
+        out.write(begin);
+        out.write(" --> ");
+        out.write(end);
+        out.write(NEW_LINE);
+        out.append(text);
+        out.write(NEW_LINE);
+        out.write(NEW_LINE);
+    }
+
+    public void build(final SharpStream ttml) throws IOException, XmlPullParserException {
+        build(ttml, newParser());
+    }
+
+    private void build(final SharpStream ttml, final XmlPullParser parser)
+            throws IOException, XmlPullParserException {
         /*
          * TTML parser with BASIC support
          * multiple CUE is not supported
@@ -64,40 +112,96 @@ public class SrtFromTtmlWriter {
          * Language parsing is not supported
          */
 
-        // parse XML
-        final byte[] buffer = new byte[(int) ttml.available()];
-        ttml.read(buffer);
-        final Document doc = Jsoup.parse(new ByteArrayInputStream(buffer), "UTF-8", "",
-                Parser.xmlParser());
+        parser.setInput(new SharpInputStream(ttml), "UTF-8");
+        path.clear();
+
+        // depth of the frame being read, or -1 if not inside a frame
+        int frameDepth = -1;
+        String begin = null;
+        String end = null;
+
+        for (int event = parser.next(); event != XmlPullParser.END_DOCUMENT;
+             event = parser.next()) {
+            final int depth = parser.getDepth();
+
+            switch (event) {
+                case XmlPullParser.START_TAG:
+                    final String name = parser.getName();
+                    setPath(depth, name);
+
+                    if (frameDepth == -1 && isFrame(depth)) {
+                        frameDepth = depth;
+                        begin = getTimestamp(parser, "begin");
+                        end = getTimestamp(parser, "end");
+                        text.setLength(0);
+                    } else if (depth == frameDepth + 1 && name.equalsIgnoreCase("br")) {
+                        text.append(NEW_LINE);
+                    }
+                    break;
+                case XmlPullParser.TEXT:
+                    // only the text straight inside of the frame, like the text of the elements
+                    // other than <br> is ignored
+                    if (depth == frameDepth) {
+                        appendText(parser.getTextCharacters(textLength));
+                    }
+                    break;
+                case XmlPullParser.END_TAG:
+                    if (depth == frameDepth) {
+                        frameDepth = -1;
+
+                        if (!ignoreEmptyFrames || text.length() > 0) {
+                            writeFrame(begin, end);
+                        }
+                    }
+                    break;
+            }
+        }
 
-        final StringBuilder text = new StringBuilder(128);
-        final Elements paragraphList = doc.select("body > div > p");
+        out.flush();
+    }
 
-        // check if has frames
-        if (paragraphList.size() < 1) {
-            return;
+    private void setPath(final int depth, final String name) {
+        while (path.size() >= depth) {
+            path.remove(path.size() - 1);
         }
+        path.add(name);
+    }
 
-        for (final Element paragraph : paragraphList) {
-            text.setLength(0);
+    /**
+     * @param depth the depth of the element, 1 for the root
+     * @return {@code true} if the element at the given depth matches {@code body > div > p}
+     */
+    private boolean isFrame(final int depth) {
+        return depth >= 3
+                && path.get(depth - 1).equalsIgnoreCase("p")
+                && path.get(depth - 2).equalsIgnoreCase("div")
+                && path.get(depth - 3).equalsIgnoreCase("body");
+    }
 
-            for (final Node children : paragraph.childNodes()) {
-                if (children instanceof TextNode) {
-                    text.append(((TextNode) children).text());
-                } else if (children instanceof Element
-                        && ((Element) children).tagName().equalsIgnoreCase("br")) {
-                    text.append(NEW_LINE);
+    /**
+     * Appends the text collapsing any run of whitespace into a single space, like the text of
+     * the nodes does in jsoup.
+     *
+     * @param buffer the characters holding the text, at the start and length in
+     *               {@link #textLength}
+     */
+    private void appendText(final char[] buffer) {
+        final int start = textLength[0];
+        final int length = start + textLength[1];
+        boolean lastWasWhite = false;
+
+        for (int i = start; i < length; i++) {
+            final char c = buffer[i];
+
+            if (c == ' ' || c == '\t' || c == '\n' || c == '\f' || c == '\r' || c == 160) {
+                if (!lastWasWhite) {
+                    text.append(' ');
+                    lastWasWhite = true;
                 }
+            } else if (c != 8203 && c != 173) { // zero width space and soft hyphen
+                text.append(c);
+                lastWasWhite = false;
             }
-
-            if (ignoreEmptyFrames && text.length() < 1) {
-                continue;
-            }
-
-            final String begin = getTimestamp(paragraph, "begin");
-            final String end = getTimestamp(paragraph, "end");
-
-            writeFrame(begin, end, text);
         }
     }
 }
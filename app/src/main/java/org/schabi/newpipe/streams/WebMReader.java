@@ -57,7 +57,7 @@ public class WebMReader {
     private boolean firstSegment;
 
     public WebMReader(final SharpStream source) {
-        this.stream = new DataReader(source);
+        this.stream = DataReader.open(source);
     }
 
     public void parse() throws IOException {
@@ -20,12 +20,22 @@ import java.util.ArrayList;
  */
 public class WebMWriter implements Closeable {
     private static final int BUFFER_SIZE = 8 * 1024;
+    private static final int WRITE_BUFFER_SIZE = 64 * 1024; // 64 KiB
     private static final int DEFAULT_TIMECODE_SCALE = 1000000;
     private static final int INTERV = 100; // 100ms on 1000000us timecode scale
     private static final int DEFAULT_CUES_EACH_MS = 5000; // 5000ms on 1000000us timecode scale
     private static final byte CLUSTER_HEADER_SIZE = 8;
     private static final int CUE_RESERVE_SIZE = 65535;
     private static final byte MINIMUM_EBML_VOID_SIZE = 4;
+    // id + size + track number + timecode + flags
+    private static final int MAXIMUM_BLOCK_HEADER_SIZE = 1 + 8 + 8 + 2 + 1;
+    private static final byte[] CLUSTER_HEADER = {
+            0x1f, 0x43, (byte) 0xb6, 0x75,
+            0x10, 0x00, 0x00, 0x00, // cluster size (set later)
+            /* timestamp */
+            (byte) 0xe7
+    };
+    private static final Block CLUSTER_END = new Block();
 
     private WebMReader.WebMTrack[] infoTracks;
     private SharpStream[] sourceTracks;
@@ -39,18 +49,24 @@ public class WebMWriter implements Closeable {
 
     private Segment[] readersSegment;
     private Cluster[] readersCluster;
+    private Block[] readersBlock;
 
     private ArrayList<ClusterInfo> clustersOffsetsSizes;
 
     private byte[] outBuffer;
     private ByteBuffer outByteBuffer;
 
+    // everything is written through this buffer, blocks are written in batches
+    private byte[] writeBuffer;
+    private int writeBufferCount = 0;
+
     public WebMWriter(final SharpStream... source) {
         sourceTracks = source;
         readers = new WebMReader[sourceTracks.length];
         infoTracks = new WebMTrack[sourceTracks.length];
         outBuffer = new byte[BUFFER_SIZE];
         outByteBuffer = ByteBuffer.wrap(outBuffer);
+        writeBuffer = new byte[WRITE_BUFFER_SIZE];
         clustersOffsetsSizes = new ArrayList<>(256);
     }
 
@@ -88,10 +104,12 @@ public class WebMWriter implements Closeable {
         try {
             readersSegment = new Segment[readers.length];
             readersCluster = new Cluster[readers.length];
+            readersBlock = new Block[readers.length];
 
             for (int i = 0; i < readers.length; i++) {
                 infoTracks[i] = readers[i].selectTrack(trackIndex[i]);
                 readersSegment[i] = readers[i].getNextSegment();
+                readersBlock[i] = new Block();
             }
         } finally {
             parsed = true;
@@ -116,8 +134,10 @@ public class WebMWriter implements Closeable {
         infoTracks = null;
         readersSegment = null;
         readersCluster = null;
+        readersBlock = null;
         outBuffer = null;
         outByteBuffer = null;
+        writeBuffer = null;
         clustersOffsetsSizes = null;
     }
 
@@ -327,6 +347,8 @@ public class WebMWriter implements Closeable {
         for (final ClusterInfo cluster : clustersOffsetsSizes) {
             writeInt(out, cluster.offset, cluster.size | 0x10000000);
         }
+
+        flush(out);
     }
 
     private Block getNextBlockFrom(final int internalTrackId) throws IOException {
@@ -348,10 +370,11 @@ public class WebMWriter implements Closeable {
         final SimpleBlock res = readersCluster[internalTrackId].getNextSimpleBlock();
         if (res == null) {
             readersCluster[internalTrackId] = null;
-            return new Block(); // fake block to indicate the end of the cluster
+            return CLUSTER_END; // fake block to indicate the end of the cluster
         }
 
-        final Block bloq = new Block();
+        // the block is only used until the next one is read
+        final Block bloq = readersBlock[internalTrackId];
         bloq.data = res.data;
         bloq.dataSize = res.dataSize;
         bloq.trackNumber = internalTrackId;
@@ -362,6 +385,8 @@ public class WebMWriter implements Closeable {
     }
 
     private void seekTo(final SharpStream stream, final long offset) throws IOException {
+        flush(stream);
+
         if (stream.canSeek()) {
             stream.seek(offset);
         } else {
@@ -391,25 +416,41 @@ public class WebMWriter implements Closeable {
             throw new IndexOutOfBoundsException("SimpleBlock timecode overflow.");
         }
 
-        final ArrayList<byte[]> listBuffer = new ArrayList<>(5);
-        listBuffer.add(new byte[]{(byte) 0xa3});
-        listBuffer.add(null); // block size
-        listBuffer.add(encode(bloq.trackNumber + 1, false));
-        listBuffer.add(ByteBuffer.allocate(DataReader.SHORT_SIZE).putShort((short) relativeTimeCode)
-                .array());
-        listBuffer.add(new byte[]{bloq.flags});
+        final int trackNumber = bloq.trackNumber + 1;
+        // track number, timecode and flags
+        final int blockSize = encodedLength(trackNumber) + DataReader.SHORT_SIZE + 1
+                + bloq.dataSize;
 
-        int blockSize = bloq.dataSize;
-        for (int i = 2; i < listBuffer.size(); i++) {
-            blockSize += listBuffer.get(i).length;
+        // the header is encoded straight into the write buffer
+        if (writeBuffer.length - writeBufferCount < MAXIMUM_BLOCK_HEADER_SIZE) {
+            flush(stream);
         }
-        listBuffer.set(1, encode(blockSize, false));
 
-        dump(listBuffer, stream);
+        int offset = writeBufferCount;
+        writeBuffer[offset++] = (byte) 0xa3;
+        offset += encode(blockSize, false, writeBuffer, offset);
+        offset += encode(trackNumber, false, writeBuffer, offset);
+        writeBuffer[offset++] = (byte) (relativeTimeCode >> 8);
+        writeBuffer[offset++] = (byte) relativeTimeCode;
+        writeBuffer[offset++] = bloq.flags;
+
+        written += offset - writeBufferCount;
+        writeBufferCount = offset;
+
+        // and so the frame, the buffer is written once is full
+        while (true) {
+            if (writeBufferCount == writeBuffer.length) {
+                flush(stream);
+            }
+
+            final int read = bloq.data.read(writeBuffer, writeBufferCount,
+                    writeBuffer.length - writeBufferCount);
+            if (read < 1) {
+                break;
+            }
 
-        int read;
-        while ((read = bloq.data.read(outBuffer)) > 0) {
-            dump(outBuffer, read, stream);
+            writeBufferCount += read;
+            written += read;
         }
     }
 
@@ -428,19 +469,12 @@ public class WebMWriter implements Closeable {
 
         if (create) {
             /* cluster */
-            dump(new byte[]{0x1f, 0x43, (byte) 0xb6, 0x75}, stream);
-
             cluster = new ClusterInfo();
-            cluster.offset = written;
+            cluster.offset = written + 4;
             clustersOffsetsSizes.add(cluster);
 
-            dump(new byte[]{
-                    0x10, 0x00, 0x00, 0x00,
-                    /* timestamp */
-                    (byte) 0xe7
-            }, stream);
-
-            dump(encode(timecode, true), stream);
+            dump(CLUSTER_HEADER, stream);
+            dumpEncoded(timecode, stream);
         }
 
         return offset;
@@ -612,15 +646,48 @@ public class WebMWriter implements Closeable {
 
     private void dump(final byte[] buffer, final int count, final SharpStream stream)
             throws IOException {
-        stream.write(buffer, 0, count);
+        if (count > writeBuffer.length - writeBufferCount) {
+            flush(stream);
+        }
+
+        if (count > writeBuffer.length) {
+            stream.write(buffer, 0, count);
+        } else {
+            System.arraycopy(buffer, 0, writeBuffer, writeBufferCount, count);
+            writeBufferCount += count;
+        }
+
         written += count;
     }
 
     private void dump(final ArrayList<byte[]> buffers, final SharpStream stream)
             throws IOException {
         for (final byte[] buffer : buffers) {
-            stream.write(buffer);
-            written += buffer.length;
+            dump(buffer, buffer.length, stream);
+        }
+    }
+
+    /**
+     * Same as {@code dump(encode(number, true), stream)} without allocating the encoded number.
+     *
+     * @param number the number to encode
+     * @param stream where the encoded number is written
+     * @throws IOException if the buffered data can not be written
+     */
+    private void dumpEncoded(final long number, final SharpStream stream) throws IOException {
+        if (writeBuffer.length - writeBufferCount < 9) {
+            flush(stream);
+        }
+
+        final int count = encode(number, true, writeBuffer, writeBufferCount);
+        writeBufferCount += count;
+        written += count;
+    }
+
+    private void flush(final SharpStream stream) throws IOException {
+        if (writeBufferCount > 0) {
+            stream.write(writeBuffer, 0, writeBufferCount);
+            writeBufferCount = 0;
         }
     }
 
@@ -634,25 +701,25 @@ public class WebMWriter implements Closeable {
     }
 
     private byte[] encode(final long number, final boolean withLength) {
-        int length = -1;
-        for (int i = 1; i <= 7; i++) {
-            if (number < Math.pow(2, 7 * i)) {
-                length = i;
-                break;
-            }
-        }
-
-        if (length < 1) {
-            throw new ArithmeticException("Can't encode a number of bigger than 7 bytes");
-        }
-
-        if (number == (Math.pow(2, 7 * length)) - 1) {
-            length++;
-        }
+        final byte[] buffer = new byte[(withLength ? 1 : 0) + encodedLength(number)];
+        encode(number, withLength, buffer, 0);
+        return buffer;
+    }
 
-        final int offset = withLength ? 1 : 0;
-        final byte[] buffer = new byte[offset + length];
-        final long marker = (long) Math.floor((length - 1f) / 8f);
+    /**
+     * Encodes a number into the given buffer.
+     *
+     * @param number     the number to encode
+     * @param withLength whether the number is preceded by the length marker byte
+     * @param buffer     where the encoded number is written
+     * @param start      the offset in the buffer to write at
+     * @return the amount of bytes written
+     */
+    private static int encode(final long number, final boolean withLength, final byte[] buffer,
+                              final int start) {
+        final int length = encodedLength(number);
+        final int offset = withLength ? start + 1 : start;
+        final int marker = (length - 1) / 8;
 
         int shift = 0;
         for (int i = length - 1; i >= 0; i--, shift += 8) {
@@ -664,10 +731,30 @@ public class WebMWriter implements Closeable {
         }
 
         if (withLength) {
-            buffer[0] = (byte) (0x80 | length);
+            buffer[start] = (byte) (0x80 | length);
         }
 
-        return buffer;
+        return offset - start + length;
+    }
+
+    private static int encodedLength(final long number) {
+        int length = -1;
+        for (int i = 1; i <= 7; i++) {
+            if (number < (1L << (7 * i))) {
+                length = i;
+                break;
+            }
+        }
+
+        if (length < 1) {
+            throw new ArithmeticException("Can't encode a number of bigger than 7 bytes");
+        }
+
+        if (number == (1L << (7 * length)) - 1) {
+            length++;
+        }
+
+        return length;
     }
 
     private ArrayList<byte[]> encode(final String value) {
@@ -4,12 +4,15 @@ import androidx.annotation.NonNull;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
 
 /**
  * Simply wraps a readable {@link SharpStream} allowing it to be used with built-in Java stuff that
- * supports {@link InputStream}.
+ * supports {@link InputStream}. It is also a {@link ReadableByteChannel}, so direct buffers are
+ * passed to the stream without copying them into the java heap.
  */
-public class SharpInputStream extends InputStream {
+public class SharpInputStream extends InputStream implements ReadableByteChannel {
     private final SharpStream stream;
 
     public SharpInputStream(final SharpStream stream) throws IOException {
@@ -34,6 +37,11 @@ public class SharpInputStream extends InputStream {
         return stream.read(b, off, len);
     }
 
+    @Override
+    public int read(@NonNull final ByteBuffer dst) throws IOException {
+        return stream.read(dst);
+    }
+
     @Override
     public long skip(final long n) throws IOException {
         return stream.skip(n);
@@ -45,6 +53,11 @@ public class SharpInputStream extends InputStream {
         return res > Integer.MAX_VALUE ? Integer.MAX_VALUE : (int) res;
     }
 
+    @Override
+    public boolean isOpen() {
+        return !stream.isClosed();
+    }
+
     @Override
     public void close() {
         stream.close();
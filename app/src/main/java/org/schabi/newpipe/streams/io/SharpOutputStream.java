@@ -4,12 +4,15 @@ import androidx.annotation.NonNull;
 
 import java.io.IOException;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
 
 /**
  * Simply wraps a writable {@link SharpStream} allowing it to be used with built-in Java stuff that
- * supports {@link OutputStream}.
+ * supports {@link OutputStream}. It is also a {@link WritableByteChannel}, so direct buffers are
+ * passed to the stream without copying them into the java heap.
  */
-public class SharpOutputStream extends OutputStream {
+public class SharpOutputStream extends OutputStream implements WritableByteChannel {
     private final SharpStream stream;
 
     public SharpOutputStream(final SharpStream stream) throws IOException {
@@ -34,11 +37,23 @@ public class SharpOutputStream extends OutputStream {
         stream.write(b, off, len);
     }
 
+    @Override
+    public int write(@NonNull final ByteBuffer src) throws IOException {
+        final int count = src.remaining();
+        stream.write(src);
+        return count;
+    }
+
     @Override
     public void flush() throws IOException {
         stream.flush();
     }
 
+    @Override
+    public boolean isOpen() {
+        return !stream.isClosed();
+    }
+
     @Override
     public void close() {
         stream.close();
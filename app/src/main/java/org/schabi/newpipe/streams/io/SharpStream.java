@@ -1,8 +1,11 @@
 package org.schabi.newpipe.streams.io;
 
 import java.io.Closeable;
+import java.io.FileDescriptor;
 import java.io.Flushable;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 
 /**
  * Based on C#'s Stream class. SharpStream is a wrapper around the 2 different APIs for SAF
@@ -15,6 +18,8 @@ import java.io.IOException;
  * or {@link java.io.OutputStream}.
  */
 public abstract class SharpStream implements Closeable, Flushable {
+    private static final int TRANSFER_BUFFER_SIZE = 64 * 1024; // 64 KiB
+
     public abstract int read() throws IOException;
 
     public abstract int read(byte[] buffer) throws IOException;
@@ -52,6 +57,147 @@ public abstract class SharpStream implements Closeable, Flushable {
 
     public abstract void write(byte[] buffer, int offset, int count) throws IOException;
 
+    /**
+     * Reads bytes into the remaining space of the buffer, the buffer position is advanced by the
+     * amount of bytes read. If the stream is backed by a file the bytes are read by the channel,
+     * so a direct buffer is filled without copying the data through the java heap.
+     *
+     * @param buffer where the bytes are stored
+     * @return the amount of bytes read, or {@code -1} if the end was reached
+     * @throws IOException if an I/O error occurs
+     */
+    public int read(final ByteBuffer buffer) throws IOException {
+        final FileChannel channel = getChannel();
+        if (channel != null) {
+            return channel.read(buffer);
+        }
+
+        if (buffer.hasArray()) {
+            final int read = read(buffer.array(), buffer.arrayOffset() + buffer.position(),
+                    buffer.remaining());
+            if (read > 0) {
+                buffer.position(buffer.position() + read);
+            }
+            return read;
+        }
+
+        final byte[] chunk = new byte[Math.min(buffer.remaining(), TRANSFER_BUFFER_SIZE)];
+        final int read = read(chunk, 0, chunk.length);
+        if (read > 0) {
+            buffer.put(chunk, 0, read);
+        }
+        return read;
+    }
+
+    /**
+     * Scattering read, fills the given buffers in order. Like {@link #read(ByteBuffer)} a single
+     * call can read less bytes than the space available.
+     *
+     * @param buffers where the bytes are stored
+     * @return the amount of bytes read, or {@code -1} if the end was reached
+     * @throws IOException if an I/O error occurs
+     */
+    public long read(final ByteBuffer[] buffers) throws IOException {
+        final FileChannel channel = getChannel();
+        if (channel != null) {
+            return channel.read(buffers);
+        }
+
+        long total = 0;
+        for (final ByteBuffer buffer : buffers) {
+            while (buffer.hasRemaining()) {
+                final int read = read(buffer);
+                if (read < 1) {
+                    return total == 0 && read < 0 ? -1 : total;
+                }
+                total += read;
+            }
+        }
+
+        return total;
+    }
+
+    /**
+     * Writes all remaining bytes of the buffer at the current position, the buffer position is
+     * moved to its limit. If the stream is backed by a file the bytes are written by the channel,
+     * so the data of a direct buffer is not copied into the java heap.
+     *
+     * @param buffer the data to write
+     * @throws IOException if an I/O error occurs
+     */
+    public void write(final ByteBuffer buffer) throws IOException {
+        final FileChannel channel = getChannel();
+        if (channel != null) {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            return;
+        }
+
+        if (buffer.hasArray()) {
+            write(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+            buffer.position(buffer.limit());
+            return;
+        }
+
+        final byte[] chunk = new byte[Math.min(buffer.remaining(), TRANSFER_BUFFER_SIZE)];
+        while (buffer.hasRemaining()) {
+            final int count = Math.min(buffer.remaining(), chunk.length);
+            buffer.get(chunk, 0, count);
+            write(chunk, 0, count);
+        }
+    }
+
+    /**
+     * Gathering write, writes all remaining bytes of the given buffers in order. Streams backed
+     * by a file write the buffers with a single system call where possible.
+     *
+     * @param buffers the data to write
+     * @return the amount of bytes written
+     * @throws IOException if an I/O error occurs
+     */
+    public long write(final ByteBuffer[] buffers) throws IOException {
+        long count = 0;
+        for (final ByteBuffer buffer : buffers) {
+            count += buffer.remaining();
+        }
+
+        final FileChannel channel = getChannel();
+        if (channel != null) {
+            long total = 0;
+            while (total < count) {
+                total += channel.write(buffers);
+            }
+            return total;
+        }
+
+        for (final ByteBuffer buffer : buffers) {
+            write(buffer);
+        }
+        return count;
+    }
+
+    /**
+     * Whether {@link #write(ByteBuffer, long)} is supported.
+     *
+     * @return {@code true} if positional writes are available
+     */
+    public boolean canWriteAt() {
+        return false;
+    }
+
+    /**
+     * Writes all remaining bytes of the buffer at the given position. Unlike {@link #seek(long)}
+     * followed by {@link #write(byte[])}, the stream position is not used nor changed.
+     *
+     * @param buffer   the data to write
+     * @param position the absolute position in the stream
+     * @throws IOException if an I/O error occurs
+     */
+    public void write(final ByteBuffer buffer, final long position) throws IOException {
+        throw new IOException("Not implemented");
+    }
+
     public void flush() throws IOException {
         // STUB
     }
@@ -67,4 +213,120 @@ public abstract class SharpStream implements Closeable, Flushable {
     public long length() throws IOException {
         throw new UnsupportedOperationException("Unsupported operation");
     }
+
+    /**
+     * Gets the descriptor of the file behind this stream, allows reserving disk space without
+     * writing any data.
+     *
+     * @return the file descriptor, or {@code null} if the stream is not backed by a file
+     * @throws IOException if an I/O error occurs
+     */
+    public FileDescriptor getFileDescriptor() throws IOException {
+        return null;
+    }
+
+    /**
+     * Maps a region of the file behind this stream into memory, for reading only.
+     *
+     * @param offset the position in the stream where the region starts
+     * @param length the size of the region, must not exceed {@link Integer#MAX_VALUE}
+     * @return the mapped region, or {@code null} if the stream can not be mapped
+     * @throws IOException if an I/O error occurs
+     */
+    public ByteBuffer map(final long offset, final long length) throws IOException {
+        return null;
+    }
+
+    /**
+     * Gets the channel of the file behind this stream. The position of the channel must be the
+     * position of this stream, so reads and writes made through one are seen by the other.
+     *
+     * @return the channel, or {@code null} if the stream is not backed by a file
+     * @throws IOException if an I/O error occurs
+     */
+    public FileChannel getChannel() throws IOException {
+        return null;
+    }
+
+    /**
+     * Moves bytes from the current position of this stream to the current position of the given
+     * stream, the position of both streams is advanced. If both streams are backed by a file the
+     * data is moved by the kernel, without copying it into the java heap.
+     *
+     * @param target the stream where the bytes are written
+     * @param count  the amount of bytes to move
+     * @return the amount of bytes moved, less than {@code count} only if the end was reached
+     * @throws IOException if an I/O error occurs
+     */
+    public long transferTo(final SharpStream target, final long count) throws IOException {
+        final FileChannel channel = getChannel();
+
+        if (channel != null) {
+            final long position = channel.position();
+            final long transferred = target.transferFrom(channel, position, count);
+            channel.position(position + transferred);
+            return transferred;
+        }
+
+        final byte[] buffer = new byte[(int) Math.min(count, TRANSFER_BUFFER_SIZE)];
+        long total = 0;
+
+        while (total < count) {
+            final int read = read(buffer, 0, (int) Math.min(count - total, buffer.length));
+            if (read < 1) {
+                break;
+            }
+
+            target.write(buffer, 0, read);
+            total += read;
+        }
+
+        return total;
+    }
+
+    /**
+     * Writes bytes read from the given channel at the current position of this stream. The
+     * position of the channel is not used nor changed.
+     *
+     * @param source   the channel to read from
+     * @param position the position in the channel of the first byte to move
+     * @param count    the amount of bytes to move
+     * @return the amount of bytes moved, less than {@code count} only if the end was reached
+     * @throws IOException if an I/O error occurs
+     */
+    public long transferFrom(final FileChannel source, final long position, final long count)
+            throws IOException {
+        final FileChannel channel = getChannel();
+        long total = 0;
+
+        if (channel != null) {
+            while (total < count) {
+                final long transferred = source.transferTo(position + total, count - total,
+                        channel);
+                if (transferred < 1) {
+                    break;
+                }
+                total += transferred;
+            }
+
+            return total;
+        }
+
+        final ByteBuffer buffer = ByteBuffer.allocate((int) Math.min(count, TRANSFER_BUFFER_SIZE));
+
+        while (total < count) {
+            buffer.clear();
+            buffer.limit((int) Math.min(count - total, buffer.capacity()));
+
+            final int read = source.read(buffer, position + total);
+            if (read < 1) {
+                break;
+            }
+
+            write(buffer.array(), 0, read);
+            total += read;
+        }
+
+        return total;
+    }
 }
@@ -0,0 +1,58 @@
+package org.schabi.newpipe.util;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.io.IOException;
+
+/**
+ * The validators of a page downloaded before, that is the {@code ETag} and {@code Last-Modified}
+ * headers of its last response. They are sent back in {@code If-None-Match} and
+ * {@code If-Modified-Since}, so that the server can answer with {@code 304 Not Modified} instead
+ * of the whole page when it did not change.
+ *
+ * @see org.schabi.newpipe.DownloaderImpl#executeConditionally(ConditionalRequest,
+ * java.util.concurrent.Callable)
+ */
+public final class ConditionalRequest {
+    @Nullable
+    private String etag;
+    @Nullable
+    private String lastModified;
+
+    public ConditionalRequest(@Nullable final String etag, @Nullable final String lastModified) {
+        this.etag = etag;
+        this.lastModified = lastModified;
+    }
+
+    @Nullable
+    public String getEtag() {
+        return etag;
+    }
+
+    @Nullable
+    public String getLastModified() {
+        return lastModified;
+    }
+
+    /**
+     * Replaces the validators with the ones of a new response.
+     *
+     * @param newEtag         the {@code ETag} header of the response, if any
+     * @param newLastModified the {@code Last-Modified} header of the response, if any
+     */
+    public void update(@Nullable final String newEtag, @Nullable final String newLastModified) {
+        etag = newEtag;
+        lastModified = newLastModified;
+    }
+
+    /**
+     * Thrown when the server answers with {@code 304 Not Modified}, i.e. the page did not change
+     * since the validators were received.
+     */
+    public static final class NotModifiedException extends IOException {
+        public NotModifiedException(@NonNull final String url) {
+            super("Not modified: " + url);
+        }
+    }
+}
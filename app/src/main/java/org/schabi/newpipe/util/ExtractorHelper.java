@@ -30,6 +30,7 @@ import androidx.annotation.Nullable;
 import androidx.core.text.HtmlCompat;
 import androidx.preference.PreferenceManager;
 
+import org.schabi.newpipe.DownloaderImpl;
 import org.schabi.newpipe.MainActivity;
 import org.schabi.newpipe.R;
 import org.schabi.newpipe.extractor.Info;
@@ -136,6 +137,21 @@ public final class ExtractorHelper {
 
     public static Single<ListInfo<StreamInfoItem>> getFeedInfoFallbackToChannelInfo(
             final int serviceId, final String url) {
+        return getFeedInfoFallbackToChannelInfo(serviceId, url, null);
+    }
+
+    /**
+     * @param serviceId          the service of the channel
+     * @param url                the URL of the channel
+     * @param conditionalRequest if not null, the validators sent when fetching the feed; it fails
+     *                           with {@link ConditionalRequest.NotModifiedException} if the feed
+     *                           did not change. They are not used by the channel info fallback.
+     * @return a {@link Single} loading the feed of the channel, or its info if the service does
+     * not have a feed
+     */
+    public static Single<ListInfo<StreamInfoItem>> getFeedInfoFallbackToChannelInfo(
+            final int serviceId, final String url,
+            @Nullable final ConditionalRequest conditionalRequest) {
         final Maybe<ListInfo<StreamInfoItem>> maybeFeedInfo = Maybe.fromCallable(() -> {
             final StreamingService service = NewPipe.getService(serviceId);
             final FeedExtractor feedExtractor = service.getFeedExtractor(url);
@@ -144,6 +160,10 @@ public final class ExtractorHelper {
                 return null;
             }
 
+            if (conditionalRequest != null) {
+                return DownloaderImpl.getInstance().executeConditionally(conditionalRequest,
+                        () -> FeedInfo.getInfo(feedExtractor));
+            }
             return FeedInfo.getInfo(feedExtractor);
         });
 
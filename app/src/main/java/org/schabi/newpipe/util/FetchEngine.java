@@ -0,0 +1,298 @@
+package org.schabi.newpipe.util;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import org.schabi.newpipe.DownloaderImpl;
+
+import java.net.URI;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntSupplier;
+
+import io.reactivex.rxjava3.core.Flowable;
+import io.reactivex.rxjava3.core.Maybe;
+import io.reactivex.rxjava3.core.MaybeEmitter;
+import io.reactivex.rxjava3.core.Scheduler;
+import io.reactivex.rxjava3.core.Single;
+import io.reactivex.rxjava3.disposables.Disposable;
+import io.reactivex.rxjava3.schedulers.Schedulers;
+
+/**
+ * Runs many extractions, like the feeds of all subscriptions, without overloading the servers
+ * they are fetched from. The extractions are grouped by service and by the host of their URL, and
+ * in each group:
+ * <ul>
+ *     <li>at most {@link #MAX_CONCURRENT_FETCHES} run at the same time;</li>
+ *     <li>they are started at {@link #FETCHES_PER_SECOND} per second on average, with bursts of
+ *     up to {@link #MAX_BURST} (a token bucket);</li>
+ *     <li>the ones refused by the server, i.e. which failed after a 429 or 5xx response, are
+ *     retried up to {@link #MAX_RETRIES} times after an exponential backoff with jitter, during
+ *     which no other extraction of the group is started.</li>
+ * </ul>
+ * No thread waits for its turn: the extractions are queued and only subscribed to, on
+ * {@link Schedulers#io()}, once their group allows it. The extractions have to download their
+ * pages on the thread they are subscribed on, like the ones of {@link ExtractorHelper} do.
+ */
+public final class FetchEngine {
+    private static final int MAX_CONCURRENT_FETCHES = 6;
+    private static final double FETCHES_PER_SECOND = 8;
+    private static final int MAX_BURST = 12;
+    private static final int MAX_RETRIES = 3;
+    private static final long BASE_BACKOFF_MILLIS = 1000;
+    private static final long MAX_BACKOFF_MILLIS = 30_000;
+
+    private static FetchEngine instance;
+
+    private final Map<String, Group> groups = new HashMap<>();
+    private final int maxConcurrentFetches;
+    private final double fetchesPerNano;
+    private final int maxBurst;
+    private final Scheduler fetchScheduler;
+    private final Scheduler timerScheduler;
+    private final IntSupplier errorResponseCodes;
+    private final Random random;
+
+    /**
+     * @param maxConcurrentFetches how many extractions of a group can run at the same time
+     * @param fetchesPerSecond     how many extractions of a group are started per second
+     * @param maxBurst             how many extractions of a group can be started at once
+     * @param fetchScheduler       where the extractions are subscribed on
+     * @param timerScheduler       where the waits are scheduled, also used as the clock
+     * @param errorResponseCodes   returns and forgets the code of the last error response
+     *                             received on the calling thread, see
+     *                             {@link DownloaderImpl#takeLastErrorResponseCode()}
+     * @param random               the source of the jitter
+     */
+    FetchEngine(final int maxConcurrentFetches,
+                final double fetchesPerSecond,
+                final int maxBurst,
+                @NonNull final Scheduler fetchScheduler,
+                @NonNull final Scheduler timerScheduler,
+                @NonNull final IntSupplier errorResponseCodes,
+                @NonNull final Random random) {
+        this.maxConcurrentFetches = maxConcurrentFetches;
+        this.fetchesPerNano = fetchesPerSecond / TimeUnit.SECONDS.toNanos(1);
+        this.maxBurst = maxBurst;
+        this.fetchScheduler = fetchScheduler;
+        this.timerScheduler = timerScheduler;
+        this.errorResponseCodes = errorResponseCodes;
+        this.random = random;
+    }
+
+    public static synchronized FetchEngine getInstance() {
+        if (instance == null) {
+            instance = new FetchEngine(MAX_CONCURRENT_FETCHES, FETCHES_PER_SECOND, MAX_BURST,
+                    Schedulers.io(), Schedulers.computation(),
+                    () -> DownloaderImpl.getInstance().takeLastErrorResponseCode(),
+                    new Random());
+        }
+        return instance;
+    }
+
+    /**
+     * Queue an extraction in the group of its service and URL. It is dropped from the queue if the
+     * returned {@link Maybe} is disposed before it started.
+     *
+     * @param serviceId  the service of the extraction
+     * @param url        the URL the extraction loads
+     * @param extraction the extraction, which must download on the thread it is subscribed on
+     * @param <T>        the type of the result of the extraction
+     * @return a {@link Maybe} giving the result of the extraction, or its error once the retries
+     * are exhausted
+     */
+    public <T> Maybe<T> fetch(final int serviceId,
+                              @NonNull final String url,
+                              @NonNull final Maybe<T> extraction) {
+        final Group group = getGroup(serviceId + ":" + getHost(url));
+        final AtomicInteger attempts = new AtomicInteger();
+
+        return Maybe.<T>create(emitter -> group.enqueue(new Fetch<>(extraction, emitter)))
+                .retryWhen(errors -> errors.flatMap(error -> {
+                    if (!(error instanceof RefusedException)) {
+                        return Flowable.error(error);
+                    } else if (attempts.incrementAndGet() > MAX_RETRIES) {
+                        return Flowable.error(error.getCause());
+                    }
+
+                    final long backoff = getBackoffMillis(attempts.get());
+                    group.pause(TimeUnit.MILLISECONDS.toNanos(backoff));
+                    return Flowable.timer(backoff, TimeUnit.MILLISECONDS, timerScheduler);
+                }));
+    }
+
+    /**
+     * Queue an extraction in the group of its service and URL, see
+     * {@link #fetch(int, String, Maybe)}.
+     *
+     * @param serviceId  the service of the extraction
+     * @param url        the URL the extraction loads
+     * @param extraction the extraction, which must download on the thread it is subscribed on
+     * @param <T>        the type of the result of the extraction
+     * @return a {@link Single} giving the result of the extraction
+     */
+    public <T> Single<T> fetch(final int serviceId,
+                               @NonNull final String url,
+                               @NonNull final Single<T> extraction) {
+        return fetch(serviceId, url, extraction.toMaybe()).toSingle();
+    }
+
+    private synchronized Group getGroup(@NonNull final String key) {
+        Group group = groups.get(key);
+        if (group == null) {
+            group = new Group();
+            groups.put(key, group);
+        }
+        return group;
+    }
+
+    @Nullable
+    private static String getHost(@NonNull final String url) {
+        try {
+            return URI.create(url).getHost();
+        } catch (final IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Exponential backoff with "equal jitter": a random delay between half and all of the
+     * exponential delay, so that the retries of the extractions refused together are spread out.
+     *
+     * @param attempt the number of the retry, starting at 1
+     * @return how many milliseconds to wait before retrying
+     */
+    private long getBackoffMillis(final int attempt) {
+        final long backoff = Math.min(MAX_BACKOFF_MILLIS, BASE_BACKOFF_MILLIS << (attempt - 1));
+        return backoff / 2 + (long) (random.nextDouble() * (backoff / 2));
+    }
+
+    private static boolean isRefusal(final int responseCode) {
+        return responseCode == 429 || (responseCode >= 500 && responseCode < 600);
+    }
+
+    private long now() {
+        return timerScheduler.now(TimeUnit.NANOSECONDS);
+    }
+
+    private static final class Fetch<T> {
+        final Maybe<T> extraction;
+        final MaybeEmitter<T> emitter;
+
+        Fetch(final Maybe<T> extraction, final MaybeEmitter<T> emitter) {
+            this.extraction = extraction;
+            this.emitter = emitter;
+        }
+    }
+
+    /**
+     * Thrown by an extraction which failed after a 429 or 5xx response, to be retried.
+     */
+    private static final class RefusedException extends Exception {
+        RefusedException(final int responseCode, final Throwable cause) {
+            super("Refused with response code " + responseCode, cause);
+        }
+    }
+
+    private final class Group {
+        private final Queue<Fetch<?>> queue = new ArrayDeque<>();
+        private int running = 0;
+        private double tokens = maxBurst;
+        private long lastRefill = now();
+        private long pausedUntil = Long.MIN_VALUE;
+        private boolean drainScheduled = false;
+
+        synchronized void enqueue(@NonNull final Fetch<?> fetch) {
+            queue.add(fetch);
+            drain();
+        }
+
+        /**
+         * Start no extraction during the given time, and only slowly after it.
+         *
+         * @param nanos how long to pause, in nanoseconds
+         */
+        synchronized void pause(final long nanos) {
+            pausedUntil = Math.max(pausedUntil, now() + nanos);
+            tokens = 0;
+            lastRefill = pausedUntil;
+        }
+
+        private synchronized void finished() {
+            running--;
+            drain();
+        }
+
+        private synchronized void drain() {
+            while (running < maxConcurrentFetches && !queue.isEmpty()) {
+                if (queue.peek().emitter.isDisposed()) {
+                    queue.poll();
+                    continue;
+                }
+
+                final long wait = takeToken();
+                if (wait > 0) {
+                    scheduleDrain(wait);
+                    return;
+                }
+
+                running++;
+                start(queue.poll());
+            }
+        }
+
+        /**
+         * @return 0 if a token was taken, otherwise how many nanoseconds until there is one
+         */
+        private long takeToken() {
+            final long now = now();
+            if (now < pausedUntil) {
+                return pausedUntil - now;
+            }
+
+            tokens = Math.min(maxBurst, tokens + (now - lastRefill) * fetchesPerNano);
+            lastRefill = now;
+            if (tokens >= 1) {
+                tokens--;
+                return 0;
+            }
+            return (long) Math.ceil((1 - tokens) / fetchesPerNano);
+        }
+
+        private void scheduleDrain(final long nanos) {
+            if (drainScheduled) {
+                return;
+            }
+
+            drainScheduled = true;
+            timerScheduler.scheduleDirect(() -> {
+                synchronized (this) {
+                    drainScheduled = false;
+                    drain();
+                }
+            }, nanos, TimeUnit.NANOSECONDS);
+        }
+
+        private <T> void start(@NonNull final Fetch<T> fetch) {
+            final Disposable disposable = Maybe.defer(() -> {
+                errorResponseCodes.getAsInt(); // forget the responses of previous extractions
+                return fetch.extraction;
+            })
+                    .onErrorResumeNext(error -> {
+                        final int responseCode = errorResponseCodes.getAsInt();
+                        return Maybe.error(isRefusal(responseCode)
+                                ? new RefusedException(responseCode, error) : error);
+                    })
+                    .subscribeOn(fetchScheduler)
+                    .doFinally(this::finished)
+                    .subscribe(fetch.emitter::onSuccess, fetch.emitter::tryOnError,
+                            fetch.emitter::onComplete);
+            fetch.emitter.setDisposable(disposable);
+        }
+    }
+}
@@ -0,0 +1,131 @@
+package us.shandian.giga.get;
+
+/**
+ * Chooses the amount of connections of a mission by measuring the aggregate throughput.
+ * <p>
+ * The mission starts with one connection, every sampling window another connection is added
+ * while the throughput keeps improving. If adding a connection makes the throughput worse,
+ * the connection is retired. Once settled, the mission is probed again periodically because
+ * the network conditions can change.
+ */
+class AdaptiveConnections {
+    static final int ACTION_NOTHING = 0;
+    static final int ACTION_ADD = 1;
+    static final int ACTION_RETIRE = -1;
+
+    /**
+     * Duration of every sampling window in milliseconds
+     */
+    static final long WINDOW = 2000;
+
+    /**
+     * Minimum throughput gain required to keep adding connections
+     */
+    private static final double IMPROVEMENT = 1.10;
+
+    /**
+     * Throughput loss considered as thrashing
+     */
+    private static final double DEGRADATION = 0.90;
+
+    /**
+     * Throughput loss (while settled) considered as a change of the network conditions
+     */
+    private static final double COLLAPSE = 0.70;
+
+    /**
+     * Amount of settled windows before probing with a new connection again
+     */
+    private static final int PROBE_INTERVAL = 15;
+
+    private int connections = 1;
+
+    private long windowStart = -1;
+    private long windowBytes = 0;
+
+    private double best = 0;
+    private boolean probing = false;
+    private int settledWindows = 0;
+
+    /**
+     * Account the downloaded bytes, and if the sampling window is over, decide if the amount of
+     * connections should be changed. Must be called with the mission lock held.
+     *
+     * @param deltaLen amount of bytes downloaded
+     * @param now      current time in milliseconds
+     * @return {@link #ACTION_ADD}, {@link #ACTION_RETIRE} or {@link #ACTION_NOTHING}
+     */
+    int sample(long deltaLen, long now) {
+        if (windowStart < 0) {
+            windowStart = now;
+            return ACTION_NOTHING;
+        }
+
+        if (deltaLen > 0) windowBytes += deltaLen;
+
+        long elapsed = now - windowStart;
+        if (elapsed < WINDOW) return ACTION_NOTHING;
+
+        double throughput = windowBytes * 1000.0 / elapsed;
+        windowStart = now;
+        windowBytes = 0;
+
+        if (best == 0) {
+            // first window, always try with another connection
+            best = throughput;
+            return probe();
+        }
+
+        if (probing) {
+            probing = false;
+
+            if (throughput > best * IMPROVEMENT) {
+                best = throughput;
+                return probe();
+            }
+
+            if (throughput < best * DEGRADATION && connections > 1) {
+                // the last connection is thrashing the link
+                connections--;
+                return ACTION_RETIRE;
+            }
+
+            best = Math.max(best, throughput);
+            return ACTION_NOTHING;
+        }
+
+        if (throughput < best * COLLAPSE && connections > 1) {
+            // the link got slower, use less connections and measure again
+            best = throughput;
+            settledWindows = 0;
+            connections--;
+            return ACTION_RETIRE;
+        }
+
+        if (++settledWindows >= PROBE_INTERVAL) {
+            best = throughput;
+            return probe();
+        }
+
+        return ACTION_NOTHING;
+    }
+
+    /**
+     * Must be called if a connection requested with {@link #ACTION_ADD} could not be added
+     */
+    void denied() {
+        probing = false;
+        connections--;
+    }
+
+    int getConnections() {
+        return connections;
+    }
+
+    private int probe() {
+        probing = true;
+        settledWindows = 0;
+        connections++;
+        return ACTION_ADD;
+    }
+}
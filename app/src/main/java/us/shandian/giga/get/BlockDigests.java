@@ -0,0 +1,444 @@
+package us.shandian.giga.get;
+
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import org.schabi.newpipe.streams.io.SharpStream;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+
+import okio.ByteString;
+
+import static us.shandian.giga.get.DownloadMission.BLOCK_SIZE;
+
+/**
+ * Computes the digests of the downloaded blocks while the download runs.
+ * <p>
+ * The download threads hash every block while writing it, see {@link Hasher}. The digests are
+ * checked and stored in order by a single worker thread shared by all missions, next to the
+ * mission metadata file. A block is read back from the file only if it was not hashed while
+ * written: the blocks downloaded before the mission was recovered (they are checked against
+ * their stored digest and only the corrupt ones are downloaded again), the blocks resumed in the
+ * middle and the blocks split between several threads.
+ * <p>
+ * If the downloaded resource is the final file (no post-processing), the MD5 and SHA-1 of the
+ * whole file are computed on the way, this way the checksum is available when the download ends.
+ * The download threads keep the data of their blocks until the worker reaches them, up to
+ * {@link #MAX_PENDING_DATA} blocks, the following ones are read back.
+ */
+public class BlockDigests {
+    private static final String TAG = "BlockDigests";
+
+    public static final String EXTENSION = ".digests";
+
+    static final int DIGEST_SIZE = 20;// SHA-1
+
+    // current + length
+    private static final int HEADER_SIZE = 4 + 8;
+
+    /**
+     * Maximum amount of hashed blocks whose data is kept for the checksum of the whole file
+     */
+    static final int MAX_PENDING_DATA = 16;
+
+    private static final ExecutorService WORKER = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, TAG);
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final DownloadMission mission;
+    private final int current;
+    private final long length;
+    private final int[] blocks;
+
+    @Nullable
+    private final File file;
+
+    private final ReentrantLock cursor = new ReentrantLock();
+    private final MessageDigest block;
+    private final boolean wholeFile;
+    private MessageDigest md5;
+    private MessageDigest sha1;
+    private byte[] buffer;
+
+    /**
+     * Blocks hashed by the download threads, waiting for the worker
+     */
+    private final Map<Integer, Hasher> hashed = new ConcurrentHashMap<>();
+    private final AtomicInteger pendingData = new AtomicInteger();
+
+    /**
+     * Last block queued again, if is corrupt again the server data changed, use the new digest
+     */
+    private int requeuedPosition = -1;
+
+    /**
+     * Next block to digest, all previous blocks were digested and verified
+     */
+    private volatile int next;
+    private volatile boolean broken;
+
+    private final AtomicBoolean scheduled = new AtomicBoolean();
+    private final AtomicBoolean requeued = new AtomicBoolean();
+    private volatile Future<?> task;
+
+    /**
+     * @param mission  the mission being downloaded, the digests are for the current resource
+     * @param metadata the mission metadata file, if {@code null} the digests are not stored
+     */
+    BlockDigests(@NonNull DownloadMission mission, @Nullable File metadata) {
+        this.mission = mission;
+        this.current = mission.current;
+        this.length = mission.length;
+        this.blocks = mission.blocks;
+        this.file = metadata == null ? null : getFile(metadata);
+
+        MessageDigest digest = null;
+        try {
+            digest = MessageDigest.getInstance("SHA-1");
+
+            if (mission.urls.length == 1 && mission.psAlgorithm == null) {
+                md5 = MessageDigest.getInstance("MD5");
+                sha1 = MessageDigest.getInstance("SHA-1");
+            }
+        } catch (NoSuchAlgorithmException e) {
+            Log.e(TAG, "digests not available", e);
+            broken = true;
+        }
+        this.block = digest;
+        this.wholeFile = md5 != null;
+    }
+
+    @NonNull
+    public static File getFile(@NonNull File metadata) {
+        return new File(metadata.getParentFile(), metadata.getName() + EXTENSION);
+    }
+
+    /**
+     * Checks if these digests belong to the current download progress of the mission
+     */
+    boolean isFor(@NonNull DownloadMission mission) {
+        return current == mission.current && blocks == mission.blocks;
+    }
+
+    /**
+     * Start hashing a block, called by the download thread before writing it
+     *
+     * @param range the range to download
+     * @return the hasher to feed with the written data, or {@code null} if the range does not
+     * cover the whole block from its start (the block is read back when digested)
+     */
+    @Nullable
+    Hasher newHasher(@NonNull DownloadMission.Block range) {
+        if (broken || range.start != 0 || range.done != 0) return null;
+
+        try {
+            return new Hasher(range.position, sizeOf(range.position), wholeFile);
+        } catch (NoSuchAlgorithmException e) {
+            return null;// never happens, checked by the constructor
+        }
+    }
+
+    /**
+     * Hand over a hashed block to the worker, called by the download thread after releasing it.
+     * The hasher is discarded if the block was not fully written by it (paused or split)
+     *
+     * @param hasher the hasher fed by the download thread
+     */
+    void offer(@NonNull Hasher hasher) {
+        if (broken || hasher.size != hasher.length) return;
+
+        if (hasher.data != null && pendingData.incrementAndGet() > MAX_PENDING_DATA) {
+            // too far ahead of the worker, the data is read back later
+            pendingData.decrementAndGet();
+            hasher.data = null;
+        }
+
+        Hasher previous = hashed.put(hasher.position, hasher);
+        if (previous != null && previous.data != null) pendingData.decrementAndGet();
+    }
+
+    /**
+     * Digest the completed blocks following the last digested one in the worker thread, the
+     * caller does not wait. The downloaded file is opened by the worker only if a block must be
+     * read back.
+     *
+     * @param scheduler where the corrupt blocks are queued again
+     */
+    void schedule(@NonNull BlockScheduler scheduler) {
+        if (broken || !isNextCompleted()) return;
+        if (!scheduled.compareAndSet(false, true)) return;// the queued task digests them
+
+        task = WORKER.submit(() -> {
+            scheduled.set(false);
+            if (advance(scheduler, null)) requeued.set(true);
+        });
+    }
+
+    /**
+     * Wait until the completed blocks are digested, called by the download threads when there
+     * are no more blocks to download. This way the checksum of the whole file is available
+     * when the download ends and the corrupt blocks are downloaded again.
+     *
+     * @param scheduler where the corrupt blocks are queued again
+     * @return {@code true} if a corrupt block was queued again since the last call
+     */
+    boolean await(@NonNull BlockScheduler scheduler) {
+        schedule(scheduler);
+
+        try {
+            Future<?> task;
+            while ((task = this.task) != null && !task.isDone()) task.get();
+        } catch (ExecutionException e) {
+            Log.e(TAG, "digest failed", e);
+            broken = true;
+        } catch (InterruptedException e) {
+            // the mission is being paused
+            Thread.currentThread().interrupt();
+        }
+
+        return requeued.getAndSet(false);
+    }
+
+    /**
+     * Digest the completed blocks following the last digested one. Only one thread does the
+     * work, the other callers return immediately.
+     *
+     * @param scheduler where the corrupt blocks are queued again
+     * @param source    the downloaded file, if {@code null} is opened when a block must be read
+     * @return {@code true} if a corrupt block was queued again
+     */
+    boolean advance(@NonNull BlockScheduler scheduler, @Nullable SharpStream source) {
+        boolean requeued = false;
+
+        while (!broken && isNextCompleted()) {
+            if (!cursor.tryLock()) break;// another thread is doing it
+
+            try {
+                requeued |= digestCompleted(scheduler, source);
+            } catch (IOException e) {
+                // the checksum of the whole file is not available anymore
+                Log.w(TAG, "can not read the block " + next, e);
+                broken = true;
+            } finally {
+                cursor.unlock();
+            }
+        }
+
+        return requeued;
+    }
+
+    private boolean isNextCompleted() {
+        synchronized (mission.LOCK) {
+            return mission.running && next < blocks.length && blocks[next] < 0;
+        }
+    }
+
+    private int sizeOf(int position) {
+        return (int) Math.min(BLOCK_SIZE, length - (long) position * BLOCK_SIZE);
+    }
+
+    private boolean digestCompleted(BlockScheduler scheduler, @Nullable SharpStream source)
+            throws IOException {
+        boolean requeued = false;
+        SharpStream opened = null;
+
+        try (RandomAccessFile table = openTable()) {
+            while (isNextCompleted()) {
+                int position = next;
+                int size = sizeOf(position);
+
+                // the block was hashed while written, otherwise, read it back
+                Hasher hasher = hashed.remove(position);
+                byte[] data = hasher == null ? null : hasher.data;
+                if (data != null) pendingData.decrementAndGet();
+
+                if (data == null && (hasher == null || md5 != null)) {
+                    if (source == null) source = opened = mission.storage.getStream();
+                    data = read(source, position, size);
+                }
+
+                byte[] digest;
+                if (hasher == null) {
+                    block.update(data, 0, size);
+                    digest = block.digest();
+                } else {
+                    digest = hasher.digest.digest();
+                }
+
+                byte[] stored = readDigest(table, position);
+
+                if (stored != null && !Arrays.equals(stored, digest)) {
+                    if (mission.isPsPipelined()) {
+                        // the post-processing can be reading this block, too late
+                        Log.w(TAG, "block " + position + " is corrupt, can not download it again");
+                    } else if (position != requeuedPosition) {
+                        // download the block again, the cursor waits here until is completed
+                        Log.w(TAG, "block " + position + " is corrupt, downloading it again");
+                        mission.notifyProgress(-size);
+                        scheduler.reset(position);
+                        requeuedPosition = position;
+                        requeued = true;
+                        continue;
+                    }
+
+                    stored = null;
+                }
+
+                if (stored == null) writeDigest(table, position, digest);
+
+                if (md5 != null) {
+                    md5.update(data, 0, size);
+                    sha1.update(data, 0, size);
+                }
+
+                next = position + 1;
+            }
+        } finally {
+            if (opened != null) opened.close();
+        }
+
+        if (next == blocks.length && md5 != null) {
+            mission.md5 = ByteString.of(md5.digest()).hex();
+            mission.sha1 = ByteString.of(sha1.digest()).hex();
+            md5 = null;
+            sha1 = null;
+        }
+
+        return requeued;
+    }
+
+    private byte[] read(SharpStream source, int position, int size) throws IOException {
+        if (buffer == null) buffer = new byte[BLOCK_SIZE];
+
+        source.seek(mission.offsets[current] + (long) position * BLOCK_SIZE);
+
+        int read = 0;
+        while (read < size) {
+            int count = source.read(buffer, read, size - read);
+            if (count < 0) throw new IOException("unexpected end of file");
+            read += count;
+        }
+
+        return buffer;
+    }
+
+    /**
+     * Opens the table of the stored digests, the table is discarded if belongs to another
+     * resource or a previous download of this one
+     */
+    @Nullable
+    private RandomAccessFile openTable() throws IOException {
+        if (file == null) return null;
+
+        RandomAccessFile table = new RandomAccessFile(file, "rw");
+
+        if (table.length() >= HEADER_SIZE) {
+            table.seek(0);
+            if (table.readInt() == current && table.readLong() == length) return table;
+        }
+
+        table.setLength(0);
+        table.writeInt(current);
+        table.writeLong(length);
+
+        return table;
+    }
+
+    @Nullable
+    private static byte[] readDigest(@Nullable RandomAccessFile table, int position)
+            throws IOException {
+        if (table == null) return null;
+
+        long offset = HEADER_SIZE + (long) position * DIGEST_SIZE;
+        if (offset + DIGEST_SIZE > table.length()) return null;
+
+        byte[] digest = new byte[DIGEST_SIZE];
+        table.seek(offset);
+        table.readFully(digest);
+
+        for (byte value : digest) {
+            if (value != 0) return digest;
+        }
+
+        return null;// never stored
+    }
+
+    private static void writeDigest(@Nullable RandomAccessFile table, int position, byte[] digest)
+            throws IOException {
+        if (table == null) return;
+
+        table.seek(HEADER_SIZE + (long) position * DIGEST_SIZE);
+        table.write(digest);
+    }
+
+    /**
+     * Hashes a block while the download thread writes it, the data must be written in order
+     * from the start of the block
+     */
+    static final class Hasher {
+        final int position;
+        final int length;
+        private final MessageDigest digest;
+
+        /**
+         * The written data, kept for the checksum of the whole file
+         */
+        @Nullable
+        private byte[] data;
+        private int size;
+
+        Hasher(int position, int length, boolean keep) throws NoSuchAlgorithmException {
+            this.position = position;
+            this.length = length;
+            this.digest = MessageDigest.getInstance("SHA-1");
+            this.data = keep ? new byte[length] : null;
+        }
+
+        /**
+         * Hash the data written to the block, called after writing it
+         */
+        void update(byte[] buffer, int offset, int count) {
+            if (size + count > length) count = length - size;
+
+            digest.update(buffer, offset, count);
+            if (data != null) System.arraycopy(buffer, offset, data, size, count);
+            size += count;
+        }
+
+        /**
+         * Hash the data written to the block, the buffer position is moved to its limit
+         */
+        void update(ByteBuffer buffer) {
+            int count = Math.min(buffer.remaining(), length - size);
+            buffer.limit(buffer.position() + count);
+
+            if (data != null) {
+                buffer.mark();
+                buffer.get(data, size, count);
+                buffer.reset();
+            }
+
+            digest.update(buffer);
+            size += count;
+        }
+    }
+}
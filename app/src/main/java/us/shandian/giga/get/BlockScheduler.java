@@ -0,0 +1,180 @@
+package us.shandian.giga.get;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import us.shandian.giga.get.DownloadMission.Block;
+
+/**
+ * Hands out the download blocks to the {@link DownloadRunnable} threads.
+ * <p>
+ * Pending blocks are kept in a lock-free queue. Once the queue is drained, an idle thread
+ * takes over the second half of the biggest in-flight block instead of exiting, this way a
+ * slow connection can not become the tail of the whole download.
+ */
+class BlockScheduler {
+
+    /**
+     * Minimum amount of unreserved bytes that a block must have to be split
+     */
+    static final int MIN_SPLIT_SIZE = DownloadMission.BUFFER_SIZE * 2;
+
+    private final int[] blocks;
+    private final long length;
+    private final Object lock;
+
+    @Nullable
+    private final ProgressJournal journal;
+    private final int current;
+
+    private final ConcurrentLinkedQueue<Block> pending = new ConcurrentLinkedQueue<>();
+    private final CopyOnWriteArrayList<Block> active = new CopyOnWriteArrayList<>();
+
+    /**
+     * All ranges of every block which was split, guarded by {@link #lock}
+     */
+    private final HashMap<Integer, ArrayList<Block>> ranges = new HashMap<>();
+
+    /**
+     * @param blocks  the mission blocks, see {@link DownloadMission#blocks}
+     * @param length  length of the resource being downloaded
+     * @param lock    lock used to write the {@code blocks} array
+     * @param journal where every change on the {@code blocks} array is appended, can be {@code null}
+     * @param current index of the resource being downloaded, see {@link DownloadMission#current}
+     */
+    BlockScheduler(@NonNull int[] blocks, long length, @NonNull Object lock,
+                   @Nullable ProgressJournal journal, int current) {
+        this.blocks = blocks;
+        this.length = length;
+        this.lock = lock;
+        this.journal = journal;
+        this.current = current;
+
+        for (int i = 0; i < blocks.length; i++) {
+            if (blocks[i] < 0) continue;
+            pending.offer(new Block(i, 0, getBlockEnd(i), blocks[i]));
+        }
+    }
+
+    private int getBlockEnd(int position) {
+        long offset = (long) position * DownloadMission.BLOCK_SIZE;
+        return (int) Math.min(DownloadMission.BLOCK_SIZE, length - offset);
+    }
+
+    /**
+     * Acquire a pending block, or split an in-flight block if there are none left
+     *
+     * @return the block or {@code null} if no more blocks left
+     */
+    @Nullable
+    Block acquire() {
+        Block block = pending.poll();
+        if (block == null) block = steal();
+        if (block != null) active.add(block);
+
+        return block;
+    }
+
+    /**
+     * Release an acquired block. If the block is not fully downloaded, is queued again.
+     *
+     * @param block the block to release
+     */
+    void release(@NonNull Block block) {
+        active.remove(block);
+
+        boolean completed = block.isCompleted();
+        if (!completed) pending.offer(block);
+
+        synchronized (lock) {
+            ArrayList<Block> pieces = ranges.get(block.position);
+
+            if (pieces == null) {
+                store(block.position, completed ? -1 : block.done);
+                return;
+            }
+
+            // only the contiguous progress from the start of the block can be stored
+            int offset = 0;
+            boolean finished = true;
+
+            for (Block piece : pieces) {
+                if (piece.start != offset || !piece.isCompleted()) {
+                    if (piece.start == offset) offset += piece.done;
+                    finished = false;
+                    break;
+                }
+                offset = piece.end;
+            }
+
+            if (finished) {
+                ranges.remove(block.position);
+                store(block.position, -1);
+            } else {
+                store(block.position, offset);
+            }
+        }
+    }
+
+    /**
+     * Queue again a completed block, used when the downloaded data is corrupt
+     *
+     * @param position index of the block
+     */
+    void reset(int position) {
+        synchronized (lock) {
+            store(position, 0);
+        }
+
+        pending.offer(new Block(position, 0, getBlockEnd(position), 0));
+    }
+
+    private void store(int position, int offset) {
+        if (blocks[position] == offset) return;
+
+        blocks[position] = offset;
+        if (journal != null) journal.appendBlock(current, position, offset);
+    }
+
+    @Nullable
+    private Block steal() {
+        while (true) {
+            Block victim = null;
+            int biggest = MIN_SPLIT_SIZE - 1;
+
+            for (Block block : active) {
+                int remaining = block.remaining();
+                if (remaining > biggest) {
+                    victim = block;
+                    biggest = remaining;
+                }
+            }
+
+            if (victim == null) return null;
+
+            synchronized (lock) {
+                Block piece = victim.split(MIN_SPLIT_SIZE);
+                if (piece == null) continue;// the owner was faster, try another one
+
+                ArrayList<Block> pieces = ranges.get(victim.position);
+                if (pieces == null) {
+                    pieces = new ArrayList<>(2);
+                    pieces.add(victim);
+                    ranges.put(victim.position, pieces);
+                }
+
+                pieces.add(piece);
+                Collections.sort(pieces, Comparator.comparingInt(b -> b.start));
+
+                return piece;
+            }
+        }
+    }
+}
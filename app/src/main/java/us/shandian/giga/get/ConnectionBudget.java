@@ -0,0 +1,41 @@
+package us.shandian.giga.get;
+
+/**
+ * Maximum amount of connections shared across all missions using adaptive connections.
+ * Every mission always gets its first connection, even if the budget is exhausted.
+ */
+public class ConnectionBudget {
+    private final int maximum;
+    private int used = 0;
+
+    public ConnectionBudget(int maximum) {
+        this.maximum = maximum;
+    }
+
+    /**
+     * Take a connection without checking the budget
+     */
+    synchronized void acquire() {
+        used++;
+    }
+
+    /**
+     * Take a connection if the budget allows it
+     *
+     * @return {@code true} if the connection was granted, otherwise, {@code false}
+     */
+    synchronized boolean tryAcquire() {
+        if (used >= maximum) return false;
+
+        used++;
+        return true;
+    }
+
+    synchronized void release() {
+        if (used > 0) used--;
+    }
+
+    public synchronized int getUsed() {
+        return used;
+    }
+}
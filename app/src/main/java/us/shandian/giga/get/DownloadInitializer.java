@@ -1,5 +1,7 @@
 package us.shandian.giga.get;
 
+import android.system.ErrnoException;
+import android.system.OsConstants;
 import android.text.TextUtils;
 import android.util.Log;
 
@@ -12,6 +14,7 @@ import java.io.InterruptedIOException;
 import java.net.HttpURLConnection;
 import java.nio.channels.ClosedByInterruptException;
 
+import us.shandian.giga.io.Preallocator;
 import us.shandian.giga.util.Utility;
 
 import static org.schabi.newpipe.BuildConfig.DEBUG;
@@ -78,8 +81,14 @@ public class DownloadInitializer extends Thread {
                             // the length is unknown use the default size
                             mMission.offsets[0] = RESERVE_SPACE_DEFAULT;
                         } else {
-                            // use the smallest resource size to download, otherwise, use the maximum
-                            mMission.offsets[0] = lowestSize < RESERVE_SPACE_MAXIMUM ? lowestSize : RESERVE_SPACE_MAXIMUM;
+                            // the final size is known, reserve the smallest resource size plus
+                            // room for the headers. This way the output of the post-processing
+                            // never reaches the unprocessed data and no temporal file is used.
+                            // The gap is not written, the file is sparse where supported. The
+                            // reserve is capped, bigger outputs fall back to the temporal file
+                            mMission.offsets[0] = Math.min(
+                                    lowestSize + RESERVE_SPACE_DEFAULT, RESERVE_SPACE_MAXIMUM
+                            );
                         }
                     }
                 } else {
@@ -148,8 +157,12 @@ public class DownloadInitializer extends Thread {
                 }
 
                 try (SharpStream fs = mMission.storage.getStream()) {
-                    fs.setLength(mMission.offsets[mMission.current] + mMission.length);
-                    fs.seek(mMission.offsets[mMission.current]);
+                    long offset = mMission.offsets[mMission.current];
+                    boolean reserved = Preallocator.preallocate(fs, offset, offset + mMission.length);
+
+                    if (DEBUG) {
+                        Log.d(TAG, "file length set to " + (offset + mMission.length) + " reserved=" + reserved);
+                    }
                 }
 
                 if (!mMission.running || Thread.interrupted()) return;
@@ -187,6 +200,12 @@ public class DownloadInitializer extends Thread {
                     return;
                 }
 
+                if (e.getCause() instanceof ErrnoException && ((ErrnoException) e.getCause()).errno == OsConstants.ENOSPC) {
+                    // the space can not be reserved, retrying is useless
+                    mMission.notifyError(e);
+                    return;
+                }
+
                 if (retryCount++ > mMission.maxRetry) {
                     Log.e(TAG, "initializer failed", e);
                     mMission.notifyError(e);
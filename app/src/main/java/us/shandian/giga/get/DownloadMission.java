@@ -21,13 +21,19 @@ import java.net.SocketTimeoutException;
 import java.net.URL;
 import java.net.UnknownHostException;
 import java.nio.channels.ClosedByInterruptException;
+import java.util.Arrays;
 import java.util.Objects;
 
 import javax.net.ssl.SSLException;
 
+import okhttp3.OkHttpClient;
+
 import org.schabi.newpipe.streams.io.StoredFileHelper;
+import us.shandian.giga.io.ChunkAvailability;
 import us.shandian.giga.postprocessing.Postprocessing;
 import us.shandian.giga.service.DownloadManagerService;
+import us.shandian.giga.util.StripedCounter;
+import us.shandian.giga.util.TokenBucket;
 import us.shandian.giga.util.Utility;
 
 import static org.schabi.newpipe.BuildConfig.DEBUG;
@@ -58,6 +64,9 @@ public class DownloadMission extends Mission {
     public static final int ERROR_HTTP_NO_CONTENT = 204;
     static final int ERROR_HTTP_FORBIDDEN = 403;
 
+    public static final int PRIORITY_NORMAL = 0;
+    public static final int PRIORITY_HIGH = 1;
+
     /**
      * The urls of the file to download
      */
@@ -84,6 +93,7 @@ public class DownloadMission extends Mission {
      * 1: running
      * 2: completed
      * 3: hold
+     * 4: running while the last resource is downloaded
      */
     public volatile int psState;
 
@@ -129,6 +139,24 @@ public class DownloadMission extends Mission {
      */
     public int threadCount = 3;
 
+    /**
+     * Shared connection budget, if not {@code null} the amount of download threads is chosen by
+     * measuring the throughput, using {@link #threadCount} as upper limit
+     */
+    public transient ConnectionBudget connectionBudget;
+
+    /**
+     * Bandwidth limits, shared by all missions and of this mission alone. Can be {@code null}
+     */
+    public transient TokenBucket globalBandwidth;
+    public transient TokenBucket bandwidth;
+
+    /**
+     * Shared HTTP client, keeps the connections alive between blocks and missions. If
+     * {@code null} the platform {@link HttpURLConnection} is used
+     */
+    public transient OkHttpClient httpClient;
+
     /**
      * information required to recover a download
      */
@@ -138,14 +166,32 @@ public class DownloadMission extends Mission {
     public transient volatile boolean running;
     public boolean enqueued;
 
+    /**
+     * Queued missions with higher priority are started first, see {@link #PRIORITY_NORMAL}
+     * and {@link #PRIORITY_HIGH}
+     */
+    public int priority = PRIORITY_NORMAL;
+
+    /**
+     * Run the post-processing while the last resource is downloaded, instead of waiting for it
+     */
+    public transient boolean psPipelined;
+
     public int errCode = ERROR_NOTHING;
     public Exception errObject = null;
 
     public transient Handler mHandler;
-    private transient boolean[] blockAcquired;
+    private transient BlockScheduler scheduler;
+    private transient AdaptiveConnections adaptive;
+    private transient int pendingRetirements;
 
     private transient long writingToFileNext;
     private transient volatile boolean writingToFile;
+    private transient ProgressJournal journal;
+    private transient BlockDigests digests;
+    private transient DownloadWatermark psWatermark;
+    private transient volatile StripedCounter progress;
+    private transient Thread psThread;
 
     final Object LOCK = new Lock();
 
@@ -176,33 +222,58 @@ public class DownloadMission extends Mission {
      */
     @Nullable
     Block acquireBlock() {
-        synchronized (LOCK) {
-            for (int i = 0; i < blockAcquired.length; i++) {
-                if (!blockAcquired[i] && blocks[i] >= 0) {
-                    Block block = new Block();
-                    block.position = i;
-                    block.done = blocks[i];
-
-                    blockAcquired[i] = true;
-                    return block;
-                }
-            }
-        }
-
-        return null;
+        BlockScheduler scheduler = this.scheduler;
+        return scheduler == null ? null : scheduler.acquire();
     }
 
     /**
      * Release an block
      *
-     * @param position the index of the block
-     * @param done     amount of bytes downloaded
+     * @param block the block to release, if is not fully downloaded will be acquired again later
      */
-    void releaseBlock(int position, int done) {
-        synchronized (LOCK) {
-            blockAcquired[position] = false;
-            blocks[position] = done;
-        }
+    void releaseBlock(@NonNull Block block) {
+        BlockScheduler scheduler = this.scheduler;
+        if (scheduler != null) scheduler.release(block);
+
+        DownloadWatermark watermark = psWatermark;
+        if (watermark != null) watermark.signal();
+    }
+
+    /**
+     * Start hashing a block while is downloaded, see {@link BlockDigests#newHasher}
+     *
+     * @param block the acquired block
+     * @return the hasher to feed with the written data, can be {@code null}
+     */
+    @Nullable
+    BlockDigests.Hasher newBlockHasher(@NonNull Block block) {
+        BlockDigests digests = this.digests;
+        return digests == null ? null : digests.newHasher(block);
+    }
+
+    /**
+     * Digest the blocks completed so far in background, see {@link BlockDigests}
+     *
+     * @param hasher the hasher of the released block, can be {@code null}
+     */
+    void digestBlocks(@Nullable BlockDigests.Hasher hasher) {
+        BlockDigests digests = this.digests;
+        BlockScheduler scheduler = this.scheduler;
+
+        if (digests != null && hasher != null) digests.offer(hasher);
+        if (digests != null && scheduler != null) digests.schedule(scheduler);
+    }
+
+    /**
+     * Wait until the blocks completed so far are digested, see {@link BlockDigests#await}
+     *
+     * @return {@code true} if a corrupt block was queued again
+     */
+    boolean awaitDigests() {
+        BlockDigests digests = this.digests;
+        BlockScheduler scheduler = this.scheduler;
+
+        return digests != null && scheduler != null && digests.await(scheduler);
     }
 
     /**
@@ -219,7 +290,12 @@ public class DownloadMission extends Mission {
     }
 
     HttpURLConnection openConnection(String url, boolean headRequest, long rangeStart, long rangeEnd) throws IOException {
-        HttpURLConnection conn = (HttpURLConnection) new URL(url).openConnection();
+        HttpURLConnection conn;
+        if (httpClient == null)
+            conn = (HttpURLConnection) new URL(url).openConnection();
+        else
+            conn = new OkHttpConnection(httpClient, new URL(url));
+
         conn.setInstanceFollowRedirects(true);
         conn.setRequestProperty("User-Agent", DownloaderImpl.USER_AGENT);
         conn.setRequestProperty("Accept", "*/*");
@@ -261,15 +337,17 @@ public class DownloadMission extends Mission {
             case 204:
             case 205:
             case 207:
-                throw new HttpError(statusCode);
+                break;
             case 416:
                 return;// let the download thread handle this error
             default:
-                if (statusCode < 200 || statusCode > 299) {
-                    throw new HttpError(statusCode);
-                }
+                if (statusCode >= 200 && statusCode <= 299) return;
         }
 
+        // release the connection before failing, the response body is not read
+        conn.disconnect();
+        throw new HttpError(statusCode);
+
     }
 
 
@@ -277,22 +355,150 @@ public class DownloadMission extends Mission {
         mHandler.obtainMessage(what, this).sendToTarget();
     }
 
-    synchronized void notifyProgress(long deltaLen) {
+    /**
+     * Count the bytes written by a download thread. To avoid contention on the mission monitor,
+     * the progress is applied later by {@link #publishProgress()}
+     *
+     * @param deltaLen amount of bytes, can be negative
+     */
+    void notifyProgress(long deltaLen) {
+        StripedCounter counter = progress;
+
+        if (counter == null) {
+            synchronized (this) {
+                if (progress == null) progress = new StripedCounter();
+                counter = progress;
+            }
+        }
+
+        counter.add(deltaLen);
+    }
+
+    /**
+     * Set the amount of bytes downloaded, used when the download is restarted. The progress
+     * counted before is applied first, otherwise, it would be added again on top of the new value
+     *
+     * @param amount the amount of bytes downloaded
+     */
+    synchronized void resetProgress(long amount) {
+        publishProgress();
+        done = amount;
+    }
+
+    /**
+     * Apply the progress counted since the last call and take a snapshot of it, called
+     * periodically by the {@link us.shandian.giga.service.DownloadManager}
+     *
+     * @param elapsed milliseconds since the previous snapshot, used to compute the speed
+     * @return the progress of this mission
+     */
+    @NonNull
+    public synchronized MissionProgress publishProgress(long elapsed) {
+        long before = done;
+        publishProgress();
+
+        long speed = elapsed > 0 ? Math.max(done - before, 0) * 1000 / elapsed : -1;
+        return getProgress(speed);
+    }
+
+    /**
+     * Take a snapshot of the progress, without applying the progress counted since the last
+     * publication. Does not wait for the mission monitor, can be called from the UI thread
+     *
+     * @return the progress of this mission, the speed is unknown
+     */
+    @NonNull
+    public MissionProgress getProgress() {
+        return getProgress(-1);
+    }
+
+    private MissionProgress getProgress(long speed) {
+        int state;
+        if (isPsRunning())
+            state = MissionProgress.STATE_POSTPROCESSING;
+        else if (isRecovering())
+            state = MissionProgress.STATE_RECOVERING;
+        else
+            state = MissionProgress.STATE_DOWNLOADING;
+
+        return new MissionProgress(this, done, getLength(), speed, state);
+    }
+
+    /**
+     * Apply the progress counted since the last call
+     */
+    public synchronized void publishProgress() {
+        if (progress == null) return;
+
+        long deltaLen = progress.sumThenReset();
+        if (deltaLen == 0) return;
+
         if (unknownLength) {
             length += deltaLen;// Update length before proceeding
         }
 
         done += deltaLen;
 
+        if (adaptive != null && running) adjustConnections(deltaLen);
+
         if (metadata == null) return;
 
-        if (!writingToFile && (done > writingToFileNext || deltaLen < 0)) {
-            writingToFile = true;
+        if (done > writingToFileNext || deltaLen < 0) {
             writingToFileNext = done + BLOCK_SIZE;
-            writeThisToFileAsync();
+
+            // checkpoint the progress, the metadata file is only rewritten to compact the journal
+            boolean compact;
+            synchronized (LOCK) {
+                compact = getJournal().appendDone(current, done);
+            }
+
+            if (compact && !writingToFile) {
+                writingToFile = true;
+                writeThisToFileAsync();
+            }
         }
     }
 
+    private void adjustConnections(long deltaLen) {
+        switch (adaptive.sample(deltaLen, System.currentTimeMillis())) {
+            case AdaptiveConnections.ACTION_ADD:
+                if (adaptive.getConnections() > threadCount || !connectionBudget.tryAcquire()) {
+                    adaptive.denied();
+                    return;
+                }
+
+                int id = threads.length;
+                Thread[] grow = Arrays.copyOf(threads, id + 1);
+                grow[id] = runAsync(id + 1, new DownloadRunnable(this, id, connectionBudget));
+                threads = grow;
+
+                if (DEBUG) {
+                    Log.d(TAG, "adaptive connections: added, now " + adaptive.getConnections());
+                }
+                break;
+            case AdaptiveConnections.ACTION_RETIRE:
+                pendingRetirements++;
+
+                if (DEBUG) {
+                    Log.d(TAG, "adaptive connections: retired, now " + adaptive.getConnections());
+                }
+                break;
+        }
+    }
+
+    /**
+     * Checks if the calling download thread should exit because the mission is using too
+     * many connections
+     *
+     * @return {@code true} if the thread must exit, otherwise, {@code false}
+     */
+    synchronized boolean retireConnection() {
+        if (pendingRetirements < 1) return false;
+
+        pendingRetirements--;
+        return true;
+    }
+
     synchronized void notifyError(Exception err) {
         Log.e(TAG, "notifyError()", err);
 
@@ -357,10 +563,16 @@ public class DownloadMission extends Mission {
 
         notify(DownloadManagerService.MESSAGE_ERROR);
 
+        // a held post-processing waits for the user, otherwise, the download can not continue.
+        // psContinue() starts again the download threads along with the held post-processing
+        if (code != ERROR_POSTPROCESSING_HOLD) stopPipelinedPostprocessing();
+
         if (running) pauseThreads();
     }
 
     synchronized void notifyFinished() {
+        publishProgress();
+
         if (current < urls.length) {
             if (++finishCount < threads.length) return;
 
@@ -375,6 +587,23 @@ public class DownloadMission extends Mission {
                 initializer();
                 return;
             }
+
+            if (psThread != null) {
+                // the post-processing is already running, now can finish
+                threads = new Thread[]{psThread};
+                psThread = null;
+
+                if (psState == 4 || psState == 3) {
+                    done = 0;
+                    length = Math.max(offsets[current - 1] + length - offsets[0], nearLength);
+
+                    // a held post-processing is resumed by psContinue()
+                    if (psState == 4) notifyPostProcessing(1);
+                }
+
+                psWatermark.signal();
+                return;
+            }
         }
 
         if (psAlgorithm != null && psState == 0) {
@@ -404,6 +633,9 @@ public class DownloadMission extends Mission {
             case 2:
                 action = "Completed";
                 break;
+            case 4:
+                action = "Running (while downloading)";
+                break;
             default:
                 action = "Failed";
         }
@@ -459,7 +691,9 @@ public class DownloadMission extends Mission {
 
         init = null;
         finishCount = 0;
-        blockAcquired = new boolean[blocks.length];
+        scheduler = null;
+        adaptive = null;
+        pendingRetirements = 0;
 
         if (blocks.length < 1) {
             threads = new Thread[]{runAsync(1, new DownloadRunnableFallback(this))};
@@ -472,10 +706,29 @@ public class DownloadMission extends Mission {
                 return;
             }
 
+            scheduler = new BlockScheduler(blocks, length, LOCK, metadata == null ? null : getJournal(), current);
+
+            // keep the digests computed before a pause, otherwise, start again from the first block
+            if (digests == null || !digests.isFor(this)) digests = new BlockDigests(this, metadata);
+
+            if (canPipelinePostprocessing()) {
+                psWatermark = new DownloadWatermark(this);
+                notifyPostProcessing(4);
+                psThread = runAsync(-3, this::doPostprocessing);
+            }
+
+            if (connectionBudget != null) {
+                // start with one connection, more are added while the throughput improves
+                adaptive = new AdaptiveConnections();
+                connectionBudget.acquire();
+                threads = new Thread[]{runAsync(1, new DownloadRunnable(this, 0, connectionBudget))};
+                return;
+            }
+
             threads = new Thread[Math.min(threadCount, remainingBlocks)];
 
             for (int i = 0; i < threads.length; i++) {
-                threads[i] = runAsync(i + 1, new DownloadRunnable(this, i));
+                threads[i] = runAsync(i + 1, new DownloadRunnable(this, i, null));
             }
         }
     }
@@ -486,7 +739,9 @@ public class DownloadMission extends Mission {
     public void pause() {
         if (!running) return;
 
-        if (isPsRunning()) {
+        // the post-processing started while downloading writes over the resources already read,
+        // the download can not be resumed after it
+        if (isPsRunning() || isPsPipelined()) {
             if (DEBUG) {
                 Log.w(TAG, "pause during post-processing is not applicable.");
             }
@@ -513,9 +768,20 @@ public class DownloadMission extends Mission {
         pauseThreads();
     }
 
+    /**
+     * Make the post-processing started while downloading to give up, the last resource is not
+     * going to be completed. The output was written over the resources already read, so the
+     * mission is marked as a failed post-processing
+     */
+    private void stopPipelinedPostprocessing() {
+        DownloadWatermark watermark = psWatermark;
+        if (psThread != null && watermark != null) watermark.stop();
+    }
+
     private void pauseThreads() {
         running = false;
         joinForThreads(-1);
+        publishProgress();
         writeThisToFile();
     }
 
@@ -524,6 +790,7 @@ public class DownloadMission extends Mission {
      */
     @Override
     public boolean delete() {
+        if (psThread != null) psThread.interrupt();
         if (psAlgorithm != null) psAlgorithm.cleanupTemporalDir();
 
         notify(DownloadManagerService.MESSAGE_DELETED);
@@ -549,7 +816,16 @@ public class DownloadMission extends Mission {
         threads = new Thread[0];
         fallbackResumeOffset = 0;
         blocks = null;
-        blockAcquired = null;
+        scheduler = null;
+        digests = null;
+        md5 = null;
+        sha1 = null;
+
+        // the stored block digests belong to the discarded progress
+        if (metadata != null) {
+            //noinspection ResultOfMethodCallIgnored
+            BlockDigests.getFile(metadata).delete();
+        }
 
         if (rollback) current = 0;
         if (persistChanges) writeThisToFile();
@@ -570,11 +846,24 @@ public class DownloadMission extends Mission {
     void writeThisToFile() {
         synchronized (LOCK) {
             if (metadata == null) return;
-            Utility.writeToFile(metadata, this);
+
+            // the written metadata contains all the progress, the journal is not longer required
+            if (Utility.writeToFile(metadata, this) && journal != null) journal.reset();
+
             writingToFile = false;
         }
     }
 
+    /**
+     * Gets the journal where the download progress is appended
+     */
+    private ProgressJournal getJournal() {
+        synchronized (LOCK) {
+            if (journal == null) journal = new ProgressJournal(metadata);
+            return journal;
+        }
+    }
+
     /**
      * Indicates if the download if fully finished
      *
@@ -644,15 +933,50 @@ public class DownloadMission extends Mission {
         writeThisToFileAsync();
     }
 
+    /**
+     * set the priority of this mission on the queue
+     *
+     * @param priority {@link #PRIORITY_NORMAL} or {@link #PRIORITY_HIGH}
+     */
+    public void setPriority(int priority) {
+        this.priority = priority;
+        writeThisToFileAsync();
+    }
+
+    /**
+     * Wait until the bandwidth limits allow to continue, called by the download threads
+     * after reading from the network
+     *
+     * @param amount amount of bytes read
+     * @return {@code false} if the thread was interrupted (the mission is being paused), the
+     * caller must stop downloading
+     */
+    boolean throttle(int amount) {
+        try {
+            if (globalBandwidth != null) globalBandwidth.consume(amount);
+            if (bandwidth != null) bandwidth.consume(amount);
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
     /**
      * Attempts to continue a blocked post-processing
      *
      * @param recover {@code true} to retry, otherwise, {@code false} to cancel
      */
     public void psContinue(boolean recover) {
-        psState = 1;
+        Thread thread = psThread;
+
+        // the last resource can be still downloading
+        psState = thread == null ? 1 : 4;
         errCode = recover ? ERROR_NOTHING : ERROR_POSTPROCESSING;
-        threads[0].interrupt();
+        (thread == null ? threads[0] : thread).interrupt();
+
+        // the download threads were stopped by the error, the post-processing waits for them
+        if (thread != null && recover) start();
     }
 
     /**
@@ -674,6 +998,36 @@ public class DownloadMission extends Mission {
         return (isPsFailed() || errCode == ERROR_POSTPROCESSING_HOLD) || isFinished();
     }
 
+    /**
+     * Indicates if the post-processing was started while the last resource is downloaded
+     *
+     * @return true, otherwise, false
+     */
+    public boolean isPsPipelined() {
+        return psAlgorithm != null && psState == 4;
+    }
+
+    /**
+     * Post-processing algorithms working on the same file, can read the already downloaded
+     * resources while the last one is downloaded
+     */
+    private boolean canPipelinePostprocessing() {
+        if (!psPipelined || psState != 0 || psThread != null) return false;
+        if (psAlgorithm == null || !psAlgorithm.worksOnSameFile) return false;
+
+        return urls.length > 1 && current == urls.length - 1 && !unknownLength && metadata != null;
+    }
+
+    /**
+     * Gets the range of the last resource available to the post-processing
+     *
+     * @return the range, or {@code null} if the post-processing was not started while downloading
+     */
+    @Nullable
+    public ChunkAvailability getPsAvailability() {
+        return psWatermark;
+    }
+
     /**
      * Indicates if mission urls has expired and there an attempt to renovate them
      *
@@ -684,11 +1038,14 @@ public class DownloadMission extends Mission {
     }
 
     private void doPostprocessing() {
-        errCode = ERROR_NOTHING;
-        errObject = null;
         Thread thread = Thread.currentThread();
 
-        notifyPostProcessing(1);
+        // if started while downloading, the mission state still belongs to the download threads
+        if (psState != 4) {
+            errCode = ERROR_NOTHING;
+            errObject = null;
+            notifyPostProcessing(1);
+        }
 
         if (DEBUG) {
             thread.setName("[" + TAG + "]  ps = " + psAlgorithm + "  filename = " + storage.getName());
@@ -699,6 +1056,15 @@ public class DownloadMission extends Mission {
         try {
             psAlgorithm.run(this);
         } catch (Exception err) {
+            DownloadWatermark watermark = psWatermark;
+            if (watermark != null && watermark.isStopped()) {
+                // the download failed, the mission is marked as a stopped post-processing below
+                synchronized (this) {
+                    psWatermark = null;
+                    psThread = null;
+                }
+            }
+
             Log.e(TAG, "Post-processing failed. " + psAlgorithm.toString(), err);
 
             if (err instanceof InterruptedIOException || err instanceof ClosedByInterruptException || thread.isInterrupted()) {
@@ -745,8 +1111,16 @@ public class DownloadMission extends Mission {
 
     private boolean deleteThisFromFile() {
         synchronized (LOCK) {
+            if (journal != null) journal.close();
+
+            //noinspection ResultOfMethodCallIgnored
+            ProgressJournal.getFile(metadata).delete();
+            //noinspection ResultOfMethodCallIgnored
+            BlockDigests.getFile(metadata).delete();
+
             boolean res = metadata.delete();
             metadata = null;
+            journal = null;
             return res;
         }
     }
@@ -770,6 +1144,7 @@ public class DownloadMission extends Mission {
      */
     private Thread runAsync(int id, Thread who) {
         // known thread ids:
+        //   -3:     post-processing running while downloading
         //   -2:     state saving by  notifyProgress()  method
         //   -1:     wait for saving the state by  pause()  method
         //    0:     initializer
@@ -842,9 +1217,99 @@ public class DownloadMission extends Mission {
         }
     }
 
+    /**
+     * A range of a download block, relative to the start of the block. A block is split in
+     * several ranges when an idle thread takes over the remaining part of a slow block.
+     */
     public static class Block {
         public int position;
-        public int done;
+        public volatile int done;
+
+        /**
+         * Where this range starts in the block
+         */
+        public int start;
+
+        /**
+         * Where this range ends in the block (exclusive), can be moved backwards by
+         * {@link #split(int)} while the range is being downloaded
+         */
+        volatile int end;
+
+        /**
+         * Amount of bytes reserved by the download thread, always {@code >= done}
+         */
+        private volatile int reserved;
+
+        Block(int position, int start, int end, int done) {
+            this.position = position;
+            this.start = start;
+            this.end = end;
+            this.done = done;
+            this.reserved = done;
+        }
+
+        /**
+         * Reserve room in this range before writing the downloaded data
+         *
+         * @param amount desired amount of bytes to write
+         * @return the amount of bytes that can be written, {@code 0} if the range is full
+         */
+        synchronized int reserve(int amount) {
+            int available = end - start - reserved;
+            if (amount > available) amount = available;
+
+            reserved += amount;
+            return amount;
+        }
+
+        /**
+         * Discard the reserved room not written yet, must be called before (re)starting the download
+         */
+        synchronized void restore() {
+            reserved = done;
+        }
+
+        /**
+         * Forget the progress of this range, used when the server does not allow resume it
+         */
+        synchronized void rewind() {
+            reserved = 0;
+            done = 0;
+        }
+
+        /**
+         * Amount of bytes not reserved yet
+         */
+        int remaining() {
+            return end - start - reserved;
+        }
+
+        boolean isFilled() {
+            return remaining() < 1;
+        }
+
+        boolean isCompleted() {
+            return done >= end - start;
+        }
+
+        /**
+         * Cut in half the unreserved part of this range
+         *
+         * @param minimum minimum amount of unreserved bytes required to split this range
+         * @return the second half as a new range, or {@code null} if the range is too small
+         */
+        @Nullable
+        synchronized Block split(int minimum) {
+            int available = end - start - reserved;
+            if (available < minimum) return null;
+
+            int middle = start + reserved + (available / 2);
+            Block piece = new Block(position, middle, end, 0);
+            end = middle;
+
+            return piece;
+        }
     }
 
     private static class Lock implements Serializable {
@@ -2,16 +2,20 @@ package us.shandian.giga.get;
 
 import android.util.Log;
 
+import androidx.annotation.Nullable;
+
 import org.schabi.newpipe.streams.io.SharpStream;
 
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.HttpURLConnection;
+import java.nio.ByteBuffer;
 import java.nio.channels.ClosedByInterruptException;
 import java.util.Objects;
 
 import us.shandian.giga.get.DownloadMission.Block;
 import us.shandian.giga.get.DownloadMission.HttpError;
+import us.shandian.giga.io.DirectBufferPool;
 
 import static org.schabi.newpipe.BuildConfig.DEBUG;
 import static us.shandian.giga.get.DownloadMission.ERROR_HTTP_FORBIDDEN;
@@ -24,24 +28,49 @@ import static us.shandian.giga.get.DownloadMission.ERROR_HTTP_FORBIDDEN;
 public class DownloadRunnable extends Thread {
     private static final String TAG = "DownloadRunnable";
 
+    /**
+     * Direct buffers shared by all download threads
+     */
+    private static final DirectBufferPool BUFFER_POOL = new DirectBufferPool(DownloadMission.BUFFER_SIZE, 16);
+
     private final DownloadMission mMission;
     private final int mId;
+    private final ConnectionBudget mBudget;
 
     private HttpURLConnection mConn;
 
-    DownloadRunnable(DownloadMission mission, int id) {
+    private final byte[] mChunk = new byte[DownloadMission.BUFFER_SIZE];
+    private ByteBuffer mBuffer;
+
+    /**
+     * Hashes the acquired block while is written, {@code null} if the block is read back later
+     */
+    private BlockDigests.Hasher mHasher;
+
+    /**
+     * @param mission the mission to download
+     * @param id      id of this thread, the first one is {@code 0}
+     * @param budget  connection budget to release when this thread exits, can be {@code null}
+     */
+    DownloadRunnable(DownloadMission mission, int id, @Nullable ConnectionBudget budget) {
         mMission = Objects.requireNonNull(mission);
         mId = id;
-    }
-
-    private void releaseBlock(Block block, long remain) {
-        // set the block offset to -1 if it is completed
-        mMission.releaseBlock(block.position, remain < 0 ? -1 : block.done);
+        mBudget = budget;
     }
 
     @Override
     public void run() {
+        try {
+            download();
+        } finally {
+            if (mBudget != null) mBudget.release();
+            if (mBuffer != null) BUFFER_POOL.release(mBuffer);
+        }
+    }
+
+    private void download() {
         boolean retry = false;
+        boolean requeued = false;
         Block block = null;
         int retryCount = 0;
         SharpStream f;
@@ -53,16 +82,35 @@ public class DownloadRunnable extends Thread {
             return;
         }
 
+        // write without seeking if the storage supports it
+        if (f.canWriteAt()) mBuffer = BUFFER_POOL.acquire();
+
         while (mMission.running && mMission.errCode == DownloadMission.ERROR_NOTHING) {
             if (!retry) {
+                // the first thread is never retired (handles the recovery), also an incomplete
+                // or corrupt block was queued again, keep running to resume it
+                boolean canRetire = mId > 0 && !requeued && (block == null || block.isCompleted());
+
+                if (canRetire && mMission.retireConnection()) {
+                    if (DEBUG) Log.d(TAG, mId + ":connection retired, exiting");
+                    break;
+                }
+
                 block = mMission.acquireBlock();
+                if (block != null) mHasher = mMission.newBlockHasher(block);
             }
 
             if (block == null) {
+                // the corrupt blocks found while digesting the last ones are queued again
+                requeued = mMission.awaitDigests();
+                if (requeued && mMission.running) continue;
+
                 if (DEBUG) Log.d(TAG, mId + ":no more blocks left, exiting");
                 break;
             }
 
+            requeued = false;
+
             if (DEBUG) {
                 if (retry)
                     Log.d(TAG, mId + ":retry block at position=" + block.position + " from the start");
@@ -70,14 +118,11 @@ public class DownloadRunnable extends Thread {
                     Log.d(TAG, mId + ":acquired block at position=" + block.position + " done=" + block.done);
             }
 
-            long start = (long)block.position * DownloadMission.BLOCK_SIZE;
-            long end = start + DownloadMission.BLOCK_SIZE - 1;
+            block.restore();
 
-            start += block.done;
-
-            if (end >= mMission.length) {
-                end = mMission.length - 1;
-            }
+            long offset = (long) block.position * DownloadMission.BLOCK_SIZE;
+            long start = offset + block.start + block.done;
+            long end = offset + block.end - 1;
 
             try {
                 mConn = mMission.openConnection(false, start, end);
@@ -88,7 +133,8 @@ public class DownloadRunnable extends Thread {
                     if (block.done > 0) {
                         // try again from the start (of the block)
                         mMission.notifyProgress(-block.done);
-                        block.done = 0;
+                        block.rewind();
+                        mHasher = mMission.newBlockHasher(block);
                         retry = true;
                         mConn.disconnect();
                         continue;
@@ -105,22 +151,18 @@ public class DownloadRunnable extends Thread {
                         Log.e(TAG, mId + ":Unsupported " + mConn.getResponseCode());
                     }
                     mMission.notifyError(new DownloadMission.HttpError(mConn.getResponseCode()));
+                    mConn.disconnect();
                     break;
                 }
 
-                f.seek(mMission.offsets[mMission.current] + start);
+                long position = mMission.offsets[mMission.current] + start;
 
                 try (InputStream is = mConn.getInputStream()) {
-                    byte[] buf = new byte[DownloadMission.BUFFER_SIZE];
-                    int len;
-
-                    // use always start <= end
-                    // fixes a deadlock because in some videos, youtube is sending one byte alone
-                    while (start <= end && mMission.running && (len = is.read(buf, 0, buf.length)) != -1) {
-                        f.write(buf, 0, len);
-                        start += len;
-                        block.done += len;
-                        mMission.notifyProgress(len);
+                    if (mBuffer == null) {
+                        f.seek(position);
+                        start += transfer(is, f, block);
+                    } else {
+                        start += transferAt(is, f, block, position);
                     }
                 }
 
@@ -134,7 +176,7 @@ public class DownloadRunnable extends Thread {
                     // for youtube streams. The url has expired, recover
                     f.close();
 
-                    if (mId == 1) {
+                    if (mId == 0) {
                         // only the first thread will execute the recovery procedure
                         mMission.doRecover(ERROR_HTTP_FORBIDDEN);
                     }
@@ -148,7 +190,11 @@ public class DownloadRunnable extends Thread {
 
                 retry = true;
             } finally {
-                if (!retry) releaseBlock(block, end - start);
+                if (!retry) {
+                    mMission.releaseBlock(block);
+                    mMission.digestBlocks(mHasher);
+                    mHasher = null;
+                }
             }
         }
 
@@ -170,6 +216,84 @@ public class DownloadRunnable extends Thread {
         }
     }
 
+    /**
+     * Copy the response into the file, starting at the current file position
+     *
+     * @return amount of bytes written
+     */
+    private long transfer(InputStream is, SharpStream f, Block block) throws IOException {
+        long written = 0;
+        int len;
+
+        // always check if the block is filled
+        // fixes a deadlock because in some videos, youtube is sending one byte alone
+        while (!block.isFilled() && mMission.running && (len = is.read(mChunk, 0, mChunk.length)) != -1) {
+            // the block end can be moved by another thread, discard the excess
+            len = block.reserve(len);
+            if (len < 1) break;
+
+            f.write(mChunk, 0, len);
+            if (mHasher != null) mHasher.update(mChunk, 0, len);
+            written += len;
+            block.done += len;
+            mMission.notifyProgress(len);
+
+            if (!mMission.throttle(len)) break;
+        }
+
+        return written;
+    }
+
+    /**
+     * Copy the response into the file using positional writes. The data is gathered into a pooled
+     * direct buffer, which is written once is full.
+     *
+     * @param position where the data should be written in the file
+     * @return amount of bytes written
+     */
+    private long transferAt(InputStream is, SharpStream f, Block block, long position) throws IOException {
+        long written = 0;
+        int len;
+
+        mBuffer.clear();
+
+        // see transfer() about checking if the block is filled
+        while (!block.isFilled() && mMission.running) {
+            len = is.read(mChunk, 0, Math.min(mChunk.length, mBuffer.remaining()));
+            if (len == -1) break;
+
+            len = block.reserve(len);
+            if (len < 1) break;
+
+            mBuffer.put(mChunk, 0, len);
+            if (!mMission.throttle(len)) break;
+            if (mBuffer.hasRemaining() && !block.isFilled()) continue;
+
+            written += flush(f, block, position + written);
+        }
+
+        // the mission can be paused, write the pending data anyways. If the thread was
+        // interrupted the file channel refuses it, the block only counts the written data
+        return written + flush(f, block, position + written);
+    }
+
+    private int flush(SharpStream f, Block block, long position) throws IOException {
+        mBuffer.flip();
+        int len = mBuffer.remaining();
+
+        if (len > 0) {
+            ByteBuffer data = mHasher == null ? null : mBuffer.duplicate();
+
+            f.write(mBuffer, position);
+            if (data != null) mHasher.update(data);
+            block.done += len;
+            mMission.notifyProgress(len);
+        }
+
+        mBuffer.clear();
+        return len;
+    }
+
     @Override
     public void interrupt() {
         super.interrupt();
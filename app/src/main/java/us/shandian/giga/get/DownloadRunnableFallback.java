@@ -84,7 +84,7 @@ public class DownloadRunnableFallback extends Thread {
 
             if (mMission.unknownLength || mConn.getResponseCode() == 200) {
                 // restart amount of bytes downloaded
-                mMission.done = mMission.offsets[mMission.current] - mMission.offsets[0];
+                mMission.resetProgress(mMission.offsets[mMission.current] - mMission.offsets[0]);
             }
 
             mF = mMission.storage.getStream();
@@ -99,6 +99,8 @@ public class DownloadRunnableFallback extends Thread {
                 mF.write(buf, 0, len);
                 start += len;
                 mMission.notifyProgress(len);
+
+                if (!mMission.throttle(len)) break;
             }
 
             dispose();
@@ -0,0 +1,100 @@
+package us.shandian.giga.get;
+
+import androidx.annotation.NonNull;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+
+import us.shandian.giga.io.ChunkAvailability;
+
+/**
+ * Tracks the contiguous range of a resource written by the download threads, this allows the
+ * post-processing to read the resource while is downloaded.
+ * <p>
+ * The last byte is held back until the mission moves to the next resource, this way the
+ * post-processing can not end before the download does.
+ */
+class DownloadWatermark implements ChunkAvailability {
+    private final DownloadMission mission;
+    private final int resource;
+    private final long start;
+    private final long end;
+
+    /**
+     * First block which was not completely downloaded, the blocks before are not checked again
+     * unless the blocks are created again (by a recovery)
+     */
+    private int[] blocks;
+    private int first;
+    private boolean stopped;
+
+    DownloadWatermark(@NonNull DownloadMission mission) {
+        this.mission = mission;
+        this.resource = mission.current;
+        this.start = mission.offsets[resource];
+        this.end = start + mission.length;
+    }
+
+    @Override
+    public long getEnd() {
+        return end;
+    }
+
+    @Override
+    public synchronized long await(long position) throws IOException {
+        try {
+            while (true) {
+                if (stopped) throw new InterruptedIOException("the download was stopped");
+
+                long available = compute();
+                if (available > position) return available;
+
+                wait();
+            }
+        } catch (InterruptedException e) {
+            throw new InterruptedIOException("interrupted while waiting the download");
+        }
+    }
+
+    /**
+     * Wake up the waiting reader, called every time a block is released
+     */
+    synchronized void signal() {
+        notifyAll();
+    }
+
+    /**
+     * Make the waiting reader fail, called when the download failed. The data
+     * downloaded later is never made available
+     */
+    synchronized void stop() {
+        stopped = true;
+        notifyAll();
+    }
+
+    synchronized boolean isStopped() {
+        return stopped;
+    }
+
+    private long compute() {
+        if (mission.current > resource) return end;
+
+        synchronized (mission.LOCK) {
+            if (mission.blocks != blocks) {
+                blocks = mission.blocks;
+                first = 0;
+            }
+            if (blocks == null) return start;
+
+            while (first < blocks.length && blocks[first] < 0) first++;
+
+            long available;
+            if (first < blocks.length)
+                available = start + (long) first * DownloadMission.BLOCK_SIZE + blocks[first];
+            else
+                available = end;
+
+            return Math.min(available, end - 1);
+        }
+    }
+}
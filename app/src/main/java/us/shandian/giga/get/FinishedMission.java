@@ -13,6 +13,8 @@ public class FinishedMission extends Mission {
         timestamp = mission.timestamp;
         kind = mission.kind;
         storage = mission.storage;
+        md5 = mission.md5;
+        sha1 = mission.sha1;
     }
 
 }
@@ -39,6 +39,12 @@ public abstract class Mission implements Serializable {
      */
     public StoredFileHelper storage;
 
+    /**
+     * Checksums of the downloaded file, {@code null} if they were not computed while downloading
+     */
+    public String md5;
+    public String sha1;
+
     /**
      * Delete the downloaded file
      *
@@ -0,0 +1,49 @@
+package us.shandian.giga.get;
+
+import androidx.annotation.NonNull;
+
+/**
+ * Immutable snapshot of the progress of a {@link DownloadMission}, taken when the progress is
+ * published. The UI reads these values instead of the mission fields, which are changed by the
+ * download threads at the same time.
+ */
+public final class MissionProgress {
+    public static final int STATE_DOWNLOADING = 0;
+    public static final int STATE_POSTPROCESSING = 1;
+    public static final int STATE_RECOVERING = 2;
+
+    /**
+     * The mission, only to identify it. Its state is not part of the snapshot
+     */
+    @NonNull
+    public final DownloadMission mission;
+
+    /**
+     * Amount of bytes downloaded, or processed by the post-processing
+     */
+    public final long done;
+
+    /**
+     * Total amount of bytes, see {@link DownloadMission#getLength()}
+     */
+    public final long length;
+
+    /**
+     * Bytes per second since the previous snapshot, or {@code -1} if unknown
+     */
+    public final long speed;
+
+    /**
+     * One of {@link #STATE_DOWNLOADING}, {@link #STATE_POSTPROCESSING} or
+     * {@link #STATE_RECOVERING}
+     */
+    public final int state;
+
+    MissionProgress(@NonNull DownloadMission mission, long done, long length, long speed, int state) {
+        this.mission = mission;
+        this.done = done;
+        this.length = length;
+        this.speed = speed;
+        this.state = state;
+    }
+}
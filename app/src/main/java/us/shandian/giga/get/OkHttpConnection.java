@@ -0,0 +1,171 @@
+package us.shandian.giga.get;
+
+import androidx.annotation.NonNull;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.Call;
+import okhttp3.Headers;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+
+/**
+ * {@link HttpURLConnection} backed by a shared {@link OkHttpClient}, this way the download
+ * threads keep using the same API while the connections are kept alive and reused between
+ * blocks and missions. If the client allows HTTP/2, the range requests to the same host are
+ * multiplexed over a single connection.
+ * <p>
+ * Only the subset of {@link HttpURLConnection} used by the downloader is implemented.
+ */
+public class OkHttpConnection extends HttpURLConnection {
+    private final OkHttpClient client;
+    private final Headers.Builder requestHeaders = new Headers.Builder();
+
+    private volatile Call call;
+    private volatile Response response;
+
+    public OkHttpConnection(@NonNull OkHttpClient client, @NonNull URL url) {
+        super(url);
+        this.client = client;
+    }
+
+    @Override
+    public void connect() throws IOException {
+        if (response != null) return;
+
+        Request request = new Request.Builder()
+                .url(url)
+                .headers(requestHeaders.build())
+                .method(method, null)
+                .build();
+
+        call = getClient().newCall(request);
+        response = call.execute();
+        connected = true;
+    }
+
+    /**
+     * Gets the client to use, the shared client is adapted if the timeouts or the redirects
+     * policy of this connection are different. The adapted client shares the connection pool.
+     */
+    private OkHttpClient getClient() {
+        int timeout = getConnectTimeout();
+        boolean redirects = getInstanceFollowRedirects();
+
+        if ((timeout < 1 || timeout == client.connectTimeoutMillis()) && redirects == client.followRedirects())
+            return client;
+
+        OkHttpClient.Builder builder = client.newBuilder().followRedirects(redirects);
+        if (timeout > 0) builder.connectTimeout(timeout, TimeUnit.MILLISECONDS);
+
+        return builder.build();
+    }
+
+    /**
+     * Abort the request and release the response, can be called from another thread. With
+     * HTTP/2 only the stream is reset, the connection stays alive for other requests.
+     */
+    @Override
+    public void disconnect() {
+        Call call = this.call;
+        if (call != null) call.cancel();
+
+        Response response = this.response;
+        if (response == null) return;
+
+        ResponseBody body = response.body();
+        if (body != null) body.close();
+    }
+
+    @Override
+    public boolean usingProxy() {
+        return false;
+    }
+
+    @Override
+    public int getResponseCode() throws IOException {
+        connect();
+        return response.code();
+    }
+
+    @Override
+    public String getResponseMessage() throws IOException {
+        connect();
+        return response.message();
+    }
+
+    @Override
+    public String getHeaderField(String name) {
+        try {
+            connect();
+        } catch (IOException e) {
+            return null;
+        }
+
+        return response.header(name);
+    }
+
+    @Override
+    public int getContentLength() {
+        long length = getContentLengthLong();
+        return length > Integer.MAX_VALUE ? -1 : (int) length;
+    }
+
+    @Override
+    public long getContentLengthLong() {
+        try {
+            return Long.parseLong(getHeaderField("Content-Length"));
+        } catch (Exception e) {
+            return -1;
+        }
+    }
+
+    @Override
+    public InputStream getInputStream() throws IOException {
+        int code = getResponseCode();
+
+        if (code == HTTP_NOT_FOUND || code == HTTP_GONE)
+            throw new FileNotFoundException(url.toString());
+        if (code >= HTTP_BAD_REQUEST)
+            throw new IOException("HTTP " + code + " for " + url);
+
+        return body().byteStream();
+    }
+
+    @Override
+    public InputStream getErrorStream() {
+        if (response == null || response.code() < HTTP_BAD_REQUEST) return null;
+        return body().byteStream();
+    }
+
+    private ResponseBody body() {
+        ResponseBody body = response.body();
+        if (body == null) throw new IllegalStateException("response without body");
+
+        return body;
+    }
+
+    @Override
+    public void setRequestProperty(String key, String value) {
+        if (connected) throw new IllegalStateException("Already connected");
+        requestHeaders.set(key, value);
+    }
+
+    @Override
+    public void addRequestProperty(String key, String value) {
+        if (connected) throw new IllegalStateException("Already connected");
+        requestHeaders.add(key, value);
+    }
+
+    @Override
+    public String getRequestProperty(String key) {
+        return requestHeaders.get(key);
+    }
+}
@@ -0,0 +1,172 @@
+package us.shandian.giga.get;
+
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only journal of the download progress, stored next to the mission metadata file.
+ * <p>
+ * Serializing the whole mission on every checkpoint is expensive, instead, only the changed
+ * block offsets and the downloaded amount are appended here. The journal is discarded every
+ * time the mission metadata is written, this also works as compaction.
+ * <p>
+ * Every record has a CRC32 checksum, the replay stops at the first torn or corrupt record.
+ */
+public class ProgressJournal {
+    private static final String TAG = "ProgressJournal";
+
+    public static final String EXTENSION = ".journal";
+
+    private static final byte TYPE_BLOCK = 1;
+    private static final byte TYPE_DONE = 2;
+
+    // type + current + position + value + checksum
+    static final int RECORD_SIZE = 1 + 4 + 4 + 8 + 4;
+
+    /**
+     * Amount of records before requesting a compaction
+     */
+    static final int COMPACT_THRESHOLD = 2048;
+
+    private final File file;
+    private final ByteBuffer record = ByteBuffer.allocate(RECORD_SIZE);
+    private final CRC32 crc = new CRC32();
+
+    private FileOutputStream out;
+    private int records;
+
+    ProgressJournal(@NonNull File metadata) {
+        file = getFile(metadata);
+    }
+
+    @NonNull
+    public static File getFile(@NonNull File metadata) {
+        return new File(metadata.getParentFile(), metadata.getName() + EXTENSION);
+    }
+
+    /**
+     * Append the offset of a block
+     *
+     * @return {@code true} if the journal should be compacted
+     */
+    synchronized boolean appendBlock(int current, int position, int offset) {
+        return append(TYPE_BLOCK, current, position, offset);
+    }
+
+    /**
+     * Append the amount of bytes downloaded
+     *
+     * @return {@code true} if the journal should be compacted
+     */
+    synchronized boolean appendDone(int current, long done) {
+        return append(TYPE_DONE, current, 0, done);
+    }
+
+    private boolean append(byte type, int current, int position, long value) {
+        try {
+            if (out == null) {
+                records = (int) (file.length() / RECORD_SIZE);
+                out = new FileOutputStream(file, true);
+            }
+
+            record.clear();
+            record.put(type).putInt(current).putInt(position).putLong(value);
+
+            crc.reset();
+            crc.update(record.array(), 0, record.position());
+            record.putInt((int) crc.getValue());
+
+            out.write(record.array(), 0, RECORD_SIZE);
+            records++;
+        } catch (IOException e) {
+            Log.e(TAG, "append() failed", e);
+            close();
+        }
+
+        return records >= COMPACT_THRESHOLD;
+    }
+
+    /**
+     * Discard all records, must be called after writing the mission metadata
+     */
+    synchronized void reset() {
+        close();
+        records = 0;
+
+        //noinspection ResultOfMethodCallIgnored
+        file.delete();
+    }
+
+    synchronized void close() {
+        if (out == null) return;
+
+        try {
+            out.close();
+        } catch (IOException e) {
+            // nothing to do
+        }
+
+        out = null;
+    }
+
+    /**
+     * Apply the progress stored in the journal of a mission loaded from its metadata file
+     *
+     * @param metadata the mission metadata file
+     * @param mission  the mission loaded from {@code metadata}
+     */
+    public static void replay(@NonNull File metadata, @NonNull DownloadMission mission) {
+        File file = getFile(metadata);
+        if (!file.exists()) return;
+
+        byte[] buffer = new byte[RECORD_SIZE];
+        ByteBuffer record = ByteBuffer.wrap(buffer);
+        CRC32 crc = new CRC32();
+        int count = 0;
+
+        try (DataInputStream in = new DataInputStream(new FileInputStream(file))) {
+            while (true) {
+                in.readFully(buffer);
+
+                crc.reset();
+                crc.update(buffer, 0, RECORD_SIZE - 4);
+
+                record.clear();
+                byte type = record.get();
+                int current = record.getInt();
+                int position = record.getInt();
+                long value = record.getLong();
+
+                if (record.getInt() != (int) crc.getValue()) {
+                    Log.w(TAG, "corrupt record found, stopping at " + count);
+                    break;
+                }
+
+                count++;
+
+                // records from a previous resource, stale
+                if (current != mission.current) continue;
+
+                if (type == TYPE_DONE) {
+                    mission.done = value;
+                } else if (type == TYPE_BLOCK && mission.blocks != null && position >= 0 && position < mission.blocks.length) {
+                    mission.blocks[position] = (int) value;
+                }
+            }
+        } catch (EOFException e) {
+            // end of the journal, or a torn record
+        } catch (IOException e) {
+            Log.e(TAG, "replay() failed, records applied: " + count, e);
+        }
+    }
+}
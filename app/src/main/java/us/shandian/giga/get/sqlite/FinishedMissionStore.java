@@ -27,7 +27,7 @@ public class FinishedMissionStore extends SQLiteOpenHelper {
     // TODO: use NewPipeSQLiteHelper ('s constants) when playlist branch is merged (?)
     private static final String DATABASE_NAME = "downloads.db";
 
-    private static final int DATABASE_VERSION = 4;
+    private static final int DATABASE_VERSION = 5;
 
     /**
      * The table name of download missions (old)
@@ -56,6 +56,13 @@ public class FinishedMissionStore extends SQLiteOpenHelper {
 
     private static final String KEY_PATH = "path";
 
+    /**
+     * The keys to the checksums computed while downloading, can be null
+     */
+    private static final String KEY_MD5 = "md5";
+
+    private static final String KEY_SHA1 = "sha1";
+
     /**
      * The statement to create the table
      */
@@ -66,6 +73,8 @@ public class FinishedMissionStore extends SQLiteOpenHelper {
                     KEY_DONE + " INTEGER NOT NULL, " +
                     KEY_TIMESTAMP + " INTEGER NOT NULL, " +
                     KEY_KIND + " TEXT NOT NULL, " +
+                    KEY_MD5 + " TEXT, " +
+                    KEY_SHA1 + " TEXT, " +
                     " UNIQUE(" + KEY_TIMESTAMP + ", " + KEY_PATH + "));";
 
 
@@ -121,6 +130,12 @@ public class FinishedMissionStore extends SQLiteOpenHelper {
 
             cursor.close();
             db.execSQL("DROP TABLE " + MISSIONS_TABLE_NAME_v2);
+            return;// the table was created with the latest columns
+        }
+
+        if (oldVersion == 4) {
+            db.execSQL("ALTER TABLE " + FINISHED_TABLE_NAME + " ADD COLUMN " + KEY_MD5 + " TEXT;");
+            db.execSQL("ALTER TABLE " + FINISHED_TABLE_NAME + " ADD COLUMN " + KEY_SHA1 + " TEXT;");
         }
     }
 
@@ -137,6 +152,8 @@ public class FinishedMissionStore extends SQLiteOpenHelper {
         values.put(KEY_DONE, downloadMission.length);
         values.put(KEY_TIMESTAMP, downloadMission.timestamp);
         values.put(KEY_KIND, String.valueOf(downloadMission.kind));
+        values.put(KEY_MD5, downloadMission.md5);
+        values.put(KEY_SHA1, downloadMission.sha1);
         return values;
     }
 
@@ -152,6 +169,8 @@ public class FinishedMissionStore extends SQLiteOpenHelper {
         mission.length = cursor.getLong(cursor.getColumnIndexOrThrow(KEY_DONE));
         mission.timestamp = cursor.getLong(cursor.getColumnIndexOrThrow(KEY_TIMESTAMP));
         mission.kind = kind.charAt(0);
+        mission.md5 = cursor.getString(cursor.getColumnIndexOrThrow(KEY_MD5));
+        mission.sha1 = cursor.getString(cursor.getColumnIndexOrThrow(KEY_SHA1));
 
         try {
             mission.storage = new StoredFileHelper(context,null, Uri.parse(path), "");
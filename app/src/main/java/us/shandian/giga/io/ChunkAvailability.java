@@ -0,0 +1,26 @@
+package us.shandian.giga.io;
+
+import java.io.IOException;
+
+/**
+ * A chunk of a file which is still being written by another thread, usually a download
+ */
+public interface ChunkAvailability {
+
+    /**
+     * Gets the position where the chunk will end once is completely written
+     *
+     * @return the absolute end position in the file, exclusive
+     */
+    long getEnd();
+
+    /**
+     * Block the caller until the data at the specified position is available
+     *
+     * @param position absolute position in the file
+     * @return the end of the available data, exclusive, always greater than {@code position}
+     * @throws IOException if the caller was interrupted while waiting, or the writing was
+     *                     stopped before reaching the position
+     */
+    long await(long position) throws IOException;
+}
@@ -1,8 +1,11 @@
 package us.shandian.giga.io;
 
+import androidx.annotation.Nullable;
+
 import org.schabi.newpipe.streams.io.SharpStream;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
 
 public class ChunkFileInputStream extends SharpStream {
     private static final int REPORT_INTERVAL = 256 * 1024;
@@ -15,19 +18,33 @@ public class ChunkFileInputStream extends SharpStream {
     private long progressReport;
     private final ProgressReport onProgress;
 
+    private final ChunkAvailability availability;
+    private long available;
+
     public ChunkFileInputStream(SharpStream target, long start, long end, ProgressReport callback) throws IOException {
+        this(target, start, end, callback, null);
+    }
+
+    /**
+     * @param availability if not {@code null}, the chunk is still being written and every read
+     *                     waits until the data is available
+     */
+    public ChunkFileInputStream(SharpStream target, long start, long end, ProgressReport callback,
+                                @Nullable ChunkAvailability availability) throws IOException {
         source = target;
         offset = start;
         length = end - start;
         position = 0;
         onProgress = callback;
         progressReport = REPORT_INTERVAL;
+        this.availability = availability;
+        this.available = availability == null ? end : start;
 
         if (length < 1) {
             source.close();
             throw new IOException("The chunk is empty or invalid");
         }
-        if (source.length() < end) {
+        if (availability == null && source.length() < end) {
             try {
                 throw new IOException(String.format("invalid file length. expected = %s  found = %s", end, source.length()));
             } finally {
@@ -52,6 +69,7 @@ public class ChunkFileInputStream extends SharpStream {
         if ((position + 1) > length) {
             return 0;
         }
+        ensureAvailable();
 
         int res = source.read();
         if (res >= 0) {
@@ -74,6 +92,7 @@ public class ChunkFileInputStream extends SharpStream {
         if (len == 0) {
             return 0;
         }
+        len = (int) Math.min(len, ensureAvailable() - offset - position);
 
         int res = source.read(b, off, len);
         position += res;
@@ -86,6 +105,68 @@ public class ChunkFileInputStream extends SharpStream {
         return res;
     }
 
+    @Override
+    public int read(ByteBuffer buffer) throws IOException {
+        if (!buffer.hasRemaining()) return 0;
+        if (position >= length) return -1;
+
+        int len = (int) Math.min(buffer.remaining(), length - position);
+        len = (int) Math.min(len, ensureAvailable() - offset - position);
+
+        // limit the buffer to the chunk, the source is read straight into the buffer
+        int limit = buffer.limit();
+        int res;
+        try {
+            buffer.limit(buffer.position() + len);
+            res = source.read(buffer);
+        } finally {
+            buffer.limit(limit);
+        }
+
+        if (res > 0) position += res;
+
+        if (onProgress != null && position > progressReport) {
+            onProgress.report(position);
+            progressReport = position + REPORT_INTERVAL;
+        }
+
+        return res;
+    }
+
+    @Override
+    public long transferTo(SharpStream target, long count) throws IOException {
+        count = Math.min(count, length - position);
+        long total = 0;
+
+        while (total < count) {
+            long amount = Math.min(count - total, ensureAvailable() - offset - position);
+            long res = source.transferTo(target, amount);
+            if (res < 1) break;
+
+            position += res;
+            total += res;
+        }
+
+        if (onProgress != null && position > progressReport) {
+            onProgress.report(position);
+            progressReport = position + REPORT_INTERVAL;
+        }
+
+        return total;
+    }
+
+    /**
+     * Wait until the data at the current position is written
+     *
+     * @return the end of the available data
+     */
+    private long ensureAvailable() throws IOException {
+        long pointer = offset + position;
+        if (pointer >= available) available = availability.await(pointer);
+
+        return available;
+    }
+
     @Override
     public long skip(long pos) throws IOException {
         pos = Math.min(pos + position, length);
@@ -99,9 +180,27 @@ public class ChunkFileInputStream extends SharpStream {
         long oldPos = position;
         position = pos;
 
+        if (onProgress != null && position > progressReport) {
+            onProgress.report(position);
+            progressReport = position + REPORT_INTERVAL;
+        }
+
         return pos - oldPos;
     }
 
+    @Override
+    public long length() {
+        return length;
+    }
+
+    @Override
+    public ByteBuffer map(long offset, long length) throws IOException {
+        // the chunk is still being written, the data not written yet would be read as zeros
+        if (availability != null) return null;
+
+        return source.map(this.offset + offset, Math.min(length, this.length - offset));
+    }
+
     @Override
     public long available() {
         return length - position;
@@ -5,16 +5,24 @@ import androidx.annotation.NonNull;
 import org.schabi.newpipe.streams.io.SharpStream;
 
 import java.io.File;
-import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.util.Objects;
 
+/**
+ * Writes over a file which is being read. The data is queued in a ring buffer and written by a
+ * background thread, so the producer keeps running while the disk is busy. The data that would
+ * overwrite parts of the file not read yet is kept in a temporal file until is safe to move it.
+ */
 public class CircularFileWriter extends SharpStream {
 
-    private final static int QUEUE_BUFFER_SIZE = 8 * 1024;// 8 KiB
+    private final static int DEFAULT_BUFFER_SIZE = 1024 * 1024;// 1 MiB
     private final static int COPY_BUFFER_SIZE = 128 * 1024; // 128 KiB
     private final static int NOTIFY_BYTES_INTERVAL = 64 * 1024;// 64 KiB
     private final static int THRESHOLD_AUX_LENGTH = 15 * 1024 * 1024;// 15 MiB
+    private final static long METRICS_INTERVAL = 1000000000L;// 1 second
 
     private final OffsetChecker callback;
 
@@ -26,15 +34,41 @@ public class CircularFileWriter extends SharpStream {
 
     private BufferedFile out;
     private BufferedFile aux;
+    private byte[] copyBuffer;
 
+    // pending data, starts at ringHead and can wrap around. Guarded by the ring itself
+    private final byte[] ring;
+    private int ringHead;
+    private int ringCount;
+    private long checkedEnd = -1;
+    private Exception flushError;
+    private boolean closing;
+
+    // metrics since the last report, also guarded by the ring
+    private long metricsTime;
+    private long flushedBytes;
+    private long stalledTime;
+
+    private final Thread flusher;
+
+    /**
+     * @param target  the output file
+     * @param temp    temporal file, only created if the output reaches the data not read yet
+     * @param checker reports the first offset of the output which is not read yet
+     */
     public CircularFileWriter(SharpStream target, File temp, OffsetChecker checker) throws IOException {
-        Objects.requireNonNull(checker);
+        this(target, temp, checker, DEFAULT_BUFFER_SIZE);
+    }
 
-        if (!temp.exists()) {
-            if (!temp.createNewFile()) {
-                throw new IOException("Cannot create a temporal file");
-            }
-        }
+    /**
+     * @param target     the output file
+     * @param temp       temporal file, only created if the output reaches the data not read yet
+     * @param checker    reports the first offset of the output which is not read yet
+     * @param bufferSize size of the ring buffer, once is full the writes wait for the disk
+     */
+    public CircularFileWriter(SharpStream target, File temp, OffsetChecker checker, int bufferSize) throws IOException {
+        Objects.requireNonNull(checker);
+        if (bufferSize < 1) throw new IllegalArgumentException("invalid buffer size: " + bufferSize);
 
         aux = new BufferedFile(temp);
         out = new BufferedFile(target);
@@ -42,6 +76,12 @@ public class CircularFileWriter extends SharpStream {
         callback = checker;
 
         reportPosition = NOTIFY_BYTES_INTERVAL;
+
+        ring = new byte[bufferSize];
+        metricsTime = System.nanoTime();
+
+        flusher = new Thread(this::flushLoop, "CircularFileWriter");
+        flusher.start();
     }
 
     private void flushAuxiliar(long amount) throws IOException {
@@ -49,26 +89,24 @@ public class CircularFileWriter extends SharpStream {
             return;
         }
 
-        out.flush();
-        aux.flush();
-
         boolean underflow = aux.offset < aux.length || out.offset < out.length;
-        byte[] buffer = new byte[COPY_BUFFER_SIZE];
+        if (copyBuffer == null) copyBuffer = new byte[COPY_BUFFER_SIZE];
+        byte[] buffer = copyBuffer;
 
-        aux.target.seek(0);
-        out.target.seek(out.length);
+        aux.getTarget().seek(0);
+        out.getTarget().seek(out.length);
 
         long length = amount;
         while (length > 0) {
             int read = (int) Math.min(length, Integer.MAX_VALUE);
-            read = aux.target.read(buffer, 0, Math.min(read, buffer.length));
+            read = aux.getTarget().read(buffer, 0, Math.min(read, buffer.length));
 
             if (read < 1) {
                 amount -= length;
                 break;
             }
 
-            out.writeProof(buffer, read);
+            out.writeProof(buffer, 0, read);
             length -= read;
         }
 
@@ -78,7 +116,7 @@ public class CircularFileWriter extends SharpStream {
                 if (aux.offset < amount) {
                     out.offset += aux.offset;
                     aux.offset = 0;
-                    out.target.seek(out.offset);
+                    out.getTarget().seek(out.offset);
                 } else {
                     aux.offset -= amount;
                     out.offset = out.length + amount;
@@ -106,24 +144,24 @@ public class CircularFileWriter extends SharpStream {
             length = aux.length;
             while (length > 0) {
                 int read = (int) Math.min(length, Integer.MAX_VALUE);
-                read = aux.target.read(buffer, 0, Math.min(read, buffer.length));
+                read = aux.getTarget().read(buffer, 0, Math.min(read, buffer.length));
 
-                aux.target.seek(writeOffset);
-                aux.writeProof(buffer, read);
+                aux.getTarget().seek(writeOffset);
+                aux.writeProof(buffer, 0, read);
 
                 writeOffset += read;
                 readOffset += read;
                 length -= read;
 
-                aux.target.seek(readOffset);
+                aux.getTarget().seek(readOffset);
             }
 
-            aux.target.setLength(aux.length);
+            aux.getTarget().setLength(aux.length);
             return;
         }
 
         if (aux.length > THRESHOLD_AUX_LENGTH) {
-            aux.target.setLength(THRESHOLD_AUX_LENGTH);// or setLength(0);
+            aux.getTarget().setLength(THRESHOLD_AUX_LENGTH);// or setLength(0);
         }
 
         aux.reset();
@@ -137,14 +175,13 @@ public class CircularFileWriter extends SharpStream {
      * @throws IOException if an I/O error occurs
      */
     public long finalizeFile() throws IOException {
+        drain();
         flushAuxiliar(aux.length);
 
-        out.flush();
-
         // change file length (if required)
         long length = Math.max(maxLengthKnown, out.length);
-        if (length != out.target.length()) {
-            out.target.setLength(length);
+        if (length != out.getTarget().length()) {
+            out.getTarget().setLength(length);
         }
 
         close();
@@ -157,6 +194,18 @@ public class CircularFileWriter extends SharpStream {
      */
     @Override
     public void close() {
+        synchronized (ring) {
+            closing = true;
+            ring.notifyAll();
+        }
+
+        try {
+            // wait until the data being written is done
+            flusher.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
         if (out != null) {
             out.close();
             out = null;
@@ -183,10 +232,174 @@ public class CircularFileWriter extends SharpStream {
             return;
         }
 
+        long checked = callback.check();
+
+        synchronized (ring) {
+            checkedEnd = checked;
+
+            while (len > 0) {
+                int tail = awaitFreeSpace();
+                int amount = Math.min(len, Math.min(ring.length - ringCount, ring.length - tail));
+
+                System.arraycopy(b, off, ring, tail, amount);
+                ringCount += amount;
+
+                off += amount;
+                len -= amount;
+            }
+
+            ring.notifyAll();
+        }
+    }
+
+    @Override
+    public void write(ByteBuffer buffer) throws IOException {
+        if (!buffer.hasRemaining()) {
+            return;
+        }
+
+        long checked = callback.check();
+
+        synchronized (ring) {
+            checkedEnd = checked;
+
+            while (buffer.hasRemaining()) {
+                int tail = awaitFreeSpace();
+                int amount = Math.min(buffer.remaining(), Math.min(ring.length - ringCount, ring.length - tail));
+
+                buffer.get(ring, tail, amount);
+                ringCount += amount;
+            }
+
+            ring.notifyAll();
+        }
+    }
+
+    /**
+     * Waits until the ring buffer has free space, the time spent here is the backpressure of the
+     * disk. Must be called holding the ring lock.
+     *
+     * @return index in the ring where the new data starts
+     */
+    private int awaitFreeSpace() throws IOException {
+        while (ringCount == ring.length) {
+            checkFlushError();
+            awaitFlusher();
+        }
+        checkFlushError();
+
+        return (ringHead + ringCount) % ring.length;
+    }
+
+    /**
+     * Waits until all queued data is written. Must be called before using the files from the
+     * producer thread.
+     */
+    private void drain() throws IOException {
+        synchronized (ring) {
+            while (ringCount > 0 && flushError == null && !closing) {
+                awaitFlusher();
+            }
+            checkFlushError();
+        }
+    }
+
+    private void awaitFlusher() throws IOException {
+        long start = System.nanoTime();
+        try {
+            ring.wait();
+        } catch (InterruptedException e) {
+            throw new InterruptedIOException("interrupted while waiting for the buffered data");
+        } finally {
+            stalledTime += System.nanoTime() - start;
+        }
+    }
+
+    private void checkFlushError() throws IOException {
+        if (closing) throw new IOException("The writer is closed");
+        if (flushError == null) return;
+        if (flushError instanceof IOException) throw (IOException) flushError;
+
+        throw new IOException(flushError);
+    }
+
+    private void flushLoop() {
+        while (true) {
+            int start;
+            int amount;
+            long checked;
+
+            synchronized (ring) {
+                try {
+                    while (ringCount < 1 && !closing) ring.wait();
+                } catch (InterruptedException e) {
+                    return;
+                }
+
+                // close() does not flush anything
+                if (closing) return;
+
+                start = ringHead;
+                amount = Math.min(ringCount, ring.length - ringHead);
+                checked = checkedEnd;
+            }
+
+            // the producer only writes into the free space of the ring, this part is untouched
+            try {
+                place(ring, start, amount, checked);
+            } catch (Exception e) {
+                synchronized (ring) {
+                    flushError = e;
+                    ring.notifyAll();
+                }
+                return;
+            }
+
+            synchronized (ring) {
+                ringHead = (ringHead + amount) % ring.length;
+                ringCount -= amount;
+                flushedBytes += amount;
+                ring.notifyAll();
+            }
+
+            reportMetrics();
+        }
+    }
+
+    private void reportMetrics() {
+        if (onProgress == null) return;
+
+        int buffered;
+        long throughput;
+        long stalled;
+
+        synchronized (ring) {
+            long now = System.nanoTime();
+            long elapsed = now - metricsTime;
+            if (elapsed < METRICS_INTERVAL) return;
+
+            buffered = ringCount;
+            throughput = flushedBytes * 1000000000L / elapsed;
+            stalled = stalledTime / 1000000L;
+
+            metricsTime = now;
+            flushedBytes = 0;
+            stalledTime = 0;
+        }
+
+        onProgress.reportBuffer(buffered, throughput, stalled);
+    }
+
+    /**
+     * Writes the data in the output file, or in the temporal file if the output file is not
+     * read yet at the current offset. Called by the flusher thread.
+     *
+     * @param end the last offset reported by the checker
+     */
+    private void place(byte[] b, int off, int len, long end) throws IOException {
         long available;
-        long offsetOut = out.getOffset();
-        long offsetAux = aux.getOffset();
-        long end = callback.check();
+        long offsetOut = out.offset;
+        long offsetAux = aux.offset;
 
         if (end == -1) {
             available = Integer.MAX_VALUE;
@@ -232,7 +445,7 @@ public class CircularFileWriter extends SharpStream {
         }
 
         if (onProgress != null) {
-            long absoluteOffset = out.getOffset() + aux.getOffset();
+            long absoluteOffset = out.offset + aux.offset;
             if (absoluteOffset > reportPosition) {
                 reportPosition = absoluteOffset + NOTIFY_BYTES_INTERVAL;
                 onProgress.report(absoluteOffset);
@@ -240,10 +453,39 @@ public class CircularFileWriter extends SharpStream {
         }
     }
 
+    @Override
+    public long transferFrom(FileChannel source, long position, long count) throws IOException {
+        drain();
+
+        long offsetOut = out.offset;
+        long end = callback.check();
+
+        boolean underflow = offsetOut < out.length;
+        boolean fits = end == -1 || end - offsetOut >= count;
+
+        if (aux.length > 0 || !fits || (underflow && out.length - offsetOut < count)) {
+            // the data must be split between the output and the temporal file
+            return super.transferFrom(source, position, count);
+        }
+
+        long transferred = out.transferProof(source, position, count);
+
+        out.offset += transferred;
+        if (out.offset > out.length) {
+            out.length = out.offset;
+        }
+
+        if (onProgress != null && out.offset > reportPosition) {
+            reportPosition = out.offset + NOTIFY_BYTES_INTERVAL;
+            onProgress.report(out.offset);
+        }
+
+        return transferred;
+    }
+
     @Override
     public void flush() throws IOException {
-        aux.flush();
-        out.flush();
+        drain();
 
         long total = out.length + aux.length;
         if (total > maxLengthKnown) {
@@ -253,12 +495,15 @@ public class CircularFileWriter extends SharpStream {
 
     @Override
     public long skip(long amount) throws IOException {
-        seek(out.getOffset() + aux.getOffset() + amount);
+        drain();
+        seek(out.offset + aux.offset + amount);
         return amount;
     }
 
     @Override
     public void rewind() throws IOException {
+        drain();
+
         if (onProgress != null) {
             onProgress.report(0);// rollback the whole progress
         }
@@ -270,11 +515,13 @@ public class CircularFileWriter extends SharpStream {
 
     @Override
     public void seek(long offset) throws IOException {
+        drain();
+
         long total = out.length + aux.length;
 
         if (offset == total) {
             // do not ignore the seek offset if a underflow exists
-            long relativeOffset = out.getOffset() + aux.getOffset();
+            long relativeOffset = out.offset + aux.offset;
             if (relativeOffset == total) {
                 return;
             }
@@ -370,74 +617,58 @@ public class CircularFileWriter extends SharpStream {
 
     class BufferedFile {
 
-        final SharpStream target;
+        private final File file;
+        private SharpStream target;
 
         private long offset;
         long length;
 
-        private byte[] queue = new byte[QUEUE_BUFFER_SIZE];
-        private int queueSize;
-
-        BufferedFile(File file) throws FileNotFoundException {
-            this.target = new FileStream(file);
+        BufferedFile(File file) {
+            this.file = file;
         }
 
         BufferedFile(SharpStream target) {
+            this.file = null;
             this.target = target;
         }
 
-        long getOffset() {
-            return offset + queueSize;// absolute offset in the file
+        /**
+         * Gets the stream of this file, if the file was never used is created now
+         */
+        SharpStream getTarget() throws IOException {
+            if (target == null) {
+                if (!file.exists() && !file.createNewFile()) {
+                    throw new IOException("Cannot create a temporal file");
+                }
+                target = new FileStream(file);
+            }
+
+            return target;
         }
 
         void close() {
-            queue = null;
-            target.close();
+            if (target != null) target.close();
         }
 
         void write(byte[] b, int off, int len) throws IOException {
-            while (len > 0) {
-                // if the queue is full, the method available() will flush the queue
-                int read = Math.min(available(), len);
+            // the ring buffer already groups the small writes
+            writeProof(b, off, len);
+            offset += len;
 
-                // enqueue incoming buffer
-                System.arraycopy(b, off, queue, queueSize, read);
-                queueSize += read;
-
-                len -= read;
-                off += read;
+            if (offset > length) {
+                length = offset;// save length
             }
-
-            long total = offset + queueSize;
-            if (total > length) {
-                length = total;// save length
-            }
-        }
-
-        void flush() throws IOException {
-            writeProof(queue, queueSize);
-            offset += queueSize;
-            queueSize = 0;
         }
 
         protected void rewind() throws IOException {
             offset = 0;
-            target.seek(0);
-        }
-
-        int available() throws IOException {
-            if (queueSize >= queue.length) {
-                flush();
-                return queue.length;
-            }
-
-            return queue.length - queueSize;
+            getTarget().seek(0);
         }
 
         void reset() throws IOException {
             offset = 0;
             length = 0;
-            target.seek(0);
+            getTarget().seek(0);
         }
 
         void seek(long absoluteOffset) throws IOException {
@@ -445,18 +676,18 @@ public class CircularFileWriter extends SharpStream {
                 return;// nothing to do
             }
             offset = absoluteOffset;
-            target.seek(absoluteOffset);
+            getTarget().seek(absoluteOffset);
         }
 
-        void writeProof(byte[] buffer, int length) throws IOException {
+        void writeProof(byte[] buffer, int offset, int length) throws IOException {
             if (onWriteError == null) {
-                target.write(buffer, 0, length);
+                getTarget().write(buffer, offset, length);
                 return;
             }
 
             while (true) {
                 try {
-                    target.write(buffer, 0, length);
+                    getTarget().write(buffer, offset, length);
                     return;
                 } catch (Exception e) {
                     if (!onWriteError.handle(e)) {
@@ -466,20 +697,33 @@ public class CircularFileWriter extends SharpStream {
             }
         }
 
+        long transferProof(FileChannel source, long position, long count) throws IOException {
+            while (true) {
+                try {
+                    return getTarget().transferFrom(source, position, count);
+                } catch (Exception e) {
+                    if (onWriteError == null || !onWriteError.handle(e)) {
+                        throw e;// give up
+                    }
+                    getTarget().seek(offset);// discard the partial transfer
+                }
+            }
+        }
+
         @NonNull
         @Override
         public String toString() {
             String absLength;
 
             try {
-                absLength = Long.toString(target.length());
+                absLength = target == null ? "[not created]" : Long.toString(target.length());
             } catch (IOException e) {
                 absLength = "[" + e.getLocalizedMessage() + "]";
             }
 
             return String.format(
-                    "offset=%s  length=%s  queue=%s  absLength=%s",
-                    offset, length, queueSize, absLength
+                    "offset=%s  length=%s  absLength=%s",
+                    offset, length, absLength
             );
         }
     }
@@ -0,0 +1,61 @@
+package us.shandian.giga.io;
+
+import androidx.annotation.NonNull;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Pool of direct buffers, allocating direct memory is expensive and is released only when the
+ * buffer is garbage collected.
+ */
+public class DirectBufferPool {
+    private final int bufferSize;
+    private final int maximum;
+
+    private final ConcurrentLinkedQueue<ByteBuffer> pool = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger pooled = new AtomicInteger(0);
+
+    /**
+     * @param bufferSize capacity of every buffer
+     * @param maximum    maximum amount of idle buffers to keep
+     */
+    public DirectBufferPool(int bufferSize, int maximum) {
+        this.bufferSize = bufferSize;
+        this.maximum = maximum;
+    }
+
+    /**
+     * Take a buffer from the pool, or allocate a new one if the pool is empty
+     *
+     * @return a cleared buffer
+     */
+    @NonNull
+    public ByteBuffer acquire() {
+        ByteBuffer buffer = pool.poll();
+
+        if (buffer == null) return ByteBuffer.allocateDirect(bufferSize);
+
+        pooled.decrementAndGet();
+        buffer.clear();
+        return buffer;
+    }
+
+    /**
+     * Give back a buffer, the buffer must not be used after calling this method
+     *
+     * @param buffer a buffer obtained from {@link #acquire()}
+     */
+    public void release(@NonNull ByteBuffer buffer) {
+        if (buffer.capacity() != bufferSize || !buffer.isDirect()) return;
+
+        if (pooled.incrementAndGet() > maximum) {
+            pooled.decrementAndGet();
+            return;
+        }
+
+        buffer.clear();
+        pool.offer(buffer);
+    }
+}
@@ -5,9 +5,12 @@ import androidx.annotation.NonNull;
 import org.schabi.newpipe.streams.io.SharpStream;
 
 import java.io.File;
+import java.io.FileDescriptor;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 
 /**
  * @author kapodamy
@@ -114,6 +117,18 @@ public class FileStream extends SharpStream {
         source.write(buffer, offset, count);
     }
 
+    @Override
+    public boolean canWriteAt() {
+        return true;
+    }
+
+    @Override
+    public void write(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            position += source.getChannel().write(buffer, position);
+        }
+    }
+
     @Override
     public void setLength(long length) throws IOException {
         source.setLength(length);
@@ -128,4 +143,20 @@ public class FileStream extends SharpStream {
     public long length() throws IOException {
         return source.length();
     }
+
+    @Override
+    public FileDescriptor getFileDescriptor() throws IOException {
+        return source.getFD();
+    }
+
+    @Override
+    public FileChannel getChannel() {
+        return source.getChannel();
+    }
+
+    @Override
+    public ByteBuffer map(long offset, long length) throws IOException {
+        if (length > Integer.MAX_VALUE) return null;
+        return source.getChannel().map(FileChannel.MapMode.READ_ONLY, offset, length);
+    }
 }
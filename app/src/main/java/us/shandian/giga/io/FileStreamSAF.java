@@ -9,9 +9,11 @@ import androidx.annotation.NonNull;
 
 import org.schabi.newpipe.streams.io.SharpStream;
 
+import java.io.FileDescriptor;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
 
 public class FileStreamSAF extends SharpStream {
@@ -55,6 +57,17 @@ public class FileStreamSAF extends SharpStream {
         return in.read(buffer, offset, count);
     }
 
+    @Override
+    public int read(ByteBuffer buffer) throws IOException {
+        // the channel of the output stream is write-only, read with the input stream channel
+        return in.getChannel().read(buffer);
+    }
+
+    @Override
+    public long read(ByteBuffer[] buffers) throws IOException {
+        return in.getChannel().read(buffers);
+    }
+
     @Override
     public long skip(long amount) throws IOException {
         return in.skip(amount);// ¿or use channel.position(channel.position() + amount)?
@@ -133,9 +146,30 @@ public class FileStreamSAF extends SharpStream {
         out.write(buffer, offset, count);
     }
 
+    @Override
+    public boolean canWriteAt() {
+        return true;
+    }
+
+    @Override
+    public void write(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+    }
+
     @Override
     public void setLength(long length) throws IOException {
-        channel.truncate(length);
+        long size = channel.size();
+
+        if (length < size) {
+            channel.truncate(length);
+        } else if (length > size) {
+            // truncate() can not grow the file, write the last byte instead. The file system
+            // creates a hole (if supported) instead of writing the whole gap
+            ByteBuffer last = ByteBuffer.allocate(1);
+            while (last.hasRemaining()) channel.write(last, length - 1);
+        }
     }
 
     @Override
@@ -147,4 +181,37 @@ public class FileStreamSAF extends SharpStream {
     public long length() throws IOException {
         return channel.size();
     }
+
+    @Override
+    public FileDescriptor getFileDescriptor() {
+        return file.getFileDescriptor();
+    }
+
+    @Override
+    public FileChannel getChannel() {
+        // shares the file offset with the input and output streams
+        return channel;
+    }
+
+    @Override
+    public long transferTo(SharpStream target, long count) throws IOException {
+        // the channel of the output stream is write-only, read with the input stream channel
+        FileChannel source = in.getChannel();
+        long position = source.position();
+        long transferred = target.transferFrom(source, position, count);
+        source.position(position + transferred);
+        return transferred;
+    }
+
+    @Override
+    public ByteBuffer map(long offset, long length) {
+        if (length > Integer.MAX_VALUE) return null;
+
+        try {
+            return in.getChannel().map(FileChannel.MapMode.READ_ONLY, offset, length);
+        } catch (IOException e) {
+            // not a regular file (pipe, virtual file of a cloud provider, etc.)
+            return null;
+        }
+    }
 }
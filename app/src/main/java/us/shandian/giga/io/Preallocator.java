@@ -0,0 +1,68 @@
+package us.shandian.giga.io;
+
+import android.system.ErrnoException;
+import android.system.Os;
+import android.system.OsConstants;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+
+import org.schabi.newpipe.streams.io.SharpStream;
+
+import java.io.FileDescriptor;
+import java.io.IOException;
+
+import static org.schabi.newpipe.BuildConfig.DEBUG;
+
+/**
+ * Sizes the output file before the download starts. Where the file system supports it, the
+ * disk space is reserved with {@code posix_fallocate()}, nothing is written and a lack of space
+ * is detected before downloading. Otherwise, the file is grown with {@link SharpStream#setLength(long)}
+ * which creates a sparse file on most file systems.
+ */
+public class Preallocator {
+    private static final String TAG = "Preallocator";
+
+    private Preallocator() {
+    }
+
+    /**
+     * Sets the length of the file and reserves the disk space for the given range
+     *
+     * @param stream the output file
+     * @param offset start of the range to reserve
+     * @param length final length of the file, the range to reserve ends here
+     * @return {@code true} if the disk space was reserved, {@code false} if the file was only
+     * resized
+     * @throws IOException if there is not enough space or an I/O error occurs
+     */
+    public static boolean preallocate(@NonNull SharpStream stream, long offset, long length)
+            throws IOException {
+        boolean reserved = false;
+
+        if (offset < length) {
+            FileDescriptor fd = stream.getFileDescriptor();
+            if (fd != null && fd.valid()) reserved = fallocate(fd, offset, length - offset);
+        }
+
+        // posix_fallocate() only grows the file, truncate if shorter
+        if (stream.length() != length) stream.setLength(length);
+
+        return reserved;
+    }
+
+    private static boolean fallocate(FileDescriptor fd, long offset, long length) throws IOException {
+        try {
+            Os.posix_fallocate(fd, offset, length);
+            return true;
+        } catch (ErrnoException e) {
+            if (e.errno == OsConstants.ENOSPC) {
+                throw new IOException("Not enough space to reserve " + length + " bytes", e);
+            }
+
+            // FAT32, sdcardfs and some document providers can not do this
+            if (DEBUG) Log.d(TAG, "posix_fallocate() not available, errno=" + e.errno);
+            return false;
+        }
+    }
+}
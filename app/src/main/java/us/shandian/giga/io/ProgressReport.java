@@ -8,4 +8,16 @@ public interface ProgressReport {
      * @param progress the new size
      */
     void report(long progress);
-}
\ No newline at end of file
+
+    /**
+     * Report the state of a buffered writer, called about once per second while the data is
+     * written
+     *
+     * @param buffered   amount of bytes waiting in the buffer
+     * @param throughput bytes per second written since the previous report
+     * @param stalled    milliseconds spent waiting for the disk since the previous report, the
+     *                   backpressure of the writer. If is near one second the disk is the bottleneck
+     */
+    default void reportBuffer(int buffered, long throughput, long stalled) {
+    }
+}
@@ -17,6 +17,7 @@ class Mp4FromDashMuxer extends Postprocessing {
     @Override
     int process(SharpStream out, SharpStream... sources) throws IOException {
         Mp4FromDashWriter muxer = new Mp4FromDashWriter(sources);
+        muxer.setParallelIndexing(Runtime.getRuntime().availableProcessors() > 1);
         muxer.parseSources();
         muxer.selectTracks(0, 0);
         muxer.build(out);
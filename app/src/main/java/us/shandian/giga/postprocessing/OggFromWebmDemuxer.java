@@ -35,6 +35,7 @@ class OggFromWebmDemuxer extends Postprocessing {
     @Override
     int process(SharpStream out, @NonNull SharpStream... sources) throws IOException {
         OggFromWebMWriter demuxer = new OggFromWebMWriter(sources[0], out);
+        demuxer.setPageBatching(true);
         demuxer.parseSource();
         demuxer.selectTrack(0);
         demuxer.build();
@@ -11,17 +11,21 @@ import java.io.IOException;
 import java.io.Serializable;
 
 import us.shandian.giga.get.DownloadMission;
+import us.shandian.giga.io.ChunkAvailability;
 import us.shandian.giga.io.ChunkFileInputStream;
 import us.shandian.giga.io.CircularFileWriter;
 import us.shandian.giga.io.CircularFileWriter.OffsetChecker;
 import us.shandian.giga.io.ProgressReport;
 
+import static org.schabi.newpipe.BuildConfig.DEBUG;
 import static us.shandian.giga.get.DownloadMission.ERROR_NOTHING;
 import static us.shandian.giga.get.DownloadMission.ERROR_POSTPROCESSING;
 import static us.shandian.giga.get.DownloadMission.ERROR_POSTPROCESSING_HOLD;
 
 public abstract class Postprocessing implements Serializable {
 
+    private static final String TAG = "Postprocessing";
+
     static transient final byte OK_RESULT = ERROR_NOTHING;
 
     public transient static final String ALGORITHM_TTML_CONVERTER = "ttml";
@@ -111,12 +115,19 @@ public abstract class Postprocessing implements Serializable {
         int result;
         long finalLength = -1;
 
-        mission.done = 0;
+        // if not null, the last resource is still downloading and the progress belongs to it
+        final ChunkAvailability availability = mission.getPsAvailability();
+
+        if (availability == null) {
+            mission.done = 0;
 
-        long length = mission.storage.length() - mission.offsets[0];
-        mission.length = Math.max(length, mission.nearLength);
+            long length = mission.storage.length() - mission.offsets[0];
+            mission.length = Math.max(length, mission.nearLength);
+        }
 
         final ProgressReport readProgress = (long position) -> {
+            if (mission.psState == 4) return;
+
             position -= mission.offsets[0];
             if (position > mission.done) mission.done = position;
         };
@@ -126,8 +137,15 @@ public abstract class Postprocessing implements Serializable {
             try {
                 for (int i = 0, j = 1; i < sources.length; i++, j++) {
                     SharpStream source = mission.storage.getStream();
-                    long end = j < sources.length ? mission.offsets[j] : source.length();
 
+                    if (j == sources.length && availability != null) {
+                        // read the last resource while is downloaded
+                        sources[i] = new ChunkFileInputStream(source, mission.offsets[i],
+                                availability.getEnd(), readProgress, availability);
+                        break;
+                    }
+
+                    long end = j < sources.length ? mission.offsets[j] : source.length();
                     sources[i] = new ChunkFileInputStream(source, mission.offsets[i], end, readProgress);
                 }
 
@@ -152,7 +170,20 @@ public abstract class Postprocessing implements Serializable {
 
                     try (CircularFileWriter out = new CircularFileWriter(
                             mission.storage.getStream(), tempFile, checker)) {
-                        out.onProgress = (long position) -> mission.done = position;
+                        out.onProgress = new ProgressReport() {
+                            @Override
+                            public void report(long position) {
+                                if (mission.psState != 4) mission.done = position;
+                            }
+
+                            @Override
+                            public void reportBuffer(int buffered, long throughput, long stalled) {
+                                if (DEBUG) {
+                                    Log.d(TAG, "buffered=" + buffered + " throughput=" + throughput
+                                            + "B/s stalled=" + stalled + "ms");
+                                }
+                            }
+                        };
 
                         out.onWriteError = err -> {
                             mission.psState = 3;
@@ -173,10 +204,15 @@ public abstract class Postprocessing implements Serializable {
 
                         result = process(out, sources);
 
+                        // the file can not be truncated while the download threads are writing
+                        if (result == OK_RESULT && availability != null)
+                            availability.await(availability.getEnd() - 1);
+
                         if (result == OK_RESULT)
                             finalLength = out.finalizeFile();
                     }
                 } else {
+                    if (availability != null) availability.await(availability.getEnd() - 1);
                     result = OK_RESULT;
                 }
             } finally {
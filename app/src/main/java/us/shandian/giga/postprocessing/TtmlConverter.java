@@ -14,7 +14,7 @@ class TtmlConverter extends Postprocessing {
     private static final String TAG = "TtmlConverter";
 
     TtmlConverter() {
-        // due how XmlPullParser works, the xml is fully loaded on the ram
+        // the subtitle is converted while is read, the srt is usually smaller than the ttml
         super(false, true, ALGORITHM_TTML_CONVERTER);
     }
 
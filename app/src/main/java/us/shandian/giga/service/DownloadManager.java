@@ -11,16 +11,27 @@ import androidx.recyclerview.widget.DiffUtil;
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 
+import okhttp3.ConnectionPool;
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+
+import us.shandian.giga.get.BlockDigests;
+import us.shandian.giga.get.ConnectionBudget;
 import us.shandian.giga.get.DownloadMission;
 import us.shandian.giga.get.FinishedMission;
 import us.shandian.giga.get.Mission;
+import us.shandian.giga.get.MissionProgress;
+import us.shandian.giga.get.ProgressJournal;
 import us.shandian.giga.get.sqlite.FinishedMissionStore;
 import org.schabi.newpipe.streams.io.StoredDirectoryHelper;
 import org.schabi.newpipe.streams.io.StoredFileHelper;
+import us.shandian.giga.util.TokenBucket;
 import us.shandian.giga.util.Utility;
 
 import static org.schabi.newpipe.BuildConfig.DEBUG;
@@ -38,6 +49,21 @@ public class DownloadManager {
     public static final String TAG_VIDEO = "video";
     private static final String DOWNLOADS_METADATA_FOLDER = "pending_downloads";
 
+    /**
+     * Maximum amount of connections of all missions using adaptive connections
+     */
+    private static final int MAXIMUM_ADAPTIVE_CONNECTIONS = 16;
+
+    /**
+     * Milliseconds between every progress update sent to the UI, until the preference is applied
+     */
+    static final int DEFAULT_PROGRESS_INTERVAL = 1000;
+
+    /**
+     * Maximum amount of idle connections kept alive for the next blocks and missions
+     */
+    private static final int MAXIMUM_IDLE_CONNECTIONS = 16;
+
     private final FinishedMissionStore mFinishedMissionStore;
 
     private final ArrayList<DownloadMission> mMissionsPending = new ArrayList<>();
@@ -45,12 +71,24 @@ public class DownloadManager {
 
     private final Handler mHandler;
     private final File mPendingMissionsDir;
+    private final ConnectionBudget mConnectionBudget = new ConnectionBudget(MAXIMUM_ADAPTIVE_CONNECTIONS);
+    private final TokenBucket mBandwidth = new TokenBucket(0);
+    private final ProgressPublisher mProgressPublisher;
+    private final OkHttpClient mHttpClient;
+    private final OkHttpClient mHttp2Client;
 
     private NetworkState mLastNetworkStatus = NetworkState.Unavailable;
 
     int mPrefMaxRetry;
     boolean mPrefMeteredDownloads;
     boolean mPrefQueueLimit;
+    boolean mPrefAdaptiveConnections;
+    int mPrefMaxActiveMissions;
+    long mPrefMaxBandwidth;
+    long mPrefMissionBandwidth;
+    boolean mPrefPipelinedPostprocessing;
+    boolean mPrefHttp2;
+    int mPrefProgressInterval = DEFAULT_PROGRESS_INTERVAL;
     private boolean mSelfMissionsControl;
 
     StoredDirectoryHelper mMainStorageAudio;
@@ -74,7 +112,30 @@ public class DownloadManager {
         mMissionsFinished = loadFinishedMissions();
         mPendingMissionsDir = getPendingDir(context);
 
+        // read timeout disabled, same as HttpURLConnection
+        mHttpClient = new OkHttpClient.Builder()
+                .connectionPool(new ConnectionPool(MAXIMUM_IDLE_CONNECTIONS, 5, TimeUnit.MINUTES))
+                .protocols(Collections.singletonList(Protocol.HTTP_1_1))
+                .connectTimeout(30, TimeUnit.SECONDS)
+                .readTimeout(0, TimeUnit.MILLISECONDS)
+                .build();
+        mHttp2Client = mHttpClient.newBuilder()
+                .protocols(Arrays.asList(Protocol.HTTP_2, Protocol.HTTP_1_1))
+                .build();
+
         loadPendingMissions(context);
+
+        mProgressPublisher = new ProgressPublisher(this, handler, mPrefProgressInterval);
+        mProgressPublisher.start();
+    }
+
+    /**
+     * Stop the progress updates and close the idle connections, must be called when the
+     * service is destroyed
+     */
+    void dispose() {
+        mProgressPublisher.interrupt();
+        mHttpClient.connectionPool().evictAll();
     }
 
     private static File getPendingDir(@NonNull Context context) {
@@ -147,14 +208,23 @@ public class DownloadManager {
         for (File sub : subs) {
             if (!sub.isFile()) continue;
             if (sub.getName().equals(".tmp")) continue;
+            if (sub.getName().endsWith(ProgressJournal.EXTENSION)) continue;
+            if (sub.getName().endsWith(BlockDigests.EXTENSION)) continue;
 
             DownloadMission mis = Utility.readFromFile(sub);
             if (mis == null || mis.isFinished() || mis.hasInvalidStorage()) {
                 //noinspection ResultOfMethodCallIgnored
                 sub.delete();
+                //noinspection ResultOfMethodCallIgnored
+                ProgressJournal.getFile(sub).delete();
+                //noinspection ResultOfMethodCallIgnored
+                BlockDigests.getFile(sub).delete();
                 continue;
             }
 
+            // apply the progress saved after the metadata was written
+            ProgressJournal.replay(sub, mis);
+
             mis.threads = new Thread[0];
 
             boolean exists;
@@ -167,7 +237,7 @@ public class DownloadManager {
                 exists = false;
             }
 
-            if (mis.isPsRunning()) {
+            if (mis.isPsRunning() || mis.isPsPipelined()) {
                 if (mis.psAlgorithm.worksOnSameFile) {
                     // Incomplete post-processing results in a corrupted download file
                     // because the selected algorithm works on the same file to save space.
@@ -185,6 +255,9 @@ public class DownloadManager {
                 // the progress is lost, reset mission state
                 if (mis.isInitialized())
                     mis.resetState(true, true, DownloadMission.ERROR_PROGRESS_LOST);
+
+                //noinspection ResultOfMethodCallIgnored
+                BlockDigests.getFile(sub).delete();
             }
 
             if (mis.psAlgorithm != null) {
@@ -195,6 +268,8 @@ public class DownloadManager {
             mis.metadata = sub;
             mis.maxRetry = mPrefMaxRetry;
             mis.mHandler = mHandler;
+            mis.httpClient = getHttpClient();
+            applyBandwidth(mis);
 
             mMissionsPending.add(mis);
         }
@@ -213,6 +288,10 @@ public class DownloadManager {
             mission.timestamp = System.currentTimeMillis();
             mission.mHandler = mHandler;
             mission.maxRetry = mPrefMaxRetry;
+            mission.connectionBudget = mPrefAdaptiveConnections ? mConnectionBudget : null;
+            mission.psPipelined = mPrefPipelinedPostprocessing;
+            mission.httpClient = getHttpClient();
+            applyBandwidth(mission);
 
             // create metadata file
             while (true) {
@@ -243,9 +322,7 @@ public class DownloadManager {
                 return;
             }
 
-            boolean start = !mPrefQueueLimit || getRunningMissionsCount() < 1;
-
-            if (canDownloadInCurrentNetwork() && start) {
+            if (canDownloadInCurrentNetwork() && canStartMission()) {
                 mission.start();
             }
         }
@@ -386,6 +463,27 @@ public class DownloadManager {
         return count;
     }
 
+    /**
+     * Apply the progress of all pending missions
+     *
+     * @param elapsed milliseconds since the previous call
+     * @return the progress of the running missions
+     */
+    ArrayList<MissionProgress> publishProgress(long elapsed) {
+        ArrayList<DownloadMission> missions;
+        synchronized (this) {
+            missions = new ArrayList<>(mMissionsPending);
+        }
+
+        ArrayList<MissionProgress> running = new ArrayList<>(missions.size());
+        for (DownloadMission mission : missions) {
+            MissionProgress progress = mission.publishProgress(elapsed);
+            if (mission.running) running.add(progress);
+        }
+
+        return running;
+    }
+
     public void pauseAllMissions(boolean force) {
         synchronized (this) {
             for (DownloadMission mission : mMissionsPending) {
@@ -435,25 +533,50 @@ public class DownloadManager {
             if (mMissionsPending.size() < 1) return false;
             if (!canDownloadInCurrentNetwork()) return false;
 
-            if (mPrefQueueLimit) {
-                for (DownloadMission mission : mMissionsPending)
-                    if (!mission.isFinished() && mission.running) return true;
-            }
+            int running = getRunningMissionsCount();
+            int maximum = getMaximumActiveMissions();
 
-            boolean flag = false;
-            for (DownloadMission mission : mMissionsPending) {
-                if (mission.running || !mission.enqueued || mission.isFinished())
-                    continue;
+            for (DownloadMission mission : getQueuedMissions()) {
+                if (maximum > 0 && running >= maximum) break;
 
                 resumeMission(mission);
                 if (mission.errCode != DownloadMission.ERROR_NOTHING) continue;
 
-                if (mPrefQueueLimit) return true;
-                flag = true;
+                running++;
             }
 
-            return flag;
+            return running > 0;
+        }
+    }
+
+    /**
+     * Missions waiting in the queue, sorted by priority. Missions with the same priority
+     * keep the order in which they were added.
+     */
+    private ArrayList<DownloadMission> getQueuedMissions() {
+        ArrayList<DownloadMission> queued = new ArrayList<>();
+
+        for (DownloadMission mission : mMissionsPending) {
+            if (mission.running || !mission.enqueued || mission.isFinished()) continue;
+            if (mission.isCorrupt() || mission.isPsRunning()) continue;
+
+            queued.add(mission);
         }
+
+        Collections.sort(queued, (a, b) -> Integer.compare(b.priority, a.priority));
+        return queued;
+    }
+
+    /**
+     * Maximum amount of missions running at the same time, zero means unlimited
+     */
+    private int getMaximumActiveMissions() {
+        return mPrefQueueLimit ? 1 : mPrefMaxActiveMissions;
+    }
+
+    private boolean canStartMission() {
+        int maximum = getMaximumActiveMissions();
+        return maximum < 1 || getRunningMissionsCount() < maximum;
     }
 
     public MissionIterator getIterator() {
@@ -491,25 +614,104 @@ public class DownloadManager {
         boolean isMetered = mPrefMeteredDownloads && mLastNetworkStatus == NetworkState.MeteredOperating;
 
         synchronized (this) {
+            if (!isMetered) {
+                runMissions();
+                return;
+            }
+
             for (DownloadMission mission : mMissionsPending) {
                 if (mission.isCorrupt() || mission.isPsRunning()) continue;
-
-                if (mission.running && isMetered) {
-                    mission.pause();
-                } else if (!mission.running && !isMetered && mission.enqueued) {
-                    mission.start();
-                    if (mPrefQueueLimit) break;
-                }
+                if (mission.running) mission.pause();
             }
         }
     }
 
+    /**
+     * Apply the maximum amount of active missions, the queued missions are started if the limit
+     * was raised. Nothing is started without the user interaction
+     *
+     * @return true if one or multiple missions are running, otherwise, false
+     */
+    boolean updateMaximumActiveMissions() {
+        if (!mSelfMissionsControl) return getRunningMissionsCount() > 0;
+        return runMissions();
+    }
+
+    /**
+     * Apply the progress interval preference, from the next progress update
+     */
+    void updateProgressInterval() {
+        mProgressPublisher.setInterval(mPrefProgressInterval);
+    }
+
     void updateMaximumAttempts() {
         synchronized (this) {
             for (DownloadMission mission : mMissionsPending) mission.maxRetry = mPrefMaxRetry;
         }
     }
 
+    /**
+     * Apply the adaptive connections preference, running missions are not affected until
+     * they are started again
+     */
+    void updateAdaptiveConnections() {
+        ConnectionBudget budget = mPrefAdaptiveConnections ? mConnectionBudget : null;
+
+        synchronized (this) {
+            for (DownloadMission mission : mMissionsPending) mission.connectionBudget = budget;
+        }
+    }
+
+    /**
+     * Apply the pipelined post-processing preference, missions already post-processing are
+     * not affected
+     */
+    void updatePipelinedPostprocessing() {
+        synchronized (this) {
+            for (DownloadMission mission : mMissionsPending)
+                mission.psPipelined = mPrefPipelinedPostprocessing;
+        }
+    }
+
+    /**
+     * Apply the HTTP/2 preference, running missions are not affected until they are started again
+     */
+    void updateHttpClient() {
+        OkHttpClient client = getHttpClient();
+
+        synchronized (this) {
+            for (DownloadMission mission : mMissionsPending) mission.httpClient = client;
+        }
+    }
+
+    /**
+     * HTTP/2 multiplexes all range requests over one connection, this saves handshakes but the
+     * server may limit the speed per connection, so is only used if enabled by the user
+     */
+    private OkHttpClient getHttpClient() {
+        return mPrefHttp2 ? mHttp2Client : mHttpClient;
+    }
+
+    /**
+     * Apply the bandwidth preferences, running missions are affected immediately
+     */
+    void updateBandwidth() {
+        mBandwidth.setRate(mPrefMaxBandwidth);
+
+        synchronized (this) {
+            for (DownloadMission mission : mMissionsPending) applyBandwidth(mission);
+        }
+    }
+
+    private void applyBandwidth(DownloadMission mission) {
+        mission.globalBandwidth = mBandwidth;
+
+        if (mission.bandwidth == null)
+            mission.bandwidth = new TokenBucket(mPrefMissionBandwidth);
+        else
+            mission.bandwidth.setRate(mPrefMissionBandwidth);
+    }
+
     public MissionState checkForExistingMission(StoredFileHelper storage) {
         synchronized (this) {
             DownloadMission pending = getPendingMission(storage);
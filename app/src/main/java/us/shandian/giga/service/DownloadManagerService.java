@@ -63,6 +63,7 @@ public class DownloadManagerService extends Service {
     public static final int MESSAGE_FINISHED = 2;
     public static final int MESSAGE_ERROR = 3;
     public static final int MESSAGE_DELETED = 4;
+    public static final int MESSAGE_PROGRESS = 5;
 
     private static final int FOREGROUND_NOTIFICATION_ID = 1000;
     private static final int DOWNLOADS_NOTIFICATION_ID = 1001;
@@ -180,6 +181,13 @@ public class DownloadManagerService extends Service {
         handlePreferenceChange(mPrefs, getString(R.string.downloads_cross_network));
         handlePreferenceChange(mPrefs, getString(R.string.downloads_maximum_retry));
         handlePreferenceChange(mPrefs, getString(R.string.downloads_queue_limit));
+        handlePreferenceChange(mPrefs, getString(R.string.downloads_adaptive_connections));
+        handlePreferenceChange(mPrefs, getString(R.string.downloads_maximum_active));
+        handlePreferenceChange(mPrefs, getString(R.string.downloads_maximum_bandwidth));
+        handlePreferenceChange(mPrefs, getString(R.string.downloads_mission_bandwidth));
+        handlePreferenceChange(mPrefs, getString(R.string.downloads_pipelined_postprocessing));
+        handlePreferenceChange(mPrefs, getString(R.string.downloads_http2));
+        handlePreferenceChange(mPrefs, getString(R.string.downloads_progress_interval));
 
         mLock = new LockManager(this);
     }
@@ -242,6 +250,7 @@ public class DownloadManagerService extends Service {
 
         mHandler = null;
         mManager.pauseAllMissions(true);
+        mManager.dispose();
     }
 
     @Override
@@ -252,6 +261,13 @@ public class DownloadManagerService extends Service {
     private boolean handleMessage(@NonNull Message msg) {
         if (mHandler == null) return true;
 
+        if (msg.what == MESSAGE_PROGRESS) {
+            // msg.obj holds the progress of all running missions
+            for (Callback observer : mEchoObservers)
+                observer.handleMessage(msg);
+            return true;
+        }
+
         DownloadMission mission = (DownloadMission) msg.obj;
 
         switch (msg.what) {
@@ -320,6 +336,30 @@ public class DownloadManagerService extends Service {
             mManager.mPrefMeteredDownloads = prefs.getBoolean(key, false);
         } else if (key.equals(getString(R.string.downloads_queue_limit))) {
             mManager.mPrefQueueLimit = prefs.getBoolean(key, true);
+            updateForegroundState(mManager.updateMaximumActiveMissions());
+        } else if (key.equals(getString(R.string.downloads_adaptive_connections))) {
+            mManager.mPrefAdaptiveConnections = prefs.getBoolean(key, false);
+            mManager.updateAdaptiveConnections();
+        } else if (key.equals(getString(R.string.downloads_maximum_active))) {
+            mManager.mPrefMaxActiveMissions = (int) getNumberPreference(prefs, key);
+            updateForegroundState(mManager.updateMaximumActiveMissions());
+        } else if (key.equals(getString(R.string.downloads_maximum_bandwidth))) {
+            mManager.mPrefMaxBandwidth = getNumberPreference(prefs, key) * 1024;
+            mManager.updateBandwidth();
+        } else if (key.equals(getString(R.string.downloads_mission_bandwidth))) {
+            mManager.mPrefMissionBandwidth = getNumberPreference(prefs, key) * 1024;
+            mManager.updateBandwidth();
+        } else if (key.equals(getString(R.string.downloads_pipelined_postprocessing))) {
+            mManager.mPrefPipelinedPostprocessing = prefs.getBoolean(key, false);
+            mManager.updatePipelinedPostprocessing();
+        } else if (key.equals(getString(R.string.downloads_http2))) {
+            mManager.mPrefHttp2 = prefs.getBoolean(key, false);
+            mManager.updateHttpClient();
+        } else if (key.equals(getString(R.string.downloads_progress_interval))) {
+            long interval = getNumberPreference(prefs, key);
+            mManager.mPrefProgressInterval = interval > 0
+                    ? (int) interval : DownloadManager.DEFAULT_PROGRESS_INTERVAL;
+            mManager.updateProgressInterval();
         } else if (key.equals(getString(R.string.download_path_video_key))) {
             mManager.mMainStorageVideo = loadMainVideoStorage();
         } else if (key.equals(getString(R.string.download_path_audio_key))) {
@@ -327,6 +367,18 @@ public class DownloadManagerService extends Service {
         }
     }
 
+    /**
+     * Read a list preference holding a number, zero is used as "unlimited"
+     */
+    private static long getNumberPreference(SharedPreferences prefs, String key) {
+        try {
+            String value = prefs.getString(key, "0");
+            return value == null ? 0 : Long.parseLong(value);
+        } catch (Exception e) {
+            return 0;
+        }
+    }
+
     public void updateForegroundState(boolean state) {
         if (state == mForeground) return;
 
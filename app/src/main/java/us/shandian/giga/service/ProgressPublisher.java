@@ -0,0 +1,67 @@
+package us.shandian.giga.service;
+
+import android.os.Handler;
+import android.os.SystemClock;
+
+import androidx.annotation.NonNull;
+
+import java.util.ArrayList;
+
+import us.shandian.giga.get.MissionProgress;
+
+/**
+ * Applies the progress counted by the download threads of every mission at a fixed rate, and
+ * publishes the progress of all running missions as a single
+ * {@link DownloadManagerService#MESSAGE_PROGRESS} message, holding a list of
+ * {@link MissionProgress}. This replaces the per-read notifications and the polling done by
+ * the UI.
+ */
+class ProgressPublisher extends Thread {
+    private final DownloadManager mManager;
+    private final Handler mHandler;
+    private volatile int mInterval;
+
+    /**
+     * @param manager  the manager holding the missions
+     * @param handler  where the progress messages are sent
+     * @param interval milliseconds between every publication
+     */
+    ProgressPublisher(@NonNull DownloadManager manager, @NonNull Handler handler, int interval) {
+        mManager = manager;
+        mHandler = handler;
+        mInterval = interval;
+
+        setName("ProgressPublisher");
+        setDaemon(true);
+    }
+
+    /**
+     * Change the time between every publication, applied after the next one
+     *
+     * @param interval milliseconds between every publication
+     */
+    void setInterval(int interval) {
+        mInterval = interval;
+    }
+
+    @Override
+    public void run() {
+        try {
+            long last = SystemClock.elapsedRealtime();
+
+            while (!isInterrupted()) {
+                sleep(mInterval);
+
+                long now = SystemClock.elapsedRealtime();
+                ArrayList<MissionProgress> running = mManager.publishProgress(now - last);
+                last = now;
+
+                if (running.size() > 0) {
+                    mHandler.obtainMessage(DownloadManagerService.MESSAGE_PROGRESS, running).sendToTarget();
+                }
+            }
+        } catch (InterruptedException e) {
+            // stopped
+        }
+    }
+}
@@ -51,6 +51,7 @@ import java.net.URI;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Iterator;
+import java.util.List;
 
 import io.reactivex.rxjava3.android.schedulers.AndroidSchedulers;
 import io.reactivex.rxjava3.core.Observable;
@@ -59,6 +60,7 @@ import io.reactivex.rxjava3.schedulers.Schedulers;
 import us.shandian.giga.get.DownloadMission;
 import us.shandian.giga.get.FinishedMission;
 import us.shandian.giga.get.Mission;
+import us.shandian.giga.get.MissionProgress;
 import us.shandian.giga.get.MissionRecoveryInfo;
 import org.schabi.newpipe.streams.io.StoredFileHelper;
 import us.shandian.giga.service.DownloadManager;
@@ -86,6 +88,8 @@ import static us.shandian.giga.get.DownloadMission.ERROR_SSL_EXCEPTION;
 import static us.shandian.giga.get.DownloadMission.ERROR_TIMEOUT;
 import static us.shandian.giga.get.DownloadMission.ERROR_UNKNOWN_EXCEPTION;
 import static us.shandian.giga.get.DownloadMission.ERROR_UNKNOWN_HOST;
+import static us.shandian.giga.get.DownloadMission.PRIORITY_HIGH;
+import static us.shandian.giga.get.DownloadMission.PRIORITY_NORMAL;
 
 public class MissionAdapter extends Adapter<ViewHolder> implements Handler.Callback {
     private static final SparseArray<String> ALGORITHMS = new SparseArray<>();
@@ -118,7 +122,6 @@ public class MissionAdapter extends Adapter<ViewHolder> implements Handler.Callb
     private final ArrayList<Mission> mHidden;
     private Snackbar mSnackbar;
 
-    private final Runnable rUpdater = this::updater;
     private final Runnable rDelete = this::deleteFinishedDownloads;
 
     private final CompositeDisposable compositeDisposable = new CompositeDisposable();
@@ -233,20 +236,26 @@ public class MissionAdapter extends Adapter<ViewHolder> implements Handler.Callb
         return mIterator.getSpecialAtItem(position);
     }
 
-    @SuppressLint("DefaultLocale")
     private void updateProgress(ViewHolderItem h) {
         if (h == null || h.item == null || h.item.mission instanceof FinishedMission) return;
 
-        DownloadMission mission = (DownloadMission) h.item.mission;
-        double done = mission.done;
-        long length = mission.getLength();
-        long now = System.currentTimeMillis();
+        updateProgress(h, ((DownloadMission) h.item.mission).getProgress());
+    }
+
+    @SuppressLint("DefaultLocale")
+    private void updateProgress(ViewHolderItem h, MissionProgress snapshot) {
+        if (h == null || h.item == null || h.item.mission != snapshot.mission) return;
+
+        DownloadMission mission = snapshot.mission;
+        double done = snapshot.done;
+        long length = snapshot.length;
         boolean hasError = mission.errCode != ERROR_NOTHING;
+        boolean recovering = snapshot.state == MissionProgress.STATE_RECOVERING;
 
         // hide on error
         // show if current resource length is not fetched
         // show if length is unknown
-        h.progress.setMarquee(mission.isRecovering() || !hasError && (!mission.isInitialized() || mission.unknownLength));
+        h.progress.setMarquee(recovering || !hasError && (!mission.isInitialized() || mission.unknownLength));
 
         double progress;
         if (mission.unknownLength) {
@@ -274,9 +283,9 @@ public class MissionAdapter extends Adapter<ViewHolder> implements Handler.Callb
             return;
         } else if (!mission.running) {
             state = mission.enqueued ? R.string.queued : R.string.paused;
-        } else if (mission.isPsRunning()) {
+        } else if (snapshot.state == MissionProgress.STATE_POSTPROCESSING) {
             state = R.string.post_processing;
-        } else if (mission.isRecovering()) {
+        } else if (recovering) {
             state = R.string.recovering;
         } else {
             state = 0;
@@ -289,24 +298,14 @@ public class MissionAdapter extends Adapter<ViewHolder> implements Handler.Callb
             return;
         }
 
-        if (h.lastTimestamp < 0) {
-            h.size.setText(sizeStr);
-            h.lastTimestamp = now;
-            h.lastDone = done;
-            return;
-        }
-
-        long deltaTime = now - h.lastTimestamp;
-        double deltaDone = done - h.lastDone;
-
-        if (h.lastDone > done) {
-            h.lastDone = done;
+        if (snapshot.speed < 0) {
+            // not published by the service, the speed is shown with the next update
             h.size.setText(sizeStr);
             return;
         }
 
-        if (deltaDone > 0 && deltaTime > 0) {
-            float speed = (float) ((deltaDone * 1000d) / deltaTime);
+        if (snapshot.speed > 0) {
+            float speed = snapshot.speed;
             float averageSpeed = speed;
 
             if (h.lastSpeedIdx < 0) {
@@ -331,8 +330,6 @@ public class MissionAdapter extends Adapter<ViewHolder> implements Handler.Callb
 
             h.size.setText(sizeStr.concat(etaStr).concat(speedStr));
 
-            h.lastTimestamp = now;
-            h.lastDone = done;
             h.lastSpeed[h.lastSpeedIdx++] = speed;
 
             if (h.lastSpeedIdx >= h.lastSpeed.length) h.lastSpeedIdx = 0;
@@ -435,6 +432,14 @@ public class MissionAdapter extends Adapter<ViewHolder> implements Handler.Callb
 
     @Override
     public boolean handleMessage(@NonNull Message msg) {
+        if (msg.what == DownloadManagerService.MESSAGE_PROGRESS) {
+            for (Object item : (List<?>) msg.obj) {
+                MissionProgress snapshot = (MissionProgress) item;
+                updateProgress(getViewHolder(snapshot.mission), snapshot);
+            }
+            return true;
+        }
+
         if (mStartButton != null && mPauseButton != null) {
             checkMasterButtonsVisibility();
         }
@@ -653,6 +658,10 @@ public class MissionAdapter extends Adapter<ViewHolder> implements Handler.Callb
                     mission.setEnqueued(flag);
                     updateProgress(h);
                     return true;
+                case R.id.prioritize:
+                    h.prioritize.setChecked(!h.prioritize.isChecked());
+                    mission.setPriority(h.prioritize.isChecked() ? PRIORITY_HIGH : PRIORITY_NORMAL);
+                    return true;
                 case R.id.retry:
                     if (mission.isPsRunning()) {
                         mission.psContinue(true);
@@ -681,6 +690,13 @@ public class MissionAdapter extends Adapter<ViewHolder> implements Handler.Callb
                 return true;
             case R.id.md5:
             case R.id.sha1:
+                // computed while downloading, this avoids reading the whole file again
+                final String checksum = id == R.id.md5 ? h.item.mission.md5 : h.item.mission.sha1;
+                if (checksum != null) {
+                    Utility.copyToClipboard(mContext, checksum);
+                    return true;
+                }
+
                 final NotificationManager notificationManager
                         = ContextCompat.getSystemService(mContext, NotificationManager.class);
                 final NotificationCompat.Builder progressNotificationBuilder
@@ -794,12 +810,10 @@ public class MissionAdapter extends Adapter<ViewHolder> implements Handler.Callb
 
     public void onResume() {
         mDeleter.resume();
-        mHandler.post(rUpdater);
     }
 
     public void onPaused() {
         mDeleter.pause();
-        mHandler.removeCallbacks(rUpdater);
     }
 
 
@@ -817,17 +831,6 @@ public class MissionAdapter extends Adapter<ViewHolder> implements Handler.Callb
         mDownloadManager.resumeMission(mission);
     }
 
-    private void updater() {
-        for (ViewHolderItem h : mPendingDownloadsItems) {
-            // check if the mission is running first
-            if (!((DownloadMission) h.item.mission).running) continue;
-
-            updateProgress(h);
-        }
-
-        mHandler.postDelayed(rUpdater, 1000);
-    }
-
     private boolean isNotFinite(double value) {
         return Double.isNaN(value) || Double.isInfinite(value);
     }
@@ -853,13 +856,12 @@ public class MissionAdapter extends Adapter<ViewHolder> implements Handler.Callb
         MenuItem pause;
         MenuItem open;
         MenuItem queue;
+        MenuItem prioritize;
         MenuItem showError;
         MenuItem delete;
         MenuItem source;
         MenuItem checksum;
 
-        long lastTimestamp = -1;
-        double lastDone;
         int lastSpeedIdx;
         float[] lastSpeed = new float[3];
         String estimatedTimeArrival = UNDEFINED_ETA;
@@ -888,6 +890,7 @@ public class MissionAdapter extends Adapter<ViewHolder> implements Handler.Callb
             pause = menu.findItem(R.id.pause);
             open = menu.findItem(R.id.menu_item_share);
             queue = menu.findItem(R.id.queue);
+            prioritize = menu.findItem(R.id.prioritize);
             showError = menu.findItem(R.id.error_message_view);
             delete = menu.findItem(R.id.delete);
             source = menu.findItem(R.id.source);
@@ -914,6 +917,7 @@ public class MissionAdapter extends Adapter<ViewHolder> implements Handler.Callb
             pause.setVisible(false);
             open.setVisible(false);
             queue.setVisible(false);
+            prioritize.setVisible(false);
             showError.setVisible(false);
             delete.setVisible(false);
             source.setVisible(false);
@@ -937,19 +941,21 @@ public class MissionAdapter extends Adapter<ViewHolder> implements Handler.Callb
                     }
                 } else {
                     if (mission.running) {
-                        pause.setVisible(true);
+                        pause.setVisible(!mission.isPsPipelined());
                     } else {
                         if (mission.errCode != ERROR_NOTHING) {
                             showError.setVisible(true);
                         }
 
                         queue.setChecked(mission.enqueued);
+                        prioritize.setChecked(mission.priority == PRIORITY_HIGH);
 
                         delete.setVisible(true);
 
                         boolean flag = !mission.isPsFailed() && mission.urls.length > 0;
                         start.setVisible(flag);
                         queue.setVisible(flag);
+                        prioritize.setVisible(flag);
                     }
                 }
             } else {
@@ -975,7 +981,6 @@ public class MissionAdapter extends Adapter<ViewHolder> implements Handler.Callb
 
         private void resetSpeedMeasure() {
             estimatedTimeArrival = UNDEFINED_ETA;
-            lastTimestamp = -1;
             lastSpeedIdx = -1;
         }
     }
@@ -0,0 +1,42 @@
+package us.shandian.giga.util;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counter updated by many threads without contending on a single value, similar to
+ * {@code java.util.concurrent.atomic.LongAdder} which is not available below API 24.
+ * <p>
+ * Every thread adds into its own cell, the cells are padded to avoid sharing a cache line.
+ * The cells are drained by a single reader.
+ */
+public class StripedCounter {
+    private static final int STRIPES = 8;// must be a power of two
+    private static final int PADDING = 8;// 64 bytes, a cache line
+
+    private final AtomicLongArray cells = new AtomicLongArray(STRIPES * PADDING);
+
+    public void add(long amount) {
+        int stripe = (int) Thread.currentThread().getId() & (STRIPES - 1);
+        cells.getAndAdd(stripe * PADDING, amount);
+    }
+
+    /**
+     * Gets the sum of all cells, the value can be inaccurate if another thread is adding
+     */
+    public long sum() {
+        long sum = 0;
+        for (int i = 0; i < STRIPES; i++) sum += cells.get(i * PADDING);
+
+        return sum;
+    }
+
+    /**
+     * Gets the sum of all cells and sets them to zero, no concurrent additions are lost
+     */
+    public long sumThenReset() {
+        long sum = 0;
+        for (int i = 0; i < STRIPES; i++) sum += cells.getAndSet(i * PADDING, 0);
+
+        return sum;
+    }
+}
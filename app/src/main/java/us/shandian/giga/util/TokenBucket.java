@@ -0,0 +1,103 @@
+package us.shandian.giga.util;
+
+import androidx.annotation.NonNull;
+
+/**
+ * Token bucket used to limit the bandwidth, every token is one byte.
+ * <p>
+ * Consumers can take more tokens than available, the debt is paid by sleeping the time needed
+ * to refill it. This way every read can have any size and concurrent consumers are served in
+ * the order they arrive. The burst is limited to one second of traffic.
+ */
+public class TokenBucket {
+    private static final long NANOS_PER_SECOND = 1000000000L;
+
+    private final Clock clock;
+
+    private long rate;
+    private double tokens;
+    private long lastRefill;
+
+    /**
+     * @param rate amount of bytes per second, zero means unlimited
+     */
+    public TokenBucket(long rate) {
+        this(rate, Clock.SYSTEM);
+    }
+
+    /**
+     * @param rate  amount of bytes per second, zero means unlimited
+     * @param clock source of the time and the sleeps
+     */
+    TokenBucket(long rate, @NonNull Clock clock) {
+        this.clock = clock;
+        lastRefill = clock.nanoTime();
+        setRate(rate);
+    }
+
+    /**
+     * Change the rate, consumers already sleeping are not affected
+     *
+     * @param rate amount of bytes per second, zero means unlimited
+     */
+    public synchronized void setRate(long rate) {
+        refill(clock.nanoTime());
+
+        this.rate = Math.max(rate, 0);
+        tokens = Math.min(tokens, this.rate);
+    }
+
+    public synchronized long getRate() {
+        return rate;
+    }
+
+    /**
+     * Take the specified amount of tokens, blocks the caller until the bucket has enough of them
+     *
+     * @param amount amount of bytes
+     * @throws InterruptedException if the thread was interrupted while waiting
+     */
+    public void consume(int amount) throws InterruptedException {
+        long wait;
+
+        synchronized (this) {
+            if (rate < 1) return;
+
+            refill(clock.nanoTime());
+            tokens -= amount;
+
+            if (tokens >= 0) return;
+            wait = (long) (-tokens * NANOS_PER_SECOND / rate);
+        }
+
+        clock.sleep(wait);
+    }
+
+    private void refill(long now) {
+        if (rate > 0) {
+            tokens = Math.min(rate, tokens + (now - lastRefill) * (double) rate / NANOS_PER_SECOND);
+        }
+        lastRefill = now;
+    }
+
+    /**
+     * Source of the time, replaceable to test the bucket without waiting
+     */
+    interface Clock {
+        Clock SYSTEM = new Clock() {
+            @Override
+            public long nanoTime() {
+                return System.nanoTime();
+            }
+
+            @Override
+            public void sleep(long nanos) throws InterruptedException {
+                Thread.sleep(nanos / 1000000L, (int) (nanos % 1000000L));
+            }
+        };
+
+        long nanoTime();
+
+        void sleep(long nanos) throws InterruptedException;
+    }
+}
@@ -71,14 +71,20 @@ public class Utility {
         }
     }
 
-    public static void writeToFile(@NonNull File file, @NonNull Serializable serializable) {
+    /**
+     * Serialize an object into a file
+     *
+     * @return {@code true} if the object was written, otherwise, {@code false}
+     */
+    public static boolean writeToFile(@NonNull File file, @NonNull Serializable serializable) {
 
         try (ObjectOutputStream objectOutputStream = new ObjectOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
             objectOutputStream.writeObject(serializable);
         } catch (Exception e) {
-            //nothing to do
+            return false;
         }
-        //nothing to do
+
+        return true;
     }
 
     @Nullable
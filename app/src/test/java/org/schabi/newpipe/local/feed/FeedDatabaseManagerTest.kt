@@ -0,0 +1,98 @@
+package org.schabi.newpipe.local.feed
+
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertNotEquals
+import org.junit.Assert.assertTrue
+import org.junit.Test
+import org.schabi.newpipe.extractor.localization.DateWrapper
+import org.schabi.newpipe.extractor.stream.StreamInfoItem
+import org.schabi.newpipe.extractor.stream.StreamType
+import java.time.OffsetDateTime
+import java.time.ZoneOffset
+
+class FeedDatabaseManagerTest {
+    private fun item(
+        url: String,
+        title: String = "Title",
+        viewCount: Long = 100,
+        uploadDate: DateWrapper? = null
+    ): StreamInfoItem {
+        return StreamInfoItem(0, url, title, StreamType.VIDEO_STREAM).apply {
+            this.viewCount = viewCount
+            this.uploadDate = uploadDate
+            duration = 60
+        }
+    }
+
+    private val date = OffsetDateTime.of(2022, 3, 4, 10, 0, 0, 0, ZoneOffset.UTC)
+
+    @Test
+    fun `Same items have the same hash`() {
+        val items = listOf(item("a", uploadDate = DateWrapper(date)), item("b"))
+        val sameItems = listOf(item("a", uploadDate = DateWrapper(date)), item("b"))
+
+        assertEquals(
+            FeedDatabaseManager.hashItems(items),
+            FeedDatabaseManager.hashItems(sameItems)
+        )
+    }
+
+    @Test
+    fun `View counts and approximated dates are not hashed`() {
+        val items = listOf(item("a", uploadDate = DateWrapper(date, true)))
+        val reloaded = listOf(
+            item("a", viewCount = 250, uploadDate = DateWrapper(date.plusHours(5), true))
+        )
+
+        assertEquals(
+            FeedDatabaseManager.hashItems(items),
+            FeedDatabaseManager.hashItems(reloaded)
+        )
+    }
+
+    @Test
+    fun `New and edited items change the hash`() {
+        val items = listOf(item("a"), item("b"))
+        val hash = FeedDatabaseManager.hashItems(items)
+
+        assertNotEquals(hash, FeedDatabaseManager.hashItems(listOf(item("c")) + items))
+        assertNotEquals(hash, FeedDatabaseManager.hashItems(listOf(item("a", "Edited"), item("b"))))
+        assertNotEquals(
+            hash,
+            FeedDatabaseManager.hashItems(listOf(item("a", uploadDate = DateWrapper(date)), item("b")))
+        )
+    }
+
+    @Test
+    fun `Subscriptions are checked again according to how often they upload`() {
+        val daily = (0L..9L).map { date.minusDays(it) }
+        val nextCheck = FeedDatabaseManager.nextCheck(daily, date)
+
+        assertTrue(nextCheck.isAfter(date.plusHours(6)))
+        assertTrue(nextCheck.isBefore(date.plusHours(8)))
+
+        val inactive = (0L..9L).map { date.minusDays(30 + it) }
+        assertTrue(FeedDatabaseManager.nextCheck(inactive, date).isAfter(nextCheck))
+    }
+
+    @Test
+    fun `Check intervals are bounded`() {
+        val everyMinute = (0L..9L).map { date.minusMinutes(it) }
+        assertEquals(date.plusMinutes(15), FeedDatabaseManager.nextCheck(everyMinute, date))
+
+        assertEquals(date.plusDays(2), FeedDatabaseManager.nextCheck(emptyList(), date))
+        assertEquals(date.plusDays(2), FeedDatabaseManager.nextCheck(listOf(date), date))
+    }
+
+    @Test
+    fun `Upcoming streams are checked once they are out`() {
+        val premiere = date.plusHours(1)
+        val uploads = listOf(premiere, date.minusDays(40), date.minusDays(80))
+
+        assertEquals(premiere, FeedDatabaseManager.nextCheck(uploads, date))
+        assertEquals(
+            date.plusMinutes(15),
+            FeedDatabaseManager.nextCheck(listOf(date.plusMinutes(1)), date)
+        )
+    }
+}
@@ -0,0 +1,40 @@
+package org.schabi.newpipe.local.feed.service
+
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertTrue
+import org.junit.Test
+import java.util.concurrent.TimeUnit
+
+class BatchSizeTunerTest {
+    private fun millis(millis: Long) = TimeUnit.MILLISECONDS.toNanos(millis)
+
+    @Test
+    fun `Batches are sized to take about the target time`() {
+        val tuner = BatchSizeTuner(initialSize = 20, targetNanos = millis(100))
+        assertEquals(20, tuner.size)
+
+        tuner.onBatchWritten(20, millis(40))
+        assertEquals(50, tuner.size)
+    }
+
+    @Test
+    fun `A single slow batch does not reset the size`() {
+        val tuner = BatchSizeTuner(initialSize = 20, targetNanos = millis(100))
+        repeat(5) { tuner.onBatchWritten(tuner.size, millis(2) * tuner.size) }
+        assertEquals(50, tuner.size)
+
+        tuner.onBatchWritten(50, millis(1000))
+        assertTrue(tuner.size in 10 until 50)
+    }
+
+    @Test
+    fun `Sizes are bounded`() {
+        val tuner = BatchSizeTuner(minSize = 5, maxSize = 200, targetNanos = millis(100))
+
+        tuner.onBatchWritten(20, 0)
+        assertEquals(200, tuner.size)
+
+        repeat(10) { tuner.onBatchWritten(tuner.size, millis(1000) * tuner.size) }
+        assertEquals(5, tuner.size)
+    }
+}
@@ -0,0 +1,82 @@
+package org.schabi.newpipe.streams;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+
+import us.shandian.giga.io.FileStream;
+
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+public class Mp4FromDashWriterTest {
+    // 3 hours of 30 fps video and 128 kbps audio, only the amount of samples matters so the
+    // samples are tiny
+    private static final int SAMPLE_SIZE = 16;
+    private static final long VIDEO_SAMPLES = 3 * 60 * 60 * 30;
+    private static final long AUDIO_SAMPLES = 3 * 60 * 60 * 90000 / 1920;
+
+    // the packed sample tables, including their growth and the chunk offsets
+    private static final long BYTES_PER_SAMPLE = 32;
+    // the moov box and the reusable buffers
+    private static final long FIXED_BYTES = 8 * 1024 * 1024;
+
+    private File video;
+    private File audio;
+    private File output;
+
+    @Before
+    public void setUp() throws IOException {
+        video = File.createTempFile("video", ".mp4");
+        audio = File.createTempFile("audio", ".m4a");
+        output = File.createTempFile("output", ".mp4");
+
+        SyntheticMp4.write(video, false, VIDEO_SAMPLES * SAMPLE_SIZE, SAMPLE_SIZE, 150, 1);
+        SyntheticMp4.write(audio, true, AUDIO_SAMPLES * SAMPLE_SIZE, SAMPLE_SIZE, 234, 2);
+    }
+
+    @After
+    public void tearDown() {
+        //noinspection ResultOfMethodCallIgnored
+        video.delete();
+        //noinspection ResultOfMethodCallIgnored
+        audio.delete();
+        //noinspection ResultOfMethodCallIgnored
+        output.delete();
+    }
+
+    @Test
+    public void buildDoesNotAllocatePerSample() throws IOException {
+        final com.sun.management.ThreadMXBean threads =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        assumeTrue(threads.isThreadAllocatedMemorySupported());
+        threads.setThreadAllocatedMemoryEnabled(true);
+
+        final Mp4FromDashWriter muxer =
+                new Mp4FromDashWriter(new FileStream(video), new FileStream(audio));
+        muxer.parseSources();
+        muxer.selectTracks(0, 0);
+
+        try (FileStream out = new FileStream(output)) {
+            final long thread = Thread.currentThread().getId();
+            final long start = threads.getThreadAllocatedBytes(thread);
+
+            muxer.build(out);
+
+            final long allocated = threads.getThreadAllocatedBytes(thread) - start;
+            final long bound = (VIDEO_SAMPLES + AUDIO_SAMPLES) * BYTES_PER_SAMPLE + FIXED_BYTES;
+            assertTrue("allocated " + allocated + " bytes, expected less than " + bound,
+                    allocated < bound);
+
+            // the smallest samples are half of the average size
+            final long minimumData = (VIDEO_SAMPLES + AUDIO_SAMPLES) * (SAMPLE_SIZE / 2);
+            assertTrue(out.length() > minimumData);
+        } finally {
+            muxer.close();
+        }
+    }
+}
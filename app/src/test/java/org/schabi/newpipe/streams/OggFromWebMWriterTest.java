@@ -0,0 +1,51 @@
+package org.schabi.newpipe.streams;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+public class OggFromWebMWriterTest {
+
+    // the Ogg CRC32 calculated bit by bit, as described in the specification
+    private static int referenceCrc32(final int initialCrc, final byte[] buffer, final int offset,
+                                      final int size) {
+        int crc = initialCrc;
+        for (int i = offset; i < offset + size; i++) {
+            crc ^= (buffer[i] & 0xff) << 24;
+            for (int j = 0; j < 8; j++) {
+                crc = crc < 0 ? (crc << 1) ^ 0x04c11db7 : crc << 1;
+            }
+        }
+        return crc;
+    }
+
+    @Test
+    public void testCrc32() {
+        final byte[] buffer = new byte[4096];
+        new Random(1).nextBytes(buffer);
+
+        // every remainder of the 8 bytes blocks, at unaligned offsets
+        for (int size = 0; size < 64; size++) {
+            for (int offset = 0; offset < 9; offset++) {
+                assertEquals(referenceCrc32(0, buffer, offset, size),
+                        OggFromWebMWriter.calcCrc32(0, buffer, offset, size));
+            }
+        }
+
+        assertEquals(referenceCrc32(0, buffer, 0, buffer.length),
+                OggFromWebMWriter.calcCrc32(0, buffer, 0, buffer.length));
+    }
+
+    @Test
+    public void testCrc32Continued() {
+        final byte[] buffer = new byte[1000];
+        new Random(2).nextBytes(buffer);
+
+        // the page checksum is calculated over the header first and then over the data
+        final int header = OggFromWebMWriter.calcCrc32(0, buffer, 0, 27);
+        assertEquals(referenceCrc32(0, buffer, 0, buffer.length),
+                OggFromWebMWriter.calcCrc32(header, buffer, 27, buffer.length - 27));
+    }
+}
@@ -0,0 +1,109 @@
+package org.schabi.newpipe.streams;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.schabi.newpipe.streams.io.SharpStream;
+import org.xmlpull.v1.XmlPullParserException;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import us.shandian.giga.io.FileStream;
+
+import static org.junit.Assert.assertEquals;
+
+public class SrtFromTtmlWriterTest {
+    private static final String TTML = "<?xml version=\"1.0\" encoding=\"utf-8\" ?>\n"
+            + "<tt xml:lang=\"en\" xmlns=\"http://www.w3.org/ns/ttml\">\n"
+            + "<head><styling><style xml:id=\"s1\" tts:color=\"white\"/></styling></head>\n"
+            + "<body style=\"s1\">\n"
+            + "<div>\n"
+            + "<p begin=\"00:00:01.500\" end=\"00:00:03.000\" style=\"s1\">Hello\n"
+            + "   world<br />second &amp; line</p>\n"
+            + "<p begin=\"00:00:03.000\" end=\"00:00:04.250\"></p>\n"
+            + "<p begin=\"00:00:04.250\" end=\"00:00:05.000\">a<span>ignored</span>b</p>\n"
+            + "</div>\n"
+            + "</body>\n"
+            + "</tt>\n";
+
+    private static final String SRT = "0\r\n"
+            + "00:00:01,500 --> 00:00:03,000\r\n"
+            + "Hello world\r\nsecond & line\r\n"
+            + "\r\n"
+            + "1\r\n"
+            + "00:00:04,250 --> 00:00:05,000\r\n"
+            + "ab\r\n"
+            + "\r\n";
+
+    private File ttml;
+    private File srt;
+
+    @Before
+    public void setUp() throws IOException {
+        ttml = File.createTempFile("subtitle", ".ttml");
+        srt = File.createTempFile("subtitle", ".srt");
+        Files.write(ttml.toPath(), TTML.getBytes(StandardCharsets.UTF_8));
+    }
+
+    @After
+    public void tearDown() {
+        //noinspection ResultOfMethodCallIgnored
+        ttml.delete();
+        //noinspection ResultOfMethodCallIgnored
+        srt.delete();
+    }
+
+    private String readSrt(final File file) throws IOException {
+        return new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void convertsTheFrames() throws IOException, XmlPullParserException {
+        try (SharpStream in = new FileStream(ttml); SharpStream out = new FileStream(srt)) {
+            new SrtFromTtmlWriter(out, true).build(in);
+        }
+
+        assertEquals(SRT, readSrt(srt));
+    }
+
+    @Test
+    public void keepsEmptyFrames() throws IOException, XmlPullParserException {
+        try (SharpStream in = new FileStream(ttml); SharpStream out = new FileStream(srt)) {
+            new SrtFromTtmlWriter(out, false).build(in);
+        }
+
+        final String expected = "0\r\n"
+                + "00:00:01,500 --> 00:00:03,000\r\n"
+                + "Hello world\r\nsecond & line\r\n"
+                + "\r\n"
+                + "1\r\n"
+                + "00:00:03,000 --> 00:00:04,250\r\n"
+                + "\r\n"
+                + "\r\n"
+                + "2\r\n"
+                + "00:00:04,250 --> 00:00:05,000\r\n"
+                + "ab\r\n"
+                + "\r\n";
+        assertEquals(expected, readSrt(srt));
+    }
+
+    @Test
+    public void convertsSeveralSubtitles() throws IOException, XmlPullParserException {
+        final File second = File.createTempFile("subtitle", ".srt");
+
+        try (SharpStream in1 = new FileStream(ttml); SharpStream in2 = new FileStream(ttml);
+             SharpStream out1 = new FileStream(srt); SharpStream out2 = new FileStream(second)) {
+            SrtFromTtmlWriter.buildAll(new SharpStream[]{in1, in2},
+                    new SharpStream[]{out1, out2}, true);
+
+            assertEquals(SRT, readSrt(srt));
+            assertEquals(SRT, readSrt(second));
+        } finally {
+            //noinspection ResultOfMethodCallIgnored
+            second.delete();
+        }
+    }
+}
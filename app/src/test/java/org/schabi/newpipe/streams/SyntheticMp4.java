@@ -0,0 +1,254 @@
+package org.schabi.newpipe.streams;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Random;
+
+/**
+ * Writes fragmented MP4 (DASH) files with a single track, the same layout served by YouTube:
+ * {@code ftyp moov (moof mdat)*}. The sample data is random, only the boxes read by
+ * {@code Mp4DashReader} are meaningful. Video tracks have composition time offsets
+ * (reordered frames).
+ * <p>
+ * Also used by the benchmark module.
+ */
+public final class SyntheticMp4 {
+    private static final int TIMESCALE = 90000;
+    private static final int NON_SYNC_SAMPLE = 0x10000;
+
+    private SyntheticMp4() {
+    }
+
+    /**
+     * @param file         where the track is written
+     * @param audio        {@code true} for a sound track, otherwise a video track
+     * @param length       approximated amount of sample data
+     * @param sampleSize   average sample size, the real size changes on every sample
+     * @param perFragment  amount of samples of every fragment
+     * @param seed         seed of the sample data and sizes
+     * @throws IOException if an I/O error occurs
+     */
+    public static void write(final File file, final boolean audio, final long length,
+                      final int sampleSize, final int perFragment, final long seed)
+            throws IOException {
+        final Random random = new Random(seed);
+        final byte[] data = new byte[sampleSize * 2];
+        random.nextBytes(data);
+
+        final int duration = audio ? 1920 : 3000;
+        final long samples = length / sampleSize;
+
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(file), 256 * 1024))) {
+            writeFtyp(out);
+            writeMoov(out, audio, samples * duration);
+
+            final int[] sizes = new int[perFragment];
+            long time = 0;
+            int sequence = 1;
+
+            for (long done = 0; done < samples; done += perFragment) {
+                final int count = (int) Math.min(perFragment, samples - done);
+                int mdat = 0;
+
+                for (int i = 0; i < count; i++) {
+                    sizes[i] = sampleSize / 2 + random.nextInt(sampleSize);
+                    mdat += sizes[i];
+                }
+
+                writeMoof(out, sequence++, time, count, sizes, duration, !audio);
+                out.writeInt(8 + mdat);
+                out.writeInt(0x6D646174); // mdat
+
+                for (int i = 0; i < count; i++) {
+                    out.write(data, random.nextInt(data.length - sizes[i]), sizes[i]);
+                }
+
+                time += (long) count * duration;
+            }
+        }
+    }
+
+    private static void writeFtyp(final DataOutputStream out) throws IOException {
+        out.writeInt(24);
+        out.writeInt(0x66747970); // ftyp
+        out.writeInt(0x64617368); // dash
+        out.writeInt(0);
+        out.writeInt(0x69736F36); // iso6
+        out.writeInt(0x6D703431); // mp41
+    }
+
+    private static void writeMoov(final DataOutputStream out, final boolean audio,
+                                  final long duration) throws IOException {
+        final Box moov = new Box(0x6D6F6F76); // moov
+
+        final Box mvhd = new Box(0x6D766864); // mvhd
+        mvhd.out.writeInt(0); // version & flags
+        mvhd.out.writeInt(0); // creation time
+        mvhd.out.writeInt(0); // modification time
+        mvhd.out.writeInt(TIMESCALE);
+        mvhd.out.writeInt((int) duration);
+        mvhd.out.write(new byte[76]); // rate, volume, reserved, matrix and predefined
+        mvhd.out.writeInt(2); // next track id
+        moov.add(mvhd);
+
+        final Box tkhd = new Box(0x746B6864); // tkhd
+        tkhd.out.writeInt(0x03); // version & flags
+        tkhd.out.writeInt(0); // creation time
+        tkhd.out.writeInt(0); // modification time
+        tkhd.out.writeInt(1); // track id
+        tkhd.out.writeInt(0); // reserved
+        tkhd.out.writeInt((int) duration);
+        tkhd.out.write(new byte[8]); // reserved
+        tkhd.out.writeShort(0); // layer
+        tkhd.out.writeShort(0); // alternate group
+        tkhd.out.writeShort(audio ? 0x0100 : 0); // volume
+        tkhd.out.writeShort(0); // reserved
+        tkhd.out.write(new byte[36]); // matrix
+        tkhd.out.writeInt(audio ? 0 : 1920 << 16);
+        tkhd.out.writeInt(audio ? 0 : 1080 << 16);
+
+        final Box mdhd = new Box(0x6D646864); // mdhd
+        mdhd.out.writeInt(0); // version & flags
+        mdhd.out.writeInt(0); // creation time
+        mdhd.out.writeInt(0); // modification time
+        mdhd.out.writeInt(TIMESCALE);
+        mdhd.out.writeInt((int) duration);
+        mdhd.out.writeInt(0x55C40000); // language "und" and predefined
+
+        final Box hdlr = new Box(0x68646C72); // hdlr
+        hdlr.out.writeInt(0); // version & flags
+        hdlr.out.writeInt(0); // predefined
+        hdlr.out.writeInt(audio ? 0x736F756E : 0x76696465); // soun or vide
+        hdlr.out.write(new byte[12]); // reserved
+        hdlr.out.write(0); // empty name
+
+        final Box mhd;
+        if (audio) {
+            mhd = new Box(0x736D6864); // smhd
+            mhd.out.write(new byte[8]);
+        } else {
+            mhd = new Box(0x766D6864); // vmhd
+            mhd.out.writeInt(0x01);
+            mhd.out.write(new byte[8]);
+        }
+
+        final Box dref = new Box(0x64726566); // dref
+        dref.out.writeInt(0); // version & flags
+        dref.out.writeInt(1); // entry count
+        dref.out.writeInt(12);
+        dref.out.writeInt(0x75726C20); // "url "
+        dref.out.writeInt(0x01); // self contained
+        final Box dinf = new Box(0x64696E66); // dinf
+        dinf.add(dref);
+
+        final Box stsd = new Box(0x73747364); // stsd
+        stsd.out.writeInt(0); // version & flags
+        stsd.out.writeInt(0); // entry count, the codec is not relevant
+        final Box stbl = new Box(0x7374626C); // stbl
+        stbl.add(stsd);
+
+        final Box minf = new Box(0x6D696E66); // minf
+        minf.add(mhd);
+        minf.add(dinf);
+        minf.add(stbl);
+
+        final Box mdia = new Box(0x6D646961); // mdia
+        mdia.add(mdhd);
+        mdia.add(hdlr);
+        mdia.add(minf);
+
+        final Box trak = new Box(0x7472616B); // trak
+        trak.add(tkhd);
+        trak.add(mdia);
+        moov.add(trak);
+
+        final Box trex = new Box(0x74726578); // trex
+        trex.out.writeInt(0); // version & flags
+        trex.out.writeInt(1); // track id
+        trex.out.writeInt(1); // sample description index
+        trex.out.writeInt(0); // sample duration
+        trex.out.writeInt(0); // sample size
+        trex.out.writeInt(0); // sample flags
+        final Box mvex = new Box(0x6D766578); // mvex
+        mvex.add(trex);
+        moov.add(mvex);
+
+        moov.writeTo(out);
+    }
+
+    private static void writeMoof(final DataOutputStream out, final int sequence,
+                                  final long time, final int count, final int[] sizes,
+                                  final int duration, final boolean reordered)
+            throws IOException {
+        final int entry = reordered ? 16 : 12;
+        // tfhd(16) + tfdt(20) + trun(20 + entries)
+        final int traf = 8 + 16 + 20 + 20 + (count * entry);
+        final int moof = 8 + 16 + traf;
+
+        out.writeInt(moof);
+        out.writeInt(0x6D6F6F66); // moof
+
+        out.writeInt(16);
+        out.writeInt(0x6D666864); // mfhd
+        out.writeInt(0);
+        out.writeInt(sequence);
+
+        out.writeInt(traf);
+        out.writeInt(0x74726166); // traf
+
+        out.writeInt(16);
+        out.writeInt(0x74666864); // tfhd
+        out.writeInt(0x020000); // default base is moof
+        out.writeInt(1); // track id
+
+        out.writeInt(20);
+        out.writeInt(0x74666474); // tfdt
+        out.writeInt(0x01000000); // version 1
+        out.writeLong(time);
+
+        out.writeInt(20 + (count * entry));
+        out.writeInt(0x7472756E); // trun
+        // data offset, sample duration, size, flags and composition time offset (if reordered)
+        out.writeInt(reordered ? 0x000F01 : 0x000701);
+        out.writeInt(count);
+        out.writeInt(moof + 8); // data offset, after the mdat header
+
+        for (int i = 0; i < count; i++) {
+            out.writeInt(duration);
+            out.writeInt(sizes[i]);
+            out.writeInt(i == 0 ? 0 : NON_SYNC_SAMPLE);
+            if (reordered) {
+                // I P B B pattern
+                out.writeInt(i % 3 == 0 ? duration : (i % 3 == 1 ? duration * 3 : 0));
+            }
+        }
+    }
+
+    private static final class Box {
+        private final int type;
+        private final ByteArrayOutputStream data = new ByteArrayOutputStream();
+        final DataOutputStream out = new DataOutputStream(data);
+
+        Box(final int type) {
+            this.type = type;
+        }
+
+        void add(final Box child) throws IOException {
+            child.writeTo(out);
+        }
+
+        void writeTo(final OutputStream stream) throws IOException {
+            final DataOutputStream target = new DataOutputStream(stream);
+            target.writeInt(8 + data.size());
+            target.writeInt(type);
+            data.writeTo(target);
+            target.flush();
+        }
+    }
+}
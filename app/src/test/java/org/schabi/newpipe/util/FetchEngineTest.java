@@ -0,0 +1,157 @@
+package org.schabi.newpipe.util;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import io.reactivex.rxjava3.core.Maybe;
+import io.reactivex.rxjava3.disposables.Disposable;
+import io.reactivex.rxjava3.observers.TestObserver;
+import io.reactivex.rxjava3.schedulers.Schedulers;
+import io.reactivex.rxjava3.schedulers.TestScheduler;
+import io.reactivex.rxjava3.subjects.MaybeSubject;
+
+import static org.junit.Assert.assertEquals;
+
+public class FetchEngineTest {
+    private static final String URL = "https://www.youtube.com/channel/a";
+    private static final String OTHER_HOST_URL = "https://peertube.example/video-channels/b";
+
+    private final TestScheduler timer = new TestScheduler();
+    private final AtomicInteger lastErrorResponseCode = new AtomicInteger(-1);
+
+    private FetchEngine engine(final int maxConcurrentFetches, final double fetchesPerSecond,
+                               final int maxBurst) {
+        return new FetchEngine(maxConcurrentFetches, fetchesPerSecond, maxBurst,
+                Schedulers.trampoline(), timer, () -> lastErrorResponseCode.getAndSet(-1),
+                new Random(0));
+    }
+
+    // an extraction failing after a response with the given code
+    private Maybe<String> failing(final int responseCode, final AtomicInteger attempts) {
+        return Maybe.defer(() -> {
+            attempts.incrementAndGet();
+            lastErrorResponseCode.set(responseCode);
+            return Maybe.error(new IOException("Failed " + responseCode));
+        });
+    }
+
+    @Test
+    public void fetchesRunAtMostConcurrentlyPerHost() {
+        final FetchEngine engine = engine(2, 1000, 1000);
+        final List<MaybeSubject<String>> started = new ArrayList<>();
+        final List<TestObserver<String>> observers = new ArrayList<>();
+
+        for (int i = 0; i < 5; i++) {
+            observers.add(engine.fetch(0, URL, Maybe.defer(() -> {
+                final MaybeSubject<String> subject = MaybeSubject.create();
+                started.add(subject);
+                return subject;
+            })).test());
+        }
+        engine.fetch(0, OTHER_HOST_URL, Maybe.just("other")).test().assertValue("other");
+        assertEquals(2, started.size());
+
+        started.get(0).onSuccess("first");
+        observers.get(0).assertValue("first");
+        assertEquals(3, started.size());
+
+        started.get(1).onComplete();
+        started.get(2).onComplete();
+        assertEquals(5, started.size());
+    }
+
+    @Test
+    public void fetchesAreStartedAtTheRateLimit() {
+        final FetchEngine engine = engine(100, 1, 2);
+        final AtomicInteger done = new AtomicInteger();
+
+        for (int i = 0; i < 5; i++) {
+            engine.fetch(0, URL, Maybe.just(i)).subscribe(value -> done.incrementAndGet());
+        }
+        assertEquals(2, done.get());
+
+        timer.advanceTimeBy(1, TimeUnit.SECONDS);
+        assertEquals(3, done.get());
+
+        timer.advanceTimeBy(10, TimeUnit.SECONDS);
+        assertEquals(5, done.get());
+    }
+
+    @Test
+    public void refusedFetchesAreRetried() {
+        final FetchEngine engine = engine(10, 1000, 1000);
+        final AtomicInteger attempts = new AtomicInteger();
+
+        final TestObserver<String> observer = engine.fetch(0, URL, Maybe.defer(() ->
+                attempts.get() < 2 ? failing(503, attempts) : Maybe.just("done"))).test();
+        observer.assertNoValues().assertNoErrors();
+        assertEquals(1, attempts.get());
+
+        timer.advanceTimeBy(1, TimeUnit.MINUTES);
+        observer.assertValue("done");
+        assertEquals(2, attempts.get());
+    }
+
+    @Test
+    public void refusedFetchesPauseTheirHost() {
+        final FetchEngine engine = engine(10, 1000, 1000);
+        final AtomicInteger attempts = new AtomicInteger();
+        engine.fetch(0, URL, Maybe.defer(() ->
+                attempts.get() < 1 ? failing(429, attempts) : Maybe.just("done"))).test();
+
+        final TestObserver<String> sameHost = engine.fetch(0, URL, Maybe.just("same")).test();
+        final TestObserver<String> otherHost =
+                engine.fetch(0, OTHER_HOST_URL, Maybe.just("other")).test();
+        sameHost.assertNoValues();
+        otherHost.assertValue("other");
+
+        timer.advanceTimeBy(1, TimeUnit.MINUTES);
+        sameHost.assertValue("same");
+    }
+
+    @Test
+    public void otherErrorsAreNotRetried() {
+        final FetchEngine engine = engine(10, 1000, 1000);
+        final AtomicInteger attempts = new AtomicInteger();
+
+        engine.fetch(0, URL, failing(404, attempts)).test()
+                .assertError(IOException.class);
+        timer.advanceTimeBy(1, TimeUnit.MINUTES);
+        assertEquals(1, attempts.get());
+    }
+
+    @Test
+    public void retriesEndWithTheOriginalError() {
+        final FetchEngine engine = engine(10, 1000, 1000);
+        final AtomicInteger attempts = new AtomicInteger();
+
+        final TestObserver<String> observer = engine.fetch(0, URL, failing(500, attempts)).test();
+        timer.advanceTimeBy(10, TimeUnit.MINUTES);
+        observer.assertError(error -> error instanceof IOException
+                && "Failed 500".equals(error.getMessage()));
+        assertEquals(4, attempts.get());
+    }
+
+    @Test
+    public void disposedFetchesAreNotStarted() {
+        final FetchEngine engine = engine(1, 1000, 1000);
+        final AtomicInteger started = new AtomicInteger();
+        final MaybeSubject<String> first = MaybeSubject.create();
+
+        engine.fetch(0, URL, first).test();
+        final Disposable second = engine.fetch(0, URL, Maybe.fromCallable(() -> {
+            started.incrementAndGet();
+            return "second";
+        })).subscribe();
+        second.dispose();
+
+        first.onSuccess("first");
+        assertEquals(0, started.get());
+    }
+}
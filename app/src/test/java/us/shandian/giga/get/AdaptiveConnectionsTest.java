@@ -0,0 +1,63 @@
+package us.shandian.giga.get;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static us.shandian.giga.get.AdaptiveConnections.ACTION_ADD;
+import static us.shandian.giga.get.AdaptiveConnections.ACTION_NOTHING;
+import static us.shandian.giga.get.AdaptiveConnections.ACTION_RETIRE;
+import static us.shandian.giga.get.AdaptiveConnections.WINDOW;
+
+public class AdaptiveConnectionsTest {
+    private long now = 0;
+
+    /**
+     * Simulates a whole sampling window at the given throughput.
+     *
+     * @param adaptive       the instance to sample
+     * @param bytesPerSecond the throughput during the window
+     * @return the action chosen at the end of the window
+     */
+    private int window(final AdaptiveConnections adaptive, final long bytesPerSecond) {
+        now += WINDOW;
+        return adaptive.sample(bytesPerSecond * WINDOW / 1000, now);
+    }
+
+    @Test
+    public void growsWhileThroughputImproves() {
+        final AdaptiveConnections adaptive = new AdaptiveConnections();
+        adaptive.sample(0, now);
+
+        assertEquals(ACTION_ADD, window(adaptive, 100_000));
+        assertEquals(ACTION_ADD, window(adaptive, 200_000));
+        assertEquals(ACTION_ADD, window(adaptive, 300_000));
+        assertEquals(4, adaptive.getConnections());
+
+        // no more improvement, settle
+        assertEquals(ACTION_NOTHING, window(adaptive, 305_000));
+        assertEquals(ACTION_NOTHING, window(adaptive, 300_000));
+        assertEquals(4, adaptive.getConnections());
+    }
+
+    @Test
+    public void retiresThrashingConnection() {
+        final AdaptiveConnections adaptive = new AdaptiveConnections();
+        adaptive.sample(0, now);
+
+        assertEquals(ACTION_ADD, window(adaptive, 100_000));
+        assertEquals(ACTION_RETIRE, window(adaptive, 60_000));
+        assertEquals(1, adaptive.getConnections());
+    }
+
+    @Test
+    public void deniedConnectionIsNotCounted() {
+        final AdaptiveConnections adaptive = new AdaptiveConnections();
+        adaptive.sample(0, now);
+
+        assertEquals(ACTION_ADD, window(adaptive, 100_000));
+        adaptive.denied();
+
+        assertEquals(1, adaptive.getConnections());
+        assertEquals(ACTION_NOTHING, window(adaptive, 100_000));
+    }
+}
@@ -0,0 +1,174 @@
+package us.shandian.giga.get;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.schabi.newpipe.streams.io.StoredFileHelper;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Random;
+
+import okio.ByteString;
+import us.shandian.giga.io.FileStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static us.shandian.giga.get.DownloadMission.BLOCK_SIZE;
+
+public class BlockDigestsTest {
+    private static final int LENGTH = BLOCK_SIZE * 2 + BLOCK_SIZE / 2;
+
+    private File output;
+    private File metadata;
+    private byte[] data;
+
+    @Before
+    public void setUp() throws IOException {
+        output = File.createTempFile("digests", ".bin");
+        metadata = File.createTempFile("digests", ".metadata");
+
+        data = new byte[LENGTH];
+        new Random(3).nextBytes(data);
+        Files.write(output.toPath(), data);
+    }
+
+    @After
+    public void tearDown() {
+        //noinspection ResultOfMethodCallIgnored
+        output.delete();
+        //noinspection ResultOfMethodCallIgnored
+        BlockDigests.getFile(metadata).delete();
+        //noinspection ResultOfMethodCallIgnored
+        metadata.delete();
+    }
+
+    private DownloadMission newMission() {
+        return newMission(null);
+    }
+
+    private DownloadMission newMission(final StoredFileHelper storage) {
+        final DownloadMission mission = new DownloadMission(
+                new String[]{"https://example.com"}, storage, 'v', null);
+        mission.length = LENGTH;
+        mission.blocks = new int[3];
+        mission.running = true;
+        return mission;
+    }
+
+    private static String hex(final String algorithm, final byte[] data)
+            throws NoSuchAlgorithmException {
+        return ByteString.of(MessageDigest.getInstance(algorithm).digest(data)).hex();
+    }
+
+    @Test
+    public void fileChecksumIsComputedWhileDownloading() throws Exception {
+        final DownloadMission mission = newMission();
+        final BlockScheduler scheduler = new BlockScheduler(
+                mission.blocks, mission.length, mission.LOCK, null, 0);
+        final BlockDigests digests = new BlockDigests(mission, metadata);
+        final FileStream source = new FileStream(output);
+
+        // the last block completes first, nothing can be digested yet
+        mission.blocks[2] = -1;
+        assertFalse(digests.advance(scheduler, source));
+        assertNull(mission.md5);
+
+        mission.blocks[0] = -1;
+        mission.blocks[1] = -1;
+        assertFalse(digests.advance(scheduler, source));
+        source.close();
+
+        assertEquals(hex("MD5", data), mission.md5);
+        assertEquals(hex("SHA-1", data), mission.sha1);
+        assertEquals(12 + 3 * BlockDigests.DIGEST_SIZE,
+                BlockDigests.getFile(metadata).length());
+    }
+
+    @Test
+    public void resumedDownloadIsVerified() throws Exception {
+        final DownloadMission mission = newMission();
+        mission.blocks[0] = -1;
+        mission.blocks[1] = -1;
+
+        final FileStream source = new FileStream(output);
+        new BlockDigests(mission, metadata).advance(
+                new BlockScheduler(mission.blocks, mission.length, mission.LOCK, null, 0), source);
+
+        // the app was restarted, the stored digests match the downloaded data
+        final BlockDigests resumed = new BlockDigests(mission, metadata);
+        final BlockScheduler scheduler = new BlockScheduler(
+                mission.blocks, mission.length, mission.LOCK, null, 0);
+        mission.blocks[2] = -1;
+
+        assertFalse(resumed.advance(scheduler, source));
+        source.close();
+
+        assertEquals(-1, mission.blocks[0]);
+        assertEquals(-1, mission.blocks[1]);
+        assertEquals(hex("MD5", data), mission.md5);
+    }
+
+    @Test
+    public void blocksAreDigestedInBackground() throws Exception {
+        final StoredFileHelper storage = mock(StoredFileHelper.class);
+        when(storage.getStream()).thenAnswer(invocation -> new FileStream(output));
+
+        final DownloadMission mission = newMission(storage);
+        final BlockScheduler scheduler = new BlockScheduler(
+                mission.blocks, mission.length, mission.LOCK, null, 0);
+        final BlockDigests digests = new BlockDigests(mission, metadata);
+
+        mission.blocks[0] = -1;
+        digests.schedule(scheduler);
+
+        // the download threads wait for the last blocks once there is nothing left to download
+        mission.blocks[1] = -1;
+        mission.blocks[2] = -1;
+        assertFalse(digests.await(scheduler));
+
+        assertEquals(hex("MD5", data), mission.md5);
+        assertEquals(hex("SHA-1", data), mission.sha1);
+    }
+
+    @Test
+    public void writtenBlocksAreNotReadBack() throws Exception {
+        final StoredFileHelper storage = mock(StoredFileHelper.class);
+
+        final DownloadMission mission = newMission(storage);
+        final BlockScheduler scheduler = new BlockScheduler(
+                mission.blocks, mission.length, mission.LOCK, null, 0);
+        final BlockDigests digests = new BlockDigests(mission, metadata);
+
+        // the download threads hash the blocks while writing them, in any order
+        for (int position = mission.blocks.length - 1; position >= 0; position--) {
+            final int offset = position * BLOCK_SIZE;
+            final int size = Math.min(BLOCK_SIZE, LENGTH - offset);
+            final BlockDigests.Hasher hasher = digests.newHasher(
+                    new DownloadMission.Block(position, 0, size, 0));
+
+            hasher.update(data, offset, size / 2);
+            hasher.update(ByteBuffer.wrap(data, offset + size / 2, size - size / 2));
+
+            mission.blocks[position] = -1;
+            digests.offer(hasher);
+        }
+
+        assertFalse(digests.advance(scheduler, null));
+        verify(storage, never()).getStream();
+
+        assertEquals(hex("MD5", data), mission.md5);
+        assertEquals(hex("SHA-1", data), mission.sha1);
+        assertEquals(12 + 3 * BlockDigests.DIGEST_SIZE,
+                BlockDigests.getFile(metadata).length());
+    }
+}
@@ -0,0 +1,298 @@
+package us.shandian.giga.get;
+
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+
+import org.junit.Test;
+import org.mockito.MockedStatic;
+import org.schabi.newpipe.streams.io.StoredFileHelper;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import us.shandian.giga.get.DownloadMission.Block;
+import us.shandian.giga.io.FileStream;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.mockStatic;
+import static org.mockito.Mockito.when;
+import static us.shandian.giga.get.DownloadMission.BLOCK_SIZE;
+
+public class BlockSchedulerTest {
+    private static final Object LOCK = new Object();
+
+    @Test
+    public void acquireSkipsCompletedBlocks() {
+        final int[] blocks = {-1, 0, 1024, -1};
+        final BlockScheduler scheduler = new BlockScheduler(blocks, BLOCK_SIZE * 4L, LOCK, null, 0);
+
+        final Block first = scheduler.acquire();
+        final Block second = scheduler.acquire();
+
+        assertNotNull(first);
+        assertNotNull(second);
+        assertEquals(1, first.position);
+        assertEquals(2, second.position);
+        assertEquals(1024, second.done);
+    }
+
+    @Test
+    public void lastBlockIsTruncated() {
+        final int[] blocks = new int[2];
+        final BlockScheduler scheduler =
+                new BlockScheduler(blocks, BLOCK_SIZE + 100, LOCK, null, 0);
+
+        scheduler.acquire();
+        final Block last = scheduler.acquire();
+
+        assertNotNull(last);
+        assertEquals(100, last.end);
+    }
+
+    @Test
+    public void splitInFlightBlock() {
+        final int[] blocks = new int[1];
+        final BlockScheduler scheduler = new BlockScheduler(blocks, BLOCK_SIZE, LOCK, null, 0);
+
+        final Block owner = scheduler.acquire();
+        assertNotNull(owner);
+        write(owner, 100 * 1024);
+
+        final Block thief = scheduler.acquire();
+        assertNotNull(thief);
+        assertEquals(owner.position, thief.position);
+        assertEquals(owner.end, thief.start);
+        assertEquals(BLOCK_SIZE, thief.end);
+
+        // the thief finishes first, only the owner progress can be stored
+        write(thief, thief.end - thief.start);
+        scheduler.release(thief);
+        assertEquals(100 * 1024, blocks[0]);
+
+        write(owner, owner.end - owner.start - owner.done);
+        scheduler.release(owner);
+        assertEquals(-1, blocks[0]);
+    }
+
+    @Test
+    public void smallRangesAreNotSplit() {
+        final int[] blocks = new int[1];
+        final BlockScheduler scheduler = new BlockScheduler(blocks, BLOCK_SIZE, LOCK, null, 0);
+
+        final Block owner = scheduler.acquire();
+        assertNotNull(owner);
+        write(owner, BLOCK_SIZE - BlockScheduler.MIN_SPLIT_SIZE + 1);
+
+        assertNull(scheduler.acquire());
+    }
+
+    @Test
+    public void incompleteBlockIsQueuedAgain() {
+        final int[] blocks = new int[1];
+        final BlockScheduler scheduler = new BlockScheduler(blocks, BLOCK_SIZE, LOCK, null, 0);
+
+        final Block block = scheduler.acquire();
+        assertNotNull(block);
+        write(block, 4096);
+        scheduler.release(block);
+
+        assertEquals(4096, blocks[0]);
+        assertEquals(block, scheduler.acquire());
+    }
+
+    /**
+     * Downloads with two real {@link DownloadRunnable}s, the first connection stalls after its
+     * first chunk until the second thread exits. The second thread must take the pending blocks,
+     * then the unreserved halves of the stalled block.
+     */
+    @Test
+    public void idleThreadSplitsTheBlockOfAStalledConnection() throws IOException {
+        final int length = BLOCK_SIZE * 4;
+        final File file = File.createTempFile("scheduler", ".bin");
+
+        try (MockedStatic<Log> ignored = mockStatic(Log.class)) {
+            final StoredFileHelper storage = mock(StoredFileHelper.class);
+            when(storage.getStream()).thenAnswer(invocation -> new FileStream(file));
+
+            final FakeMission mission = new FakeMission(storage, length);
+            final DownloadRunnable stalled = new DownloadRunnable(mission, 0, null);
+            final DownloadRunnable idle = new DownloadRunnable(mission, 1, null);
+
+            // run both threads on the test thread, so the order of the events is known
+            mission.stallNextConnection(idle::run);
+            stalled.run();
+
+            final int stolen = 64 * 1024 + (BLOCK_SIZE - 64 * 1024) / 2;
+            final int stolenAgain = 64 * 1024 + (stolen - 64 * 1024) / 2;
+            assertEquals(Arrays.asList(
+                    "0-" + (BLOCK_SIZE - 1),
+                    BLOCK_SIZE + "-" + (BLOCK_SIZE * 2 - 1),
+                    BLOCK_SIZE * 2 + "-" + (BLOCK_SIZE * 3 - 1),
+                    BLOCK_SIZE * 3 + "-" + (BLOCK_SIZE * 4 - 1),
+                    stolen + "-" + (BLOCK_SIZE - 1),
+                    stolenAgain + "-" + (stolen - 1)
+            ), mission.requests);
+
+            assertArrayEquals(new int[]{-1, -1, -1, -1}, mission.blocks);
+            assertEquals(2, mission.finished);
+
+            final byte[] written = Files.readAllBytes(file.toPath());
+            assertEquals(length, written.length);
+            for (int i = 0; i < length; i++) {
+                assertEquals(expectedByte(i), written[i]);
+            }
+        } finally {
+            //noinspection ResultOfMethodCallIgnored
+            file.delete();
+        }
+    }
+
+    private static void write(final Block block, final int amount) {
+        block.restore();
+        assertEquals(amount, block.reserve(amount));
+        block.done += amount;
+    }
+
+    private static byte expectedByte(final long position) {
+        return (byte) (position * 31);
+    }
+
+    /**
+     * A mission which downloads from {@link FakeConnection}s, the blocks are handed out by a
+     * {@link BlockScheduler} without journal.
+     */
+    private static final class FakeMission extends DownloadMission {
+        private final BlockScheduler scheduler;
+        private Runnable stall;
+
+        final List<String> requests = new ArrayList<>();
+        int finished = 0;
+
+        FakeMission(final StoredFileHelper storage, final int length) {
+            super(new String[]{"https://example.com/video"}, storage, 'v', null);
+            this.length = length;
+            this.blocks = new int[length / BLOCK_SIZE];
+            this.scheduler = new BlockScheduler(blocks, length, LOCK, null, 0);
+            this.running = true;
+        }
+
+        /**
+         * @param action what to run once the next connection has sent its first chunk
+         */
+        void stallNextConnection(final Runnable action) {
+            stall = action;
+        }
+
+        @Override
+        Block acquireBlock() {
+            return scheduler.acquire();
+        }
+
+        @Override
+        void releaseBlock(@NonNull final Block block) {
+            scheduler.release(block);
+        }
+
+        @Override
+        HttpURLConnection openConnection(final boolean headRequest, final long rangeStart,
+                                         final long rangeEnd) throws IOException {
+            requests.add(rangeStart + "-" + rangeEnd);
+
+            final Runnable action = stall;
+            stall = null;
+            return new FakeConnection(new URL(urls[0]), rangeStart, rangeEnd, action);
+        }
+
+        @Override
+        synchronized void notifyFinished() {
+            finished++;
+        }
+
+        @Override
+        synchronized void notifyError(final Exception err) {
+            throw new AssertionError(err);
+        }
+    }
+
+    /**
+     * Answers a range request with {@link #expectedByte(long)}, in chunks of
+     * {@link DownloadMission#BUFFER_SIZE}. If given, the stall action runs before the second chunk.
+     */
+    private static final class FakeConnection extends HttpURLConnection {
+        private final long end;
+        private long position;
+        private int sent = 0;
+        private Runnable stall;
+
+        FakeConnection(final URL url, final long start, final long end, final Runnable stall) {
+            super(url);
+            this.position = start;
+            this.end = end;
+            this.stall = stall;
+        }
+
+        @Override
+        public int getResponseCode() {
+            return 206;
+        }
+
+        @Override
+        public InputStream getInputStream() {
+            return new InputStream() {
+                @Override
+                public int read() {
+                    throw new UnsupportedOperationException();
+                }
+
+                @Override
+                public int read(final byte[] buffer, final int offset, final int length) {
+                    if (position > end) {
+                        return -1;
+                    }
+
+                    if (stall != null && sent > 0) {
+                        final Runnable action = stall;
+                        stall = null;
+                        action.run();
+                    }
+
+                    final int count = (int) Math.min(Math.min(length,
+                            DownloadMission.BUFFER_SIZE), end - position + 1);
+                    for (int i = 0; i < count; i++) {
+                        buffer[offset + i] = expectedByte(position + i);
+                    }
+                    position += count;
+                    sent++;
+                    return count;
+                }
+            };
+        }
+
+        @Override
+        public void connect() {
+            connected = true;
+        }
+
+        @Override
+        public void disconnect() {
+            connected = false;
+        }
+
+        @Override
+        public boolean usingProxy() {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,131 @@
+package us.shandian.giga.get;
+
+import android.util.Log;
+
+import org.junit.Test;
+import org.mockito.MockedStatic;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mockStatic;
+import static us.shandian.giga.get.DownloadMission.BLOCK_SIZE;
+
+public class DownloadWatermarkTest {
+    private static final long OFFSET = 1000;
+
+    private DownloadMission newMission(final int blockCount) {
+        final DownloadMission mission;
+        // the missions with many resources and without post-processing are logged
+        try (MockedStatic<Log> ignored = mockStatic(Log.class)) {
+            mission = new DownloadMission(
+                    new String[]{"https://example.com", "https://example.com"}, null, 'v', null);
+        }
+        mission.current = 1;
+        mission.offsets[1] = OFFSET;
+        mission.length = (long) blockCount * BLOCK_SIZE;
+        mission.blocks = new int[blockCount];
+        return mission;
+    }
+
+    @Test
+    public void contiguousBlocksAreAvailable() throws IOException {
+        final DownloadMission mission = newMission(4);
+        final DownloadWatermark watermark = new DownloadWatermark(mission);
+
+        mission.blocks[0] = -1;
+        mission.blocks[1] = 100;
+        mission.blocks[2] = -1; // not contiguous
+
+        assertEquals(OFFSET + BLOCK_SIZE + 100, watermark.await(OFFSET));
+        assertEquals(OFFSET + mission.length, watermark.getEnd());
+    }
+
+    @Test
+    public void readerWaitsForTheDownload() throws InterruptedException {
+        final DownloadMission mission = newMission(2);
+        final DownloadWatermark watermark = new DownloadWatermark(mission);
+        final AtomicLong available = new AtomicLong(-1);
+
+        final Thread reader = new Thread(() -> {
+            try {
+                available.set(watermark.await(OFFSET + BLOCK_SIZE));
+            } catch (final IOException e) {
+                // nothing to do
+            }
+        });
+        reader.start();
+
+        reader.join(200);
+        assertTrue(reader.isAlive());
+
+        synchronized (mission.LOCK) {
+            mission.blocks[0] = -1;
+            mission.blocks[1] = 10;
+        }
+        watermark.signal();
+
+        reader.join(1000);
+        assertEquals(OFFSET + BLOCK_SIZE + 10, available.get());
+    }
+
+    @Test
+    public void lastByteIsHeldUntilTheResourceEnds() throws InterruptedException {
+        final DownloadMission mission = newMission(1);
+        final DownloadWatermark watermark = new DownloadWatermark(mission);
+        final long end = watermark.getEnd();
+
+        mission.blocks[0] = -1;
+
+        final Thread reader = new Thread(() -> {
+            try {
+                watermark.await(end - 1);
+            } catch (final IOException e) {
+                // nothing to do
+            }
+        });
+        reader.start();
+
+        reader.join(200);
+        assertTrue(reader.isAlive());
+
+        mission.current++;
+        watermark.signal();
+
+        reader.join(1000);
+        assertFalse(reader.isAlive());
+    }
+
+    @Test
+    public void readerFailsWhenTheDownloadStops() throws InterruptedException {
+        final DownloadMission mission = newMission(2);
+        final DownloadWatermark watermark = new DownloadWatermark(mission);
+        final AtomicReference<IOException> error = new AtomicReference<>();
+
+        final Thread reader = new Thread(() -> {
+            try {
+                watermark.await(OFFSET + BLOCK_SIZE);
+            } catch (final IOException e) {
+                error.set(e);
+            }
+        });
+        reader.start();
+
+        reader.join(200);
+        assertTrue(reader.isAlive());
+        assertNull(error.get());
+
+        watermark.stop();
+
+        reader.join(1000);
+        assertFalse(reader.isAlive());
+        assertTrue(error.get() instanceof InterruptedIOException);
+        assertTrue(watermark.isStopped());
+    }
+}
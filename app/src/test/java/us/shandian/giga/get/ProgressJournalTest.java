@@ -0,0 +1,75 @@
+package us.shandian.giga.get;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class ProgressJournalTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private DownloadMission newMission(final int blockCount) {
+        final DownloadMission mission =
+                new DownloadMission(new String[]{"https://example.com"}, null, 'v', null);
+        mission.blocks = new int[blockCount];
+        return mission;
+    }
+
+    @Test
+    public void replayAppliesLastValues() throws IOException {
+        final File metadata = folder.newFile("1234");
+        final ProgressJournal journal = new ProgressJournal(metadata);
+
+        journal.appendBlock(0, 1, 4096);
+        journal.appendBlock(0, 1, -1);
+        journal.appendBlock(0, 2, 8192);
+        journal.appendDone(0, 12288);
+        journal.appendBlock(1, 3, 100); // record of another resource
+        journal.close();
+
+        final DownloadMission mission = newMission(4);
+        ProgressJournal.replay(metadata, mission);
+
+        assertArrayEquals(new int[]{0, -1, 8192, 0}, mission.blocks);
+        assertEquals(12288, mission.done);
+    }
+
+    @Test
+    public void tornRecordIsIgnored() throws IOException {
+        final File metadata = folder.newFile("1234");
+        final ProgressJournal journal = new ProgressJournal(metadata);
+
+        journal.appendBlock(0, 0, -1);
+        journal.close();
+
+        try (FileOutputStream out = new FileOutputStream(ProgressJournal.getFile(metadata), true)) {
+            out.write(new byte[ProgressJournal.RECORD_SIZE / 2]);
+        }
+
+        final DownloadMission mission = newMission(2);
+        ProgressJournal.replay(metadata, mission);
+
+        assertArrayEquals(new int[]{-1, 0}, mission.blocks);
+    }
+
+    @Test
+    public void resetDiscardsRecords() throws IOException {
+        final File metadata = folder.newFile("1234");
+        final ProgressJournal journal = new ProgressJournal(metadata);
+
+        journal.appendBlock(0, 0, -1);
+        journal.reset();
+
+        final DownloadMission mission = newMission(1);
+        ProgressJournal.replay(metadata, mission);
+
+        assertEquals(0, mission.blocks[0]);
+    }
+}
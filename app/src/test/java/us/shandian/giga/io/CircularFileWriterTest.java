@@ -0,0 +1,105 @@
+package us.shandian.giga.io;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class CircularFileWriterTest {
+    private File output;
+    private File temp;
+    private byte[] data;
+
+    @Before
+    public void setUp() throws IOException {
+        output = File.createTempFile("circular", ".out");
+        temp = new File(output.getParentFile(), output.getName() + ".tmp");
+        data = new byte[300 * 1024];
+        new Random(7).nextBytes(data);
+    }
+
+    @After
+    public void tearDown() {
+        //noinspection ResultOfMethodCallIgnored
+        output.delete();
+        //noinspection ResultOfMethodCallIgnored
+        temp.delete();
+    }
+
+    private void writeInChunks(final CircularFileWriter writer) throws IOException {
+        for (int i = 0; i < data.length; i += 1000) {
+            writer.write(data, i, Math.min(1000, data.length - i));
+        }
+    }
+
+    @Test
+    public void temporalFileIsNotCreatedIfNeverReached() throws IOException {
+        final CircularFileWriter writer = new CircularFileWriter(
+                new FileStream(output), temp, () -> -1);
+
+        writeInChunks(writer);
+
+        assertEquals(data.length, writer.finalizeFile());
+        assertFalse(temp.exists());
+        assertArrayEquals(data, Files.readAllBytes(output.toPath()));
+    }
+
+    @Test
+    public void unreadDataIsKeptInTheTemporalFile() throws IOException {
+        final long[] end = {100 * 1024};
+        final CircularFileWriter writer = new CircularFileWriter(
+                new FileStream(output), temp, () -> end[0]);
+
+        writeInChunks(writer);
+        writer.flush();
+        assertTrue(temp.exists());
+
+        // all sources were read
+        end[0] = -1;
+
+        assertEquals(data.length, writer.finalizeFile());
+        assertArrayEquals(data, Files.readAllBytes(output.toPath()));
+    }
+
+    @Test
+    public void smallRingBufferWrapsAround() throws IOException {
+        final long[] end = {50 * 1024};
+        final CircularFileWriter writer = new CircularFileWriter(
+                new FileStream(output), temp, () -> end[0], 3000);
+
+        // the chunks are not aligned with the ring size
+        writeInChunks(writer);
+
+        end[0] = -1;
+        writer.write(ByteBuffer.allocateDirect(10));
+
+        // overwrite the start of the file
+        writer.seek(0);
+        writer.write(ByteBuffer.wrap(data, 0, 100));
+        writer.seek(data.length);
+
+        assertEquals(data.length + 10, writer.finalizeFile());
+
+        final byte[] expected = Arrays.copyOf(data, data.length + 10);
+        assertArrayEquals(expected, Files.readAllBytes(output.toPath()));
+    }
+
+    @Test(expected = IOException.class)
+    public void writeAfterCloseFails() throws IOException {
+        final CircularFileWriter writer = new CircularFileWriter(
+                new FileStream(output), temp, () -> -1);
+        writer.close();
+        writer.write(data);
+    }
+}
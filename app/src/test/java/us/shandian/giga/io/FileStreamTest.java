@@ -0,0 +1,104 @@
+package us.shandian.giga.io;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+public class FileStreamTest {
+    private static final int CHUNK_LENGTH = 300 * 1024;
+
+    private File file;
+    private byte[] data;
+
+    @Before
+    public void setUp() throws IOException {
+        file = File.createTempFile("stream", ".bin");
+        data = new byte[400 * 1024];
+        new Random(3).nextBytes(data);
+    }
+
+    @After
+    public void tearDown() {
+        //noinspection ResultOfMethodCallIgnored
+        file.delete();
+    }
+
+    private static ByteBuffer direct(final byte[] source, final int offset, final int length) {
+        final ByteBuffer buffer = ByteBuffer.allocateDirect(length);
+        buffer.put(source, offset, length);
+        buffer.flip();
+        return buffer;
+    }
+
+    @Test
+    public void gatheringWriteAndScatteringRead() throws IOException {
+        final ByteBuffer[] buffers = {
+                direct(data, 0, 1000),
+                ByteBuffer.wrap(data, 1000, 50 * 1024),
+                direct(data, 1000 + 50 * 1024, data.length - 1000 - 50 * 1024)
+        };
+
+        try (FileStream stream = new FileStream(file)) {
+            stream.write((byte) 0x55);
+            assertEquals(data.length, stream.write(buffers));
+            for (final ByteBuffer buffer : buffers) {
+                assertFalse(buffer.hasRemaining());
+            }
+
+            stream.seek(1);
+            final ByteBuffer first = ByteBuffer.allocateDirect(30 * 1024);
+            final ByteBuffer second = ByteBuffer.allocateDirect(data.length);
+            long read = 0;
+            while (read < data.length) {
+                read += stream.read(new ByteBuffer[]{first, second});
+            }
+            assertEquals(-1, stream.read(second));
+
+            first.flip();
+            second.flip();
+            final byte[] result = new byte[data.length];
+            first.get(result, 0, first.remaining());
+            second.get(result, first.capacity(), second.remaining());
+            assertArrayEquals(data, result);
+        }
+    }
+
+    @Test
+    public void chunkReadIsLimitedToTheChunk() throws IOException {
+        Files.write(file.toPath(), data);
+
+        final long[] reported = {0};
+        final ChunkFileInputStream chunk = new ChunkFileInputStream(new FileStream(file),
+                1000, 1000 + CHUNK_LENGTH, position -> reported[0] = position);
+
+        final ByteBuffer buffer = ByteBuffer.allocateDirect(data.length);
+        try {
+            int read;
+            do {
+                read = chunk.read(buffer);
+            } while (read > 0);
+            assertEquals(-1, chunk.read(buffer));
+        } finally {
+            chunk.close();
+        }
+
+        assertEquals(CHUNK_LENGTH, buffer.position());
+        assertEquals(CHUNK_LENGTH, reported[0]);
+
+        final byte[] result = new byte[CHUNK_LENGTH];
+        buffer.flip();
+        buffer.get(result);
+        assertArrayEquals(Arrays.copyOfRange(data, 1000, 1000 + CHUNK_LENGTH), result);
+    }
+}
@@ -0,0 +1,47 @@
+package us.shandian.giga.util;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class StripedCounterTest {
+    private static final int THREADS = 16;
+    private static final int ADDITIONS = 100000;
+
+    @Test
+    public void drainingWhileAddingLosesNothing() throws InterruptedException {
+        final StripedCounter counter = new StripedCounter();
+        final Thread[] threads = new Thread[THREADS];
+
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = new Thread(() -> {
+                for (int j = 0; j < ADDITIONS; j++) {
+                    counter.add(3);
+                }
+            });
+            threads[i].start();
+        }
+
+        long drained = 0;
+        for (final Thread thread : threads) {
+            while (thread.isAlive()) {
+                drained += counter.sumThenReset();
+            }
+        }
+        drained += counter.sumThenReset();
+
+        assertEquals(3L * THREADS * ADDITIONS, drained);
+        assertEquals(0, counter.sum());
+    }
+
+    @Test
+    public void negativeAmounts() {
+        final StripedCounter counter = new StripedCounter();
+        counter.add(100);
+        counter.add(-40);
+
+        assertEquals(60, counter.sum());
+        assertEquals(60, counter.sumThenReset());
+        assertEquals(0, counter.sumThenReset());
+    }
+}
@@ -0,0 +1,114 @@
+package us.shandian.giga.util;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static java.util.Arrays.asList;
+import static java.util.Collections.emptyList;
+import static org.junit.Assert.assertEquals;
+
+public class TokenBucketTest {
+    private static final int RATE = 1024 * 1024;
+    private static final long SECOND = 1000000000L;
+
+    /**
+     * Clock which only moves when told, the sleeps are recorded instead of done.
+     */
+    private static final class FakeClock implements TokenBucket.Clock {
+        private final List<Long> sleeps = new ArrayList<>();
+        private long now = 123456789L;
+
+        @Override
+        public long nanoTime() {
+            return now;
+        }
+
+        @Override
+        public void sleep(final long nanos) {
+            sleeps.add(nanos);
+        }
+    }
+
+    @Test
+    public void unlimitedDoesNotWait() throws InterruptedException {
+        final FakeClock clock = new FakeClock();
+        final TokenBucket bucket = new TokenBucket(0, clock);
+
+        for (int i = 0; i < 16; i++) {
+            bucket.consume(RATE);
+        }
+
+        assertEquals(emptyList(), clock.sleeps);
+    }
+
+    @Test
+    public void debtIsPaidBySleeping() throws InterruptedException {
+        final FakeClock clock = new FakeClock();
+        final TokenBucket bucket = new TokenBucket(RATE, clock);
+
+        // the bucket starts empty, half of the rate takes half second
+        bucket.consume(RATE / 2);
+        clock.now += SECOND / 2;
+
+        // the debt was paid, a quarter of the rate takes a quarter of second
+        bucket.consume(RATE / 4);
+
+        assertEquals(asList(SECOND / 2, SECOND / 4), clock.sleeps);
+    }
+
+    @Test
+    public void refilledTokensAreTakenWithoutWaiting() throws InterruptedException {
+        final FakeClock clock = new FakeClock();
+        final TokenBucket bucket = new TokenBucket(RATE, clock);
+
+        clock.now += SECOND / 2;
+        bucket.consume(RATE / 4);
+        bucket.consume(RATE / 4);
+
+        assertEquals(emptyList(), clock.sleeps);
+
+        // the refilled tokens were taken, the next one is waited
+        bucket.consume(1);
+        assertEquals(1, clock.sleeps.size());
+    }
+
+    @Test
+    public void burstIsLimitedToOneSecond() throws InterruptedException {
+        final FakeClock clock = new FakeClock();
+        final TokenBucket bucket = new TokenBucket(RATE, clock);
+
+        // idle for a long time, only one second of traffic is kept
+        clock.now += 10 * SECOND;
+        bucket.consume(RATE * 2);
+
+        assertEquals(asList(SECOND), clock.sleeps);
+    }
+
+    @Test
+    public void consumersAreServedInArrivalOrder() throws InterruptedException {
+        final FakeClock clock = new FakeClock();
+        final TokenBucket bucket = new TokenBucket(RATE, clock);
+
+        // many threads at the same time, every one waits for the debt of the previous ones
+        for (int i = 0; i < 4; i++) {
+            bucket.consume(RATE / 8);
+        }
+
+        assertEquals(asList(SECOND / 8, SECOND / 4, SECOND * 3 / 8, SECOND / 2), clock.sleeps);
+    }
+
+    @Test
+    public void lowerRateDiscardsTheExcess() throws InterruptedException {
+        final FakeClock clock = new FakeClock();
+        final TokenBucket bucket = new TokenBucket(RATE, clock);
+
+        clock.now += SECOND;
+        bucket.setRate(RATE / 4);
+        bucket.consume(RATE / 2);
+
+        assertEquals(RATE / 4, bucket.getRate());
+        assertEquals(asList(SECOND), clock.sleeps);
+    }
+}
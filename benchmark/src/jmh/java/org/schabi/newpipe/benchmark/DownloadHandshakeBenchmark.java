@@ -0,0 +1,295 @@
+package org.schabi.newpipe.benchmark;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.net.ssl.HttpsURLConnection;
+import javax.net.ssl.SSLSocketFactory;
+
+import okhttp3.ConnectionPool;
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import okhttp3.tls.HandshakeCertificates;
+import okhttp3.tls.HeldCertificate;
+import okio.Buffer;
+import us.shandian.giga.get.OkHttpConnection;
+
+/**
+ * Downloads a resource from a local TLS server the same way {@code DownloadRunnable} does
+ * (several threads, one range request per block) and counts the TLS handshakes done by the
+ * server, reported as the {@code handshakesPerMb} counter.
+ * <p>
+ * Every benchmark invocation is a new download, the clients are kept between invocations as
+ * {@code DownloadManager} does between missions.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class DownloadHandshakeBenchmark {
+    // same value used by DownloadMission
+    private static final int BLOCK_SIZE = 512 * 1024;
+    private static final int MEGABYTE = 1024 * 1024;
+
+    @Param({"urlconnection", "okhttp-http1", "okhttp-http2"})
+    private String transport;
+
+    @Param({"3"})
+    private int threads;
+
+    @Param({"16777216"})
+    private int length;
+
+    private final AtomicInteger handshakes = new AtomicInteger();
+    private byte[] payload;
+    private MockWebServer server;
+    private URL url;
+    private HandshakeCertificates clientCertificates;
+    private OkHttpClient client;
+    private ExecutorService executor;
+    private byte[][] scratch;
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Counters {
+        private long handshakes;
+        private long bytes;
+
+        public double handshakesPerMb;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            handshakes = 0;
+            bytes = 0;
+            handshakesPerMb = 0;
+        }
+
+        void add(final int count, final long length) {
+            handshakes += count;
+            bytes += length;
+            handshakesPerMb = handshakes / ((double) bytes / MEGABYTE);
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        payload = new byte[length];
+        new Random(42).nextBytes(payload);
+
+        final HeldCertificate certificate = new HeldCertificate.Builder()
+                .addSubjectAlternativeName("localhost")
+                .build();
+        final HandshakeCertificates serverCertificates = new HandshakeCertificates.Builder()
+                .heldCertificate(certificate)
+                .build();
+        clientCertificates = new HandshakeCertificates.Builder()
+                .addTrustedCertificate(certificate.certificate())
+                .build();
+
+        server = new MockWebServer();
+        server.useHttps(new CountingSocketFactory(serverCertificates.sslSocketFactory()), false);
+        server.setProtocols(Arrays.asList(Protocol.HTTP_2, Protocol.HTTP_1_1));
+        server.setDispatcher(new RangeDispatcher());
+        server.start(InetAddress.getByName("localhost"), 0);
+        url = server.url("/resource").url();
+
+        // same settings used by DownloadManager
+        final OkHttpClient.Builder builder = new OkHttpClient.Builder()
+                .connectionPool(new ConnectionPool(16, 5, TimeUnit.MINUTES))
+                .connectTimeout(30, TimeUnit.SECONDS)
+                .readTimeout(0, TimeUnit.MILLISECONDS)
+                .sslSocketFactory(clientCertificates.sslSocketFactory(),
+                        clientCertificates.trustManager());
+
+        switch (transport) {
+            case "okhttp-http1":
+                client = builder.protocols(Collections.singletonList(Protocol.HTTP_1_1)).build();
+                break;
+            case "okhttp-http2":
+                client = builder.protocols(Arrays.asList(Protocol.HTTP_2, Protocol.HTTP_1_1))
+                        .build();
+                break;
+            default:
+                client = null;
+                break;
+        }
+
+        executor = Executors.newFixedThreadPool(threads);
+        scratch = new byte[threads][64 * 1024];
+    }
+
+    @TearDown(Level.Trial)
+    public void cleanup() throws IOException {
+        executor.shutdownNow();
+        if (client != null) {
+            client.connectionPool().evictAll();
+        }
+        server.shutdown();
+    }
+
+    @Benchmark
+    public long download(final Counters counters)
+            throws ExecutionException, InterruptedException {
+        final int before = handshakes.get();
+        final AtomicInteger nextBlock = new AtomicInteger();
+        final int blocks = (length + BLOCK_SIZE - 1) / BLOCK_SIZE;
+
+        final List<Future<Long>> results = new ArrayList<>(threads);
+        for (int i = 0; i < threads; i++) {
+            final byte[] buffer = scratch[i];
+            results.add(executor.submit(() -> {
+                long total = 0;
+                int block;
+                while ((block = nextBlock.getAndIncrement()) < blocks) {
+                    final long start = (long) block * BLOCK_SIZE;
+                    final long end = Math.min(start + BLOCK_SIZE, length) - 1;
+                    total += fetch(start, end, buffer);
+                }
+                return total;
+            }));
+        }
+
+        long received = 0;
+        for (final Future<Long> result : results) {
+            received += result.get();
+        }
+
+        counters.add(handshakes.get() - before, received);
+        return received;
+    }
+
+    private long fetch(final long start, final long end, final byte[] buffer)
+            throws IOException {
+        final HttpURLConnection conn;
+        if (client == null) {
+            final HttpsURLConnection https = (HttpsURLConnection) url.openConnection();
+            https.setSSLSocketFactory(clientCertificates.sslSocketFactory());
+            conn = https;
+        } else {
+            conn = new OkHttpConnection(client, url);
+        }
+
+        conn.setRequestProperty("Accept-Encoding", "*");
+        conn.setRequestProperty("Range", "bytes=" + start + "-" + end);
+        conn.setConnectTimeout(30000);
+
+        if (conn.getResponseCode() != 206) {
+            throw new IOException("unexpected response code " + conn.getResponseCode());
+        }
+
+        long total = 0;
+        try (InputStream is = conn.getInputStream()) {
+            int count;
+            while ((count = is.read(buffer)) != -1) {
+                total += count;
+            }
+        }
+
+        return total;
+    }
+
+    /**
+     * Serves the ranges of the payload, as a server of media streams does.
+     */
+    private final class RangeDispatcher extends Dispatcher {
+        @Override
+        public MockResponse dispatch(final RecordedRequest request) {
+            final String range = request.getHeader("Range");
+            if (range == null || !range.startsWith("bytes=")) {
+                return new MockResponse().setResponseCode(200)
+                        .setBody(new Buffer().write(payload));
+            }
+
+            final String[] bounds = range.substring("bytes=".length()).split("-");
+            final int start = Integer.parseInt(bounds[0]);
+            final int end = bounds.length > 1
+                    ? Math.min(Integer.parseInt(bounds[1]), length - 1) : length - 1;
+
+            return new MockResponse().setResponseCode(206)
+                    .setHeader("Content-Range", "bytes " + start + "-" + end + "/" + length)
+                    .setBody(new Buffer().write(payload, start, end - start + 1));
+        }
+    }
+
+    /**
+     * Counts every connection accepted by the server, each one requires a TLS handshake.
+     */
+    private final class CountingSocketFactory extends SSLSocketFactory {
+        private final SSLSocketFactory delegate;
+
+        CountingSocketFactory(final SSLSocketFactory delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public Socket createSocket(final Socket s, final String host, final int port,
+                                   final boolean autoClose) throws IOException {
+            handshakes.incrementAndGet();
+            return delegate.createSocket(s, host, port, autoClose);
+        }
+
+        @Override
+        public String[] getDefaultCipherSuites() {
+            return delegate.getDefaultCipherSuites();
+        }
+
+        @Override
+        public String[] getSupportedCipherSuites() {
+            return delegate.getSupportedCipherSuites();
+        }
+
+        @Override
+        public Socket createSocket(final String host, final int port) throws IOException {
+            return delegate.createSocket(host, port);
+        }
+
+        @Override
+        public Socket createSocket(final String host, final int port,
+                                   final InetAddress localHost, final int localPort)
+                throws IOException {
+            return delegate.createSocket(host, port, localHost, localPort);
+        }
+
+        @Override
+        public Socket createSocket(final InetAddress host, final int port) throws IOException {
+            return delegate.createSocket(host, port);
+        }
+
+        @Override
+        public Socket createSocket(final InetAddress address, final int port,
+                                   final InetAddress localAddress, final int localPort)
+                throws IOException {
+            return delegate.createSocket(address, port, localAddress, localPort);
+        }
+    }
+}
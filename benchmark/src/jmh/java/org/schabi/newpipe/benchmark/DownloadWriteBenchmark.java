@@ -0,0 +1,113 @@
+package org.schabi.newpipe.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import us.shandian.giga.io.DirectBufferPool;
+import us.shandian.giga.io.FileStream;
+
+/**
+ * Compares how a download thread writes the received data into the file: the previous path
+ * (a new buffer per block, {@code seek()} and {@code write()} for every read) against the pooled
+ * direct buffers with positional writes used by {@code DownloadRunnable}.
+ * <p>
+ * The network is simulated by copying {@code readSize} bytes, the amount usually returned by a
+ * single {@code InputStream.read()} call of a HTTP response.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class DownloadWriteBenchmark {
+    // same values used by DownloadMission
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final int BLOCK_SIZE = 512 * 1024;
+
+    @Param({"8192", "65536"})
+    private int readSize;
+
+    @Param({"67108864"})
+    private int length;
+
+    private File file;
+    private FileStream stream;
+    private byte[] network;
+    private byte[] chunk;
+    private DirectBufferPool pool;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        file = File.createTempFile("download-write", ".bin");
+        network = new byte[readSize];
+        new Random(42).nextBytes(network);
+
+        chunk = new byte[BUFFER_SIZE];
+        pool = new DirectBufferPool(BUFFER_SIZE, 4);
+    }
+
+    @Setup(Level.Iteration)
+    public void open() throws IOException {
+        stream = new FileStream(file);
+        stream.setLength(length);
+    }
+
+    @TearDown(Level.Iteration)
+    public void close() {
+        stream.close();
+    }
+
+    @TearDown(Level.Trial)
+    public void cleanup() {
+        //noinspection ResultOfMethodCallIgnored
+        file.delete();
+    }
+
+    @Benchmark
+    public void seekAndWrite() throws IOException {
+        for (long block = 0; block < length; block += BLOCK_SIZE) {
+            final byte[] buffer = new byte[BUFFER_SIZE];
+            stream.seek(block);
+
+            for (int done = 0; done < BLOCK_SIZE; done += readSize) {
+                System.arraycopy(network, 0, buffer, 0, readSize);
+                stream.write(buffer, 0, readSize);
+            }
+        }
+    }
+
+    @Benchmark
+    public void pooledPositionalWrite() throws IOException {
+        for (long block = 0; block < length; block += BLOCK_SIZE) {
+            final ByteBuffer buffer = pool.acquire();
+            long position = block;
+
+            for (int done = 0; done < BLOCK_SIZE; done += readSize) {
+                System.arraycopy(network, 0, chunk, 0, readSize);
+                buffer.put(chunk, 0, readSize);
+
+                if (!buffer.hasRemaining()) {
+                    buffer.flip();
+                    final int count = buffer.remaining();
+                    stream.write(buffer, position);
+                    position += count;
+                    buffer.clear();
+                }
+            }
+
+            pool.release(buffer);
+        }
+    }
+}
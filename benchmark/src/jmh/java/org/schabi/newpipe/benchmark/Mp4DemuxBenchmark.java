@@ -0,0 +1,105 @@
+package org.schabi.newpipe.benchmark;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.schabi.newpipe.streams.Mp4DashReader;
+import org.schabi.newpipe.streams.SyntheticMp4;
+import org.schabi.newpipe.streams.io.SharpStream;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import us.shandian.giga.io.FileStream;
+
+/**
+ * Reads every fragment of a synthetic DASH video track with {@link Mp4DashReader}, without
+ * muxing anything. The {@code megabytes} counter reports the size of the source read per second.
+ * <p>
+ * {@code sampleData} {@code false} only reads the info of the samples, like the indexing pass of
+ * {@code Mp4FromDashWriter}. {@code true} also reads the data of every sample.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+public class Mp4DemuxBenchmark {
+    private static final int MEGABYTE = 1024 * 1024;
+
+    @Param({"268435456"})
+    private long length;
+
+    // 1080p30
+    @Param({"49152"})
+    private int sampleSize;
+
+    @Param({"false", "true"})
+    private boolean sampleData;
+
+    private File video;
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class Counters {
+        public double megabytes;
+        public long samples;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            megabytes = 0;
+            samples = 0;
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        video = File.createTempFile("demux-video", ".mp4");
+        SyntheticMp4.write(video, false, length, sampleSize, 150, 1);
+    }
+
+    @TearDown(Level.Trial)
+    public void cleanup() {
+        //noinspection ResultOfMethodCallIgnored
+        video.delete();
+    }
+
+    @Benchmark
+    public long demux(final Counters counters) throws IOException {
+        long samples = 0;
+
+        try (SharpStream source = new FileStream(video)) {
+            final Mp4DashReader reader = new Mp4DashReader(source);
+            reader.parse();
+            reader.selectTrack(0);
+
+            Mp4DashReader.Mp4DashChunk chunk;
+            while ((chunk = reader.getNextChunk(!sampleData)) != null) {
+                if (sampleData) {
+                    while (chunk.getNextSample() != null) {
+                        samples++;
+                    }
+                } else {
+                    while (chunk.getNextSampleInfo() != null) {
+                        samples++;
+                    }
+                }
+            }
+        }
+
+        counters.megabytes += video.length() / (double) MEGABYTE;
+        counters.samples += samples;
+        return samples;
+    }
+}
@@ -0,0 +1,132 @@
+package org.schabi.newpipe.benchmark;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.schabi.newpipe.streams.Mp4FromDashWriter;
+import org.schabi.newpipe.streams.SyntheticMp4;
+import org.schabi.newpipe.streams.io.SharpStream;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.TimeUnit;
+
+import us.shandian.giga.io.FileStream;
+
+/**
+ * Muxes a synthetic DASH video and audio track pair (about 1 GiB) the same way
+ * {@code Mp4FromDashMuxer} does, the {@code megabytes} counter reports the throughput in MiB/s.
+ * <p>
+ * {@code heap} hides the file channels, so the sources are read with a buffered
+ * {@code DataReader} and the sample data is copied through a java buffer (as before);
+ * {@code channel} parses the sources mapped into memory and moves the sample data between the
+ * files with {@link FileChannel#transferTo(long, long, java.nio.channels.WritableByteChannel)}.
+ * {@code parallelIndexing} indexes the video and audio samples on separate threads.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+public class Mp4MuxBenchmark {
+    private static final int MEGABYTE = 1024 * 1024;
+
+    @Param({"heap", "channel"})
+    private String path;
+
+    @Param({"1073741824"})
+    private long length;
+
+    @Param({"false", "true"})
+    private boolean parallelIndexing;
+
+    private File video;
+    private File audio;
+    private File output;
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class Counters {
+        public double megabytes;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            megabytes = 0;
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        video = File.createTempFile("mux-video", ".mp4");
+        audio = File.createTempFile("mux-audio", ".m4a");
+        output = File.createTempFile("mux-output", ".mp4");
+
+        // 1080p30 and 128 kbps audio, 5 seconds fragments
+        final long audioLength = length / 16;
+        SyntheticMp4.write(video, false, length - audioLength, 48 * 1024, 150, 1);
+        SyntheticMp4.write(audio, true, audioLength, 1024, 234, 2);
+    }
+
+    @TearDown(Level.Trial)
+    public void cleanup() {
+        //noinspection ResultOfMethodCallIgnored
+        video.delete();
+        //noinspection ResultOfMethodCallIgnored
+        audio.delete();
+        //noinspection ResultOfMethodCallIgnored
+        output.delete();
+    }
+
+    @Benchmark
+    public long mux(final Counters counters) throws IOException {
+        final Mp4FromDashWriter muxer = new Mp4FromDashWriter(open(video), open(audio));
+        muxer.setParallelIndexing(parallelIndexing);
+        muxer.parseSources();
+        muxer.selectTracks(0, 0);
+
+        try (SharpStream out = open(output)) {
+            out.setLength(0);
+            muxer.build(out);
+            muxer.close();
+
+            counters.megabytes += out.length() / (double) MEGABYTE;
+            return out.length();
+        }
+    }
+
+    private FileStream open(final File file) throws FileNotFoundException {
+        if ("heap".equals(path)) {
+            return new HeapFileStream(file);
+        }
+        return new FileStream(file);
+    }
+
+    private static final class HeapFileStream extends FileStream {
+        HeapFileStream(final File target) throws FileNotFoundException {
+            super(target);
+        }
+
+        @Override
+        public FileChannel getChannel() {
+            return null;
+        }
+
+        @Override
+        public ByteBuffer map(final long offset, final long length) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package org.schabi.newpipe.benchmark;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.schabi.newpipe.streams.OggFromWebMWriter;
+import org.schabi.newpipe.streams.io.SharpStream;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import us.shandian.giga.io.FileStream;
+
+/**
+ * Converts a synthetic WebM Opus track (a long podcast) into Ogg the same way
+ * {@code OggFromWebmDemuxer} does, the {@code megabytes} counter reports the throughput in
+ * MiB/s. {@code pageBatching} fills every page instead of creating a page every second.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+public class OggFromWebMBenchmark {
+    private static final int MEGABYTE = 1024 * 1024;
+
+    @Param({"180"})
+    private int minutes;
+
+    // 128 kbps
+    @Param({"320"})
+    private int frameSize;
+
+    @Param({"false", "true"})
+    private boolean pageBatching;
+
+    private File audio;
+    private File output;
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class Counters {
+        public double megabytes;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            megabytes = 0;
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        audio = File.createTempFile("ogg-audio", ".webm");
+        output = File.createTempFile("ogg-output", ".ogg");
+
+        SyntheticWebM.write(audio, true, minutes * 60 * 1000L, frameSize, 1);
+    }
+
+    @TearDown(Level.Trial)
+    public void cleanup() {
+        //noinspection ResultOfMethodCallIgnored
+        audio.delete();
+        //noinspection ResultOfMethodCallIgnored
+        output.delete();
+    }
+
+    @Benchmark
+    public long convert(final Counters counters) throws IOException {
+        final SharpStream out = new FileStream(output);
+        out.setLength(0);
+
+        final OggFromWebMWriter writer = new OggFromWebMWriter(new FileStream(audio), out);
+        writer.setPageBatching(pageBatching);
+        writer.parseSource();
+        writer.selectTrack(0);
+        writer.build();
+
+        final long length = out.length();
+        writer.close();
+
+        counters.megabytes += length / (double) MEGABYTE;
+        return length;
+    }
+}
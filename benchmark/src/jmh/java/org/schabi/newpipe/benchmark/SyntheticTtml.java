@@ -0,0 +1,81 @@
+package org.schabi.newpipe.benchmark;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+/**
+ * Writes TTML subtitles like the auto-generated captions served by YouTube, a single
+ * {@code body > div} with a short {@code <p>} every one or two seconds. Some frames have two
+ * lines and escaped characters.
+ */
+final class SyntheticTtml {
+    private static final String[] WORDS = {
+            "the", "video", "and", "you", "know", "we're", "going", "to", "talk", "about",
+            "this", "really", "&amp;", "&lt;music&gt;", "café", "okay", "so", "right", "[Applause]"
+    };
+
+    private SyntheticTtml() {
+    }
+
+    /**
+     * @param file   where the subtitle is written
+     * @param frames amount of {@code <p>} elements
+     * @param seed   seed of the text and timestamps
+     * @throws IOException if an I/O error occurs
+     */
+    static void write(final File file, final int frames, final long seed) throws IOException {
+        final Random random = new Random(seed);
+
+        try (Writer out = new BufferedWriter(new OutputStreamWriter(
+                new FileOutputStream(file), StandardCharsets.UTF_8), 256 * 1024)) {
+            out.write("<?xml version=\"1.0\" encoding=\"utf-8\" ?>\n");
+            out.write("<tt xml:lang=\"en\" xmlns=\"http://www.w3.org/ns/ttml\""
+                    + " xmlns:tts=\"http://www.w3.org/ns/ttml#styling\">\n");
+            out.write("<head><styling><style xml:id=\"s1\" tts:textAlign=\"center\"/>"
+                    + "</styling></head>\n");
+            out.write("<body><div>\n");
+
+            long time = 0;
+            for (int i = 0; i < frames; i++) {
+                final long end = time + 1000 + random.nextInt(1000);
+
+                out.write("<p begin=\"");
+                out.write(timestamp(time));
+                out.write("\" end=\"");
+                out.write(timestamp(end));
+                out.write("\" style=\"s1\">");
+                writeWords(out, random);
+                if (random.nextInt(4) == 0) {
+                    out.write("<br />");
+                    writeWords(out, random);
+                }
+                out.write("</p>\n");
+
+                time = end;
+            }
+
+            out.write("</div></body>\n</tt>\n");
+        }
+    }
+
+    private static void writeWords(final Writer out, final Random random) throws IOException {
+        final int count = 1 + random.nextInt(7);
+        for (int i = 0; i < count; i++) {
+            if (i > 0) {
+                out.write(' ');
+            }
+            out.write(WORDS[random.nextInt(WORDS.length)]);
+        }
+    }
+
+    private static String timestamp(final long time) {
+        return String.format("%02d:%02d:%02d.%03d", time / 3600000, time / 60000 % 60,
+                time / 1000 % 60, time % 1000);
+    }
+}
@@ -0,0 +1,187 @@
+package org.schabi.newpipe.benchmark;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Random;
+
+/**
+ * Writes WebM files with a single track, like the Opus and VP9 streams served by YouTube:
+ * {@code EBML Segment(Info Tracks Cluster*)}. Every cluster holds 5 seconds of
+ * {@code SimpleBlock}s with random data, only the elements read by {@code WebMReader} are
+ * written.
+ */
+final class SyntheticWebM {
+    private static final int CLUSTER_DURATION = 5000; // milliseconds
+    private static final int TIMECODE_SCALE = 1000000;
+    private static final byte[] OPUS_HEAD = {
+            0x4F, 0x70, 0x75, 0x73, 0x48, 0x65, 0x61, 0x64, // "OpusHead"
+            0x01, 0x02, 0x38, 0x01, (byte) 0x80, (byte) 0xBB, 0x00, 0x00, 0x00, 0x00, 0x00
+    };
+
+    private SyntheticWebM() {
+    }
+
+    /**
+     * @param file      where the track is written
+     * @param audio     {@code true} for an Opus track (20 ms frames), otherwise a VP9 track
+     *                  (30 fps)
+     * @param duration  duration of the track in milliseconds
+     * @param frameSize average frame size, the real size changes on every frame
+     * @param seed      seed of the frame data and sizes
+     * @throws IOException if an I/O error occurs
+     */
+    static void write(final File file, final boolean audio, final long duration,
+                      final int frameSize, final long seed) throws IOException {
+        final Random random = new Random(seed);
+        final byte[] data = new byte[frameSize * 2];
+        random.nextBytes(data);
+
+        final double frameDuration = audio ? 20 : 1000 / 30.0;
+        final long segmentOffset;
+
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(file), 256 * 1024))) {
+            writeEbmlHeader(out);
+
+            out.writeInt(0x18538067); // Segment
+            out.writeLong(0x0100000000000000L); // size, set at the end
+            segmentOffset = out.size();
+
+            writeInfo(out, duration);
+            writeTracks(out, audio);
+
+            final ByteArrayOutputStream cluster = new ByteArrayOutputStream(1024 * 1024);
+            final DataOutputStream blocks = new DataOutputStream(cluster);
+            long frame = 0;
+
+            for (long time = 0; time < duration; time += CLUSTER_DURATION) {
+                cluster.reset();
+
+                long timecode;
+                while ((timecode = (long) (frame * frameDuration)) < time + CLUSTER_DURATION
+                        && timecode < duration) {
+                    final int size = frameSize / 2 + random.nextInt(frameSize);
+                    final boolean keyframe = audio || timecode == time;
+
+                    blocks.write(0xA3); // SimpleBlock
+                    blocks.writeInt(0x10000000 | (size + 4));
+                    blocks.write(0x81); // track number
+                    blocks.writeShort((int) (timecode - time));
+                    blocks.write(keyframe ? 0x80 : 0x00);
+                    blocks.write(data, random.nextInt(data.length - size), size);
+                    frame++;
+                }
+
+                out.writeInt(0x1F43B675); // Cluster
+                out.writeLong(0x0100000000000000L | (6 + cluster.size()));
+                out.write(0xE7); // Timecode
+                out.write(0x84);
+                out.writeInt((int) time);
+                cluster.writeTo(out);
+            }
+        }
+
+        try (RandomAccessFile output = new RandomAccessFile(file, "rw")) {
+            output.seek(segmentOffset - 8);
+            output.writeLong(0x0100000000000000L | (output.length() - segmentOffset));
+        }
+    }
+
+    private static void writeEbmlHeader(final DataOutputStream out) throws IOException {
+        final Element ebml = new Element(0x1A45DFA3);
+        ebml.number(0x4286, 1); // EBMLVersion
+        ebml.number(0x42F7, 1); // EBMLReadVersion
+        ebml.number(0x42F2, 4); // EBMLMaxIDLength
+        ebml.number(0x42F3, 8); // EBMLMaxSizeLength
+        ebml.bytes(0x4282, "webm".getBytes("US-ASCII")); // DocType
+        ebml.number(0x4287, 4); // DocTypeVersion
+        ebml.number(0x4285, 2); // DocTypeReadVersion
+        ebml.writeTo(out);
+    }
+
+    private static void writeInfo(final DataOutputStream out, final long duration)
+            throws IOException {
+        final Element info = new Element(0x1549A966);
+        info.number(0x2AD7B1, TIMECODE_SCALE);
+        info.number(0x4489, Float.floatToIntBits(duration)); // Duration
+        info.writeTo(out);
+    }
+
+    private static void writeTracks(final DataOutputStream out, final boolean audio)
+            throws IOException {
+        final Element entry = new Element(0xAE); // TrackEntry
+        entry.number(0xD7, 1); // TrackNumber
+        entry.number(0x73C5, 1); // TrackUID
+        entry.number(0x9C, 0); // FlagLacing
+        entry.number(0x83, audio ? 2 : 1); // TrackType
+
+        if (audio) {
+            entry.bytes(0x86, "A_OPUS".getBytes("US-ASCII"));
+            entry.number(0x56AA, 6500000); // CodecDelay
+            entry.number(0x56BB, 80000000); // SeekPreRoll
+            entry.bytes(0x63A2, OPUS_HEAD); // CodecPrivate
+
+            final Element metadata = new Element(0xE1); // Audio
+            metadata.number(0xB5, Float.floatToIntBits(48000f)); // SamplingFrequency
+            metadata.number(0x9F, 2); // Channels
+            entry.add(metadata);
+        } else {
+            entry.bytes(0x86, "V_VP9".getBytes("US-ASCII"));
+
+            final Element metadata = new Element(0xE0); // Video
+            metadata.number(0xB0, 1920); // PixelWidth
+            metadata.number(0xBA, 1080); // PixelHeight
+            entry.add(metadata);
+        }
+
+        final Element tracks = new Element(0x1654AE6B);
+        tracks.add(entry);
+        tracks.writeTo(out);
+    }
+
+    private static final class Element {
+        private final int id;
+        private final ByteArrayOutputStream data = new ByteArrayOutputStream();
+        private final DataOutputStream out = new DataOutputStream(data);
+
+        Element(final int id) {
+            this.id = id;
+        }
+
+        void number(final int child, final int value) throws IOException {
+            writeId(out, child);
+            out.write(0x84);
+            out.writeInt(value);
+        }
+
+        void bytes(final int child, final byte[] value) throws IOException {
+            writeId(out, child);
+            out.writeInt(0x10000000 | value.length);
+            out.write(value);
+        }
+
+        void add(final Element child) throws IOException {
+            child.writeTo(out);
+        }
+
+        void writeTo(final DataOutputStream target) throws IOException {
+            writeId(target, id);
+            target.writeInt(0x10000000 | data.size());
+            data.writeTo(target);
+        }
+
+        private static void writeId(final DataOutputStream target, final int value)
+                throws IOException {
+            for (int shift = 24; shift >= 0; shift -= 8) {
+                if ((value >>> shift) != 0) {
+                    target.write(value >>> shift);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package org.schabi.newpipe.benchmark;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.schabi.newpipe.streams.SrtFromTtmlWriter;
+import org.schabi.newpipe.streams.io.SharpStream;
+import org.xmlpull.v1.XmlPullParserException;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import us.shandian.giga.io.FileStream;
+
+/**
+ * Converts synthetic auto-generated captions into SRT the same way {@code TtmlConverter} does.
+ * The {@code megabytes} counter reports the size of the TTML converted per second. The default
+ * is near 6 hours of captions (15000 frames, 1.5 MiB).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+public class TtmlToSrtBenchmark {
+    private static final int MEGABYTE = 1024 * 1024;
+
+    @Param({"15000"})
+    private int frames;
+
+    private File ttml;
+    private File srt;
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class Counters {
+        public double megabytes;
+        public long frames;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            megabytes = 0;
+            frames = 0;
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        ttml = File.createTempFile("subtitle", ".ttml");
+        srt = File.createTempFile("subtitle", ".srt");
+        SyntheticTtml.write(ttml, frames, 1);
+    }
+
+    @TearDown(Level.Trial)
+    public void cleanup() {
+        //noinspection ResultOfMethodCallIgnored
+        ttml.delete();
+        //noinspection ResultOfMethodCallIgnored
+        srt.delete();
+    }
+
+    @Benchmark
+    public long convert(final Counters counters) throws IOException, XmlPullParserException {
+        try (SharpStream in = new FileStream(ttml); SharpStream out = new FileStream(srt)) {
+            out.setLength(0);
+            new SrtFromTtmlWriter(out, true).build(in);
+
+            counters.megabytes += ttml.length() / (double) MEGABYTE;
+            counters.frames += frames;
+            return out.length();
+        }
+    }
+}
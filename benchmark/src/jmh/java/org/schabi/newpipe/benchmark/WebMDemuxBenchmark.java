@@ -0,0 +1,117 @@
+package org.schabi.newpipe.benchmark;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.schabi.newpipe.streams.WebMReader;
+import org.schabi.newpipe.streams.io.SharpStream;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import us.shandian.giga.io.FileStream;
+
+/**
+ * Reads every SimpleBlock of a synthetic VP9 track with {@link WebMReader}, without muxing
+ * anything. The {@code megabytes} counter reports the size of the source read per second.
+ * <p>
+ * {@code blockData} {@code false} skips the data of the blocks, {@code true} reads it into a
+ * reusable buffer like {@code WebMWriter} does.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+public class WebMDemuxBenchmark {
+    private static final int MEGABYTE = 1024 * 1024;
+
+    @Param({"60"})
+    private int minutes;
+
+    @Param({"4096"})
+    private int frameSize;
+
+    @Param({"false", "true"})
+    private boolean blockData;
+
+    private File video;
+    private byte[] buffer;
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class Counters {
+        public double megabytes;
+        public long blocks;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            megabytes = 0;
+            blocks = 0;
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        video = File.createTempFile("demux-video", ".webm");
+        SyntheticWebM.write(video, false, minutes * 60 * 1000L, frameSize, 1);
+        buffer = new byte[frameSize * 2];
+    }
+
+    @TearDown(Level.Trial)
+    public void cleanup() {
+        //noinspection ResultOfMethodCallIgnored
+        video.delete();
+    }
+
+    @Benchmark
+    public long demux(final Counters counters) throws IOException {
+        long blocks = 0;
+
+        try (SharpStream source = new FileStream(video)) {
+            final WebMReader reader = new WebMReader(source);
+            reader.parse();
+            reader.selectTrack(0);
+
+            WebMReader.Segment segment;
+            while ((segment = reader.getNextSegment()) != null) {
+                WebMReader.Cluster cluster;
+                while ((cluster = segment.getNextCluster()) != null) {
+                    WebMReader.SimpleBlock block;
+                    while ((block = cluster.getNextSimpleBlock()) != null) {
+                        if (blockData) {
+                            readFully(block);
+                        }
+                        blocks++;
+                    }
+                }
+            }
+        }
+
+        counters.megabytes += video.length() / (double) MEGABYTE;
+        counters.blocks += blocks;
+        return blocks;
+    }
+
+    private void readFully(final WebMReader.SimpleBlock block) throws IOException {
+        int remaining = block.dataSize;
+        while (remaining > 0) {
+            final int read = block.data.read(buffer, 0, Math.min(remaining, buffer.length));
+            if (read < 1) {
+                throw new IOException("truncated block");
+            }
+            remaining -= read;
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package org.schabi.newpipe.benchmark;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.schabi.newpipe.streams.WebMWriter;
+import org.schabi.newpipe.streams.io.SharpStream;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import us.shandian.giga.io.FileStream;
+
+/**
+ * Muxes a synthetic VP9 video and Opus audio pair the same way {@code WebMMuxer} does. The
+ * {@code megabytes} and {@code blocks} counters report the throughput in MiB/s and SimpleBlocks
+ * per second.
+ * <p>
+ * The default is a 3 hours long 480p video (30 fps, near 1 Mbps) and 128 kbps audio (20 ms
+ * frames), near 900000 blocks and 1.4 GiB.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+public class WebMMuxBenchmark {
+    private static final int MEGABYTE = 1024 * 1024;
+
+    @Param({"180"})
+    private int minutes;
+
+    @Param({"4096"})
+    private int videoFrameSize;
+
+    @Param({"320"})
+    private int audioFrameSize;
+
+    private File video;
+    private File audio;
+    private File output;
+    private long blockCount;
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class Counters {
+        public double megabytes;
+        public long blocks;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            megabytes = 0;
+            blocks = 0;
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        video = File.createTempFile("mux-video", ".webm");
+        audio = File.createTempFile("mux-audio", ".webm");
+        output = File.createTempFile("mux-output", ".webm");
+
+        final long duration = minutes * 60 * 1000L;
+        SyntheticWebM.write(video, false, duration, videoFrameSize, 1);
+        SyntheticWebM.write(audio, true, duration, audioFrameSize, 2);
+        blockCount = (duration * 30 / 1000) + (duration / 20);
+    }
+
+    @TearDown(Level.Trial)
+    public void cleanup() {
+        //noinspection ResultOfMethodCallIgnored
+        video.delete();
+        //noinspection ResultOfMethodCallIgnored
+        audio.delete();
+        //noinspection ResultOfMethodCallIgnored
+        output.delete();
+    }
+
+    @Benchmark
+    public long mux(final Counters counters) throws IOException {
+        final WebMWriter muxer = new WebMWriter(new FileStream(video), new FileStream(audio));
+        muxer.parseSources();
+        muxer.selectTracks(0, 0);
+
+        try (SharpStream out = new FileStream(output)) {
+            out.setLength(0);
+            muxer.build(out);
+            muxer.close();
+
+            counters.megabytes += out.length() / (double) MEGABYTE;
+            counters.blocks += blockCount;
+            return out.length();
+        }
+    }
+}